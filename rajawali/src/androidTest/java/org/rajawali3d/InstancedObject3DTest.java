@@ -0,0 +1,164 @@
+package org.rajawali3d;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import android.test.suitebuilder.annotation.SmallTest;
+import org.junit.Before;
+import org.junit.Test;
+import org.rajawali3d.bounds.BoundingBox;
+import org.rajawali3d.cameras.Camera;
+import org.rajawali3d.cameras.Frustum;
+import org.rajawali3d.materials.shaders.fragments.instancing.InstancingVertexShaderFragment;
+import org.rajawali3d.math.Matrix4;
+import org.rajawali3d.math.Quaternion;
+import org.rajawali3d.math.vector.Vector3;
+import org.rajawali3d.primitives.Cube;
+import org.rajawali3d.renderer.RenderDirtyTracker;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Checks the per instance culling and the geometry the OpenGL ES 2.0 fallback replicates.
+ */
+@SmallTest
+public class InstancedObject3DTest {
+
+    private static final int GRID_SIZE = 10;
+    private static final int STRIDE = InstancingVertexShaderFragment.INSTANCE_STRIDE;
+
+    private Cube mSource;
+    private InstancedObject3D mInstanced;
+    private Camera mCamera;
+
+    @Before
+    public void setUp() {
+        mSource = new Cube(1);
+        mInstanced = new InstancedObject3D(mSource, 8);
+        for (int x = 0; x < GRID_SIZE; ++x) {
+            for (int z = 0; z < GRID_SIZE; ++z) {
+                final int index = mInstanced.addInstance();
+                mInstanced.setInstanceTransform(index, new Vector3(x * 4 - 18, 0, z * 4 - 18), new Quaternion(),
+                        new Vector3(1, 1, 1));
+                mInstanced.setInstanceData(index, index, 0, 0, 0);
+            }
+        }
+        mCamera = new Camera();
+        mCamera.setProjectionMatrix(800, 600);
+    }
+
+    private Frustum updateFrustum() {
+        mCamera.onRecalculateModelMatrix(null);
+        final Matrix4 vpMatrix = new Matrix4(mCamera.getProjectionMatrix()).multiply(mCamera.getViewMatrix());
+        mCamera.updateFrustum(vpMatrix);
+        return mCamera.getFrustum();
+    }
+
+    private List<Integer> bruteForce(Frustum frustum) {
+        final List<Integer> visible = new ArrayList<>();
+        for (int i = 0; i < mInstanced.getInstanceCount(); ++i) {
+            final Cube cube = new Cube(1);
+            final int x = i / GRID_SIZE;
+            final int z = i % GRID_SIZE;
+            cube.setPosition(x * 4 - 18, 0, z * 4 - 18);
+            cube.onRecalculateModelMatrix(mInstanced.getModelMatrix());
+            final BoundingBox bounds = cube.getBoundingBox();
+            bounds.transform(cube.getModelMatrix());
+            if (frustum.boundsInFrustum(bounds)) visible.add(i);
+        }
+        return visible;
+    }
+
+    @Test
+    public void testReplicatedGeometry() {
+        assertEquals(8, mInstanced.getBatchSize());
+        final Geometry3D source = mSource.getGeometry();
+        final Geometry3D geometry = mInstanced.getGeometry();
+        assertEquals(source.getNumVertices() * 8, geometry.getNumVertices());
+        assertEquals(source.getNumIndices() * 8, geometry.getNumIndices());
+
+        final int[] indices = Geometry3D.getIntArrayFromBuffer(geometry.getIndices());
+        final int[] sourceIndices = Geometry3D.getIntArrayFromBuffer(source.getIndices());
+        final int copy = 5;
+        for (int i = 0; i < sourceIndices.length; ++i) {
+            assertEquals(sourceIndices[i] + copy * source.getNumVertices(),
+                    indices[copy * sourceIndices.length + i]);
+        }
+    }
+
+    @Test
+    public void testBatchSizeIsLimitedByVertexCount() {
+        final InstancedObject3D instanced = new InstancedObject3D(mSource, 100000);
+        assertTrue(instanced.getGeometry().getNumVertices() <= 65535);
+        assertEquals(65535 / mSource.getGeometry().getNumVertices(), instanced.getBatchSize());
+    }
+
+    @Test
+    public void testCullingMatchesBruteForce() {
+        mInstanced.setPosition(0, 0, -5);
+        mInstanced.onRecalculateModelMatrix(null);
+        mCamera.setPosition(10, 5, 20);
+        mCamera.setLookAt(10, 0, 0);
+        final Frustum frustum = updateFrustum();
+
+        final List<Integer> expected = bruteForce(frustum);
+        final int visible = mInstanced.updateVisibleInstances(frustum);
+        assertTrue(visible > 0);
+        assertTrue(visible < mInstanced.getInstanceCount());
+        assertEquals(expected.size(), visible);
+
+        // The visible instances are compacted in their original order
+        final float[] data = mInstanced.getVisibleInstanceData();
+        for (int i = 0; i < visible; ++i) {
+            final int index = (int) data[i * STRIDE + InstancingVertexShaderFragment.DATA_OFFSET];
+            assertEquals((int) expected.get(i), index);
+            final int x = index / GRID_SIZE;
+            assertEquals(x * 4 - 18, data[i * STRIDE + InstancingVertexShaderFragment.MATRIX_OFFSET + 12], 1e-5);
+        }
+    }
+
+    @Test
+    public void testNoFrustumKeepsAll() {
+        assertEquals(mInstanced.getInstanceCount(), mInstanced.updateVisibleInstances(null));
+    }
+
+    @Test
+    public void testBoundingBoxContainsAllInstances() {
+        final BoundingBox bounds = mInstanced.getBoundingBox();
+        assertEquals(-18.5, bounds.getMin().x, 1e-5);
+        assertEquals(-0.5, bounds.getMin().y, 1e-5);
+        assertEquals(18.5, bounds.getMax().z, 1e-5);
+
+        mInstanced.setInstanceTransform(0, new Vector3(0, 50, 0), new Quaternion(), new Vector3(2, 2, 2));
+        assertEquals(51, mInstanced.getBoundingBox().getMax().y, 1e-5);
+    }
+
+    @Test
+    public void testInstanceChangesRender() {
+        final RenderDirtyTracker tracker = new RenderDirtyTracker();
+        tracker.onFrameStart();
+        assertFalse(tracker.shouldRender());
+        mInstanced.setInstanceColor(2, 0xff00ff00);
+        assertTrue(tracker.shouldRender());
+
+        tracker.onFrameStart();
+        mInstanced.setInstanceData(2, 1, 2, 3, 4);
+        assertTrue(tracker.shouldRender());
+    }
+
+    @Test
+    public void testRemoveInstanceMovesLast() {
+        final int last = mInstanced.getInstanceCount() - 1;
+        mInstanced.setInstanceColor(last, 0xff00ff00);
+        mInstanced.removeInstance(3);
+        assertEquals(last, mInstanced.getInstanceCount());
+
+        mInstanced.updateVisibleInstances(null);
+        final float[] data = mInstanced.getVisibleInstanceData();
+        assertEquals(last, data[3 * STRIDE + InstancingVertexShaderFragment.DATA_OFFSET], 0);
+        assertEquals(0, data[3 * STRIDE + InstancingVertexShaderFragment.COLOR_OFFSET], 0);
+        assertEquals(1, data[3 * STRIDE + InstancingVertexShaderFragment.COLOR_OFFSET + 1], 0);
+    }
+}
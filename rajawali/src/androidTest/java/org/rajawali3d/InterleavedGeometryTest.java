@@ -0,0 +1,148 @@
+package org.rajawali3d;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import android.test.suitebuilder.annotation.SmallTest;
+import org.junit.Before;
+import org.junit.Test;
+import org.rajawali3d.util.GeometryInterleaver;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.FloatBuffer;
+
+/**
+ * Checks the interleaved layout of {@link Geometry3D}, the offsets handed to the shaders and the packed data, with
+ * float and compact vertex formats.
+ */
+@SmallTest
+public class InterleavedGeometryTest {
+
+    // -- a quad with positions, normals and texture coordinates but no colors
+    private static final float[] VERTICES = new float[]{0, 0, 0, 1, 0, 0, 1, 1, 0, 0, 1, 0};
+    private static final float[] NORMALS = new float[]{0, 0, 1, 0, 0, 1, 0, 0, 1, 0, 0, 1};
+    private static final float[] TEXTURE_COORDS = new float[]{0, 0, 1, 0, 1, 1, 0, 1};
+    private static final int[] INDICES = new int[]{0, 1, 2, 0, 2, 3};
+
+    private Geometry3D mGeometry;
+
+    @Before
+    public void setUp() {
+        mGeometry = new Geometry3D();
+        mGeometry.setData(VERTICES, NORMALS, TEXTURE_COORDS, null, INDICES, false);
+    }
+
+    @Test
+    public void testLayout() {
+        mGeometry.setInterleaved(true);
+        mGeometry.createBuffers();
+
+        final int stride = (3 + 3 + 2) * Geometry3D.FLOAT_SIZE_BYTES;
+        assertEquals(stride, mGeometry.getInterleavedBufferInfo().stride);
+        assertEquals(stride, mGeometry.getVertexBufferInfo().stride);
+        assertEquals(0, mGeometry.getVertexBufferInfo().offset);
+        assertEquals(stride, mGeometry.getNormalBufferInfo().stride);
+        assertEquals(12, mGeometry.getNormalBufferInfo().offset);
+        assertEquals(stride, mGeometry.getTexCoordBufferInfo().stride);
+        assertEquals(24, mGeometry.getTexCoordBufferInfo().offset);
+        // -- there are no colors and the indices have a buffer of their own
+        assertEquals(0, mGeometry.getColorBufferInfo().stride);
+        assertEquals(0, mGeometry.getIndexBufferInfo().stride);
+
+        final FloatBuffer data = mGeometry.getInterleavedData(0, 4).asFloatBuffer();
+        assertEquals(32, data.capacity());
+        // -- the third vertex
+        assertEquals(1, data.get(16), 0);
+        assertEquals(1, data.get(17), 0);
+        assertEquals(1, data.get(21), 0);
+        assertEquals(1, data.get(22), 0);
+        assertEquals(1, data.get(23), 0);
+    }
+
+    @Test
+    public void testChangedDataIsInterleaved() {
+        mGeometry.setInterleaved(true);
+        mGeometry.createBuffers();
+
+        final FloatBuffer coords = ByteBuffer.allocateDirect(2 * Geometry3D.FLOAT_SIZE_BYTES)
+                .order(ByteOrder.nativeOrder()).asFloatBuffer();
+        coords.put(0.5f).put(0.25f);
+        mGeometry.changeBufferData(mGeometry.getTexCoordBufferInfo(), coords, 2, 2);
+
+        assertEquals(0.5f, mGeometry.getTextureCoords().get(2), 0);
+        final FloatBuffer data = mGeometry.getInterleavedData(1, 1).asFloatBuffer();
+        assertEquals(1, data.get(0), 0);
+        assertEquals(0.5f, data.get(6), 0);
+        assertEquals(0.25f, data.get(7), 0);
+    }
+
+    @Test
+    public void testConversion() {
+        mGeometry.createBuffers();
+        assertEquals(0, mGeometry.getVertexBufferInfo().stride);
+
+        mGeometry.setInterleaved(true);
+        assertEquals(32, mGeometry.getNormalBufferInfo().stride);
+        assertEquals(mGeometry.getInterleavedBufferInfo().bufferHandle, mGeometry.getNormalBufferInfo().bufferHandle);
+
+        mGeometry.setInterleaved(false);
+        assertFalse(mGeometry.isInterleaved());
+        assertEquals(0, mGeometry.getNormalBufferInfo().stride);
+        assertEquals(0, mGeometry.getNormalBufferInfo().offset);
+        assertEquals(0, mGeometry.getTexCoordBufferInfo().offset);
+    }
+
+    @Test
+    public void testCompactFormat() {
+        mGeometry.createBuffers();
+        mGeometry.setVertexFormat(VertexFormat.COMPACT);
+        assertTrue(mGeometry.isInterleaved());
+
+        // -- 8 bytes of positions, 4 of normals and 4 of texture coordinates
+        assertEquals(16, mGeometry.getInterleavedBufferInfo().stride);
+        assertEquals(8, mGeometry.getNormalBufferInfo().offset);
+        assertEquals(2, mGeometry.getNormalBufferInfo().components);
+        assertEquals(12, mGeometry.getTexCoordBufferInfo().offset);
+        assertTrue(mGeometry.getTexCoordBufferInfo().normalized);
+        assertArrayEquals(new float[]{0, 0, 0}, mGeometry.getPositionOffset(), 0);
+        assertArrayEquals(new float[]{1, 1, 0}, mGeometry.getPositionScale(), 0);
+
+        final ByteBuffer data = mGeometry.getInterleavedData(2, 1);
+        assertEquals(0xffff, data.getShort(0) & 0xffff);
+        assertEquals(0xffff, data.getShort(2) & 0xffff);
+        assertEquals(0, data.getShort(4));
+        assertEquals(0xffff, data.getShort(12) & 0xffff);
+
+        // -- repeated texture coordinates can't be normalized shorts and fall back to floats
+        final FloatBuffer coords = ByteBuffer.allocateDirect(2 * Geometry3D.FLOAT_SIZE_BYTES)
+                .order(ByteOrder.nativeOrder()).asFloatBuffer();
+        coords.put(2).put(2);
+        mGeometry.changeBufferData(mGeometry.getTexCoordBufferInfo(), coords, 2, 2);
+        assertEquals(20, mGeometry.getInterleavedBufferInfo().stride);
+        assertFalse(mGeometry.getTexCoordBufferInfo().normalized);
+
+        mGeometry.setInterleaved(false);
+        assertEquals(VertexFormat.FLOAT, mGeometry.getVertexFormat());
+        assertEquals(0, mGeometry.getNormalBufferInfo().components);
+        assertNull(mGeometry.getPositionScale());
+    }
+
+    @Test
+    public void testInterleaverConvertsHierarchy() {
+        final Object3D root = new Object3D();
+        final Object3D child = new Object3D();
+        child.setData(VERTICES, NORMALS, TEXTURE_COORDS, null, INDICES, true);
+        root.addChild(child);
+        root.addChild(new Object3D());
+
+        // -- the root and the empty child are containers
+        assertEquals(1, GeometryInterleaver.interleave(root));
+        assertTrue(child.getGeometry().isInterleaved());
+        assertEquals(24, child.getGeometry().getTexCoordBufferInfo().offset);
+        assertEquals(0, GeometryInterleaver.interleave(root));
+    }
+}
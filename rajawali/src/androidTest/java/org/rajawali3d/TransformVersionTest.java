@@ -0,0 +1,155 @@
+package org.rajawali3d;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import android.test.suitebuilder.annotation.SmallTest;
+import org.junit.Before;
+import org.junit.Test;
+import org.rajawali3d.bounds.BoundingBox;
+import org.rajawali3d.cameras.Camera;
+import org.rajawali3d.math.Matrix4;
+import org.rajawali3d.math.vector.Vector3;
+import org.rajawali3d.primitives.Cube;
+
+/**
+ * Checks that unchanged objects keep their matrices and bounds and that changes reach the whole hierarchy.
+ */
+@SmallTest
+public class TransformVersionTest {
+
+    private Camera mCamera;
+    private Matrix4 mVPMatrix;
+    private Cube mParent;
+    private Cube mChild;
+
+    @Before
+    public void setUp() {
+        mCamera = new Camera();
+        mCamera.setProjectionMatrix(800, 600);
+        mCamera.setPosition(0, 0, 20);
+        mCamera.setLookAt(0, 0, 0);
+        mVPMatrix = new Matrix4();
+        updateFrustum();
+
+        mParent = new Cube(1);
+        mChild = new Cube(1);
+        mChild.setPosition(2, 0, 0);
+        mParent.addChild(mChild);
+        // -- bounding boxes are created on demand
+        mChild.getBoundingBox();
+    }
+
+    private void updateFrustum() {
+        mCamera.onRecalculateModelMatrix(null);
+        mVPMatrix.setAll(mCamera.getProjectionMatrix()).multiply(mCamera.getViewMatrix());
+        mCamera.updateFrustum(mVPMatrix);
+    }
+
+    /**
+     * @return The number of objects whose model matrix was recalculated
+     */
+    private int update() {
+        int recalculated = 0;
+        if (mParent.updateTransforms(mCamera, mVPMatrix, mCamera.getViewMatrix(), null)) ++recalculated;
+        if (mChild.updateTransforms(mCamera, mVPMatrix, mCamera.getViewMatrix(), mParent.getModelMatrix())) {
+            ++recalculated;
+        }
+        return recalculated;
+    }
+
+    @Test
+    public void testUnchangedObjectsAreSkipped() {
+        assertEquals(2, update());
+        final int parentVersion = mParent.getWorldVersion();
+        final int childVersion = mChild.getWorldVersion();
+
+        assertEquals(0, update());
+        assertEquals(parentVersion, mParent.getWorldVersion());
+        assertEquals(childVersion, mChild.getWorldVersion());
+    }
+
+    @Test
+    public void testParentChangeReachesChild() {
+        update();
+        final int localVersion = mChild.getLocalVersion();
+        final int worldVersion = mChild.getWorldVersion();
+
+        mParent.setPosition(0, 3, 0);
+        assertEquals(2, update());
+        assertEquals(localVersion, mChild.getLocalVersion());
+        assertEquals(worldVersion + 1, mChild.getWorldVersion());
+        assertEquals(2, mChild.getModelMatrix().getTranslation().x, 1e-9);
+        assertEquals(3, mChild.getModelMatrix().getTranslation().y, 1e-9);
+        assertEquals(2.5, mChild.getBoundingBox().getTransformedMax().x, 1e-9);
+        assertEquals(3.5, mChild.getBoundingBox().getTransformedMax().y, 1e-9);
+    }
+
+    @Test
+    public void testCameraChangeUpdatesModelViewProjection() {
+        update();
+        final int worldVersion = mChild.getWorldVersion();
+
+        mCamera.setPosition(5, 5, 20);
+        mCamera.setLookAt(0, 0, 0);
+        updateFrustum();
+        assertEquals(0, update());
+        assertEquals(worldVersion, mChild.getWorldVersion());
+
+        final Matrix4 expected = mVPMatrix.clone().multiply(mChild.getModelMatrix());
+        assertArrayEquals(expected.getDoubleValues(), mChild.getModelViewProjectionMatrix().getDoubleValues(), 1e-9);
+    }
+
+    @Test
+    public void testUnchangedCameraKeepsVersion() {
+        final int version = mCamera.getViewProjectionVersion();
+        updateFrustum();
+        assertEquals(version, mCamera.getViewProjectionVersion());
+        mCamera.setPosition(0, 1, 20);
+        updateFrustum();
+        assertTrue(mCamera.getViewProjectionVersion() > version);
+    }
+
+    @Test
+    public void testReparentingRecalculates() {
+        update();
+        final Cube other = new Cube(1);
+        other.setPosition(0, 0, -4);
+        mParent.removeChild(mChild);
+        other.addChild(mChild);
+        other.updateTransforms(mCamera, mVPMatrix, mCamera.getViewMatrix(), null);
+        assertTrue(mChild.updateTransforms(mCamera, mVPMatrix, mCamera.getViewMatrix(), other.getModelMatrix()));
+        assertEquals(-4, mChild.getModelMatrix().getTranslation().z, 1e-9);
+        assertFalse(mChild.updateTransforms(mCamera, mVPMatrix, mCamera.getViewMatrix(), other.getModelMatrix()));
+    }
+
+    @Test
+    public void testRecalculatedBoundsAreTransformed() {
+        update();
+        final BoundingBox bounds = mChild.getBoundingBox();
+        bounds.setMax(new Vector3(1, 1, 1));
+        bounds.calculatePoints();
+        assertFalse(bounds.isTransformedBy(mChild.getModelMatrix()));
+
+        assertEquals(0, update());
+        assertEquals(3, bounds.getTransformedMax().x, 1e-9);
+    }
+
+    @Test
+    public void testNormalMatrixFollowsWorldVersion() {
+        update();
+        final float[] normalMatrix = mChild.getNormalMatrix();
+        assertEquals(1, normalMatrix[0], 1e-6);
+
+        // -- the same array is handed out until the model matrix changes
+        assertEquals(0, update());
+        assertTrue(normalMatrix == mChild.getNormalMatrix());
+        assertEquals(1, normalMatrix[0], 1e-6);
+
+        mParent.setScale(2);
+        update();
+        assertEquals(0.5, mChild.getNormalMatrix()[0], 1e-6);
+    }
+}
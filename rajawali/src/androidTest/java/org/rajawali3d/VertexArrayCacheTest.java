@@ -0,0 +1,90 @@
+package org.rajawali3d;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import android.test.suitebuilder.annotation.SmallTest;
+import org.junit.Before;
+import org.junit.Test;
+import org.rajawali3d.renderer.GLStateCache;
+import org.rajawali3d.renderer.RecordingBackend;
+
+/**
+ * Creates and deletes vertex arrays through fake handles and checks what reaches the {@link GLStateCache}.
+ */
+@SmallTest
+public class VertexArrayCacheTest {
+
+    private static final int LAYOUT_POSITIONS = 1;
+    private static final int LAYOUT_LIT = 1 | 2 << 8 | 3 << 16;
+
+    private static final class FakeVertexArrayCache extends VertexArrayCache {
+        int mNextHandle = 1;
+        int mDeleted;
+
+        @Override
+        protected int createVertexArray() {
+            return mNextHandle++;
+        }
+
+        @Override
+        protected void deleteVertexArrays(int[] arrays, int count) {
+            mDeleted += count;
+        }
+    }
+
+    private RecordingBackend mBackend;
+    private GLStateCache mCache;
+    private FakeVertexArrayCache mArrays;
+
+    @Before
+    public void setUp() {
+        mBackend = new RecordingBackend();
+        mCache = new GLStateCache(mBackend);
+        mCache.setVertexArraysSupported(true);
+        GLStateCache.makeCurrent(mCache);
+        mArrays = new FakeVertexArrayCache();
+    }
+
+    @Test
+    public void testOneArrayPerLayout() {
+        assertFalse(mArrays.bind(mCache, LAYOUT_POSITIONS));
+        assertFalse(mArrays.bind(mCache, LAYOUT_LIT));
+        assertTrue(mArrays.bind(mCache, LAYOUT_POSITIONS));
+        assertTrue(mArrays.bind(mCache, LAYOUT_LIT));
+        assertEquals(2, mArrays.getCount());
+        assertEquals("bindVertexArray(2)", mBackend.getCalls().get(mBackend.getCallCount() - 1));
+
+        // -- drawing the same layout again binds nothing
+        assertTrue(mArrays.bind(mCache, LAYOUT_LIT));
+        assertEquals(4, mBackend.getCallCount());
+    }
+
+    @Test
+    public void testInvalidateDeletesArrays() {
+        mArrays.bind(mCache, LAYOUT_POSITIONS);
+        mArrays.bind(mCache, LAYOUT_LIT);
+        mArrays.invalidate();
+        assertEquals(2, mArrays.mDeleted);
+        assertEquals(0, mArrays.getCount());
+
+        assertFalse(mArrays.bind(mCache, LAYOUT_LIT));
+        assertEquals(3, mArrays.mNextHandle - 1);
+    }
+
+    @Test
+    public void testLostContextIsNotDeleted() {
+        mArrays.bind(mCache, LAYOUT_POSITIONS);
+        mCache.reset();
+        mArrays.invalidate();
+        assertEquals(0, mArrays.mDeleted);
+
+        mArrays.bind(mCache, LAYOUT_POSITIONS);
+        mCache.reset();
+        // -- the array of the old context is replaced on its own
+        assertFalse(mArrays.bind(mCache, LAYOUT_POSITIONS));
+        assertEquals(1, mArrays.getCount());
+        assertEquals(0, mArrays.mDeleted);
+    }
+}
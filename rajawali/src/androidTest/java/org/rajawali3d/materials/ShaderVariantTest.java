@@ -0,0 +1,141 @@
+package org.rajawali3d.materials;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertSame;
+
+import android.support.annotation.NonNull;
+import android.test.suitebuilder.annotation.SmallTest;
+import org.junit.Before;
+import org.junit.Test;
+import org.rajawali3d.Object3D;
+import org.rajawali3d.VertexFormat;
+import org.rajawali3d.cameras.Camera;
+import org.rajawali3d.lights.ALight;
+import org.rajawali3d.lights.DirectionalLight;
+import org.rajawali3d.lights.PointLight;
+import org.rajawali3d.materials.methods.DiffuseMethod;
+import org.rajawali3d.materials.shaders.FragmentShader;
+import org.rajawali3d.materials.shaders.VertexShader;
+import org.rajawali3d.renderer.GLStateCache;
+import org.rajawali3d.renderer.RecordingBackend;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Checks that a {@link Material} reuses the shader sources it generated for a {@link ShaderVariantKey} it has seen
+ * before, and that changes to its lights are detected through the key.
+ */
+@SmallTest
+public class ShaderVariantTest {
+
+    /**
+     * Keeps the shaders it generates.
+     */
+    private static final class RecordingMaterial extends Material {
+        VertexShader mVertex;
+        FragmentShader mFragment;
+
+        RecordingMaterial() {
+            super(true);
+        }
+
+        @Override
+        protected void onPreVertexShaderInitialize(@NonNull VertexShader vertexShader) {
+            mVertex = vertexShader;
+        }
+
+        @Override
+        protected void onPreFragmentShaderInitialize(@NonNull FragmentShader fragmentShader) {
+            mFragment = fragmentShader;
+        }
+    }
+
+    private RecordingMaterial mMaterial;
+    private List<ALight> mLights;
+
+    @Before
+    public void setUp() {
+        GLStateCache.makeCurrent(new GLStateCache(new RecordingBackend()));
+        mLights = new ArrayList<>();
+        mLights.add(new PointLight());
+        mMaterial = new RecordingMaterial();
+        mMaterial.enableLighting(true);
+        mMaterial.setDiffuseMethod(new DiffuseMethod.Lambert());
+        mMaterial.setLights(mLights);
+    }
+
+    private String[] build() {
+        mMaterial.createShaders();
+        return new String[]{mMaterial.mVertex.getShaderString(), mMaterial.mFragment.getShaderString()};
+    }
+
+    @Test
+    public void testKnownVariantsAreReused() {
+        final String[] point = build();
+        assertEquals(1, mMaterial.getShaderVariantCount());
+
+        // -- the scene changes its light collection in place
+        mLights.add(new DirectionalLight());
+        mMaterial.setLights(mLights);
+        final String[] pointAndDirectional = build();
+        assertNotEquals(point[1], pointAndDirectional[1]);
+        assertEquals(2, mMaterial.getShaderVariantCount());
+
+        // -- back to a configuration which was seen before, the strings are not generated again
+        mLights.remove(1);
+        mMaterial.setLights(mLights);
+        final String[] again = build();
+        assertSame(point[0], again[0]);
+        assertSame(point[1], again[1]);
+        assertEquals(2, mMaterial.getShaderVariantCount());
+    }
+
+    @Test
+    public void testUnchangedLightsKeepTheShaders() {
+        final String[] point = build();
+
+        // -- a light of the same type needs no other shaders
+        mLights.set(0, new PointLight());
+        mMaterial.setLights(mLights);
+        assertSame(point[0], build()[0]);
+        assertEquals(1, mMaterial.getShaderVariantCount());
+    }
+
+    @Test
+    public void testObjectsPassTheirVertexFormat() {
+        final Object3D object = new Object3D() {
+            {
+                // -- skips the material manager, which needs a renderer
+                mMaterial = ShaderVariantTest.this.mMaterial;
+            }
+        };
+        object.setData(new float[]{0, 0, 0, 1, 0, 0, 1, 1, 0}, new float[]{0, 0, 1, 0, 0, 1, 0, 0, 1}, null, null,
+                new int[]{0, 1, 2}, false);
+        object.getGeometry().setVertexFormat(VertexFormat.COMPACT);
+        final String[] floats = build();
+
+        // -- the material rebuilds its shaders to decode the geometry, even if its program was already current
+        object.renderQueued(new Camera(), mMaterial, false, false);
+        assertSame(VertexFormat.COMPACT, mMaterial.getVertexFormat());
+        assertFalse(mMaterial.isDirty());
+        assertEquals(2, mMaterial.getShaderVariantCount());
+        assertNotEquals(floats[0], mMaterial.mVertex.getShaderString());
+    }
+
+    @Test
+    public void testKeyEquality() {
+        final ShaderVariantKey key = mMaterial.createShaderVariantKey();
+        assertEquals(key, mMaterial.createShaderVariantKey());
+        assertEquals(key.hashCode(), mMaterial.createShaderVariantKey().hashCode());
+
+        mMaterial.useVertexColors(true);
+        assertFalse(key.equals(mMaterial.createShaderVariantKey()));
+        mMaterial.useVertexColors(false);
+        mMaterial.setDiffuseMethod(new DiffuseMethod.Lambert());
+        // -- methods generate code from their own state, another instance is another variant
+        assertFalse(key.equals(mMaterial.createShaderVariantKey()));
+    }
+}
@@ -0,0 +1,171 @@
+package org.rajawali3d.materials.shaders;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+import android.test.suitebuilder.annotation.SmallTest;
+import org.junit.Before;
+import org.junit.Test;
+import org.rajawali3d.renderer.GLStateCache;
+import org.rajawali3d.renderer.RecordingBackend;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Checks the sharing and reference counting of the {@link ProgramCache}, with linking and deleting replaced by
+ * counters.
+ */
+@SmallTest
+public class ProgramCacheTest {
+
+    private static final String VERTEX = "void main() { gl_Position = vec4(0.0); }";
+    private static final String FRAGMENT = "void main() { gl_FragColor = vec4(1.0); }";
+    private static final String OTHER_FRAGMENT = "void main() { gl_FragColor = vec4(0.5); }";
+
+    private static final class FakeProgramCache extends ProgramCache {
+        final List<Integer> mDeleted = new ArrayList<>();
+        int mNextHandle = 1;
+
+        @Override
+        protected ShaderProgram link(String vertexSource, String fragmentSource, int contextId) {
+            final int handle = mNextHandle;
+            mNextHandle += 3;
+            return new ShaderProgram(handle, handle + 1, handle + 2, vertexSource, fragmentSource, contextId);
+        }
+
+        @Override
+        protected void delete(ShaderProgram program) {
+            mDeleted.add(program.getHandle());
+        }
+    }
+
+    private GLStateCache mStateCache;
+    private FakeProgramCache mCache;
+
+    @Before
+    public void setUp() {
+        mStateCache = new GLStateCache(new RecordingBackend());
+        GLStateCache.makeCurrent(mStateCache);
+        mCache = new FakeProgramCache();
+    }
+
+    @Test
+    public void testIdenticalSourcesShareAProgram() {
+        final ShaderProgram first = mCache.acquire(VERTEX, FRAGMENT);
+        // -- equal contents, but not the same string instances
+        final ShaderProgram second = mCache.acquire(new String(VERTEX), new String(FRAGMENT));
+        assertSame(first, second);
+        assertEquals(2, first.getReferenceCount());
+        assertEquals(1, mCache.getLinkCount());
+        assertEquals(1, mCache.getProgramCount());
+
+        final ShaderProgram other = mCache.acquire(VERTEX, OTHER_FRAGMENT);
+        assertNotSame(first, other);
+        assertEquals(2, mCache.getLinkCount());
+    }
+
+    @Test
+    public void testLastReleaseDeletes() {
+        final ShaderProgram program = mCache.acquire(VERTEX, FRAGMENT);
+        mCache.acquire(VERTEX, FRAGMENT);
+        mStateCache.useProgram(program.getHandle());
+
+        mCache.release(program);
+        assertEquals(0, mCache.mDeleted.size());
+        mCache.release(program);
+        assertEquals(1, mCache.mDeleted.size());
+        assertEquals(program.getHandle(), (int) mCache.mDeleted.get(0));
+        assertEquals(0, mCache.getProgramCount());
+
+        // -- the deleted handle may be reused by GL, so binding it again must not be skipped
+        mStateCache.useProgram(program.getHandle());
+        assertEquals(2, mStateCache.getProgramBinds());
+
+        // -- acquiring again links a new program
+        assertNotSame(program, mCache.acquire(VERTEX, FRAGMENT));
+        assertEquals(2, mCache.getLinkCount());
+    }
+
+    @Test
+    public void testProgramsOfALostContextAreDropped() {
+        final ShaderProgram program = mCache.acquire(VERTEX, FRAGMENT);
+        // -- what the renderer does when its surface is created again
+        mCache.forget(mStateCache.getContextId());
+        mStateCache.reset();
+
+        final ShaderProgram relinked = mCache.acquire(VERTEX, FRAGMENT);
+        assertNotSame(program, relinked);
+        assertEquals(1, mCache.getProgramCount());
+
+        // -- releasing the old program must not delete a handle of the new context
+        mCache.release(program);
+        assertEquals(0, mCache.mDeleted.size());
+        assertEquals(1, relinked.getReferenceCount());
+    }
+
+    @Test
+    public void testContextsKeepTheirOwnPrograms() {
+        final GLStateCache otherStateCache = new GLStateCache(new RecordingBackend());
+        final ShaderProgram program = mCache.acquire(VERTEX, FRAGMENT);
+        GLStateCache.makeCurrent(otherStateCache);
+        final ShaderProgram other = mCache.acquire(VERTEX, FRAGMENT);
+        assertNotSame(program, other);
+        assertEquals(otherStateCache.getContextId(), other.getContextId());
+
+        // -- rendering both contexts in turn links nothing new
+        for (int i = 0; i < 3; ++i) {
+            GLStateCache.makeCurrent(mStateCache);
+            mCache.release(mCache.acquire(VERTEX, FRAGMENT));
+            GLStateCache.makeCurrent(otherStateCache);
+            mCache.release(mCache.acquire(VERTEX, FRAGMENT));
+        }
+        assertEquals(2, mCache.getLinkCount());
+        assertEquals(2, mCache.getProgramCount());
+        assertEquals(0, mCache.mDeleted.size());
+    }
+
+    @Test
+    public void testReleaseFromAnotherContextDeletesLater() {
+        final GLStateCache otherStateCache = new GLStateCache(new RecordingBackend());
+        final ShaderProgram program = mCache.acquire(VERTEX, FRAGMENT);
+        GLStateCache.makeCurrent(otherStateCache);
+        mCache.acquire(VERTEX, FRAGMENT);
+
+        // -- the handle can only be deleted in its own context
+        mCache.release(program);
+        assertEquals(0, mCache.mDeleted.size());
+        assertEquals(1, mCache.getProgramCount());
+
+        GLStateCache.makeCurrent(mStateCache);
+        mCache.acquire(VERTEX, OTHER_FRAGMENT);
+        assertEquals(1, mCache.mDeleted.size());
+        assertEquals(program.getHandle(), (int) mCache.mDeleted.get(0));
+    }
+
+    @Test
+    public void testBinaryCachePerContext() {
+        final File directory = new File(System.getProperty("java.io.tmpdir"), "ProgramCacheTest");
+        final ProgramBinaryCache binaryCache = new ProgramBinaryCache(directory, "driver", 1024);
+        final GLStateCache otherStateCache = new GLStateCache(new RecordingBackend());
+        mCache.setBinaryCache(mStateCache.getContextId(), binaryCache);
+        mCache.setBinaryCache(otherStateCache.getContextId(), null);
+        assertSame(binaryCache, mCache.getBinaryCache(mStateCache.getContextId()));
+        assertNull(mCache.getBinaryCache(otherStateCache.getContextId()));
+
+        mCache.forget(mStateCache.getContextId());
+        assertNull(mCache.getBinaryCache(mStateCache.getContextId()));
+    }
+
+    @Test
+    public void testSourceHash() {
+        assertEquals(ShaderProgram.hash(VERTEX, FRAGMENT), ShaderProgram.hash(new String(VERTEX), FRAGMENT));
+        assertNotEquals(ShaderProgram.hash(VERTEX, FRAGMENT), ShaderProgram.hash(VERTEX, OTHER_FRAGMENT));
+        // -- moving code from one shader to the other changes the hash
+        assertNotEquals(ShaderProgram.hash("ab", "c"), ShaderProgram.hash("a", "bc"));
+    }
+}
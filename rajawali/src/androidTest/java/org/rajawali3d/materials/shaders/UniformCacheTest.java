@@ -0,0 +1,100 @@
+package org.rajawali3d.materials.shaders;
+
+import static org.junit.Assert.assertEquals;
+
+import android.test.suitebuilder.annotation.SmallTest;
+import org.junit.Before;
+import org.junit.Test;
+import org.rajawali3d.renderer.GLStateCache;
+import org.rajawali3d.renderer.RecordingBackend;
+
+/**
+ * Checks which uniform uploads the {@link UniformCache} lets through, using the counts of the current
+ * {@link GLStateCache}.
+ */
+@SmallTest
+public class UniformCacheTest {
+
+    private static final int MVP = 0;
+    private static final int COLOR = 1;
+    private static final int TIME = 2;
+
+    private GLStateCache mStateCache;
+    private UniformCache mCache;
+    private float[] mMatrix;
+    private float[] mColor;
+
+    @Before
+    public void setUp() {
+        mStateCache = new GLStateCache(new RecordingBackend());
+        GLStateCache.makeCurrent(mStateCache);
+        mCache = new UniformCache();
+        mMatrix = new float[16];
+        mMatrix[0] = mMatrix[5] = mMatrix[10] = mMatrix[15] = 1;
+        mColor = new float[]{1, 0, 0, 1};
+    }
+
+    private void draw() {
+        mCache.uniformMatrix4fv(MVP, mMatrix);
+        mCache.uniform4fv(COLOR, mColor);
+        mCache.uniform1f(TIME, 0);
+    }
+
+    @Test
+    public void testUnchangedValuesAreSkipped() {
+        // -- even values which match the defaults of a new program are uploaded the first time
+        draw();
+        assertEquals(3, mStateCache.getUniformUploads());
+        assertEquals(0, mStateCache.getUniformUploadsSaved());
+
+        for (int i = 0; i < 10; ++i) {
+            draw();
+        }
+        assertEquals(3, mStateCache.getUniformUploads());
+        assertEquals(30, mStateCache.getUniformUploadsSaved());
+    }
+
+    @Test
+    public void testChangesAreUploaded() {
+        draw();
+        mMatrix[12] = 5;
+        draw();
+        assertEquals(4, mStateCache.getUniformUploads());
+
+        // -- the shadow holds a copy, so changing the array in place is detected
+        mColor[1] = 1;
+        draw();
+        mColor[1] = 0;
+        draw();
+        assertEquals(6, mStateCache.getUniformUploads());
+
+        mCache.uniform1f(TIME, -0f);
+        assertEquals(7, mStateCache.getUniformUploads());
+    }
+
+    @Test
+    public void testInvalidateAndFrameReset() {
+        draw();
+        mCache.invalidate();
+        draw();
+        assertEquals(6, mStateCache.getUniformUploads());
+
+        mStateCache.onFrameStart();
+        draw();
+        assertEquals(0, mStateCache.getUniformUploads());
+        assertEquals(3, mStateCache.getUniformUploadsSaved());
+    }
+
+    @Test
+    public void testUnusedAndDistantLocations() {
+        mCache.uniform4fv(-1, mColor);
+        assertEquals(0, mStateCache.getUniformUploads() + mStateCache.getUniformUploadsSaved());
+
+        mCache.uniform1i(100, 3);
+        mCache.uniform1i(100, 3);
+        mCache.uniform1i(100000, 3);
+        mCache.uniform1i(100000, 3);
+        assertEquals(3, mStateCache.getUniformUploads());
+        assertEquals(1, mStateCache.getUniformUploadsSaved());
+    }
+}
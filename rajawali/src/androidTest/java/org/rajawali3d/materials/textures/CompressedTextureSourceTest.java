@@ -0,0 +1,103 @@
+package org.rajawali3d.materials.textures;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import android.test.suitebuilder.annotation.SmallTest;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.rajawali3d.materials.textures.ACompressedTexture.CompressionType;
+import org.rajawali3d.materials.textures.utils.ETC2Util;
+import org.rajawali3d.materials.textures.utils.KTXUtil;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.util.Arrays;
+
+/**
+ * Maps small KTX and PKM files from a temporary directory and checks that the levels point into the mapping and are
+ * dropped after the upload.
+ */
+@SmallTest
+public class CompressedTextureSourceTest {
+
+    private File mFile;
+
+    @Before
+    public void setUp() throws IOException {
+        mFile = File.createTempFile("texture", ".bin");
+    }
+
+    @After
+    public void tearDown() {
+        mFile.delete();
+    }
+
+    private void write(ByteBuffer buffer) throws IOException {
+        final FileOutputStream output = new FileOutputStream(mFile);
+        try {
+            output.write(Arrays.copyOf(buffer.array(), buffer.position()));
+        } finally {
+            output.close();
+        }
+    }
+
+    @Test
+    public void testMappedKTXLevels() throws IOException, ATexture.TextureException {
+        // -- an 8x8 ETC2 texture with two levels and no key/value data
+        final ByteBuffer file = ByteBuffer.allocate(256).order(ByteOrder.LITTLE_ENDIAN);
+        file.put(new byte[]{(byte) 0xAB, 0x4B, 0x54, 0x58, 0x20, 0x31, 0x31, (byte) 0xBB, 0x0D, 0x0A, 0x1A, 0x0A});
+        file.putInt(0x04030201).putInt(0).putInt(1).putInt(0).putInt(KTXUtil.GL_COMPRESSED_RGB8_ETC2).putInt(0)
+            .putInt(8).putInt(8).putInt(0).putInt(0).putInt(1).putInt(2).putInt(0);
+        file.putInt(32).put(new byte[32]).putInt(8).put(new byte[8]);
+        write(file);
+
+        final MappedCompressedTexture texture = new MappedCompressedTexture("ktx",
+                CompressedTextureSource.fromFile(mFile));
+        assertTrue(texture.canReload());
+        texture.mapByteBuffers();
+        assertEquals(8, texture.getWidth());
+        assertEquals(KTXUtil.GL_COMPRESSED_RGB8_ETC2, texture.getCompressionFormat());
+        assertEquals(CompressionType.ETC2, texture.getCompressionType());
+        final ByteBuffer[] levels = texture.getByteBuffers();
+        assertEquals(2, levels.length);
+        assertEquals(32, levels[0].capacity());
+        assertTrue(levels[0].isDirect());
+        assertEquals(40, texture.getGpuBytes());
+
+        // -- after the upload only the size is kept, the next upload maps the file again
+        texture.unmapByteBuffers();
+        assertNull(texture.getByteBuffers());
+        assertEquals(40, texture.getGpuBytes());
+        texture.mapByteBuffers();
+        assertEquals(2, texture.getByteBuffers().length);
+    }
+
+    @Test
+    public void testMappedPKM() throws IOException {
+        // -- a 6x5 ETC2 RGBA image, encoded as 8x8
+        final ByteBuffer file = ByteBuffer.allocate(128).order(ByteOrder.BIG_ENDIAN);
+        file.put(new byte[]{0x50, 0x4B, 0x4D, 0x20, 0x32, 0x30});
+        file.putShort((short) 3).putShort((short) 8).putShort((short) 8).putShort((short) 6).putShort((short) 5);
+        final byte[] data = new byte[32];
+        data[31] = 7;
+        file.put(data);
+        write(file);
+
+        final ByteBuffer mapped = CompressedTextureSource.fromFile(mFile).map();
+        assertTrue(mapped instanceof MappedByteBuffer);
+        final ETC2Util.ETC2Texture texture = ETC2Util.createTexture(mapped);
+        assertEquals(6, texture.getWidth());
+        assertEquals(5, texture.getHeight());
+        assertEquals(ETC2Util.GL_COMPRESSED_RGBA8_ETC2_EAC, texture.getCompressionFormat());
+        assertEquals(32, texture.getData().remaining());
+        assertEquals(7, texture.getData().get(31));
+        assertEquals(0, mapped.position());
+    }
+}
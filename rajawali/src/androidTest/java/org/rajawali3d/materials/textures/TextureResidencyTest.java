@@ -0,0 +1,202 @@
+package org.rajawali3d.materials.textures;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import android.graphics.Bitmap.Config;
+import android.opengl.GLES20;
+import android.test.suitebuilder.annotation.SmallTest;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Runs frames over textures whose uploads are only counted, and checks which of them the {@link TextureResidency}
+ * evicts and restores.
+ */
+@SmallTest
+public class TextureResidencyTest {
+
+    private static final int SIZE = 64;
+    private static final long BYTES = SIZE * SIZE * 4;
+
+    private static int sNextTexture = 1;
+
+    private static final class CountingTexture extends ASingleTexture {
+        int mAdds;
+        int mRemoves;
+
+        CountingTexture(String name, boolean reloadable) {
+            super(TextureType.DIFFUSE, name);
+            setMipmap(false);
+            setWidth(SIZE);
+            setHeight(SIZE);
+            setBitmapFormat(GLES20.GL_RGBA);
+            if (reloadable) {
+                setByteBuffer(ByteBuffer.allocate((int) BYTES));
+            }
+        }
+
+        @Override
+        void add() {
+            setTextureId(sNextTexture++);
+            ++mAdds;
+        }
+
+        @Override
+        void remove() {
+            ++mRemoves;
+        }
+
+        @Override
+        public ASingleTexture clone() {
+            return null;
+        }
+    }
+
+    private static final class FakeCompressedTexture extends ACompressedTexture {
+        FakeCompressedTexture(ByteBuffer[] levels) {
+            super("compressed", levels);
+        }
+
+        @Override
+        public ATexture clone() {
+            return null;
+        }
+    }
+
+    private TextureResidency mResidency;
+    private List<ATexture> mTextures;
+    private CountingTexture[] mCounting;
+
+    @Before
+    public void setUp() {
+        mResidency = new TextureResidency();
+        mTextures = new ArrayList<>();
+        mCounting = new CountingTexture[4];
+        for (int i = 0; i < mCounting.length; ++i) {
+            mCounting[i] = new CountingTexture("t" + i, true);
+            mCounting[i].add();
+            mTextures.add(mCounting[i]);
+        }
+    }
+
+    /**
+     * Starts a frame and binds the given textures.
+     */
+    private void frame(int... used) {
+        mResidency.onFrameStart(mTextures);
+        for (int i : used) {
+            mResidency.markUsed(mCounting[i]);
+        }
+    }
+
+    @Test
+    public void testNoBudgetKeepsEverything() {
+        for (int i = 0; i < 10; ++i) {
+            frame(i % 4);
+        }
+        assertEquals(0, mResidency.getEvictionCount());
+        assertEquals(4 * BYTES, mResidency.getResidentBytes());
+    }
+
+    @Test
+    public void testLeastRecentlyUsedIsEvicted() {
+        frame(0, 1, 2, 3);
+        frame(0);
+        frame(1);
+        frame(2, 3);
+        // -- t0 and t1 were not bound in the last frame, t0 has been unused for longer
+        mResidency.setBudget(3 * BYTES + 1);
+        frame(2, 3);
+        assertTrue(mCounting[0].isEvicted());
+        assertEquals(0, mCounting[0].getTextureId());
+        assertEquals(1, mCounting[0].mRemoves);
+        assertFalse(mCounting[1].isEvicted());
+        assertEquals(3 * BYTES, mResidency.getResidentBytes());
+
+        // -- textures bound in the last frame are kept even when that exceeds the budget
+        mResidency.setBudget(1);
+        frame(2, 3);
+        assertTrue(mCounting[1].isEvicted());
+        assertFalse(mCounting[2].isEvicted() || mCounting[3].isEvicted());
+        assertEquals(2 * BYTES, mResidency.getResidentBytes());
+        frame(1);
+        assertFalse(mCounting[1].isEvicted());
+        assertEquals(3 * BYTES, mResidency.getResidentBytes());
+        frame();
+        assertTrue(mCounting[2].isEvicted() && mCounting[3].isEvicted());
+        assertEquals(BYTES, mResidency.getResidentBytes());
+    }
+
+    @Test
+    public void testEvictedTextureIsRestoredOnUse() {
+        mResidency.setBudget(BYTES);
+        frame(0, 1, 2, 3);
+        frame(3);
+        frame(3);
+        assertEquals(3, mResidency.getEvictionCount());
+
+        final int evictedId = mCounting[0].getTextureId();
+        frame(0, 3);
+        assertFalse(mCounting[0].isEvicted());
+        assertEquals(2, mCounting[0].mAdds);
+        assertTrue(mCounting[0].getTextureId() != evictedId);
+        assertEquals(1, mResidency.getRestoreCount());
+        assertEquals(2 * BYTES, mResidency.getResidentBytes());
+
+        // -- binding it again doesn't upload it again
+        frame(0, 3);
+        assertEquals(2, mCounting[0].mAdds);
+    }
+
+    @Test
+    public void testTexturesWithoutDataStayResident() {
+        final CountingTexture streaming = new CountingTexture("streaming", false);
+        streaming.add();
+        mTextures.add(streaming);
+        mResidency.setBudget(1);
+        frame();
+        frame();
+        assertFalse(streaming.isEvicted());
+        assertEquals(BYTES, mResidency.getResidentBytes());
+
+        // -- textures which recycle their data can still be restored from their resource
+        streaming.mResourceId = 1;
+        frame();
+        assertTrue(streaming.isEvicted());
+    }
+
+    @Test
+    public void testGpuBytes() {
+        final CountingTexture texture = mCounting[0];
+        assertEquals(BYTES, texture.getGpuBytes());
+        texture.setMipmap(true);
+        assertEquals(BYTES + BYTES / 3, texture.getGpuBytes());
+        texture.setGLTextureType(GLES20.GL_TEXTURE_CUBE_MAP);
+        assertEquals(6 * (BYTES + BYTES / 3), texture.getGpuBytes());
+
+        texture.setMipmap(false);
+        texture.setGLTextureType(GLES20.GL_TEXTURE_2D);
+        texture.setBitmapConfig(Config.RGB_565);
+        assertEquals(BYTES / 2, texture.getGpuBytes());
+        texture.setBitmapConfig(null);
+        texture.setBitmapFormat(GLES20.GL_LUMINANCE);
+        assertEquals(BYTES / 4, texture.getGpuBytes());
+
+        // -- compressed textures take the size of their mipmap levels
+        final FakeCompressedTexture compressed = new FakeCompressedTexture(new ByteBuffer[]{
+                ByteBuffer.allocate(2048), ByteBuffer.allocate(512), ByteBuffer.allocate(128)});
+        assertEquals(2688, compressed.getGpuBytes());
+        final CountingTexture wrapper = new CountingTexture("wrapper", false);
+        wrapper.setCompressedTexture(compressed);
+        assertEquals(2688, wrapper.getGpuBytes());
+        assertTrue(wrapper.canReload());
+        compressed.shouldRecycle(true);
+        assertFalse(wrapper.canReload());
+    }
+}
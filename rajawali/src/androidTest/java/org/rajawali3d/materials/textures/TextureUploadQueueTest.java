@@ -0,0 +1,186 @@
+package org.rajawali3d.materials.textures;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import android.opengl.GLES20;
+import android.test.suitebuilder.annotation.SmallTest;
+import org.junit.Before;
+import org.junit.Test;
+import org.rajawali3d.loader.async.IAsyncTextureCallback;
+import org.rajawali3d.renderer.GLStateCache;
+import org.rajawali3d.renderer.RecordingBackend;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+
+/**
+ * Drives the {@link TextureUploadQueue} frame by frame with the GL calls replaced by a log of the uploaded stripes.
+ */
+@SmallTest
+public class TextureUploadQueueTest {
+
+    private static final int PLACEHOLDER = 100;
+
+    private static final class RecordingQueue extends TextureUploadQueue {
+        final List<String> mStripes = new ArrayList<>();
+        int mNextTexture = 1;
+
+        @Override
+        protected int createPlaceholder(int color) {
+            return PLACEHOLDER;
+        }
+
+        @Override
+        protected void allocate(Upload upload) {
+            upload.mTextureId = mNextTexture++;
+        }
+
+        @Override
+        protected void uploadRows(Upload upload, int y, int rows) {
+            mStripes.add(upload.getTexture().getTextureName() + ":" + y + "+" + rows);
+        }
+
+        @Override
+        protected void complete(Upload upload) {
+            upload.getTexture().setTextureId(upload.mTextureId);
+        }
+    }
+
+    private static final class RecordingCallback implements IAsyncTextureCallback {
+        final List<String> mEvents = new ArrayList<>();
+
+        @Override
+        public void onTextureResident(ASingleTexture texture) {
+            mEvents.add("resident " + texture.getTextureName());
+        }
+
+        @Override
+        public void onTextureLoadFailed(ASingleTexture texture, Exception e) {
+            mEvents.add("failed " + texture.getTextureName());
+        }
+    }
+
+    private RecordingQueue mQueue;
+    private RecordingCallback mCallback;
+
+    @Before
+    public void setUp() {
+        GLStateCache.makeCurrent(new GLStateCache(new RecordingBackend()));
+        mQueue = new RecordingQueue();
+        mQueue.setByteBudget(64 * 1024);
+        mCallback = new RecordingCallback();
+    }
+
+    /**
+     * Decodes a RGBA image of the given size.
+     */
+    private static void decode(TextureUploadQueue.Upload upload, int width, int height) {
+        upload.setPixels(ByteBuffer.allocate(width * height * 4), width, height, GLES20.GL_RGBA,
+                GLES20.GL_UNSIGNED_BYTE, width * 4);
+    }
+
+    @Test
+    public void testBudgetSpreadsUploadsOverFrames() throws Exception {
+        final Texture texture = new Texture("large");
+        final TextureUploadQueue.Upload upload = mQueue.request(texture, mCallback);
+
+        // -- bound to the placeholder while it is still being decoded
+        mQueue.run();
+        assertEquals(PLACEHOLDER, texture.getTextureId());
+        assertEquals(0, mQueue.mStripes.size());
+
+        // -- 256 rows of 1 KB, 64 rows per frame
+        decode(upload, 256, 256);
+        int frames = 0;
+        while (!upload.isDone()) {
+            mQueue.run();
+            assertTrue(mQueue.getLastFrameBytes() <= mQueue.getByteBudget());
+            ++frames;
+        }
+        assertEquals(4, frames);
+        assertEquals("[large:0+64, large:64+64, large:128+64, large:192+64]", mQueue.mStripes.toString());
+        assertSame(texture, upload.get());
+        assertEquals(1, texture.getTextureId());
+        assertEquals("[resident large]", mCallback.mEvents.toString());
+        assertEquals(0, mQueue.getPendingCount());
+    }
+
+    @Test
+    public void testUploadsStayInOrderAndShareFrames() {
+        final TextureUploadQueue.Upload first = mQueue.request(new Texture("a"), mCallback);
+        final TextureUploadQueue.Upload second = mQueue.request(new Texture("b"), mCallback);
+        final TextureUploadQueue.Upload third = mQueue.request(new Texture("c"), mCallback);
+        decode(first, 64, 64);  // 16 KB
+        decode(second, 128, 96); // 48 KB
+        decode(third, 32, 32);  // 4 KB
+
+        mQueue.run();
+        assertEquals("[a:0+64, b:0+96]", mQueue.mStripes.toString());
+        mQueue.run();
+        assertEquals("[a:0+64, b:0+96, c:0+32]", mQueue.mStripes.toString());
+        assertEquals("[resident a, resident b, resident c]", mCallback.mEvents.toString());
+    }
+
+    @Test
+    public void testRowsLargerThanTheBudget() {
+        mQueue.setByteBudget(1000);
+        final TextureUploadQueue.Upload upload = mQueue.request(new Texture("wide"), null);
+        decode(upload, 512, 3);
+        // -- one row per frame, the queue can't stall
+        mQueue.run();
+        mQueue.run();
+        mQueue.run();
+        assertTrue(upload.isDone());
+        assertEquals("[wide:0+1, wide:1+1, wide:2+1]", mQueue.mStripes.toString());
+    }
+
+    @Test
+    public void testFailureAndCancellation() throws Exception {
+        final Texture broken = new Texture("broken");
+        final TextureUploadQueue.Upload failed = mQueue.request(broken, mCallback);
+        failed.setError(new IOException("bad image"));
+        final TextureUploadQueue.Upload cancelled = mQueue.request(new Texture("cancelled"), mCallback);
+        assertTrue(cancelled.cancel(false));
+        decode(cancelled, 16, 16);
+
+        mQueue.run();
+        assertEquals("[failed broken]", mCallback.mEvents.toString());
+        assertEquals(PLACEHOLDER, broken.getTextureId());
+        assertEquals(0, mQueue.mStripes.size());
+        assertEquals(0, mQueue.getPendingCount());
+        assertFalse(cancelled.cancel(false));
+        try {
+            failed.get();
+            fail("failed upload returned a texture");
+        } catch (ExecutionException expected) {
+            assertTrue(expected.getCause() instanceof IOException);
+        }
+    }
+
+    @Test
+    public void testContextLossRestartsUploads() {
+        final TextureUploadQueue.Upload upload = mQueue.request(new Texture("lost"), null);
+        decode(upload, 256, 128);
+        mQueue.run();
+        assertEquals(64, upload.getUploadedRows());
+
+        GLStateCache.getCurrent().reset();
+        mQueue.run();
+        assertEquals(64, upload.getUploadedRows());
+        assertEquals("[lost:0+64, lost:0+64]", mQueue.mStripes.toString());
+    }
+
+    @Test
+    public void testSampleSize() {
+        assertEquals(1, TextureSource.getSampleSize(1024, 512, 1024));
+        assertEquals(2, TextureSource.getSampleSize(1025, 512, 1024));
+        assertEquals(4, TextureSource.getSampleSize(512, 4096, 1024));
+    }
+}
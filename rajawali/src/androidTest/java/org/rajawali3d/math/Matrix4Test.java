@@ -1683,6 +1683,48 @@ public class Matrix4Test {
         }
     }
 
+    /**
+     * Compares {@link Matrix4#toNormalMatrixFloatArray(float[])} against the 4x4 inverse transpose.
+     */
+    private static void assertNormalMatrix(Matrix4 m) {
+        final float[] result = new float[9];
+        assertTrue(m.toNormalMatrixFloatArray(result));
+        final double[] expected = m.clone().setToNormalMatrix().getDoubleValues();
+        final int[] upper = new int[]{0, 1, 2, 4, 5, 6, 8, 9, 10};
+        for (int i = 0; i < upper.length; ++i) {
+            assertEquals("Result: " + Arrays.toString(result) + " Expected: " + Arrays.toString(expected),
+                         expected[upper[i]], result[i], 1e-5);
+        }
+    }
+
+    @Test
+    public void testToNormalMatrixFloatArray() throws Exception {
+        final Quaternion rotation = new Quaternion().fromAngleAxis(new Vector3(1, 2, 3), 40);
+        final Vector3 position = new Vector3(2, 3, 4);
+
+        // -- rotation and uniform scale, the fast path
+        assertNormalMatrix(new Matrix4().setAll(position, new Vector3(1, 1, 1), rotation));
+        assertNormalMatrix(new Matrix4().setAll(position, new Vector3(3, 3, 3), rotation));
+        // -- non uniform scale and shear need the inverse
+        assertNormalMatrix(new Matrix4().setAll(position, new Vector3(1, 2, 0.5), rotation));
+        assertNormalMatrix(new Matrix4(new double[]{
+                1d, 0.5d, 0d, 0d,
+                0d, 2d, 0d, 0d,
+                0.25d, 0d, 1d, 0d,
+                2d, 3d, 4d, 1d
+        }));
+    }
+
+    @Test
+    public void testToNormalMatrixFloatArraySingular() throws Exception {
+        final float[] result = new float[9];
+        final Matrix4 m = new Matrix4().setAll(new Vector3(), new Vector3(1, 0, 1), new Quaternion());
+        assertFalse(m.toNormalMatrixFloatArray(result));
+        assertEquals(1, result[0], 0);
+        assertEquals(0, result[4], 0);
+        assertEquals(1, result[8], 0);
+    }
+
     @Test
     public void testEquals() throws Exception {
         final double[] from = new double[]{
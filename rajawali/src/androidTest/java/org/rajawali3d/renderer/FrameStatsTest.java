@@ -0,0 +1,136 @@
+package org.rajawali3d.renderer;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+
+import android.opengl.GLES20;
+import android.test.suitebuilder.annotation.SmallTest;
+import org.junit.Before;
+import org.junit.Test;
+import org.rajawali3d.util.FakeClock;
+
+/**
+ * Records frames with a fake clock and checks the ring buffer, the percentiles and the counts taken from the
+ * {@link GLStateCache}.
+ */
+@SmallTest
+public class FrameStatsTest {
+
+    private static final long MS = 1000000L;
+
+    private FakeClock mClock;
+    private FrameStats mStats;
+    private GLStateCache mCache;
+
+    @Before
+    public void setUp() {
+        mClock = new FakeClock(1);
+        mStats = new FrameStats(8, mClock);
+        mCache = new GLStateCache(new RecordingBackend());
+    }
+
+    /**
+     * Records a frame whose submit phase takes the given time and which starts 16ms after the previous one.
+     */
+    private void recordFrame(long submitTime) {
+        mCache.onFrameStart();
+        mStats.beginFrame();
+        final long mark = mStats.mark();
+        mClock.advance(submitTime);
+        mStats.addPhase(FrameStats.Phase.SUBMIT, mark);
+        mClock.advance(16 * MS - submitTime);
+        mStats.endFrame(mCache);
+    }
+
+    @Test
+    public void testPhasesAndIntervals() {
+        recordFrame(3 * MS);
+        assertEquals(3 * MS, mStats.getLastFrame(FrameStats.Phase.SUBMIT));
+        assertEquals(16 * MS, mStats.getLastFrame(FrameStats.Phase.FRAME));
+        assertEquals(0, mStats.getLastFrame(FrameStats.Phase.INTERVAL));
+
+        recordFrame(5 * MS);
+        assertEquals(5 * MS, mStats.getLastFrame(FrameStats.Phase.SUBMIT));
+        assertEquals(16 * MS, mStats.getLastFrame(FrameStats.Phase.INTERVAL));
+        assertEquals(0, mStats.getLastFrame(FrameStats.Phase.ANIMATIONS));
+    }
+
+    @Test
+    public void testRingBufferKeepsLatestFrames() {
+        for (int i = 1; i <= 20; ++i) {
+            recordFrame(i * MS);
+        }
+        assertEquals(20, mStats.getTotalFrameCount());
+
+        final FrameStats.Summary summary = mStats.summarize(new FrameStats.Summary());
+        // -- one frame is given up since it could have been written during the copy
+        assertEquals(7, summary.getFrameCount());
+        assertEquals(20 * MS, summary.getMax(FrameStats.Phase.SUBMIT));
+        assertEquals(17 * MS, summary.getP50(FrameStats.Phase.SUBMIT));
+    }
+
+    @Test
+    public void testPercentiles() {
+        mStats = new FrameStats(256, mClock);
+        for (int i = 1; i <= 101; ++i) {
+            recordFrame(i * 1000);
+        }
+        final FrameStats.Summary summary = mStats.summarize(new FrameStats.Summary());
+        assertEquals(101, summary.getFrameCount());
+        assertEquals(51000, summary.getP50(FrameStats.Phase.SUBMIT));
+        assertEquals(96000, summary.getP95(FrameStats.Phase.SUBMIT));
+        assertEquals(100000, summary.getP99(FrameStats.Phase.SUBMIT));
+        assertEquals(51000, summary.getMean(FrameStats.Phase.SUBMIT), 1e-6);
+        assertEquals(1e9 / (16 * MS * 100.0 / 101.0), summary.getFrameRate(), 1e-6);
+    }
+
+    @Test
+    public void testCountsAreTakenFromCache() {
+        mCache.onFrameStart();
+        mStats.beginFrame();
+        mCache.useProgram(1);
+        mCache.useProgram(1);
+        mCache.bindTexture(0, GLES20.GL_TEXTURE_2D, 2);
+        mCache.bindBuffer(GLES20.GL_ARRAY_BUFFER, 3);
+        mCache.bindBuffer(GLES20.GL_ELEMENT_ARRAY_BUFFER, 4);
+        mCache.countDraw(GLES20.GL_TRIANGLES, 36, 1);
+        mCache.countDraw(GLES20.GL_TRIANGLES, 36, 10);
+        mCache.countDraw(GLES20.GL_TRIANGLE_STRIP, 4, 1);
+        mCache.countDraw(GLES20.GL_LINES, 2, 1);
+        mCache.countCulled(5);
+        mStats.endFrame(mCache);
+
+        assertEquals(4, mStats.getLastFrame(FrameStats.Counter.DRAW_CALLS));
+        assertEquals(12 + 120 + 2, mStats.getLastFrame(FrameStats.Counter.TRIANGLES));
+        assertEquals(1, mStats.getLastFrame(FrameStats.Counter.PROGRAM_BINDS));
+        assertEquals(1, mStats.getLastFrame(FrameStats.Counter.TEXTURE_BINDS));
+        assertEquals(2, mStats.getLastFrame(FrameStats.Counter.BUFFER_BINDS));
+        assertEquals(5, mStats.getLastFrame(FrameStats.Counter.CULLED_OBJECTS));
+
+        mCache.onFrameStart();
+        assertEquals(0, mCache.getDrawCalls());
+    }
+
+    @Test
+    public void testListenerInterval() {
+        final int[] calls = new int[1];
+        final FrameStats.Summary[] last = new FrameStats.Summary[1];
+        mStats.setListenerInterval(3);
+        mStats.setListener(new FrameStats.IFrameStatsListener() {
+            @Override
+            public void onFrameStats(FrameStats stats, FrameStats.Summary summary) {
+                ++calls[0];
+                if (last[0] != null) assertSame(last[0], summary);
+                last[0] = summary;
+            }
+        });
+        for (int i = 0; i < 10; ++i) {
+            recordFrame(MS);
+        }
+        assertEquals(3, calls[0]);
+
+        mStats.setEnabled(false);
+        recordFrame(MS);
+        assertEquals(10, mStats.getTotalFrameCount());
+    }
+}
@@ -0,0 +1,164 @@
+package org.rajawali3d.renderer;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import android.test.suitebuilder.annotation.SmallTest;
+import org.junit.Test;
+import org.rajawali3d.util.FakeClock;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Checks ordering with concurrent producers, batches and the per frame time budget.
+ */
+@SmallTest
+public class FrameTaskQueueTest {
+
+    private static final int PRODUCERS = 4;
+    private static final int TASKS_PER_PRODUCER = 20000;
+    private static final int BATCH_SIZE = 16;
+
+    private static class RecordingTask extends AFrameTask {
+        private final List<RecordingTask> mLog;
+        final int mProducer;
+        final int mIndex;
+
+        RecordingTask(List<RecordingTask> log, int producer, int index) {
+            mLog = log;
+            mProducer = producer;
+            mIndex = index;
+        }
+
+        @Override
+        protected void doTask() {
+            mLog.add(this);
+        }
+    }
+
+    @Test
+    public void testFifo() {
+        final FrameTaskQueue queue = new FrameTaskQueue();
+        final List<RecordingTask> log = new ArrayList<>();
+        for (int i = 0; i < 10; ++i) {
+            queue.offer(new RecordingTask(log, 0, i));
+        }
+        assertEquals(10, queue.getDepth());
+        assertEquals(10, queue.run());
+        assertEquals(0, queue.getDepth());
+        for (int i = 0; i < 10; ++i) {
+            assertEquals(i, log.get(i).mIndex);
+        }
+        assertNull(queue.poll());
+    }
+
+    @Test
+    public void testConcurrentProducers() throws InterruptedException {
+        final FrameTaskQueue queue = new FrameTaskQueue();
+        final List<RecordingTask> log = new ArrayList<>();
+        final CountDownLatch start = new CountDownLatch(1);
+        final Thread[] producers = new Thread[PRODUCERS];
+        for (int p = 0; p < PRODUCERS; ++p) {
+            final int producer = p;
+            producers[p] = new Thread() {
+                @Override
+                public void run() {
+                    try {
+                        start.await();
+                    } catch (InterruptedException e) {
+                        return;
+                    }
+                    final List<RecordingTask> batch = new ArrayList<>();
+                    for (int i = 0; i < TASKS_PER_PRODUCER; ++i) {
+                        if (producer % 2 == 0) {
+                            queue.offer(new RecordingTask(log, producer, i));
+                        } else {
+                            batch.add(new RecordingTask(log, producer, i));
+                            if (batch.size() == BATCH_SIZE) {
+                                queue.offerAll(batch);
+                                batch.clear();
+                            }
+                        }
+                    }
+                    queue.offerAll(batch);
+                }
+            };
+            producers[p].start();
+        }
+
+        start.countDown();
+        final int total = PRODUCERS * TASKS_PER_PRODUCER;
+        while (log.size() < total) {
+            // -- drain while the producers are still running
+            queue.run();
+        }
+        for (Thread producer : producers) {
+            producer.join();
+        }
+        assertEquals(total, log.size());
+        assertEquals(0, queue.getDepth());
+
+        final int[] next = new int[PRODUCERS];
+        for (int i = 0; i < total; ++i) {
+            final RecordingTask task = log.get(i);
+            assertEquals(next[task.mProducer]++, task.mIndex);
+            if (task.mProducer % 2 == 1 && task.mIndex % BATCH_SIZE != 0) {
+                // -- batches are not interleaved with other tasks
+                final RecordingTask previous = log.get(i - 1);
+                assertEquals(task.mProducer, previous.mProducer);
+                assertEquals(task.mIndex - 1, previous.mIndex);
+            }
+        }
+    }
+
+    @Test
+    public void testTimeBudgetCarriesTasksOver() {
+        final FakeClock clock = new FakeClock(0);
+        final FrameTaskQueue queue = new FrameTaskQueue(clock);
+        queue.setTimeBudget(3, TimeUnit.MILLISECONDS);
+        final List<Integer> log = new ArrayList<>();
+        for (int i = 0; i < 8; ++i) {
+            final int index = i;
+            queue.offer(new AFrameTask() {
+                @Override
+                protected void doTask() {
+                    log.add(index);
+                    clock.advance(TimeUnit.MILLISECONDS.toNanos(1));
+                }
+            });
+        }
+
+        assertEquals(3, queue.run());
+        assertEquals(5, queue.getLastDeferredCount());
+        assertEquals(5, queue.getDepth());
+        assertEquals(3, queue.run());
+        assertEquals(2, queue.getLastDeferredCount());
+        assertEquals(2, queue.run());
+        assertEquals(0, queue.getLastDeferredCount());
+        assertEquals(7, queue.getTotalDeferredCount());
+        for (int i = 0; i < 8; ++i) {
+            assertEquals(i, (int) log.get(i));
+        }
+    }
+
+    @Test
+    public void testLongTaskStillRuns() {
+        final FakeClock clock = new FakeClock(0);
+        final FrameTaskQueue queue = new FrameTaskQueue(clock);
+        queue.setTimeBudget(1, TimeUnit.MILLISECONDS);
+        for (int i = 0; i < 2; ++i) {
+            queue.offer(new AFrameTask() {
+                @Override
+                protected void doTask() {
+                    clock.advance(TimeUnit.MILLISECONDS.toNanos(10));
+                }
+            });
+        }
+        assertEquals(1, queue.run());
+        assertEquals(1, queue.run());
+        assertEquals(0, queue.getDepth());
+    }
+}
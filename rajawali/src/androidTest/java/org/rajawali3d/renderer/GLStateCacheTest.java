@@ -0,0 +1,206 @@
+package org.rajawali3d.renderer;
+
+import static org.junit.Assert.assertEquals;
+
+import android.opengl.GLES20;
+import android.test.suitebuilder.annotation.SmallTest;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Counts the calls which reach GL through a {@link RecordingBackend}.
+ */
+@SmallTest
+public class GLStateCacheTest {
+
+    private static final int OBJECT_COUNT = 100;
+
+    private RecordingBackend mBackend;
+    private GLStateCache mCache;
+
+    @Before
+    public void setUp() {
+        mBackend = new RecordingBackend();
+        mCache = new GLStateCache(mBackend);
+    }
+
+    /**
+     * Issues the calls Object3D and Material make for an opaque, single sided object with one texture.
+     */
+    private void drawObject(int program, int texture, int vertexBuffer, int indexBuffer) {
+        mCache.enable(GLES20.GL_CULL_FACE);
+        mCache.cullFace(GLES20.GL_BACK);
+        mCache.frontFace(GLES20.GL_CCW);
+        mCache.disable(GLES20.GL_BLEND);
+        mCache.enable(GLES20.GL_DEPTH_TEST);
+        mCache.depthFunc(GLES20.GL_LESS);
+        mCache.depthMask(true);
+        mCache.useProgram(program);
+        mCache.bindTexture(0, GLES20.GL_TEXTURE_2D, texture);
+        mCache.bindBuffer(GLES20.GL_ARRAY_BUFFER, vertexBuffer);
+        mCache.enableVertexAttribArray(0);
+        mCache.bindBuffer(GLES20.GL_ELEMENT_ARRAY_BUFFER, indexBuffer);
+    }
+
+    @Test
+    public void testSharedStateIsForwardedOnce() {
+        for (int i = 0; i < OBJECT_COUNT; ++i) {
+            drawObject(1, 2, 3, 4);
+        }
+        // 7 fixed function calls, program, active texture plus bind, 2 buffers and the attribute array
+        assertEquals(13, mBackend.getCallCount());
+        assertEquals(13, mCache.getForwardedCalls());
+        assertEquals(OBJECT_COUNT * 12 - 12, mCache.getSuppressedCalls());
+    }
+
+    @Test
+    public void testChangesAreForwarded() {
+        drawObject(1, 2, 3, 4);
+        mBackend.clear();
+        drawObject(1, 5, 6, 4);
+        assertEquals(1, mBackend.getCallCount("bindTexture"));
+        assertEquals(1, mBackend.getCallCount("bindBuffer"));
+        // Unit 0 is still active
+        assertEquals(0, mBackend.getCallCount("activeTexture"));
+        assertEquals(2, mBackend.getCallCount());
+    }
+
+    @Test
+    public void testTextureBindingsArePerUnit() {
+        mCache.bindTexture(0, GLES20.GL_TEXTURE_2D, 7);
+        mCache.bindTexture(1, GLES20.GL_TEXTURE_2D, 8);
+        mCache.bindTexture(1, GLES20.GL_TEXTURE_CUBE_MAP, 9);
+        mBackend.clear();
+
+        mCache.bindTexture(0, GLES20.GL_TEXTURE_2D, 7);
+        mCache.bindTexture(1, GLES20.GL_TEXTURE_2D, 8);
+        mCache.bindTexture(1, GLES20.GL_TEXTURE_CUBE_MAP, 9);
+        assertEquals(0, mBackend.getCallCount());
+
+        mCache.bindTexture(0, GLES20.GL_TEXTURE_2D, 8);
+        assertEquals("activeTexture(" + GLES20.GL_TEXTURE0 + ")", mBackend.getCalls().get(0));
+        assertEquals("bindTexture(" + GLES20.GL_TEXTURE_2D + ", 8)", mBackend.getCalls().get(1));
+
+        mBackend.clear();
+        mCache.unbindTextures();
+        // Three bindings on two units, unit 0 is still active
+        assertEquals(3, mBackend.getCallCount("bindTexture"));
+        assertEquals(1, mBackend.getCallCount("activeTexture"));
+    }
+
+    @Test
+    public void testInvalidateForwardsEverything() {
+        drawObject(1, 2, 3, 4);
+        mCache.invalidate();
+        mBackend.clear();
+        drawObject(1, 2, 3, 4);
+        assertEquals(13, mBackend.getCallCount());
+    }
+
+    @Test
+    public void testDeletedHandlesAreRebound() {
+        drawObject(1, 2, 3, 4);
+        mCache.onProgramDeleted(1);
+        mCache.onTextureDeleted(2);
+        mCache.onBufferDeleted(3);
+        mBackend.clear();
+        // GL reuses the handles
+        drawObject(1, 2, 3, 4);
+        assertEquals(1, mBackend.getCallCount("useProgram"));
+        assertEquals(1, mBackend.getCallCount("bindTexture"));
+        assertEquals(1, mBackend.getCallCount("bindBuffer"));
+    }
+
+    @Test
+    public void testUntrackedStateIsAlwaysForwarded() {
+        final int sampleCoverage = 0x80A0;
+        final int texture3D = 0x806F;
+        mCache.enable(sampleCoverage);
+        mCache.enable(sampleCoverage);
+        mCache.activeTexture(GLES20.GL_TEXTURE0);
+        mCache.bindTexture(texture3D, 1);
+        mCache.bindTexture(texture3D, 1);
+        assertEquals(2, mBackend.getCallCount("enable"));
+        assertEquals(2, mBackend.getCallCount("bindTexture"));
+        assertEquals(0, mCache.getSuppressedCalls());
+    }
+
+    @Test
+    public void testDisabledCacheForwardsEverything() {
+        mCache.setEnabled(false);
+        for (int i = 0; i < OBJECT_COUNT; ++i) {
+            drawObject(1, 2, 3, 4);
+        }
+        assertEquals(OBJECT_COUNT * 13, mBackend.getCallCount());
+        assertEquals(0, mCache.getSuppressedCalls());
+    }
+
+    @Test
+    public void testFrameCounts() {
+        drawObject(1, 2, 3, 4);
+        drawObject(1, 2, 3, 4);
+        mCache.onFrameStart();
+        assertEquals(13, mCache.getLastFrameForwardedCalls());
+        assertEquals(12, mCache.getLastFrameSuppressedCalls());
+        assertEquals(0, mCache.getForwardedCalls());
+
+        drawObject(1, 2, 3, 4);
+        mCache.onFrameStart();
+        assertEquals(0, mCache.getLastFrameForwardedCalls());
+        assertEquals(12, mCache.getLastFrameSuppressedCalls());
+    }
+
+    @Test
+    public void testVertexArraysKeepTheirElementBinding() {
+        mCache.bindVertexArray(1);
+        assertEquals(0, mBackend.getCallCount());
+
+        mCache.setVertexArraysSupported(true);
+        mCache.bindVertexArray(1);
+        mCache.bindBuffer(GLES20.GL_ELEMENT_ARRAY_BUFFER, 10);
+        mCache.bindVertexArray(2);
+        mCache.bindBuffer(GLES20.GL_ELEMENT_ARRAY_BUFFER, 20);
+        mBackend.clear();
+
+        // -- every array remembers its index buffer, so switching between them is one call each
+        for (int i = 0; i < OBJECT_COUNT; ++i) {
+            mCache.bindVertexArray(1);
+            mCache.bindBuffer(GLES20.GL_ELEMENT_ARRAY_BUFFER, 10);
+            mCache.bindVertexArray(2);
+            mCache.bindBuffer(GLES20.GL_ELEMENT_ARRAY_BUFFER, 20);
+        }
+        assertEquals(2 * OBJECT_COUNT, mBackend.getCallCount());
+        assertEquals(0, mBackend.getCallCount("bindBuffer"));
+
+        // -- a deleted index buffer is no longer assumed to be bound to any array
+        mCache.onBufferDeleted(10);
+        mCache.bindVertexArray(1);
+        mCache.bindBuffer(GLES20.GL_ELEMENT_ARRAY_BUFFER, 10);
+        assertEquals(1, mBackend.getCallCount("bindBuffer"));
+    }
+
+    @Test
+    public void testDefaultVertexArrayKeepsItsAttributes() {
+        mCache.setVertexArraysSupported(true);
+        mCache.bindVertexArray(0);
+        mCache.enableVertexAttribArray(0);
+        mCache.bindBuffer(GLES20.GL_ELEMENT_ARRAY_BUFFER, 4);
+        mCache.bindVertexArray(1);
+        // -- the state of other arrays is unknown
+        mCache.enableVertexAttribArray(0);
+        mBackend.clear();
+
+        mCache.bindVertexArray(0);
+        mCache.enableVertexAttribArray(0);
+        mCache.bindBuffer(GLES20.GL_ELEMENT_ARRAY_BUFFER, 4);
+        assertEquals(1, mBackend.getCallCount());
+
+        // -- GL falls back to the default array when the bound one is deleted
+        mCache.bindVertexArray(1);
+        mCache.onVertexArrayDeleted(1);
+        mBackend.clear();
+        mCache.bindVertexArray(0);
+        mCache.enableVertexAttribArray(0);
+        assertEquals(0, mBackend.getCallCount());
+    }
+}
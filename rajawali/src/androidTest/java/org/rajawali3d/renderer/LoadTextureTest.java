@@ -0,0 +1,111 @@
+package org.rajawali3d.renderer;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import android.content.Context;
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.opengl.GLES20;
+import android.support.test.InstrumentationRegistry;
+import android.test.suitebuilder.annotation.SmallTest;
+import android.view.MotionEvent;
+import org.junit.Before;
+import org.junit.Test;
+import org.rajawali3d.materials.Material;
+import org.rajawali3d.materials.textures.Texture;
+import org.rajawali3d.materials.textures.TextureManager;
+import org.rajawali3d.materials.textures.TextureSource;
+import org.rajawali3d.materials.textures.TextureUploadQueue;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Renders frames while a texture loaded through {@link Renderer#loadTexture} is still being decoded.
+ */
+@SmallTest
+public class LoadTextureTest {
+
+    private static final class TestRenderer extends Renderer {
+
+        TestRenderer(Context context) {
+            super(context, true);
+        }
+
+        @Override
+        public double getRefreshRate() {
+            return 60;
+        }
+
+        @Override
+        protected void initScene() {
+        }
+
+        @Override
+        public void onOffsetsChanged(float xOffset, float yOffset, float xOffsetStep, float yOffsetStep,
+                                     int xPixelOffset, int yPixelOffset) {
+        }
+
+        @Override
+        public void onTouchEvent(MotionEvent event) {
+        }
+    }
+
+    /**
+     * Keeps the upload it is asked to decode, the test hands the pixels over.
+     */
+    private static final class PendingSource extends TextureSource {
+        final CountDownLatch mDecoding = new CountDownLatch(1);
+        volatile TextureUploadQueue.Upload mUpload;
+
+        @Override
+        public void decode(TextureUploadQueue.Upload upload) {
+            mUpload = upload;
+            mDecoding.countDown();
+        }
+
+        @Override
+        protected Bitmap decode(BitmapFactory.Options options) {
+            return null;
+        }
+    }
+
+    private TestRenderer mRenderer;
+
+    @Before
+    public void setUp() {
+        mRenderer = new TestRenderer(InstrumentationRegistry.getTargetContext());
+    }
+
+    @Test
+    public void testPendingTextureAddedToMaterial() throws Exception {
+        final Texture texture = new Texture("pending" + System.nanoTime());
+        final PendingSource source = new PendingSource();
+        final Future<?> future = mRenderer.loadTexture(texture, source, null);
+        assertTrue(source.mDecoding.await(10, TimeUnit.SECONDS));
+        final int managed = TextureManager.getInstance().getTextureCount();
+
+        // -- the material registers the texture, the frame must not try to upload it without pixels
+        final Material material = new Material(true);
+        material.addTexture(texture);
+        mRenderer.onRenderFrame(null);
+        // -- frame tasks only log their failures, so the add task is also run directly
+        TextureManager.getInstance().taskAdd(texture);
+        assertTrue(texture.isUploadPending());
+        assertFalse(future.isDone());
+        assertEquals(managed, TextureManager.getInstance().getTextureCount());
+
+        // -- once resident the queue hands it to the texture manager
+        source.mUpload.setPixels(ByteBuffer.allocateDirect(4 * 4 * 4), 4, 4, GLES20.GL_RGBA,
+                GLES20.GL_UNSIGNED_BYTE, 4 * 4);
+        mRenderer.onRenderFrame(null);
+        assertFalse(texture.isUploadPending());
+        assertSame(texture, future.get(0, TimeUnit.SECONDS));
+        assertEquals(managed + 1, TextureManager.getInstance().getTextureCount());
+    }
+}
@@ -0,0 +1,119 @@
+package org.rajawali3d.renderer;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * {@link GLStateCache.IBackend} which records the calls instead of issuing them, allowing tests to verify what
+ * reaches GL without a context.
+ */
+public class RecordingBackend implements GLStateCache.IBackend {
+    private final List<String> mCalls = new ArrayList<>();
+
+    /**
+     * Returns the recorded calls in the form {@code name(arg, ...)}, oldest first.
+     *
+     * @return {@link List} of the recorded calls.
+     */
+    public List<String> getCalls() {
+        return mCalls;
+    }
+
+    public int getCallCount() {
+        return mCalls.size();
+    }
+
+    /**
+     * Counts the recorded calls to a given function.
+     *
+     * @param name {@link String} The function name, for example {@code "bindTexture"}.
+     * @return {@code int} The number of calls.
+     */
+    public int getCallCount(String name) {
+        final String prefix = name + "(";
+        int count = 0;
+        for (int i = 0, j = mCalls.size(); i < j; ++i) {
+            if (mCalls.get(i).startsWith(prefix)) ++count;
+        }
+        return count;
+    }
+
+    public void clear() {
+        mCalls.clear();
+    }
+
+    @Override
+    public void enable(int capability) {
+        mCalls.add("enable(" + capability + ")");
+    }
+
+    @Override
+    public void disable(int capability) {
+        mCalls.add("disable(" + capability + ")");
+    }
+
+    @Override
+    public void blendFunc(int sFactor, int dFactor) {
+        mCalls.add("blendFunc(" + sFactor + ", " + dFactor + ")");
+    }
+
+    @Override
+    public void cullFace(int mode) {
+        mCalls.add("cullFace(" + mode + ")");
+    }
+
+    @Override
+    public void frontFace(int mode) {
+        mCalls.add("frontFace(" + mode + ")");
+    }
+
+    @Override
+    public void depthFunc(int func) {
+        mCalls.add("depthFunc(" + func + ")");
+    }
+
+    @Override
+    public void depthMask(boolean flag) {
+        mCalls.add("depthMask(" + flag + ")");
+    }
+
+    @Override
+    public void useProgram(int program) {
+        mCalls.add("useProgram(" + program + ")");
+    }
+
+    @Override
+    public void bindBuffer(int target, int buffer) {
+        mCalls.add("bindBuffer(" + target + ", " + buffer + ")");
+    }
+
+    @Override
+    public void bindFramebuffer(int target, int framebuffer) {
+        mCalls.add("bindFramebuffer(" + target + ", " + framebuffer + ")");
+    }
+
+    @Override
+    public void activeTexture(int unit) {
+        mCalls.add("activeTexture(" + unit + ")");
+    }
+
+    @Override
+    public void bindTexture(int target, int texture) {
+        mCalls.add("bindTexture(" + target + ", " + texture + ")");
+    }
+
+    @Override
+    public void enableVertexAttribArray(int index) {
+        mCalls.add("enableVertexAttribArray(" + index + ")");
+    }
+
+    @Override
+    public void disableVertexAttribArray(int index) {
+        mCalls.add("disableVertexAttribArray(" + index + ")");
+    }
+
+    @Override
+    public void bindVertexArray(int array) {
+        mCalls.add("bindVertexArray(" + array + ")");
+    }
+}
@@ -0,0 +1,245 @@
+package org.rajawali3d.renderer;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+
+import android.content.Context;
+import android.support.test.InstrumentationRegistry;
+import android.test.suitebuilder.annotation.SmallTest;
+import android.view.MotionEvent;
+import org.junit.Before;
+import org.junit.Test;
+import org.rajawali3d.Object3D;
+import org.rajawali3d.animation.ScaleAnimation3D;
+import org.rajawali3d.materials.Material;
+import org.rajawali3d.math.vector.Vector3;
+import org.rajawali3d.scene.Scene;
+import org.rajawali3d.util.FakeClock;
+import org.rajawali3d.view.ISurface;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Drives a renderer on a fake clock, ticking like the frame rate timer, and counts the frames which are rendered on
+ * demand.
+ */
+@SmallTest
+public class RenderDirtyTrackerTest {
+
+    private static final long TICK = TimeUnit.MILLISECONDS.toNanos(16);
+
+    private static final class TestRenderer extends Renderer {
+
+        TestRenderer(Context context, FakeClock clock) {
+            super(context, false, clock);
+        }
+
+        @Override
+        public double getRefreshRate() {
+            return 60;
+        }
+
+        @Override
+        protected void initScene() {
+        }
+
+        @Override
+        public void onOffsetsChanged(float xOffset, float yOffset, float xOffsetStep, float yOffsetStep,
+                                     int xPixelOffset, int yPixelOffset) {
+        }
+
+        @Override
+        public void onTouchEvent(MotionEvent event) {
+        }
+    }
+
+    /**
+     * Remembers whether a frame was requested, the test draws it.
+     */
+    private static final class TestSurface implements ISurface {
+        boolean mRequested;
+
+        @Override
+        public void setFrameRate(double rate) {
+        }
+
+        @Override
+        public int getRenderMode() {
+            return RENDERMODE_WHEN_DIRTY;
+        }
+
+        @Override
+        public void setRenderMode(int mode) {
+        }
+
+        @Override
+        public void setAntiAliasingMode(ANTI_ALIASING_CONFIG config) {
+        }
+
+        @Override
+        public void setSampleCount(int count) {
+        }
+
+        @Override
+        public void setSurfaceRenderer(ISurfaceRenderer renderer) {
+        }
+
+        @Override
+        public void requestRenderUpdate() {
+            mRequested = true;
+        }
+    }
+
+    /**
+     * Uses up more than the time budget.
+     */
+    private final class SlowTask extends AFrameTask {
+        @Override
+        protected void doTask() {
+            mClock.advance(TimeUnit.MILLISECONDS.toNanos(2));
+        }
+    }
+
+    private FakeClock mClock;
+    private TestSurface mSurface;
+    private TestRenderer mRenderer;
+    private Renderer.RequestRenderTask mRequestRenderTask;
+    private Scene mScene;
+    private Object3D mObject;
+    private Material mMaterial;
+    private ScaleAnimation3D mAnimation;
+
+    @Before
+    public void setUp() {
+        mClock = new FakeClock(1);
+        mSurface = new TestSurface();
+        mRenderer = new TestRenderer(InstrumentationRegistry.getTargetContext(), mClock);
+        mRenderer.setRenderSurface(mSurface);
+        mRenderer.setRenderWhenDirty(true);
+        mRenderer.getRenderDirtyTracker().setIdleTimeout(10 * TICK, TimeUnit.NANOSECONDS);
+        mRequestRenderTask = mRenderer.new RequestRenderTask();
+        mScene = mRenderer.getCurrentScene();
+        mObject = new Object3D();
+        mMaterial = new Material(true);
+        mAnimation = new ScaleAnimation3D(new Vector3(2, 2, 2));
+        mAnimation.setTransformable3D(mObject);
+        mAnimation.setDurationMilliseconds(500);
+        mScene.addChild(mObject);
+        mScene.registerAnimation(mAnimation);
+        // -- the first frame is always drawn and runs the frame tasks above
+        assertEquals(1, tick(1));
+    }
+
+    /**
+     * Advances the clock by the given number of timer ticks, runs the task of the frame rate timer on every tick and
+     * draws a frame whenever it requested one.
+     *
+     * @return The number of rendered frames.
+     */
+    private int tick(int ticks) {
+        int frames = 0;
+        for (int i = 0; i < ticks; ++i) {
+            mClock.advance(TICK);
+            mRequestRenderTask.run();
+            if (mSurface.mRequested) {
+                mSurface.mRequested = false;
+                mRenderer.onRenderFrame(null);
+                ++frames;
+            }
+        }
+        return frames;
+    }
+
+    @Test
+    public void testStaticSceneIsNotRendered() {
+        assertEquals(0, tick(100));
+        assertFalse(mRenderer.getRenderDirtyTracker().shouldRender());
+    }
+
+    @Test
+    public void testContinuousRendering() {
+        mRenderer.setRenderWhenDirty(false);
+        assertEquals(100, tick(100));
+    }
+
+    @Test
+    public void testChangesRenderOneFrame() {
+        mObject.setPosition(1, 2, 3);
+        assertEquals(1, tick(10));
+
+        mMaterial.setColor(0xff00ff00);
+        assertEquals(1, tick(10));
+
+        mRenderer.requestRender();
+        assertEquals(1, tick(10));
+
+        // -- several changes between two ticks share a frame
+        mObject.setRotY(45);
+        mObject.setScale(2);
+        mObject.setVisible(false);
+        assertEquals(1, tick(10));
+    }
+
+    @Test
+    public void testFrameTasksRender() {
+        final int[] runs = new int[1];
+        mRenderer.internalOfferTask(new AFrameTask() {
+            @Override
+            protected void doTask() {
+                ++runs[0];
+            }
+        });
+        assertEquals(1, tick(10));
+        assertEquals(1, runs[0]);
+
+        // -- offered to the scene
+        mScene.addChild(new Object3D());
+        assertEquals(1, tick(10));
+        assertEquals(2, mScene.getNumChildren());
+    }
+
+    @Test
+    public void testTasksCarriedOverRender() {
+        // -- each task uses up the budget, so one runs per frame and the queue asks for the next frame itself
+        mRenderer.getFrameTaskQueue().setTimeBudget(1, TimeUnit.MILLISECONDS);
+        for (int i = 0; i < 5; ++i) {
+            mRenderer.internalOfferTask(new SlowTask());
+        }
+        assertEquals(5, tick(20));
+        assertEquals(0, mRenderer.getFrameTaskQueue().getDepth());
+        assertEquals(0, tick(20));
+
+        // -- the same for the scene, only the last task is offered through the scene and requests the first frame
+        mScene.getFrameTaskQueue().setTimeBudget(1, TimeUnit.MILLISECONDS);
+        for (int i = 0; i < 4; ++i) {
+            mScene.getFrameTaskQueue().offer(new SlowTask());
+        }
+        mScene.addChild(new Object3D());
+        assertEquals(5, tick(20));
+        assertEquals(0, mScene.getFrameTaskQueue().getDepth());
+        assertEquals(0, tick(20));
+    }
+
+    @Test
+    public void testSceneSwitchRenders() {
+        mRenderer.switchScene(new Scene(mRenderer));
+        assertEquals(1, tick(10));
+    }
+
+    @Test
+    public void testAnimationRendersUntilIdleTimeout() {
+        mAnimation.play();
+        // -- 32 frames until the animation reaches its end, the timeout started by the 31st one covers 8 more ticks
+        assertEquals(40, tick(100));
+        assertEquals(2, mObject.getScale().x, 1e-9);
+        assertEquals(0, tick(100));
+    }
+
+    @Test
+    public void testNoIdleTimeout() {
+        mRenderer.getRenderDirtyTracker().setIdleTimeout(0, TimeUnit.NANOSECONDS);
+        mAnimation.play();
+        // -- the last update changes the scale while its frame is drawn, which takes one more frame
+        assertEquals(33, tick(100));
+    }
+}
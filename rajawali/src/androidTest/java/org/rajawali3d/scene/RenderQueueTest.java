@@ -0,0 +1,194 @@
+package org.rajawali3d.scene;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import android.test.suitebuilder.annotation.SmallTest;
+import org.junit.Test;
+import org.rajawali3d.Object3D;
+import org.rajawali3d.cameras.Camera;
+import org.rajawali3d.materials.Material;
+import org.rajawali3d.math.Matrix4;
+
+import java.util.Random;
+
+/**
+ * Verifies the ordering of {@link RenderQueue} and counts the state changes it issues through a stand-in for the GL
+ * submission.
+ */
+@SmallTest
+public class RenderQueueTest {
+
+    private static final int OBJECT_COUNT = 2000;
+    private static final int MATERIAL_COUNT = 15;
+
+    /**
+     * Counts the calls a GL backed submitter would make.
+     */
+    private static class CountingSubmitter implements RenderQueue.ISubmitter {
+        int useProgramCalls;
+        int bindTexturesCalls;
+        int drawCalls;
+        int unbindCalls;
+
+        @Override
+        public void draw(RenderQueue.DrawItem item, boolean useProgram, boolean bindTextures) {
+            if (useProgram) ++useProgramCalls;
+            if (bindTextures) ++bindTexturesCalls;
+            ++drawCalls;
+        }
+
+        @Override
+        public void unbindTextures(Material material) {
+            ++unbindCalls;
+        }
+    }
+
+    private static RenderQueue createInterleavedQueue(Material[] materials) {
+        final RenderQueue queue = new RenderQueue();
+        final Random random = new Random(42);
+        for (int i = 0; i < OBJECT_COUNT; ++i) {
+            final int index = i % materials.length;
+            queue.add(null, materials[index], 0, false, index + 1, materials[index].getTextureSetHash(), i % 40,
+                      random.nextDouble() * 100);
+        }
+        return queue;
+    }
+
+    private static Material[] createMaterials() {
+        final Material[] materials = new Material[MATERIAL_COUNT];
+        for (int i = 0; i < MATERIAL_COUNT; ++i) {
+            materials[i] = new Material(true);
+        }
+        return materials;
+    }
+
+    @Test
+    public void testUnsortedSwitchesPerObject() {
+        final RenderQueue queue = createInterleavedQueue(createMaterials());
+        final CountingSubmitter submitter = new CountingSubmitter();
+        queue.submit(submitter);
+        assertEquals(OBJECT_COUNT, submitter.drawCalls);
+        assertEquals(OBJECT_COUNT, submitter.useProgramCalls);
+        assertEquals(OBJECT_COUNT, submitter.bindTexturesCalls);
+        assertEquals(1, submitter.unbindCalls);
+    }
+
+    @Test
+    public void testSortedSwitchesPerMaterial() {
+        final RenderQueue queue = createInterleavedQueue(createMaterials());
+        queue.sort();
+        final CountingSubmitter submitter = new CountingSubmitter();
+        queue.submit(submitter);
+        assertEquals(OBJECT_COUNT, submitter.drawCalls);
+        assertEquals(MATERIAL_COUNT, submitter.useProgramCalls);
+        assertEquals(MATERIAL_COUNT, submitter.bindTexturesCalls);
+        assertEquals(MATERIAL_COUNT, queue.getProgramSwitches());
+        assertEquals(MATERIAL_COUNT, queue.getTextureSwitches());
+        assertEquals(OBJECT_COUNT, queue.getDrawCount());
+    }
+
+    @Test
+    public void testUncompiledProgramIsAlwaysUsed() {
+        final Material material = new Material(true);
+        final RenderQueue queue = new RenderQueue();
+        queue.add(null, material, 0, false, -1, 0, 0, 1);
+        queue.add(null, material, 0, false, -1, 0, 0, 2);
+        queue.sort();
+        final CountingSubmitter submitter = new CountingSubmitter();
+        queue.submit(submitter);
+        assertEquals(2, submitter.useProgramCalls);
+    }
+
+    @Test
+    public void testMaterialsSharingAProgramAreUsed() {
+        final Material first = new Material(true);
+        final Material second = new Material(true);
+        final RenderQueue queue = new RenderQueue();
+        queue.add(null, first, 0, false, 1, 0, 0, 1);
+        queue.add(null, first, 0, false, 1, 0, 0, 2);
+        queue.add(null, second, 0, false, 1, 0, 0, 3);
+        queue.sort();
+        final CountingSubmitter submitter = new CountingSubmitter();
+        queue.submit(submitter);
+        // -- the second material is made current so it can rebuild its shaders, the program doesn't switch
+        assertEquals(2, submitter.useProgramCalls);
+        assertEquals(1, queue.getProgramSwitches());
+    }
+
+    @Test
+    public void testOpaqueFrontToBackTransparentBackToFront() {
+        final Material material = new Material(true);
+        final RenderQueue queue = new RenderQueue();
+        queue.add(null, material, 0, true, 1, 0, 0, 5);
+        queue.add(null, material, 0, false, 1, 0, 0, 30);
+        queue.add(null, material, 0, true, 1, 0, 0, 50);
+        queue.add(null, material, 0, false, 1, 0, 0, 2);
+        queue.add(null, material, 0, true, 2, 0, 0, 20);
+        queue.add(null, material, 0, false, 1, 0, 0, 0.5);
+        queue.sort();
+
+        assertEquals(0.5, queue.get(0).depth, 0);
+        assertEquals(2, queue.get(1).depth, 0);
+        assertEquals(30, queue.get(2).depth, 0);
+        assertEquals(50, queue.get(3).depth, 0);
+        assertEquals(20, queue.get(4).depth, 0);
+        assertEquals(5, queue.get(5).depth, 0);
+        for (int i = 3; i < 6; ++i) {
+            assertTrue(queue.get(i).transparent);
+        }
+    }
+
+    @Test
+    public void testDepthOfTheCurrentFrame() {
+        final Camera camera = new Camera();
+        camera.setProjectionMatrix(800, 600);
+        camera.setPosition(0, 0, 40);
+        camera.setLookAt(0, 0, 0);
+        camera.onRecalculateModelMatrix(null);
+        final Matrix4 vpMatrix = new Matrix4().setAll(camera.getProjectionMatrix()).multiply(camera.getViewMatrix());
+        camera.updateFrustum(vpMatrix);
+
+        // -- batches render themselves, but are still sorted by the depth they have in this frame
+        final Object3D batch = new Object3D();
+        batch.setRenderChildrenAsBatch(true);
+        final RenderQueue queue = new RenderQueue();
+        batch.queueForRender(queue, camera, vpMatrix, camera.getProjectionMatrix(), camera.getViewMatrix(), null);
+        assertEquals(40, queue.get(0).depth, 1e-9);
+
+        batch.setZ(-10);
+        queue.clear();
+        batch.queueForRender(queue, camera, vpMatrix, camera.getProjectionMatrix(), camera.getViewMatrix(), null);
+        assertEquals(50, queue.get(0).depth, 1e-9);
+    }
+
+    @Test
+    public void testLayersTakePrecedence() {
+        final Material material = new Material(true);
+        final RenderQueue queue = new RenderQueue();
+        queue.add(null, material, 2, false, 1, 0, 0, 1);
+        queue.add(null, material, 1, true, 1, 0, 0, 1);
+        queue.add(null, material, 0, false, 3, 0, 0, 100);
+        queue.sort();
+
+        assertEquals(100, queue.get(0).depth, 0);
+        assertTrue(queue.get(1).transparent);
+        assertFalse(queue.get(2).transparent);
+        assertEquals(1, queue.get(2).program);
+    }
+
+    @Test
+    public void testClearReleasesReferences() {
+        final RenderQueue queue = createInterleavedQueue(createMaterials());
+        final RenderQueue.DrawItem item = queue.get(0);
+        queue.clear();
+        assertEquals(0, queue.size());
+        assertEquals(null, item.material);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testInvalidLayer() {
+        RenderQueue.makeKey(RenderQueue.MAX_LAYER + 1, false, 0, 0, 0, 0);
+    }
+}
@@ -0,0 +1,179 @@
+package org.rajawali3d.scenegraph;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import android.test.suitebuilder.annotation.SmallTest;
+import org.junit.Before;
+import org.junit.Test;
+import org.rajawali3d.Object3D;
+import org.rajawali3d.bounds.BoundingBox;
+import org.rajawali3d.cameras.Camera;
+import org.rajawali3d.cameras.Frustum;
+import org.rajawali3d.math.Matrix4;
+import org.rajawali3d.primitives.Cube;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Compares the members the {@link Octree} keeps after a frustum cull against testing every member individually.
+ */
+@SmallTest
+public class OctreeCullingTest {
+
+    private static final int GRID_SIZE = 10;
+    private static final double SPACING = 4;
+
+    private Octree mOctree;
+    private List<IGraphNodeMember> mMembers;
+    private Camera mCamera;
+
+    @Before
+    public void setUp() {
+        mOctree = new Octree();
+        mMembers = new ArrayList<>();
+        final double offset = (GRID_SIZE - 1) * SPACING * 0.5;
+        for (int x = 0; x < GRID_SIZE; ++x) {
+            for (int y = 0; y < GRID_SIZE; ++y) {
+                for (int z = 0; z < GRID_SIZE; ++z) {
+                    final Object3D object = new Cube(1);
+                    object.setPosition(x * SPACING - offset, y * SPACING - offset, z * SPACING - offset);
+                    mMembers.add(object);
+                }
+            }
+        }
+        mOctree.addObjects(mMembers);
+        mCamera = new Camera();
+        mCamera.setProjectionMatrix(800, 600);
+    }
+
+    private Frustum updateFrustum() {
+        mCamera.onRecalculateModelMatrix(null);
+        final Matrix4 vpMatrix = new Matrix4(mCamera.getProjectionMatrix()).multiply(mCamera.getViewMatrix());
+        mCamera.updateFrustum(vpMatrix);
+        return mCamera.getFrustum();
+    }
+
+    private Set<IGraphNodeMember> cull(Frustum frustum) {
+        final List<IGraphNodeMember> visible = new ArrayList<>();
+        mOctree.cullFromFrustum(frustum, visible);
+        final Set<IGraphNodeMember> set = Collections.newSetFromMap(new IdentityHashMap<IGraphNodeMember, Boolean>());
+        set.addAll(visible);
+        assertEquals("A member was reported twice", visible.size(), set.size());
+        return set;
+    }
+
+    private Set<IGraphNodeMember> bruteForce(Frustum frustum) {
+        final Set<IGraphNodeMember> set = Collections.newSetFromMap(new IdentityHashMap<IGraphNodeMember, Boolean>());
+        for (IGraphNodeMember member : mMembers) {
+            if (frustum.boundsInFrustum((BoundingBox) member.getTransformedBoundingVolume())) set.add(member);
+        }
+        return set;
+    }
+
+    @Test
+    public void testAllMembersAreInGraph() {
+        assertEquals(mMembers.size(), mOctree.getObjectCount());
+    }
+
+    @Test
+    public void testPartialViewMatchesBruteForce() {
+        mCamera.setPosition(14, 14, 40);
+        mCamera.setLookAt(14, 14, 0);
+        final Frustum frustum = updateFrustum();
+        final Set<IGraphNodeMember> expected = bruteForce(frustum);
+        final Set<IGraphNodeMember> visible = cull(frustum);
+        assertTrue(expected.size() > 0);
+        assertTrue(expected.size() < mMembers.size());
+        assertEquals(expected, visible);
+        // Rejected partitions take their members with them, accepted partitions skip the test of theirs
+        assertTrue(mOctree.getLastFrustumMemberTests() < mMembers.size() / 2);
+        assertTrue(mOctree.getLastFrustumMemberTests() < visible.size());
+    }
+
+    @Test
+    public void testFullyInsideSkipsMemberTests() {
+        mCamera.setPosition(0, 0, 100);
+        mCamera.setLookAt(0, 0, 0);
+        mCamera.setFarPlane(1000);
+        final Frustum frustum = updateFrustum();
+        assertEquals(Frustum.INSIDE, frustum.classifyBounds(mOctree.getTransformedMin(), mOctree.getTransformedMax()));
+        assertEquals(mMembers.size(), cull(frustum).size());
+        assertEquals(1, mOctree.getLastFrustumNodeTests());
+        assertEquals(0, mOctree.getLastFrustumMemberTests());
+    }
+
+    @Test
+    public void testLookingAwayRejectsEverything() {
+        mCamera.setPosition(0, 0, 200);
+        mCamera.setLookAt(0, 0, 400);
+        final Frustum frustum = updateFrustum();
+        assertEquals(0, cull(frustum).size());
+        assertEquals(1, mOctree.getLastFrustumNodeTests());
+        assertEquals(0, mOctree.getLastFrustumMemberTests());
+    }
+
+    @Test
+    public void testMovedMemberIsFound() {
+        mCamera.setPosition(0, 0, 30);
+        mCamera.setLookAt(0, 0, 0);
+        final Frustum frustum = updateFrustum();
+        // A corner behind the camera's field of view
+        final Object3D far = (Object3D) mMembers.get(GRID_SIZE - 1);
+        assertFalse(cull(frustum).contains(far));
+
+        far.setPosition(0, 0, 20);
+        mOctree.updateMovedObjects();
+        assertTrue(cull(frustum).contains(far));
+        assertEquals(bruteForce(frustum), cull(frustum));
+        assertEquals(mMembers.size(), mOctree.getObjectCount());
+    }
+
+    @Test
+    public void testParentIsBoundedByItsChildren() {
+        mCamera.setPosition(0, 0, 30);
+        mCamera.setLookAt(0, 0, 0);
+        final Frustum frustum = updateFrustum();
+        // Both parents are behind the camera, their children in front of it
+        final Object3D group = new Object3D();
+        group.setPosition(0, 0, 60);
+        final Object3D child = new Cube(1);
+        child.setPosition(0, 0, -50);
+        group.addChild(child);
+        final Object3D parent = new Cube(1);
+        parent.setPosition(0, 0, 60);
+        final Object3D extended = new Cube(1);
+        extended.setPosition(0, 0, -50);
+        parent.addChild(extended);
+        mOctree.addObject(group);
+        mOctree.addObject(parent);
+
+        Set<IGraphNodeMember> visible = cull(frustum);
+        assertTrue(visible.contains(group));
+        assertTrue(visible.contains(parent));
+
+        // Moving a child moves the bounds of its parent in the graph
+        child.setPosition(0, 0, 0);
+        mOctree.updateMovedObjects();
+        visible = cull(frustum);
+        assertFalse(visible.contains(group));
+        assertTrue(visible.contains(parent));
+
+        parent.removeChild(extended);
+        mOctree.updateMovedObjects();
+        assertFalse(cull(frustum).contains(parent));
+    }
+
+    @Test
+    public void testRemoveObjects() {
+        mOctree.removeObjects(mMembers.subList(0, mMembers.size() / 2));
+        assertEquals(mMembers.size() - mMembers.size() / 2, mOctree.getObjectCount());
+        mOctree.removeObjects(mMembers);
+        assertEquals(0, mOctree.getObjectCount());
+    }
+}
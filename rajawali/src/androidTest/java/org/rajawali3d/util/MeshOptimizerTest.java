@@ -0,0 +1,152 @@
+package org.rajawali3d.util;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import android.test.suitebuilder.annotation.SmallTest;
+import org.junit.Before;
+import org.junit.Test;
+import org.rajawali3d.Geometry3D;
+import org.rajawali3d.Object3D;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Optimizes a grid whose triangles are shuffled, checking the cache miss ratios and that the optimized mesh still
+ * has the same triangles with the same winding.
+ */
+@SmallTest
+public class MeshOptimizerTest {
+
+    private static final int SIZE = 40;
+    private static final int VERTEX_COUNT = (SIZE + 1) * (SIZE + 1);
+
+    private float[] mPositions;
+    private int[] mIndices;
+
+    @Before
+    public void setUp() {
+        mPositions = new float[VERTEX_COUNT * 3];
+        for (int y = 0; y <= SIZE; ++y) {
+            for (int x = 0; x <= SIZE; ++x) {
+                final int v = y * (SIZE + 1) + x;
+                mPositions[v * 3] = x;
+                mPositions[v * 3 + 1] = y;
+                mPositions[v * 3 + 2] = (float) Math.sin(x * 0.3) * 2;
+            }
+        }
+        final List<int[]> triangles = new ArrayList<>();
+        for (int y = 0; y < SIZE; ++y) {
+            for (int x = 0; x < SIZE; ++x) {
+                final int v = y * (SIZE + 1) + x;
+                triangles.add(new int[]{v, v + 1, v + SIZE + 2});
+                triangles.add(new int[]{v, v + SIZE + 2, v + SIZE + 1});
+            }
+        }
+        Collections.shuffle(triangles, new Random(7));
+        mIndices = new int[triangles.size() * 3];
+        for (int t = 0; t < triangles.size(); ++t) {
+            System.arraycopy(triangles.get(t), 0, mIndices, t * 3, 3);
+        }
+    }
+
+    /**
+     * @return Every triangle as the positions of its corners, rotated to start with the smallest x and y, sorted.
+     */
+    private static List<String> getTriangles(int[] indices, float[] positions) {
+        final List<String> result = new ArrayList<>();
+        for (int t = 0; t < indices.length / 3; ++t) {
+            final String[] corners = new String[3];
+            int first = 0;
+            for (int c = 0; c < 3; ++c) {
+                final int v = indices[t * 3 + c];
+                corners[c] = String.format("%06.1f/%06.1f", positions[v * 3 + 1], positions[v * 3]);
+                if (corners[c].compareTo(corners[first]) < 0) first = c;
+            }
+            result.add(corners[first] + " " + corners[(first + 1) % 3] + " " + corners[(first + 2) % 3]);
+        }
+        Collections.sort(result);
+        return result;
+    }
+
+    @Test
+    public void testVertexCache() {
+        final int[] indices = mIndices.clone();
+        final float before = MeshOptimizer.getAcmr(indices, VERTEX_COUNT, MeshOptimizer.DEFAULT_CACHE_SIZE);
+        assertTrue(before > 2.5f);
+
+        MeshOptimizer.optimizeVertexCache(indices, VERTEX_COUNT);
+        final float after = MeshOptimizer.getAcmr(indices, VERTEX_COUNT, MeshOptimizer.DEFAULT_CACHE_SIZE);
+        assertTrue("ACMR " + after, after < 0.75f);
+        assertEquals(getTriangles(mIndices, mPositions), getTriangles(indices, mPositions));
+    }
+
+    @Test
+    public void testOverdraw() {
+        final int[] indices = mIndices.clone();
+        MeshOptimizer.optimizeVertexCache(indices, VERTEX_COUNT);
+        final float cacheOptimized = MeshOptimizer.getAcmr(indices, VERTEX_COUNT, MeshOptimizer.DEFAULT_CACHE_SIZE);
+
+        MeshOptimizer.optimizeOverdraw(indices, mPositions, VERTEX_COUNT, MeshOptimizer.DEFAULT_OVERDRAW_THRESHOLD);
+        final float after = MeshOptimizer.getAcmr(indices, VERTEX_COUNT, MeshOptimizer.DEFAULT_CACHE_SIZE);
+        // -- the clusters are only cut where they start no worse than the threshold, the last one may be worse
+        assertTrue("ACMR " + after, after <= cacheOptimized * MeshOptimizer.DEFAULT_OVERDRAW_THRESHOLD + 0.05f);
+        assertEquals(getTriangles(mIndices, mPositions), getTriangles(indices, mPositions));
+    }
+
+    @Test
+    public void testVertexFetch() {
+        final int[] indices = new int[]{4, 2, 0, 2, 4, 5};
+        final int[] remap = MeshOptimizer.optimizeVertexFetch(indices, 6);
+        assertArrayEquals(new int[]{0, 1, 2, 1, 0, 3}, indices);
+        // -- the unused vertices 1 and 3 go last, in their order
+        assertArrayEquals(new int[]{2, 4, 1, 5, 0, 3}, remap);
+
+        final float[] data = new float[]{0, 0, 1, 1, 2, 2, 3, 3, 4, 4, 5, 5};
+        MeshOptimizer.remapVertexData(data, 2, remap);
+        assertArrayEquals(new float[]{4, 4, 2, 2, 0, 0, 5, 5, 1, 1, 3, 3}, data, 0);
+    }
+
+    @Test
+    public void testGeometry() {
+        final Object3D object = new Object3D();
+        final float[] textureCoords = new float[VERTEX_COUNT * 2];
+        for (int v = 0; v < VERTEX_COUNT; ++v) {
+            // -- the texture coordinates follow the positions, so moved vertices are detected
+            textureCoords[v * 2] = mPositions[v * 3];
+            textureCoords[v * 2 + 1] = mPositions[v * 3 + 1];
+        }
+        object.setData(mPositions, null, textureCoords, null, mIndices, false);
+        final Object3D clone = object.clone(false);
+        final Object3D root = new Object3D();
+        root.addChild(object);
+        root.addChild(clone);
+
+        final MeshOptimizer.Statistics statistics = MeshOptimizer.optimize(root, true);
+        // -- the clone shares the geometry, which is optimized once
+        assertEquals(1, statistics.getGeometryCount());
+        assertEquals(SIZE * SIZE * 2, statistics.getTriangleCount());
+        assertTrue(statistics.toString(), statistics.getAcmrAfter() < statistics.getAcmrBefore() / 3);
+
+        final Geometry3D geometry = object.getGeometry();
+        final int[] indices = Geometry3D.getIntArrayFromBuffer(geometry.getIndices());
+        final float[] positions = Geometry3D.getFloatArrayFromBuffer(geometry.getVertices());
+        final float[] coords = Geometry3D.getFloatArrayFromBuffer(geometry.getTextureCoords());
+        assertEquals(getTriangles(mIndices, mPositions), getTriangles(indices, positions));
+        for (int v = 0; v < VERTEX_COUNT; ++v) {
+            assertEquals(positions[v * 3], coords[v * 2], 0);
+            assertEquals(positions[v * 3 + 1], coords[v * 2 + 1], 0);
+        }
+        // -- the vertices are fetched in order
+        int next = 0;
+        for (int index : indices) {
+            assertTrue(index <= next);
+            if (index == next) ++next;
+        }
+        assertEquals(VERTEX_COUNT, next);
+    }
+}
@@ -0,0 +1,174 @@
+package org.rajawali3d.util;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import android.test.suitebuilder.annotation.SmallTest;
+import org.junit.Before;
+import org.junit.Test;
+import org.rajawali3d.Geometry3D;
+import org.rajawali3d.Object3D;
+import org.rajawali3d.bounds.BoundingBox;
+import org.rajawali3d.materials.Material;
+import org.rajawali3d.math.Matrix4;
+import org.rajawali3d.math.vector.Vector3;
+import org.rajawali3d.primitives.Cube;
+
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Checks that {@link StaticBatcher} groups by material, bakes world transformations and splits large batches.
+ */
+@SmallTest
+public class StaticBatcherTest {
+
+    private static final int CUBE_COUNT = 100;
+
+    /**
+     * Assigns materials without registering them with a renderer.
+     */
+    private static class TestCube extends Cube {
+        TestCube() {
+            super(1);
+        }
+
+        @Override
+        public void setMaterial(Material material) {
+            mMaterial = material;
+        }
+    }
+
+    private static class TestBatcher extends StaticBatcher {
+        @Override
+        protected Object3D createBatchObject(String name) {
+            return new Object3D(name) {
+                @Override
+                public void setMaterial(Material material) {
+                    mMaterial = material;
+                }
+            };
+        }
+    }
+
+    private Object3D mRoot;
+    private Material mMaterialA;
+    private Material mMaterialB;
+    private int mCubeVertices;
+
+    @Before
+    public void setUp() {
+        mRoot = new Object3D();
+        mRoot.setPosition(0, 10, 0);
+        mMaterialA = new Material(true);
+        mMaterialB = new Material(true);
+        for (int i = 0; i < CUBE_COUNT; ++i) {
+            final Cube cube = new TestCube();
+            cube.setPosition(i * 2, 0, 0);
+            cube.setMaterial(i % 10 == 0 ? mMaterialB : mMaterialA);
+            cube.setStatic(true);
+            mRoot.addChild(cube);
+        }
+        // Neither of these is merged
+        final Cube moving = new TestCube();
+        moving.setMaterial(mMaterialA);
+        mRoot.addChild(moving);
+        final Cube blended = new TestCube();
+        blended.setMaterial(mMaterialA);
+        blended.setStatic(true);
+        blended.setTransparent(true);
+        mRoot.addChild(blended);
+        mCubeVertices = new Cube(1).getGeometry().getNumVertices();
+    }
+
+    @Test
+    public void testGroupsByMaterialAndRenderState() {
+        final StaticBatcher batcher = new TestBatcher();
+        final List<Object3D> batches = batcher.batch(mRoot);
+        assertEquals(3, batches.size());
+        assertEquals(CUBE_COUNT + 1, batcher.getLastSourceCount());
+        assertTrue(batches.get(0).getMaterial() == mMaterialB);
+        assertEquals(10 * mCubeVertices, batches.get(0).getGeometry().getNumVertices());
+        assertTrue(batches.get(1).getMaterial() == mMaterialA);
+        assertEquals(90 * mCubeVertices, batches.get(1).getGeometry().getNumVertices());
+        assertTrue(batches.get(2).isTransparent());
+        assertTrue(batches.get(1).getGeometry().isUsingShortIndices());
+
+        // The merged objects no longer draw themselves, the moving one still does
+        assertTrue(mRoot.getChildAt(0).isContainer());
+        assertFalse(mRoot.getChildAt(CUBE_COUNT).isContainer());
+    }
+
+    @Test
+    public void testTransformsAreBaked() {
+        final List<Object3D> batches = new TestBatcher().batch(mRoot);
+        final float[] vertices = Geometry3D.getFloatArrayFromBuffer(batches.get(0).getGeometry().getVertices());
+        final float[] source = Geometry3D.getFloatArrayFromBuffer(new Cube(1).getGeometry().getVertices());
+        // The second cube with material B is at x = 20, y = 10
+        final int offset = mCubeVertices * 3;
+        for (int i = 0; i < source.length; i += 3) {
+            assertEquals(source[i] + 20, vertices[offset + i], 1e-5);
+            assertEquals(source[i + 1] + 10, vertices[offset + i + 1], 1e-5);
+            assertEquals(source[i + 2], vertices[offset + i + 2], 1e-5);
+        }
+
+        final BoundingBox bounds = batches.get(1).getBoundingBox();
+        assertEquals(1.5, bounds.getMin().x, 1e-5);
+        assertEquals(9.5, bounds.getMin().y, 1e-5);
+        assertEquals(198.5, bounds.getMax().x, 1e-5);
+
+        final int[] indices = Geometry3D.getIntArrayFromBuffer(batches.get(0).getGeometry().getIndices());
+        final int[] sourceIndices = Geometry3D.getIntArrayFromBuffer(new Cube(1).getGeometry().getIndices());
+        assertEquals(sourceIndices[0] + mCubeVertices, indices[sourceIndices.length]);
+    }
+
+    @Test
+    public void testBatchesAreSplit() {
+        final StaticBatcher batcher = new TestBatcher();
+        batcher.setMaxVertices(mCubeVertices * 25);
+        final List<Object3D> batches = batcher.batch(mRoot);
+        // 10 cubes with material B, 90 with material A in 4 batches, the transparent one
+        assertEquals(6, batches.size());
+        for (Object3D batch : batches) {
+            assertTrue(batch.getGeometry().getNumVertices() <= mCubeVertices * 25);
+        }
+    }
+
+    @Test
+    public void testNormalsAndMirroring() {
+        final Cube cube = new Cube(1);
+        final Geometry3D merged = new Geometry3D();
+        final Matrix4 mirror = new Matrix4().scale(new Vector3(-2, 2, 2));
+        merged.addFromGeometries(Arrays.asList(cube.getGeometry(), cube.getGeometry()),
+                Arrays.asList(null, mirror), false);
+
+        final float[] normals = Geometry3D.getFloatArrayFromBuffer(merged.getNormals());
+        final float[] sourceNormals = Geometry3D.getFloatArrayFromBuffer(cube.getGeometry().getNormals());
+        for (int i = 0; i < sourceNormals.length; i += 3) {
+            final int j = sourceNormals.length + i;
+            assertEquals(-sourceNormals[i], normals[j], 1e-5);
+            assertEquals(sourceNormals[i + 1], normals[j + 1], 1e-5);
+            assertEquals(sourceNormals[i + 2], normals[j + 2], 1e-5);
+        }
+
+        final int[] indices = Geometry3D.getIntArrayFromBuffer(merged.getIndices());
+        final int[] sourceIndices = Geometry3D.getIntArrayFromBuffer(cube.getGeometry().getIndices());
+        final int n = sourceIndices.length;
+        assertEquals(sourceIndices[0] + mCubeVertices, indices[n]);
+        assertEquals(sourceIndices[2] + mCubeVertices, indices[n + 1]);
+        assertEquals(sourceIndices[1] + mCubeVertices, indices[n + 2]);
+    }
+
+    @Test
+    public void testAddFromGeometry3DOffset() {
+        final Geometry3D merged = new Geometry3D();
+        final Geometry3D cube = new Cube(1).getGeometry();
+        merged.addFromGeometry3D(null, cube, false);
+        merged.addFromGeometry3D(new Vector3(5, 0, 0), cube, false);
+        assertEquals(2 * mCubeVertices, merged.getNumVertices());
+        assertEquals(2 * cube.getNumIndices(), merged.getNumIndices());
+        final float[] vertices = Geometry3D.getFloatArrayFromBuffer(merged.getVertices());
+        assertEquals(vertices[0] + 5, vertices[mCubeVertices * 3], 1e-5);
+    }
+}
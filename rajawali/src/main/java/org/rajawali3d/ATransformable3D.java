@@ -17,10 +17,16 @@ import org.rajawali3d.math.MathUtil;
 import org.rajawali3d.math.Matrix4;
 import org.rajawali3d.math.Quaternion;
 import org.rajawali3d.math.vector.Vector3;
+import org.rajawali3d.renderer.RenderDirtyTracker;
 import org.rajawali3d.scenegraph.IGraphNode;
 import org.rajawali3d.scenegraph.IGraphNodeMember;
 
 public abstract class ATransformable3D implements IGraphNodeMember {
+    /**
+     * Passed as the parent's world version when it isn't known, which always recalculates the model matrix.
+     */
+    public static final int UNKNOWN_VERSION = -1;
+
     protected final Matrix4 mMMatrix = new Matrix4(); //The model matrix
     protected final Vector3 mPosition; //The position
     protected final Vector3 mScale; //The scale
@@ -36,6 +42,9 @@ public abstract class ATransformable3D implements IGraphNodeMember {
     protected boolean mIsModelMatrixDirty = true; // If true, the model matrix needs to be recalculated.
     protected boolean mInsideGraph = false; //Default to being outside the graph
     protected IGraphNode mGraphNode; //Which graph node are we in?
+    protected int mLocalVersion; //Incremented whenever position, scale or orientation change
+    protected int mWorldVersion; //Incremented whenever the model matrix is recalculated
+    protected int mParentWorldVersion = UNKNOWN_VERSION; //The parent's world version the model matrix is based on
 
     /**
      * Default constructor for {@link ATransformable3D}.
@@ -55,6 +64,9 @@ public abstract class ATransformable3D implements IGraphNodeMember {
      */
     protected void markModelMatrixDirty() {
         mIsModelMatrixDirty = true;
+        ++mLocalVersion;
+        RenderDirtyTracker.markSceneChanged();
+        if (mGraphNode != null) mGraphNode.markObjectMoved(this);
     }
 
     /**
@@ -65,14 +77,58 @@ public abstract class ATransformable3D implements IGraphNodeMember {
      */
     public boolean onRecalculateModelMatrix(Matrix4 parentMatrix) {
         if (mIsModelMatrixDirty) {
-            calculateModelMatrix(parentMatrix);
-            if (mGraphNode != null) mGraphNode.updateObject(this);
-            mIsModelMatrixDirty = false;
+            updateModelMatrix(parentMatrix, UNKNOWN_VERSION);
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * Recalculates the model matrix for this {@link ATransformable3D} object if it or its parent changed since the
+     * last calculation.
+     *
+     * @param parentMatrix {@link Matrix4} The parent matrix, if any, to apply to this object.
+     * @param parentWorldVersion The parent's {@link #getWorldVersion()}, 0 if there is no parent matrix or
+     *                           {@link #UNKNOWN_VERSION} if the parent matrix doesn't belong to an
+     *                           {@link ATransformable3D}.
+     * @return A flag indicating whether the model matrix was recalculated or not.
+     */
+    public boolean onRecalculateModelMatrix(Matrix4 parentMatrix, int parentWorldVersion) {
+        if (mIsModelMatrixDirty || parentWorldVersion == UNKNOWN_VERSION || parentWorldVersion != mParentWorldVersion) {
+            updateModelMatrix(parentMatrix, parentWorldVersion);
             return true;
         }
         return false;
     }
 
+    private void updateModelMatrix(Matrix4 parentMatrix, int parentWorldVersion) {
+        calculateModelMatrix(parentMatrix);
+        // The update may run on several threads, the scene moves the object within its graph once it is done
+        if (mGraphNode != null) mGraphNode.markObjectMoved(this);
+        mIsModelMatrixDirty = false;
+        mParentWorldVersion = parentWorldVersion;
+        ++mWorldVersion;
+    }
+
+    /**
+     * The local version changes whenever the position, scale or orientation of this object change.
+     *
+     * @return The local version
+     */
+    public int getLocalVersion() {
+        return mLocalVersion;
+    }
+
+    /**
+     * The world version changes whenever the model matrix is recalculated, either because this object or one of its
+     * ancestors changed. Anything derived from the model matrix only needs to be recalculated when it changes.
+     *
+     * @return The world version
+     */
+    public int getWorldVersion() {
+        return mWorldVersion;
+    }
+
     /**
      * Retrieves this {@link ATransformable3D} objects model matrix.
      *
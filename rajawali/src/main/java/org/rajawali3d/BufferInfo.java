@@ -28,6 +28,8 @@ public class BufferInfo {
     public int stride = 0;
     public int offset = 0;
     public int type = GLES20.GL_FLOAT;
+    public boolean normalized = false; // Whether integer attribute data is mapped to [0, 1]
+    public int components = 0; // The number of components per vertex, 0 for the default of the attribute
 
 	public BufferInfo() {
 		this.usage = GLES20.GL_STATIC_DRAW;
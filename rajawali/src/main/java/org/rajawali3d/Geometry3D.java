@@ -17,7 +17,11 @@ import android.opengl.GLES20;
 import org.rajawali3d.animation.mesh.VertexAnimationObject3D;
 import org.rajawali3d.bounds.BoundingBox;
 import org.rajawali3d.bounds.BoundingSphere;
+import org.rajawali3d.math.Matrix4;
 import org.rajawali3d.math.vector.Vector3;
+import org.rajawali3d.renderer.GLStateCache;
+import org.rajawali3d.util.Capabilities;
+import org.rajawali3d.util.VertexEncoder;
 
 import java.nio.Buffer;
 import java.nio.ByteBuffer;
@@ -30,6 +34,8 @@ import java.nio.LongBuffer;
 import java.nio.ShortBuffer;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
 
 /**
  * This is where the vertex, normal, texture coordinate, color and index data is stored.
@@ -68,6 +74,11 @@ public class Geometry3D {
     public static final int COLOR_BUFFER_KEY   = 3;
     public static final int INDEX_BUFFER_KEY   = 4;
 
+    /**
+     * The maximum number of vertices which can be addressed with unsigned short indices.
+     */
+    public static final int MAX_SHORT_INDEX_VERTICES = 65536;
+
     protected final ArrayList<BufferInfo> mBuffers;
 
     /**
@@ -106,6 +117,40 @@ public class Geometry3D {
      * Indicates whether this geometry contains texture coordinates or not.
      */
     protected boolean        mHasTextureCoordinates;
+    /**
+     * Indicates whether the indices are uploaded as unsigned shorts when there are few enough vertices.
+     */
+    protected boolean        mUseShortIndices = true;
+    /**
+     * The vertex arrays which record the buffers of this geometry, per attribute layout.
+     */
+    protected final VertexArrayCache mVertexArrays = new VertexArrayCache();
+    /**
+     * Indicates whether positions, normals, texture coordinates and colors are uploaded into a single buffer.
+     */
+    protected boolean        mInterleaved;
+    /**
+     * The buffer which holds the interleaved attributes. Its data is only kept while it is uploaded, the attribute
+     * buffers remain the source of the data.
+     */
+    protected final BufferInfo mInterleavedBufferInfo = new BufferInfo();
+    /**
+     * The encodings of the attributes in the interleaved buffer.
+     */
+    protected VertexFormat   mVertexFormat = VertexFormat.FLOAT;
+    // -- the interleaved layout, offsets are in bytes and -1 for attributes which are not part of it
+    private int mInterleavedStride;
+    private int mInterleavedNormalOffset = -1;
+    private int mInterleavedTexCoordOffset = -1;
+    private int mInterleavedColorOffset = -1;
+    // -- the encodings in effect, which fall back to floats for data the format can't represent
+    private VertexFormat.PositionEncoding mPositionEncoding = VertexFormat.PositionEncoding.FLOAT;
+    private VertexFormat.NormalEncoding mNormalEncoding = VertexFormat.NormalEncoding.FLOAT;
+    private VertexFormat.TextureCoordEncoding mTextureCoordEncoding = VertexFormat.TextureCoordEncoding.FLOAT;
+    private VertexFormat.ColorEncoding mColorEncoding = VertexFormat.ColorEncoding.FLOAT;
+    // -- quantized positions are decoded as offset + scale * value, null unless positions are quantized
+    private float[] mPositionOffset;
+    private float[] mPositionScale;
 
     public enum BufferType {
         FLOAT_BUFFER,
@@ -142,6 +187,9 @@ public class Geometry3D {
         mBuffers.get(INDEX_BUFFER_KEY).rajawaliHandle = INDEX_BUFFER_KEY;
         mBuffers.get(INDEX_BUFFER_KEY).bufferType = BufferType.INT_BUFFER;
         mBuffers.get(INDEX_BUFFER_KEY).target = GLES20.GL_ELEMENT_ARRAY_BUFFER;
+
+        mInterleavedBufferInfo.bufferType = BufferType.BYTE_BUFFER;
+        mInterleavedBufferInfo.target = GLES20.GL_ARRAY_BUFFER;
     }
 
     /**
@@ -251,84 +299,136 @@ public class Geometry3D {
         this.mOriginalGeometry = geom;
         this.mHasNormals = geom.hasNormals();
         this.mHasTextureCoordinates = geom.hasTextureCoordinates();
+        this.mInterleaved = geom.isInterleaved();
+        this.mVertexFormat = geom.getVertexFormat();
+        invalidateVertexArrays();
     }
 
     /**
      * Adds the geometry from the incoming geometry with the specified offset.
      * Note that the offset is only applied to the vertex positions.
+     * <p>
+     * Every call copies all of the data of this geometry, use {@link #addFromGeometries(List, List, boolean)} to
+     * merge several geometries at once.
      *
      * @param offset     {@link Vector3} containing the offset in each direction. Can be null.
      * @param geometry   {@link Geometry3D} to be added.
      * @param createVBOs {@code boolean} If true, create the VBOs immediately.
      */
     public void addFromGeometry3D(Vector3 offset, Geometry3D geometry, boolean createVBOs) {
-        float[] newVertices = null;
-        float[] newNormals = null;
-        float[] newColors = null;
-        float[] newTextureCoords = null;
-        int[] newIntIndices = null;
-        float[] mVerticesArray = null;
-        float[] mNormalsArray = null;
-        float[] mColorsArray = null;
-        float[] mTextureCoordsArray = null;
-        int[] mIndicesArray = null;
-
-        //Get the old data
-        mVerticesArray = getFloatArrayFromBuffer((FloatBuffer) mBuffers.get(VERTEX_BUFFER_KEY).buffer);
-        mNormalsArray = getFloatArrayFromBuffer((FloatBuffer) mBuffers.get(NORMAL_BUFFER_KEY).buffer);
-        mColorsArray = getFloatArrayFromBuffer((FloatBuffer) mBuffers.get(COLOR_BUFFER_KEY).buffer);
-        mTextureCoordsArray = getFloatArrayFromBuffer((FloatBuffer) mBuffers.get(TEXTURE_BUFFER_KEY).buffer);
-        mIndicesArray = getIntArrayFromBuffer(mBuffers.get(INDEX_BUFFER_KEY).buffer);
-
-        //Get the new data, offset the vertices
-        int axis = 0;
-        float[] addVertices = getFloatArrayFromBuffer(geometry.getVertices());
-        if (offset != null) {
-            for (int i = 0, j = addVertices.length; i < j; ++i) {
-                switch (axis) {
-                    case 0:
-                        addVertices[i] += offset.x;
-                        break;
-                    case 1:
-                        addVertices[i] += offset.y;
-                        break;
-                    case 2:
-                        addVertices[i] += offset.z;
-                        break;
-                }
-                ++axis;
-                if (axis > 2) {
-                    axis = 0;
+        final Matrix4 transform = offset == null ? null : new Matrix4().setTranslation(offset);
+        addFromGeometries(Collections.singletonList(geometry), Collections.singletonList(transform), createVBOs);
+    }
+
+    /**
+     * Appends several geometries to this geometry. The combined arrays are allocated once, so merging many meshes
+     * takes time proportional to the total number of vertices.
+     * <p>
+     * Positions are transformed with the given matrices and normals with their inverse transpose. Triangles of
+     * mirrored geometries are flipped so they keep facing outwards, which assumes the indices describe a triangle
+     * list. If only some of the geometries have normals or colors, the others get zero normals and white colors.
+     *
+     * @param geometries The geometries to append, in order.
+     * @param transforms The transformation for each geometry. Can be null, as can its elements.
+     * @param createVBOs {@code boolean} If true, create the VBOs immediately.
+     */
+    public void addFromGeometries(List<Geometry3D> geometries, List<Matrix4> transforms, boolean createVBOs) {
+        final float[] oldVertices = getFloatArrayFromBuffer((FloatBuffer) mBuffers.get(VERTEX_BUFFER_KEY).buffer);
+        final float[] oldNormals = getFloatArrayFromBuffer((FloatBuffer) mBuffers.get(NORMAL_BUFFER_KEY).buffer);
+        final float[] oldColors = getFloatArrayFromBuffer((FloatBuffer) mBuffers.get(COLOR_BUFFER_KEY).buffer);
+        final float[] oldTextureCoords = getFloatArrayFromBuffer((FloatBuffer) mBuffers.get(TEXTURE_BUFFER_KEY).buffer);
+        final int[] oldIndices = getIntArrayFromBuffer(mBuffers.get(INDEX_BUFFER_KEY).buffer);
+        final int oldVertexCount = oldVertices.length / 3;
+
+        //Size everything up front
+        int vertexCount = oldVertexCount;
+        int indexCount = oldIndices.length;
+        boolean hasNormals = oldNormals.length > 0;
+        boolean hasColors = oldColors.length > 0;
+        boolean hasTextureCoords = oldTextureCoords.length > 0;
+        for (int i = 0, j = geometries.size(); i < j; ++i) {
+            final Geometry3D geometry = geometries.get(i);
+            vertexCount += geometry.getNumVertices();
+            indexCount += geometry.getNumIndices();
+            hasNormals |= geometry.getNormals() != null && geometry.getNormals().capacity() > 0;
+            hasColors |= geometry.getColors() != null && geometry.getColors().capacity() > 0;
+            hasTextureCoords |= geometry.getTextureCoords() != null && geometry.getTextureCoords().capacity() > 0;
+        }
+
+        final float[] vertices = Arrays.copyOf(oldVertices, vertexCount * 3);
+        final float[] normals = hasNormals ? Arrays.copyOf(oldNormals, vertexCount * 3) : null;
+        final float[] colors = hasColors ? Arrays.copyOf(oldColors, vertexCount * 4) : null;
+        final float[] textureCoords = hasTextureCoords ? Arrays.copyOf(oldTextureCoords, vertexCount * 2) : null;
+        final int[] indices = Arrays.copyOf(oldIndices, indexCount);
+        if (hasColors) Arrays.fill(colors, oldColors.length, oldVertexCount * 4, 1);
+
+        int vertexOffset = oldVertexCount;
+        int indexOffset = oldIndices.length;
+        for (int i = 0, j = geometries.size(); i < j; ++i) {
+            final Geometry3D geometry = geometries.get(i);
+            final Matrix4 transform = transforms == null ? null : transforms.get(i);
+            final int count = geometry.getNumVertices();
+
+            final FloatBuffer addVertices = geometry.getVertices();
+            addVertices.rewind();
+            addVertices.get(vertices, vertexOffset * 3, count * 3);
+            addVertices.rewind();
+
+            final FloatBuffer addNormals = geometry.getNormals();
+            if (hasNormals && addNormals != null && addNormals.capacity() >= count * 3) {
+                addNormals.rewind();
+                addNormals.get(normals, vertexOffset * 3, count * 3);
+                addNormals.rewind();
+            }
+
+            final FloatBuffer addColors = geometry.getColors();
+            if (hasColors) {
+                if (addColors != null && addColors.capacity() >= count * 4) {
+                    addColors.rewind();
+                    addColors.get(colors, vertexOffset * 4, count * 4);
+                    addColors.rewind();
+                } else {
+                    Arrays.fill(colors, vertexOffset * 4, (vertexOffset + count) * 4, 1);
                 }
             }
-        }
-        float[] addNormals = getFloatArrayFromBuffer(geometry.getNormals());
-        float[] addColors = getFloatArrayFromBuffer(geometry.getColors());
-        float[] addTextureCoords = getFloatArrayFromBuffer(geometry.getTextureCoords());
-        int[] addIndices = getIntArrayFromBuffer(geometry.getIndices());
-        int index_offset = 0;
-        if (mVerticesArray != null) {
-            index_offset = (mVerticesArray.length / 3);
-        }
-        if (addIndices != null) {
-            for (int i = 0, j = addIndices.length; i < j; ++i) {
-                addIndices[i] += index_offset;
+
+            final FloatBuffer addTextureCoords = geometry.getTextureCoords();
+            if (hasTextureCoords && addTextureCoords != null && addTextureCoords.capacity() >= count * 2) {
+                addTextureCoords.rewind();
+                addTextureCoords.get(textureCoords, vertexOffset * 2, count * 2);
+                addTextureCoords.rewind();
             }
-        }
 
-        //Concatenate the old and new data
-        newVertices = concatAllFloat(mVerticesArray, addVertices);
-        newNormals = concatAllFloat(mNormalsArray, addNormals);
-        newColors = concatAllFloat(mColorsArray, addColors);
-        newTextureCoords = concatAllFloat(mTextureCoordsArray, addTextureCoords);
-        newIntIndices = concatAllInt(mIndicesArray, (int[]) addIndices);
+            final IntBuffer addIndices = geometry.getIndices();
+            final int numIndices = geometry.getNumIndices();
+            addIndices.rewind();
+            addIndices.get(indices, indexOffset, numIndices);
+            addIndices.rewind();
+            for (int k = indexOffset; k < indexOffset + numIndices; ++k) {
+                indices[k] += vertexOffset;
+            }
+
+            if (transform != null) {
+                transformVertices(transform, vertices, hasNormals ? normals : null, vertexOffset, count);
+                if (transform.determinant() < 0) {
+                    for (int k = indexOffset; k + 2 < indexOffset + numIndices; k += 3) {
+                        final int tmp = indices[k + 1];
+                        indices[k + 1] = indices[k + 2];
+                        indices[k + 2] = tmp;
+                    }
+                }
+            }
+
+            vertexOffset += count;
+            indexOffset += numIndices;
+        }
 
         //Set the new data
-        setVertices(newVertices, true);
-        setNormals(newNormals, true);
-        setTextureCoords(newTextureCoords, true);
-        setColors(newColors, true);
-        setIndices(newIntIndices, true);
+        setVertices(vertices, true);
+        if (hasNormals) setNormals(normals, true);
+        if (hasTextureCoords) setTextureCoords(textureCoords, true);
+        if (hasColors) setColors(colors, true);
+        setIndices(indices, true);
 
         if (createVBOs) {
             //Create the new buffers
@@ -336,6 +436,35 @@ public class Geometry3D {
         }
     }
 
+    private static void transformVertices(Matrix4 transform, float[] vertices, float[] normals, int first, int count) {
+        final double[] m = transform.getDoubleValues();
+        for (int i = first * 3, j = (first + count) * 3; i < j; i += 3) {
+            final double x = vertices[i];
+            final double y = vertices[i + 1];
+            final double z = vertices[i + 2];
+            vertices[i] = (float) (m[0] * x + m[4] * y + m[8] * z + m[12]);
+            vertices[i + 1] = (float) (m[1] * x + m[5] * y + m[9] * z + m[13]);
+            vertices[i + 2] = (float) (m[2] * x + m[6] * y + m[10] * z + m[14]);
+        }
+        if (normals == null) return;
+
+        // -- the normal matrix is the inverse transpose of the upper 3x3, n' = (M^-1)^T n
+        final double[] inv = transform.clone().inverse().getDoubleValues();
+        for (int i = first * 3, j = (first + count) * 3; i < j; i += 3) {
+            final double x = normals[i];
+            final double y = normals[i + 1];
+            final double z = normals[i + 2];
+            final double nx = inv[0] * x + inv[1] * y + inv[2] * z;
+            final double ny = inv[4] * x + inv[5] * y + inv[6] * z;
+            final double nz = inv[8] * x + inv[9] * y + inv[10] * z;
+            final double length = Math.sqrt(nx * nx + ny * ny + nz * nz);
+            final double scale = length > 0 ? 1.0 / length : 0;
+            normals[i] = (float) (nx * scale);
+            normals[i + 1] = (float) (ny * scale);
+            normals[i + 2] = (float) (nz * scale);
+        }
+    }
+
     /**
      * Sets the data. This methods takes two BufferInfo objects which means it'll use another
      * Geometry3D instance's data (vertices and normals). The remaining parameters are arrays
@@ -367,6 +496,7 @@ public class Geometry3D {
 
         mBuffers.add(VERTEX_BUFFER_KEY, vertexBufferInfo);
         mBuffers.add(NORMAL_BUFFER_KEY, normalBufferInfo);
+        invalidateVertexArrays();
 
         mOriginalGeometry = null;
 
@@ -470,6 +600,11 @@ public class Geometry3D {
      * Creates the actual Buffer objects.
      */
     public void createBuffers() {
+        if (mInterleaved) {
+            updateInterleavedLayout();
+        } else {
+            mInterleavedStride = 0;
+        }
 
         for (BufferInfo info : mBuffers) {
             if (info.buffer != null) {
@@ -490,15 +625,357 @@ public class Geometry3D {
                 }
             }
 
-            createBuffer(info);
+            if (!isInterleavedAttribute(info)) {
+                createBuffer(info);
+            }
+        }
+        if (mInterleaved) {
+            createInterleavedBuffer(getVertexBufferInfo().usage);
         }
 
-        GLES20.glBindBuffer(GLES20.GL_ELEMENT_ARRAY_BUFFER, 0);
-        GLES20.glBindBuffer(GLES20.GL_ARRAY_BUFFER, 0);
+        GLStateCache.getCurrent().bindBuffer(GLES20.GL_ELEMENT_ARRAY_BUFFER, 0);
+        GLStateCache.getCurrent().bindBuffer(GLES20.GL_ARRAY_BUFFER, 0);
 
         mHaveCreatedBuffers = true;
     }
 
+    /**
+     * Uploads positions, normals, texture coordinates and colors into a single buffer, one vertex after the other,
+     * instead of one buffer per attribute. All attributes of a vertex are then fetched from the same place and the
+     * attribute buffers only have to be bound once. Normals, texture coordinates and colors are part of the layout if
+     * there is data for every vertex when the buffers are created.
+     * <p>
+     * Takes effect when the buffers are created. If they already have been, they are converted right away, which
+     * has to happen on the GL thread. The vertex data stays available through {@link #getVertices()} and the other
+     * getters, and changes made with {@link #changeBufferData(BufferInfo, Buffer, int, int, boolean)} are applied to
+     * the interleaved buffer. Turning interleaving off also resets the vertex format to {@link VertexFormat#FLOAT}.
+     *
+     * @param interleaved Whether the attributes are interleaved.
+     *
+     * @see org.rajawali3d.util.GeometryInterleaver
+     */
+    public void setInterleaved(boolean interleaved) {
+        if (mInterleaved == interleaved) return;
+        mInterleaved = interleaved;
+        if (!interleaved) {
+            mVertexFormat = VertexFormat.FLOAT;
+        }
+        if (!mHaveCreatedBuffers || mOriginalGeometry != null) return;
+
+        final int usage = getVertexBufferInfo().usage;
+        if (interleaved) {
+            final int[] handles = getAttributeBufferHandles();
+            updateInterleavedLayout();
+            createInterleavedBuffer(usage);
+            deleteBuffers(handles);
+        } else {
+            final int handle = mInterleavedBufferInfo.bufferHandle;
+            final BufferInfo[] attributes = new BufferInfo[]{ getVertexBufferInfo(), getNormalBufferInfo(),
+                    getTexCoordBufferInfo(), getColorBufferInfo() };
+            for (BufferInfo info : attributes) {
+                if (isInterleavedAttribute(info)) {
+                    info.stride = 0;
+                    info.offset = 0;
+                    info.type = GLES20.GL_FLOAT;
+                    info.normalized = false;
+                    info.components = 0;
+                    createBuffer(info, BufferType.FLOAT_BUFFER, GLES20.GL_ARRAY_BUFFER, usage);
+                }
+            }
+            mInterleavedStride = 0;
+            mPositionOffset = null;
+            mPositionScale = null;
+            mInterleavedBufferInfo.bufferHandle = -1;
+            deleteBuffers(new int[]{ handle });
+            GLStateCache.getCurrent().bindBuffer(GLES20.GL_ARRAY_BUFFER, 0);
+        }
+    }
+
+    public boolean isInterleaved() {
+        return mInterleaved;
+    }
+
+    /**
+     * Stores the attributes in smaller encodings, see {@link VertexFormat}. A vertex with positions, normals, texture
+     * coordinates and colors takes 16 bytes with {@link VertexFormat#COMPACT} instead of 48. The encoded attributes
+     * are stored in the interleaved buffer, so a format other than {@link VertexFormat#FLOAT} turns on
+     * {@link #setInterleaved(boolean)}. Attributes whose data the format can't represent, such as texture
+     * coordinates outside of [0, 1], are stored as floats.
+     * <p>
+     * Quantized positions and octahedral normals are decoded by the vertex shader, objects pass the format to their
+     * material with {@link org.rajawali3d.materials.Material#setVertexFormat(VertexFormat)} when they are drawn. Like
+     * interleaving this takes effect when the buffers are created, or right away on the GL thread if they already
+     * have been.
+     *
+     * @param format The {@link VertexFormat}.
+     */
+    public void setVertexFormat(VertexFormat format) {
+        if (format == null) format = VertexFormat.FLOAT;
+        if (format.equals(mVertexFormat)) return;
+        mVertexFormat = format;
+        if (!mInterleaved) {
+            if (!format.isFloat()) setInterleaved(true);
+            return;
+        }
+        if (!mHaveCreatedBuffers || mOriginalGeometry != null) return;
+
+        final int handle = mInterleavedBufferInfo.bufferHandle;
+        updateInterleavedLayout();
+        createInterleavedBuffer(mInterleavedBufferInfo.usage);
+        deleteBuffers(new int[]{ handle });
+    }
+
+    public VertexFormat getVertexFormat() {
+        return mVertexFormat;
+    }
+
+    /**
+     * @return The offset which quantized positions are decoded with, see
+     * {@link VertexEncoder#getQuantization(FloatBuffer, int, float[], float[])}, or null if the positions of the
+     * buffer are not quantized.
+     */
+    public float[] getPositionOffset() {
+        if (mOriginalGeometry != null) {
+            return mOriginalGeometry.getPositionOffset();
+        }
+        return mPositionOffset;
+    }
+
+    /**
+     * @return The scale which quantized positions are decoded with, or null if the positions of the buffer are not
+     * quantized.
+     */
+    public float[] getPositionScale() {
+        if (mOriginalGeometry != null) {
+            return mOriginalGeometry.getPositionScale();
+        }
+        return mPositionScale;
+    }
+
+    /**
+     * @return The buffer which holds the interleaved attributes, see {@link #setInterleaved(boolean)}. Its stride is
+     * 0 while the attributes are not interleaved.
+     */
+    public BufferInfo getInterleavedBufferInfo() {
+        return mInterleavedBufferInfo;
+    }
+
+    /**
+     * Packs the attribute data of a range of vertices in the interleaved layout, see {@link #setInterleaved(boolean)},
+     * encoded as laid out by the vertex format. Attributes with missing data are filled with zeros.
+     *
+     * @param firstVertex The first vertex.
+     * @param vertexCount The number of vertices.
+     *
+     * @return A new {@link ByteBuffer} in native byte order with the interleaved data.
+     */
+    public ByteBuffer getInterleavedData(int firstVertex, int vertexCount) {
+        final ByteBuffer result = ByteBuffer.allocateDirect(vertexCount * mInterleavedStride)
+                .order(ByteOrder.nativeOrder());
+        VertexEncoder.encodePositions(mPositionEncoding, (FloatBuffer) getVertexBufferInfo().buffer, firstVertex,
+                vertexCount, mPositionOffset, mPositionScale, result, 0, mInterleavedStride);
+        if (mInterleavedNormalOffset >= 0) {
+            VertexEncoder.encodeNormals(mNormalEncoding, (FloatBuffer) getNormalBufferInfo().buffer, firstVertex,
+                    vertexCount, result, mInterleavedNormalOffset, mInterleavedStride);
+        }
+        if (mInterleavedTexCoordOffset >= 0) {
+            VertexEncoder.encodeTextureCoords(mTextureCoordEncoding, (FloatBuffer) getTexCoordBufferInfo().buffer,
+                    firstVertex, vertexCount, result, mInterleavedTexCoordOffset, mInterleavedStride);
+        }
+        if (mInterleavedColorOffset >= 0) {
+            VertexEncoder.encodeColors(mColorEncoding, (FloatBuffer) getColorBufferInfo().buffer, firstVertex,
+                    vertexCount, result, mInterleavedColorOffset, mInterleavedStride);
+        }
+        return result;
+    }
+
+    private void updateInterleavedLayout() {
+        final FloatBuffer vertices = (FloatBuffer) getVertexBufferInfo().buffer;
+        mPositionEncoding = mVertexFormat.getPositions();
+        if (mPositionEncoding == VertexFormat.PositionEncoding.HALF_FLOAT && (Capabilities.getGLESMajorVersion() < 3
+                || (vertices != null && !(VertexEncoder.getMaxMagnitude(vertices, 0, mNumVertices * 3)
+                <= VertexEncoder.HALF_FLOAT_MAX)))) {
+            mPositionEncoding = VertexFormat.PositionEncoding.FLOAT;
+        }
+        mPositionOffset = null;
+        mPositionScale = null;
+        if (mPositionEncoding == VertexFormat.PositionEncoding.QUANTIZED) {
+            mPositionOffset = new float[3];
+            mPositionScale = new float[3];
+            VertexEncoder.getQuantization(vertices, mNumVertices, mPositionOffset, mPositionScale);
+        }
+        int stride = mPositionEncoding.mSize;
+
+        mInterleavedNormalOffset = -1;
+        mInterleavedTexCoordOffset = -1;
+        mInterleavedColorOffset = -1;
+        if (mHasNormals && hasDataForAllVertices(getNormalBufferInfo(), 3)) {
+            mNormalEncoding = mVertexFormat.getNormals();
+            mInterleavedNormalOffset = stride;
+            stride += mNormalEncoding.mSize;
+        }
+        if (mHasTextureCoordinates && hasDataForAllVertices(getTexCoordBufferInfo(), 2)) {
+            mTextureCoordEncoding = mVertexFormat.getTextureCoords();
+            if (mTextureCoordEncoding != VertexFormat.TextureCoordEncoding.FLOAT && !VertexEncoder.isInUnitRange(
+                    (FloatBuffer) getTexCoordBufferInfo().buffer, 0, mNumVertices * 2)) {
+                mTextureCoordEncoding = VertexFormat.TextureCoordEncoding.FLOAT;
+            }
+            mInterleavedTexCoordOffset = stride;
+            stride += mTextureCoordEncoding.mSize;
+        }
+        if (hasDataForAllVertices(getColorBufferInfo(), 4)) {
+            mColorEncoding = mVertexFormat.getColors();
+            if (mColorEncoding != VertexFormat.ColorEncoding.FLOAT && !VertexEncoder.isInUnitRange(
+                    (FloatBuffer) getColorBufferInfo().buffer, 0, mNumVertices * 4)) {
+                mColorEncoding = VertexFormat.ColorEncoding.FLOAT;
+            }
+            mInterleavedColorOffset = stride;
+            stride += mColorEncoding.mSize;
+        }
+        mInterleavedStride = stride;
+    }
+
+    private boolean hasDataForAllVertices(BufferInfo info, int components) {
+        return info != null && info.buffer instanceof FloatBuffer && info.buffer.limit() >= mNumVertices * components;
+    }
+
+    /**
+     * Creates the interleaved buffer and points the attributes which are part of the layout at it.
+     */
+    private void createInterleavedBuffer(int usage) {
+        mInterleavedBufferInfo.buffer = getInterleavedData(0, mNumVertices);
+        createBuffer(mInterleavedBufferInfo, BufferType.BYTE_BUFFER, GLES20.GL_ARRAY_BUFFER, usage);
+        mInterleavedBufferInfo.buffer = null;
+        mInterleavedBufferInfo.stride = mInterleavedStride;
+        pointAtInterleavedBuffer();
+    }
+
+    private void pointAtInterleavedBuffer() {
+        pointAtInterleavedBuffer(getVertexBufferInfo(), 0, mPositionEncoding.mType, mPositionEncoding.mComponents,
+                mPositionEncoding.mNormalized);
+        pointAtInterleavedBuffer(getNormalBufferInfo(), mInterleavedNormalOffset, mNormalEncoding.mType,
+                mNormalEncoding.mComponents, mNormalEncoding.mNormalized);
+        pointAtInterleavedBuffer(getTexCoordBufferInfo(), mInterleavedTexCoordOffset, mTextureCoordEncoding.mType,
+                mTextureCoordEncoding.mComponents, mTextureCoordEncoding.mNormalized);
+        pointAtInterleavedBuffer(getColorBufferInfo(), mInterleavedColorOffset, mColorEncoding.mType,
+                mColorEncoding.mComponents, mColorEncoding.mNormalized);
+    }
+
+    private void pointAtInterleavedBuffer(BufferInfo info, int offset, int type, int components,
+                                          boolean normalized) {
+        if (offset < 0) return;
+        info.bufferHandle = mInterleavedBufferInfo.bufferHandle;
+        info.bufferType = BufferType.FLOAT_BUFFER;
+        info.byteSize = FLOAT_SIZE_BYTES;
+        info.type = type;
+        info.normalized = normalized;
+        info.components = components;
+        info.usage = mInterleavedBufferInfo.usage;
+        info.stride = mInterleavedBufferInfo.stride;
+        info.offset = offset;
+    }
+
+    private boolean isInterleavedAttribute(BufferInfo info) {
+        if (mInterleavedStride == 0 || info == null) return false;
+        return info == getVertexBufferInfo()
+                || (mInterleavedNormalOffset >= 0 && info == getNormalBufferInfo())
+                || (mInterleavedTexCoordOffset >= 0 && info == getTexCoordBufferInfo())
+                || (mInterleavedColorOffset >= 0 && info == getColorBufferInfo());
+    }
+
+    private int getInterleavedComponents(BufferInfo info) {
+        if (info == getVertexBufferInfo() || info == getNormalBufferInfo()) return 3;
+        return info == getTexCoordBufferInfo() ? 2 : 4;
+    }
+
+    /**
+     * @return Whether changed values of an interleaved attribute can be stored in its current encoding.
+     */
+    private boolean fitsInterleavedEncoding(BufferInfo info, int index, int size) {
+        final FloatBuffer data = (FloatBuffer) info.buffer;
+        if (info == getVertexBufferInfo()) {
+            if (mPositionEncoding == VertexFormat.PositionEncoding.QUANTIZED) {
+                return VertexEncoder.isInQuantization(data, index - index % 3, size + index % 3, mPositionOffset,
+                        mPositionScale);
+            }
+            return mPositionEncoding != VertexFormat.PositionEncoding.HALF_FLOAT
+                    || VertexEncoder.getMaxMagnitude(data, index, size) <= VertexEncoder.HALF_FLOAT_MAX;
+        } else if (info == getTexCoordBufferInfo()) {
+            return mTextureCoordEncoding == VertexFormat.TextureCoordEncoding.FLOAT
+                    || VertexEncoder.isInUnitRange(data, index, size);
+        } else if (info == getColorBufferInfo()) {
+            return mColorEncoding == VertexFormat.ColorEncoding.FLOAT || VertexEncoder.isInUnitRange(data, index, size);
+        }
+        return true;
+    }
+
+    /**
+     * Applies a change of an attribute which is part of the interleaved buffer, only uploading the vertices it
+     * covers. If the change doesn't fit the current encodings, for instance because positions moved out of the
+     * quantization bounds, the whole buffer is laid out and uploaded again.
+     */
+    private void changeInterleavedData(BufferInfo bufferInfo, Buffer newData, int index, int size,
+                                       boolean resizeBuffer) {
+        final FloatBuffer data = (FloatBuffer) newData;
+        final GLStateCache cache = GLStateCache.getCurrent();
+        boolean relayout = resizeBuffer || bufferInfo.buffer == null || bufferInfo.buffer.capacity() < index + size;
+        if (relayout) {
+            // The data replaces the attribute, which may change the size of the whole buffer
+            bufferInfo.buffer = data;
+        } else {
+            final FloatBuffer target = (FloatBuffer) bufferInfo.buffer;
+            if (data != target) {
+                for (int i = 0; i < size; ++i) {
+                    target.put(index + i, data.get(i));
+                }
+            }
+            relayout = !fitsInterleavedEncoding(bufferInfo, index, size);
+        }
+
+        if (relayout) {
+            updateInterleavedLayout();
+            final ByteBuffer interleaved = getInterleavedData(0, mNumVertices);
+            cache.bindBuffer(GLES20.GL_ARRAY_BUFFER, mInterleavedBufferInfo.bufferHandle);
+            GLES20.glBufferData(GLES20.GL_ARRAY_BUFFER, interleaved.capacity(), interleaved,
+                    mInterleavedBufferInfo.usage);
+            mInterleavedBufferInfo.stride = mInterleavedStride;
+            pointAtInterleavedBuffer();
+            invalidateVertexArrays();
+        } else {
+            final int components = getInterleavedComponents(bufferInfo);
+            final int first = index / components;
+            final int last = Math.min(mNumVertices, (index + size + components - 1) / components);
+            if (last <= first) return;
+            final ByteBuffer interleaved = getInterleavedData(first, last - first);
+            cache.bindBuffer(GLES20.GL_ARRAY_BUFFER, mInterleavedBufferInfo.bufferHandle);
+            GLES20.glBufferSubData(GLES20.GL_ARRAY_BUFFER, first * mInterleavedStride, interleaved.capacity(),
+                    interleaved);
+        }
+        cache.bindBuffer(GLES20.GL_ARRAY_BUFFER, 0);
+    }
+
+    /**
+     * @return The distinct handles of the position, normal, texture coordinate and color buffers.
+     */
+    private int[] getAttributeBufferHandles() {
+        final int[] handles = new int[]{ getVertexBufferInfo().bufferHandle, getNormalBufferInfo().bufferHandle,
+                getTexCoordBufferInfo().bufferHandle, getColorBufferInfo().bufferHandle };
+        for (int i = 1; i < handles.length; ++i) {
+            for (int j = 0; j < i; ++j) {
+                if (handles[j] == handles[i]) handles[i] = 0;
+            }
+        }
+        return handles;
+    }
+
+    private static void deleteBuffers(int[] handles) {
+        GLES20.glDeleteBuffers(handles.length, handles, 0);
+        final GLStateCache cache = GLStateCache.getCurrent();
+        for (int handle : handles) {
+            if (handle > 0) cache.onBufferDeleted(handle);
+        }
+    }
+
     /**
      * Reload is typically called whenever the OpenGL context needs to be restored.
      * All buffer data is re-uploaded and a new handle is obtained.
@@ -538,8 +1015,8 @@ public class Geometry3D {
         createBuffer(mBuffers.get(VERTEX_BUFFER_KEY), BufferType.FLOAT_BUFFER, GLES20.GL_ARRAY_BUFFER);
         createBuffer(mBuffers.get(NORMAL_BUFFER_KEY), BufferType.FLOAT_BUFFER, GLES20.GL_ARRAY_BUFFER);
 
-        GLES20.glBindBuffer(GLES20.GL_ELEMENT_ARRAY_BUFFER, 0);
-        GLES20.glBindBuffer(GLES20.GL_ARRAY_BUFFER, 0);
+        GLStateCache.getCurrent().bindBuffer(GLES20.GL_ELEMENT_ARRAY_BUFFER, 0);
+        GLStateCache.getCurrent().bindBuffer(GLES20.GL_ARRAY_BUFFER, 0);
     }
 
     /**
@@ -562,6 +1039,16 @@ public class Geometry3D {
      * @param usage
      */
     public void createBuffer(BufferInfo bufferInfo, BufferType type, int target, int usage) {
+        Buffer buffer = bufferInfo.buffer;
+        if (target == GLES20.GL_ELEMENT_ARRAY_BUFFER && buffer instanceof IntBuffer) {
+            if (mUseShortIndices && mNumVertices <= MAX_SHORT_INDEX_VERTICES) {
+                buffer = toShortBuffer((IntBuffer) buffer);
+                type = BufferType.SHORT_BUFFER;
+            } else {
+                type = BufferType.INT_BUFFER;
+            }
+        }
+
         int byteSize = FLOAT_SIZE_BYTES;
         if (type == BufferType.SHORT_BUFFER) {
             byteSize = SHORT_SIZE_BYTES;
@@ -578,19 +1065,46 @@ public class Geometry3D {
 
         int handle = buff[0];
 
-        final Buffer buffer = bufferInfo.buffer;
-
         if (buffer != null) {
             buffer.rewind();
-            GLES20.glBindBuffer(target, handle);
+            GLStateCache.getCurrent().bindBuffer(target, handle);
             GLES20.glBufferData(target, buffer.capacity() * byteSize, buffer, usage);
-            GLES20.glBindBuffer(target, 0);
+            GLStateCache.getCurrent().bindBuffer(target, 0);
         }
 
         bufferInfo.bufferHandle = handle;
         bufferInfo.bufferType = type;
         bufferInfo.target = target;
         bufferInfo.usage = usage;
+        invalidateVertexArrays();
+    }
+
+    private static ShortBuffer toShortBuffer(IntBuffer indices) {
+        indices.rewind();
+        final ShortBuffer result = ByteBuffer.allocateDirect(indices.capacity() * SHORT_SIZE_BYTES)
+                .order(ByteOrder.nativeOrder()).asShortBuffer();
+        while (indices.hasRemaining()) {
+            result.put((short) indices.get());
+        }
+        indices.rewind();
+        result.position(0);
+        return result;
+    }
+
+    /**
+     * Uploads the indices as unsigned shorts when there are no more than {@link #MAX_SHORT_INDEX_VERTICES} vertices,
+     * which halves the size of the index buffer. On by default. The indices are kept as integers in memory, so this
+     * takes effect the next time the buffers are created. Index data changed with
+     * {@link #changeBufferData(BufferInfo, Buffer, int, int, boolean)} is converted to shorts as well.
+     *
+     * @param useShortIndices
+     */
+    public void setUseShortIndices(boolean useShortIndices) {
+        mUseShortIndices = useShortIndices;
+    }
+
+    public boolean isUsingShortIndices() {
+        return mUseShortIndices;
     }
 
     public void createBuffer(BufferInfo bufferInfo) {
@@ -666,7 +1180,15 @@ public class Geometry3D {
      * @param usage
      */
     public void changeBufferUsage(BufferInfo bufferInfo, final int usage) {
+        if (isInterleavedAttribute(bufferInfo)) {
+            // The usage applies to the whole interleaved buffer
+            final int handle = mInterleavedBufferInfo.bufferHandle;
+            createInterleavedBuffer(usage);
+            deleteBuffers(new int[]{ handle });
+            return;
+        }
         GLES20.glDeleteBuffers(1, new int[]{ bufferInfo.bufferHandle }, 0);
+        GLStateCache.getCurrent().onBufferDeleted(bufferInfo.bufferHandle);
         createBuffer(bufferInfo, bufferInfo.bufferType, bufferInfo.target, usage);
     }
 
@@ -716,15 +1238,26 @@ public class Geometry3D {
      */
     public void changeBufferData(BufferInfo bufferInfo, Buffer newData, int index, int size, boolean resizeBuffer) {
         newData.rewind();
+        if (isInterleavedAttribute(bufferInfo)) {
+            changeInterleavedData(bufferInfo, newData, index, size, resizeBuffer);
+            return;
+        }
 
-        GLES20.glBindBuffer(bufferInfo.target, bufferInfo.bufferHandle);
+        Buffer uploadData = newData;
+        if (bufferInfo.bufferType == BufferType.SHORT_BUFFER && newData instanceof IntBuffer) {
+            // Indices which are uploaded as unsigned shorts, see setUseShortIndices()
+            uploadData = toShortBuffer((IntBuffer) newData);
+        }
+
+        GLStateCache.getCurrent().bindBuffer(bufferInfo.target, bufferInfo.bufferHandle);
         if (resizeBuffer) {
             bufferInfo.buffer = newData;
-            GLES20.glBufferData(bufferInfo.target, size * bufferInfo.byteSize, newData, bufferInfo.usage);
+            GLES20.glBufferData(bufferInfo.target, size * bufferInfo.byteSize, uploadData, bufferInfo.usage);
         } else {
-            GLES20.glBufferSubData(bufferInfo.target, index * bufferInfo.byteSize, size * bufferInfo.byteSize, newData);
+            GLES20.glBufferSubData(bufferInfo.target, index * bufferInfo.byteSize, size * bufferInfo.byteSize,
+                    uploadData);
         }
-        GLES20.glBindBuffer(bufferInfo.target, 0);
+        GLStateCache.getCurrent().bindBuffer(bufferInfo.target, 0);
     }
 
     public void setVertices(float[] vertices) {
@@ -926,14 +1459,16 @@ public class Geometry3D {
         }
         colorInfo.buffer.position(0);
 
-        if (createNewBuffer) {
+        if (isInterleavedAttribute(colorInfo)) {
+            changeInterleavedData(colorInfo, colorInfo.buffer, 0, colorInfo.buffer.limit(), false);
+        } else if (createNewBuffer) {
             createBuffer(colorInfo, BufferType.FLOAT_BUFFER, GLES20.GL_ARRAY_BUFFER);
         } else {
-            GLES20.glBindBuffer(GLES20.GL_ARRAY_BUFFER, colorInfo.bufferHandle);
+            GLStateCache.getCurrent().bindBuffer(GLES20.GL_ARRAY_BUFFER, colorInfo.bufferHandle);
             GLES20.glBufferData(GLES20.GL_ARRAY_BUFFER, colorInfo.buffer.limit() * FLOAT_SIZE_BYTES, colorInfo.buffer,
                                 GLES20.GL_STATIC_DRAW);
         }
-        GLES20.glBindBuffer(GLES20.GL_ARRAY_BUFFER, 0);
+        GLStateCache.getCurrent().bindBuffer(GLES20.GL_ARRAY_BUFFER, 0);
     }
 
     public String toString() {
@@ -983,9 +1518,19 @@ public class Geometry3D {
                 info.buffer = null;
             }
         }
+        invalidateVertexArrays();
+        // Interleaved attributes share a handle, GL ignores handles which have already been deleted
         GLES20.glDeleteBuffers(buffers.length, buffers, 0);
+        final GLStateCache cache = GLStateCache.getCurrent();
+        for (int buffer : buffers) {
+            cache.onBufferDeleted(buffer);
+        }
 
         mOriginalGeometry = null;
+        mInterleavedStride = 0;
+        mPositionOffset = null;
+        mPositionScale = null;
+        mInterleavedBufferInfo.bufferHandle = -1;
 
         mBuffers.clear();
     }
@@ -1030,6 +1575,7 @@ public class Geometry3D {
 
     public void setVertexBufferInfo(BufferInfo vertexBufferInfo) {
         mBuffers.add(VERTEX_BUFFER_KEY, vertexBufferInfo);
+        invalidateVertexArrays();
     }
 
     public BufferInfo getIndexBufferInfo() {
@@ -1038,6 +1584,7 @@ public class Geometry3D {
 
     public void setIndexBufferInfo(BufferInfo indexBufferInfo) {
         mBuffers.add(INDEX_BUFFER_KEY, indexBufferInfo);
+        invalidateVertexArrays();
     }
 
     public BufferInfo getTexCoordBufferInfo() {
@@ -1046,6 +1593,7 @@ public class Geometry3D {
 
     public void setTexCoordBufferInfo(BufferInfo texCoordBufferInfo) {
         mBuffers.add(TEXTURE_BUFFER_KEY, texCoordBufferInfo);
+        invalidateVertexArrays();
         this.mHasTextureCoordinates = true;
     }
 
@@ -1055,6 +1603,7 @@ public class Geometry3D {
 
     public void setColorBufferInfo(BufferInfo colorBufferInfo) {
         mBuffers.add(COLOR_BUFFER_KEY, colorBufferInfo);
+        invalidateVertexArrays();
     }
 
     public BufferInfo getNormalBufferInfo() {
@@ -1063,9 +1612,26 @@ public class Geometry3D {
 
     public void setNormalBufferInfo(BufferInfo normalBufferInfo) {
         mBuffers.add(NORMAL_BUFFER_KEY, normalBufferInfo);
+        invalidateVertexArrays();
         this.mHasNormals = true;
     }
 
+    /**
+     * @return The {@link VertexArrayCache} of this geometry.
+     */
+    public VertexArrayCache getVertexArrays() {
+        return mVertexArrays;
+    }
+
+    /**
+     * Deletes the vertex arrays of this geometry, so they are set up again the next time it is drawn. Has to be
+     * called when buffer handles, types, strides or offsets are changed directly on the {@link BufferInfo} objects,
+     * the methods of this class do so themselves.
+     */
+    public void invalidateVertexArrays() {
+        mVertexArrays.invalidate();
+    }
+
     public int getNumTriangles() {
         final Buffer vertBuffer = mBuffers.get(VERTEX_BUFFER_KEY).buffer;
         return vertBuffer != null ? vertBuffer.limit() / 9 : 0;
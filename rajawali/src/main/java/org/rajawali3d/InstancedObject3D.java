@@ -0,0 +1,527 @@
+/**
+ * Copyright 2013 Dennis Ippel
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package org.rajawali3d;
+
+import android.opengl.GLES20;
+import android.opengl.GLES30;
+import org.rajawali3d.Geometry3D.BufferType;
+import org.rajawali3d.bounds.BoundingBox;
+import org.rajawali3d.cameras.Camera;
+import org.rajawali3d.cameras.Frustum;
+import org.rajawali3d.materials.Material;
+import org.rajawali3d.materials.plugins.IMaterialPlugin;
+import org.rajawali3d.materials.plugins.InstancingMaterialPlugin;
+import org.rajawali3d.math.Matrix4;
+import org.rajawali3d.math.Quaternion;
+import org.rajawali3d.math.vector.Vector3;
+import org.rajawali3d.renderer.GLStateCache;
+import org.rajawali3d.renderer.RenderDirtyTracker;
+import org.rajawali3d.util.Capabilities;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.FloatBuffer;
+
+import static org.rajawali3d.materials.shaders.fragments.instancing.InstancingVertexShaderFragment.COLOR_OFFSET;
+import static org.rajawali3d.materials.shaders.fragments.instancing.InstancingVertexShaderFragment.DATA_OFFSET;
+import static org.rajawali3d.materials.shaders.fragments.instancing.InstancingVertexShaderFragment.INSTANCE_STRIDE;
+import static org.rajawali3d.materials.shaders.fragments.instancing.InstancingVertexShaderFragment.MATRIX_OFFSET;
+
+/**
+ * Draws many copies of the same geometry with a single {@link Geometry3D}. Every instance has its own model matrix,
+ * which is applied before this object's own transformation, a color which is multiplied with the material color and
+ * a custom vec4 which shader fragments can read from the global {@code gInstanceData}.
+ *
+ * On OpenGL ES 3.0 all visible instances are drawn with one call to {@link GLES30#glDrawElementsInstanced} and the
+ * per instance values are read from a vertex buffer with an attribute divisor of 1. OpenGL ES 2.0 has no instanced
+ * draw calls, so the geometry is replicated a fixed number of times and the per instance values are uploaded to
+ * uniform arrays, drawing one batch of instances per call.
+ *
+ * Instances outside the camera's frustum are skipped each frame and the remaining ones are compacted before they
+ * are uploaded. The bounding box of this object covers all instances, so it is culled as a whole as well.
+ *
+ * The {@link InstancingMaterialPlugin} is added to the material, so the material can't be shared with objects which
+ * are not instanced. Normals are transformed with the instance matrix, so instances should be scaled uniformly for
+ * correct lighting.
+ *
+ * <pre>
+ * InstancedObject3D trees = new InstancedObject3D(treeModel);
+ * trees.setMaterial(treeMaterial);
+ * for (int i = 0; i &lt; 1000; ++i) {
+ *     int index = trees.addInstance();
+ *     trees.setInstanceTransform(index, positions[i], Quaternion.getIdentity(), Vector3.ONE);
+ * }
+ * getCurrentScene().addChild(trees);
+ * </pre>
+ */
+public class InstancedObject3D extends Object3D {
+
+	/**
+	 * The number of instances per draw call when falling back to uniform arrays on OpenGL ES 2.0. Every instance
+	 * takes six vec4 uniforms, 16 instances stay well within the 128 vertex uniform vectors every device supports.
+	 */
+	public static final int DEFAULT_BATCH_SIZE = 16;
+
+	private static final int MAX_BATCH_VERTICES = 65535;
+
+	private final int mBatchSize;
+	private final int mSourceIndexCount;
+	private final BoundingBox mSourceBounds;
+
+	private InstancingMaterialPlugin mMaterialPlugin;
+	private InstancingMaterialPlugin mActivePlugin;
+
+	private float[] mInstances = new float[INSTANCE_STRIDE * 16];
+	private int mInstanceCount;
+	private float[] mVisibleInstances = new float[INSTANCE_STRIDE * 16];
+	private int mVisibleCount;
+	private boolean mInstanceCulling = true;
+	private boolean mBoundsDirty = true;
+
+	private BufferInfo mInstanceBufferInfo;
+	private FloatBuffer mInstanceBuffer;
+	private BufferInfo mInstanceIndexBufferInfo;
+
+	private float[] mBatchMatrices;
+	private float[] mBatchColors;
+	private float[] mBatchData;
+
+	private final float[] mScratchMatrix = new float[16];
+	private final Matrix4 mScratchMatrix4 = new Matrix4();
+	private final double[] mWorld = new double[16];
+	private final Vector3 mMin = new Vector3();
+	private final Vector3 mMax = new Vector3();
+
+	/**
+	 * Creates an instanced copy of the source object's geometry. Uses hardware instancing when OpenGL ES 3.0 is
+	 * available and batches of {@link #DEFAULT_BATCH_SIZE} instances otherwise.
+	 *
+	 * @param source The object whose geometry is drawn for every instance. Its children are ignored.
+	 */
+	public InstancedObject3D(Object3D source) {
+		this(source, Capabilities.getGLESMajorVersion() >= 3 ? 0 : DEFAULT_BATCH_SIZE);
+	}
+
+	/**
+	 * Creates an instanced copy of the source object's geometry.
+	 *
+	 * @param source The object whose geometry is drawn for every instance. Its children are ignored.
+	 * @param batchSize The number of instances per draw call for the OpenGL ES 2.0 fallback, 0 to use hardware
+	 *                  instancing. Reduced if the replicated geometry would exceed 65535 vertices.
+	 */
+	public InstancedObject3D(Object3D source, int batchSize) {
+		super(source.getName());
+		final Geometry3D geometry = source.getGeometry();
+		final float[] vertices = Geometry3D.getFloatArrayFromBuffer(geometry.getVertices());
+		final float[] normals = geometry.hasNormals() ? Geometry3D.getFloatArrayFromBuffer(geometry.getNormals()) : null;
+		final float[] textureCoords = geometry.hasTextureCoordinates()
+				? Geometry3D.getFloatArrayFromBuffer(geometry.getTextureCoords()) : null;
+		final float[] colors = geometry.getColors() != null
+				? Geometry3D.getFloatArrayFromBuffer(geometry.getColors()) : null;
+		final int[] indices = Geometry3D.getIntArrayFromBuffer(geometry.getIndices());
+		final int numVertices = vertices.length / 3;
+
+		mSourceIndexCount = indices.length;
+		mSourceBounds = new BoundingBox(geometry);
+
+		if (batchSize > 0) {
+			mBatchSize = Math.max(1, Math.min(batchSize, MAX_BATCH_VERTICES / Math.max(1, numVertices)));
+			final float[] instanceIndices = new float[numVertices * mBatchSize];
+			final int[] batchIndices = new int[indices.length * mBatchSize];
+			for (int i = 0; i < mBatchSize; ++i) {
+				for (int j = 0; j < numVertices; ++j) {
+					instanceIndices[i * numVertices + j] = i;
+				}
+				for (int j = 0; j < indices.length; ++j) {
+					batchIndices[i * indices.length + j] = indices[j] + i * numVertices;
+				}
+			}
+			mGeometry.setData(replicate(vertices, mBatchSize), replicate(normals, mBatchSize),
+					replicate(textureCoords, mBatchSize), replicate(colors, mBatchSize), batchIndices, false);
+
+			final FloatBuffer instanceIndexBuffer = ByteBuffer.allocateDirect(instanceIndices.length * 4)
+					.order(ByteOrder.nativeOrder()).asFloatBuffer();
+			instanceIndexBuffer.put(instanceIndices).position(0);
+			mInstanceIndexBufferInfo = new BufferInfo(BufferType.FLOAT_BUFFER, instanceIndexBuffer);
+			mBatchMatrices = new float[16 * mBatchSize];
+			mBatchColors = new float[4 * mBatchSize];
+			mBatchData = new float[4 * mBatchSize];
+		} else {
+			mBatchSize = 0;
+			mGeometry.setData(vertices, normals, textureCoords, colors, indices, false);
+			mInstanceBuffer = ByteBuffer.allocateDirect(mVisibleInstances.length * 4)
+					.order(ByteOrder.nativeOrder()).asFloatBuffer();
+			mInstanceBufferInfo = new BufferInfo(BufferType.FLOAT_BUFFER, mInstanceBuffer);
+		}
+
+		mIsContainerOnly = false;
+		mDrawingMode = source.getDrawingMode();
+		mGeometry.setBoundingBox(new BoundingBox(new Vector3(), new Vector3()));
+	}
+
+	private static float[] replicate(float[] data, int count) {
+		if (data == null) return null;
+		final float[] result = new float[data.length * count];
+		for (int i = 0; i < count; ++i) {
+			System.arraycopy(data, 0, result, i * data.length, data.length);
+		}
+		return result;
+	}
+
+	/**
+	 * @return The number of instances per draw call when using uniform arrays, 0 when using hardware instancing.
+	 */
+	public int getBatchSize() {
+		return mBatchSize;
+	}
+
+	/**
+	 * Adds an instance with an identity transformation, a white color and a zero custom vector.
+	 *
+	 * @return The index of the new instance
+	 */
+	public int addInstance() {
+		final int index = mInstanceCount;
+		if ((index + 1) * INSTANCE_STRIDE > mInstances.length) {
+			final float[] instances = new float[mInstances.length * 2];
+			System.arraycopy(mInstances, 0, instances, 0, mInstanceCount * INSTANCE_STRIDE);
+			mInstances = instances;
+		}
+		final int offset = index * INSTANCE_STRIDE;
+		for (int i = 0; i < INSTANCE_STRIDE; ++i) {
+			mInstances[offset + i] = 0;
+		}
+		for (int i = 0; i < 4; ++i) {
+			mInstances[offset + MATRIX_OFFSET + i * 5] = 1;
+			mInstances[offset + COLOR_OFFSET + i] = 1;
+		}
+		++mInstanceCount;
+		markBoundsDirty();
+		return index;
+	}
+
+	/**
+	 * Adds an instance with the given transformation.
+	 *
+	 * @param matrix The instance's model matrix, applied before this object's model matrix
+	 * @return The index of the new instance
+	 */
+	public int addInstance(Matrix4 matrix) {
+		final int index = addInstance();
+		setInstanceMatrix(index, matrix);
+		return index;
+	}
+
+	/**
+	 * Removes an instance. The last instance takes its place, so its index changes to the removed index.
+	 *
+	 * @param index
+	 */
+	public void removeInstance(int index) {
+		checkIndex(index);
+		final int last = mInstanceCount - 1;
+		if (index != last) {
+			System.arraycopy(mInstances, last * INSTANCE_STRIDE, mInstances, index * INSTANCE_STRIDE, INSTANCE_STRIDE);
+		}
+		--mInstanceCount;
+		markBoundsDirty();
+	}
+
+	public void clearInstances() {
+		mInstanceCount = 0;
+		markBoundsDirty();
+	}
+
+	public int getInstanceCount() {
+		return mInstanceCount;
+	}
+
+	public void setInstanceMatrix(int index, Matrix4 matrix) {
+		checkIndex(index);
+		matrix.toFloatArray(mScratchMatrix);
+		System.arraycopy(mScratchMatrix, 0, mInstances, index * INSTANCE_STRIDE + MATRIX_OFFSET, 16);
+		markBoundsDirty();
+	}
+
+	public void setInstanceTransform(int index, Vector3 position, Quaternion orientation, Vector3 scale) {
+		setInstanceMatrix(index, mScratchMatrix4.setAll(position, scale, orientation));
+	}
+
+	/**
+	 * @param index
+	 * @param color An ARGB color
+	 */
+	public void setInstanceColor(int index, int color) {
+		setInstanceColor(index, ((color >> 16) & 0xff) / 255f, ((color >> 8) & 0xff) / 255f, (color & 0xff) / 255f,
+				((color >>> 24) & 0xff) / 255f);
+	}
+
+	public void setInstanceColor(int index, float r, float g, float b, float a) {
+		checkIndex(index);
+		RenderDirtyTracker.markSceneChanged();
+		final int offset = index * INSTANCE_STRIDE + COLOR_OFFSET;
+		mInstances[offset] = r;
+		mInstances[offset + 1] = g;
+		mInstances[offset + 2] = b;
+		mInstances[offset + 3] = a;
+	}
+
+	/**
+	 * Sets the custom vector of an instance, available to shader fragments as {@code gInstanceData}.
+	 */
+	public void setInstanceData(int index, float x, float y, float z, float w) {
+		checkIndex(index);
+		RenderDirtyTracker.markSceneChanged();
+		final int offset = index * INSTANCE_STRIDE + DATA_OFFSET;
+		mInstances[offset] = x;
+		mInstances[offset + 1] = y;
+		mInstances[offset + 2] = z;
+		mInstances[offset + 3] = w;
+	}
+
+	private void checkIndex(int index) {
+		if (index < 0 || index >= mInstanceCount)
+			throw new IndexOutOfBoundsException("Instance " + index + " of " + mInstanceCount);
+	}
+
+	/**
+	 * Enables or disables the per instance frustum test. When disabled, all instances are drawn whenever the
+	 * object itself is in the frustum.
+	 *
+	 * @param enabled
+	 */
+	public void setInstanceCulling(boolean enabled) {
+		mInstanceCulling = enabled;
+	}
+
+	public boolean isInstanceCulling() {
+		return mInstanceCulling;
+	}
+
+	/**
+	 * @return The number of instances drawn in the last frame
+	 */
+	public int getVisibleInstanceCount() {
+		return mVisibleCount;
+	}
+
+	/**
+	 * The compacted values of the visible instances, {@link #getVisibleInstanceCount()} times
+	 * {@link org.rajawali3d.materials.shaders.fragments.instancing.InstancingVertexShaderFragment#INSTANCE_STRIDE}
+	 * floats. Only valid until the next frame.
+	 */
+	public float[] getVisibleInstanceData() {
+		return mVisibleInstances;
+	}
+
+	private void markBoundsDirty() {
+		mBoundsDirty = true;
+		// -- the scene graph has to re-evaluate where this object belongs
+		markModelMatrixDirty();
+	}
+
+	/**
+	 * Returns a bounding box in object space which contains all instances.
+	 */
+	@Override
+	public BoundingBox getBoundingBox() {
+		final BoundingBox bounds = mGeometry.getBoundingBox();
+		if (mBoundsDirty) {
+			mBoundsDirty = false;
+			if (mInstanceCount == 0) {
+				bounds.getMin().setAll(0, 0, 0);
+				bounds.getMax().setAll(0, 0, 0);
+			} else {
+				bounds.getMin().setAll(Double.MAX_VALUE, Double.MAX_VALUE, Double.MAX_VALUE);
+				bounds.getMax().setAll(-Double.MAX_VALUE, -Double.MAX_VALUE, -Double.MAX_VALUE);
+				for (int i = 0; i < mInstanceCount; ++i) {
+					for (int j = 0; j < 16; ++j) {
+						mWorld[j] = mInstances[i * INSTANCE_STRIDE + MATRIX_OFFSET + j];
+					}
+					transformSourceBounds(mWorld, mMin, mMax);
+					bounds.getMin().setAll(Math.min(bounds.getMin().x, mMin.x), Math.min(bounds.getMin().y, mMin.y),
+							Math.min(bounds.getMin().z, mMin.z));
+					bounds.getMax().setAll(Math.max(bounds.getMax().x, mMax.x), Math.max(bounds.getMax().y, mMax.y),
+							Math.max(bounds.getMax().z, mMax.z));
+				}
+			}
+			bounds.calculatePoints();
+		}
+		return bounds;
+	}
+
+	/**
+	 * Transforms the source geometry's bounding box with a column major matrix and returns the axis aligned box
+	 * around the result.
+	 */
+	private void transformSourceBounds(double[] m, Vector3 min, Vector3 max) {
+		final Vector3 sourceMin = mSourceBounds.getMin();
+		final Vector3 sourceMax = mSourceBounds.getMax();
+		final double cx = (sourceMin.x + sourceMax.x) * 0.5;
+		final double cy = (sourceMin.y + sourceMax.y) * 0.5;
+		final double cz = (sourceMin.z + sourceMax.z) * 0.5;
+		final double ex = (sourceMax.x - sourceMin.x) * 0.5;
+		final double ey = (sourceMax.y - sourceMin.y) * 0.5;
+		final double ez = (sourceMax.z - sourceMin.z) * 0.5;
+
+		final double x = m[0] * cx + m[4] * cy + m[8] * cz + m[12];
+		final double y = m[1] * cx + m[5] * cy + m[9] * cz + m[13];
+		final double z = m[2] * cx + m[6] * cy + m[10] * cz + m[14];
+		final double rx = Math.abs(m[0]) * ex + Math.abs(m[4]) * ey + Math.abs(m[8]) * ez;
+		final double ry = Math.abs(m[1]) * ex + Math.abs(m[5]) * ey + Math.abs(m[9]) * ez;
+		final double rz = Math.abs(m[2]) * ex + Math.abs(m[6]) * ey + Math.abs(m[10]) * ez;
+		min.setAll(x - rx, y - ry, z - rz);
+		max.setAll(x + rx, y + ry, z + rz);
+	}
+
+	/**
+	 * Tests every instance against the frustum and copies the visible ones, in order, to the front of
+	 * {@link #getVisibleInstanceData()}. Uses the current model matrix of this object.
+	 *
+	 * @param frustum The frustum to test against, or null to keep all instances
+	 * @return The number of visible instances
+	 */
+	public int updateVisibleInstances(Frustum frustum) {
+		if (mVisibleInstances.length < mInstances.length) {
+			mVisibleInstances = new float[mInstances.length];
+		}
+		if (frustum == null) {
+			System.arraycopy(mInstances, 0, mVisibleInstances, 0, mInstanceCount * INSTANCE_STRIDE);
+			mVisibleCount = mInstanceCount;
+			return mVisibleCount;
+		}
+
+		final double[] o = mMMatrix.getDoubleValues();
+		int visible = 0;
+		for (int i = 0; i < mInstanceCount; ++i) {
+			final int offset = i * INSTANCE_STRIDE + MATRIX_OFFSET;
+			// -- world = object * instance, both column major
+			for (int col = 0; col < 4; ++col) {
+				final double i0 = mInstances[offset + col * 4];
+				final double i1 = mInstances[offset + col * 4 + 1];
+				final double i2 = mInstances[offset + col * 4 + 2];
+				final double i3 = mInstances[offset + col * 4 + 3];
+				for (int row = 0; row < 3; ++row) {
+					mWorld[col * 4 + row] = o[row] * i0 + o[4 + row] * i1 + o[8 + row] * i2 + o[12 + row] * i3;
+				}
+			}
+			transformSourceBounds(mWorld, mMin, mMax);
+			if (frustum.classifyBounds(mMin, mMax) != Frustum.OUTSIDE) {
+				System.arraycopy(mInstances, i * INSTANCE_STRIDE, mVisibleInstances, visible * INSTANCE_STRIDE,
+						INSTANCE_STRIDE);
+				++visible;
+			}
+		}
+		mVisibleCount = visible;
+		return visible;
+	}
+
+	@Override
+	public void setShaderParams(Camera camera) {
+		super.setShaderParams(camera);
+		updateVisibleInstances(mInstanceCulling ? camera.getFrustum() : null);
+
+		if (mBatchSize == 0) {
+			if (mInstanceBufferInfo.rajawaliHandle < 0) {
+				mGeometry.addBuffer(mInstanceBufferInfo, BufferType.FLOAT_BUFFER, GLES20.GL_ARRAY_BUFFER,
+						GLES20.GL_DYNAMIC_DRAW);
+			}
+			if (mVisibleCount > 0) {
+				final int size = mVisibleCount * INSTANCE_STRIDE;
+				if (mInstanceBuffer.capacity() < size) {
+					mInstanceBuffer = ByteBuffer.allocateDirect(mVisibleInstances.length * 4)
+							.order(ByteOrder.nativeOrder()).asFloatBuffer();
+				}
+				mInstanceBuffer.clear();
+				mInstanceBuffer.put(mVisibleInstances, 0, size);
+				mGeometry.changeBufferData(mInstanceBufferInfo, mInstanceBuffer, 0, size, true);
+			}
+		} else if (mInstanceIndexBufferInfo.rajawaliHandle < 0) {
+			mGeometry.addBuffer(mInstanceIndexBufferInfo, BufferType.FLOAT_BUFFER, GLES20.GL_ARRAY_BUFFER,
+					GLES20.GL_STATIC_DRAW);
+		}
+	}
+
+	@Override
+	protected void bindGeometry(Material material) {
+		super.bindGeometry(material);
+		mActivePlugin = (InstancingMaterialPlugin) material.getPlugin(InstancingMaterialPlugin.class);
+		if (mActivePlugin == null) return;
+		if (mBatchSize == 0) {
+			mActivePlugin.setInstanceAttributes(mInstanceBufferInfo.bufferHandle);
+		} else {
+			mActivePlugin.setInstanceIndices(mInstanceIndexBufferInfo.bufferHandle);
+		}
+	}
+
+	@Override
+	protected void drawElements() {
+		if (mActivePlugin == null) {
+			// -- a scene wide material without the plugin, e.g. a depth pass, draws the untransformed geometry
+			super.drawElements();
+			return;
+		}
+		if (mVisibleCount == 0) {
+			if (mBatchSize == 0) mActivePlugin.resetInstanceAttributes();
+			return;
+		}
+
+		final int bufferType = mGeometry.getIndexBufferInfo().bufferType == BufferType.SHORT_BUFFER
+				? GLES20.GL_UNSIGNED_SHORT : GLES20.GL_UNSIGNED_INT;
+		GLStateCache.getCurrent().bindBuffer(GLES20.GL_ELEMENT_ARRAY_BUFFER,
+				mGeometry.getIndexBufferInfo().bufferHandle);
+
+		if (mBatchSize == 0) {
+			GLES30.glDrawElementsInstanced(mDrawingMode, mSourceIndexCount, bufferType, 0, mVisibleCount);
+			GLStateCache.getCurrent().countDraw(mDrawingMode, mSourceIndexCount, mVisibleCount);
+			mActivePlugin.resetInstanceAttributes();
+			return;
+		}
+
+		for (int first = 0; first < mVisibleCount; first += mBatchSize) {
+			final int count = Math.min(mBatchSize, mVisibleCount - first);
+			for (int i = 0; i < count; ++i) {
+				final int offset = (first + i) * INSTANCE_STRIDE;
+				System.arraycopy(mVisibleInstances, offset + MATRIX_OFFSET, mBatchMatrices, i * 16, 16);
+				System.arraycopy(mVisibleInstances, offset + COLOR_OFFSET, mBatchColors, i * 4, 4);
+				System.arraycopy(mVisibleInstances, offset + DATA_OFFSET, mBatchData, i * 4, 4);
+			}
+			mActivePlugin.setInstanceUniforms(mBatchMatrices, mBatchColors, mBatchData, count);
+			GLES20.glDrawElements(mDrawingMode, count * mSourceIndexCount, bufferType, 0);
+			GLStateCache.getCurrent().countDraw(mDrawingMode, count * mSourceIndexCount, 1);
+		}
+	}
+
+	/**
+	 * Adds the {@link InstancingMaterialPlugin} to the material if it doesn't have one yet.
+	 *
+	 * @throws IllegalArgumentException if the material already is set up for a different batch size
+	 */
+	@Override
+	public void setMaterial(Material material) {
+		if (material == null) return;
+		IMaterialPlugin plugin = material.getPlugin(InstancingMaterialPlugin.class);
+
+		if (plugin == null) {
+			mMaterialPlugin = new InstancingMaterialPlugin(mBatchSize);
+			material.addPlugin(mMaterialPlugin);
+		} else {
+			mMaterialPlugin = (InstancingMaterialPlugin) plugin;
+			if (mMaterialPlugin.getBatchSize() != mBatchSize) {
+				throw new IllegalArgumentException("The material is set up for a batch size of "
+						+ mMaterialPlugin.getBatchSize() + ", this object uses " + mBatchSize);
+			}
+		}
+		super.setMaterial(material);
+	}
+}
@@ -16,6 +16,7 @@ import android.graphics.Color;
 import android.opengl.GLES20;
 import android.support.annotation.NonNull;
 import org.rajawali3d.bounds.BoundingBox;
+import org.rajawali3d.bounds.BoundingSphere;
 import org.rajawali3d.bounds.IBoundingVolume;
 import org.rajawali3d.cameras.Camera;
 import org.rajawali3d.materials.Material;
@@ -25,12 +26,17 @@ import org.rajawali3d.materials.textures.TexturePacker.Tile;
 import org.rajawali3d.math.Matrix;
 import org.rajawali3d.math.Matrix4;
 import org.rajawali3d.math.vector.Vector3;
+import org.rajawali3d.renderer.GLStateCache;
+import org.rajawali3d.renderer.RenderDirtyTracker;
+import org.rajawali3d.scene.RenderQueue;
 import org.rajawali3d.util.GLU;
 import org.rajawali3d.util.RajLog;
+import org.rajawali3d.util.StaticBatcher;
 import org.rajawali3d.visitors.INode;
 import org.rajawali3d.visitors.INodeVisitor;
 
 import java.nio.FloatBuffer;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.List;
 import java.util.concurrent.CopyOnWriteArrayList;
@@ -56,6 +62,8 @@ public class Object3D extends ATransformable3D implements Comparable<Object3D>,
 	protected Matrix4 mPMatrix;
 	protected Matrix4 mParentMatrix;
 	protected final Matrix4 mRotationMatrix = new Matrix4();
+	private final float[] mNormalMatrix = new float[9];
+	private int mNormalMatrixVersion = UNKNOWN_VERSION;
 
 	protected float[] mColor;
 
@@ -93,6 +101,19 @@ public class Object3D extends ATransformable3D implements Comparable<Object3D>,
 	protected int mBlendFuncDFactor;
 	protected boolean mEnableDepthTest = true;
 	protected boolean mEnableDepthMask = true;
+	protected int mRenderLayer = 0;
+	protected boolean mIsStatic = false;
+
+	// -- bounds of this object and its descendants in world space, only used by the scene graph
+	private BoundingBox mSubtreeBoundingBox;
+	private Matrix4 mSubtreeMatrix;
+	private Vector3 mSubtreeCorner;
+	private static final Matrix4 IDENTITY = new Matrix4();
+
+	// -- what the cached matrices and bounds were last calculated from
+	protected int mViewProjectionVersion;
+	protected Camera mViewProjectionCamera;
+	protected Matrix4 mViewProjectionMatrix;
 
     protected volatile boolean mIsDestroyed = false;
 
@@ -200,59 +221,17 @@ public class Object3D extends ATransformable3D implements Comparable<Object3D>,
             return;
         }
 
-        if (parentMatrix != null) {
-            if (mParentMatrix == null) {
-                mParentMatrix = new Matrix4();
-            }
-            mParentMatrix.setAll(parentMatrix);
-        }
-
 		Material material = sceneMaterial == null ? mMaterial : sceneMaterial;
 		preRender();
 
-		// -- move view matrix transformation first
-		boolean modelMatrixWasRecalculated = onRecalculateModelMatrix(parentMatrix);
-		// -- calculate model view matrix;
-		mMVMatrix.setAll(vMatrix).multiply(mMMatrix);
-		//Create MVP Matrix from View-Projection Matrix
-		mMVPMatrix.setAll(vpMatrix).multiply(mMMatrix);
-
-        // Transform the bounding volumes if they exist
-        if (mGeometry.hasBoundingBox()) getBoundingBox().transform(getModelMatrix());
-        if (mGeometry.hasBoundingSphere()) mGeometry.getBoundingSphere().transform(getModelMatrix());
-
-		mIsInFrustum = true; // only if mFrustrumTest == true it check frustum
-		if (mFrustumTest && mGeometry.hasBoundingBox()) {
-			BoundingBox bbox = getBoundingBox();
-			if (!camera.getFrustum().boundsInFrustum(bbox)) {
-				mIsInFrustum = false;
-			}
-		}
+		updateTransforms(camera, vpMatrix, vMatrix, parentMatrix);
+
+		mIsInFrustum = testFrustum(camera); // only if mFrustrumTest == true it check frustum
+		if (!mIsInFrustum) GLStateCache.getCurrent().countCulled(1);
 
 		if (!mIsContainerOnly && mIsInFrustum) {
 			mPMatrix = projMatrix;
-			if (mDoubleSided) {
-				GLES20.glDisable(GLES20.GL_CULL_FACE);
-			} else {
-				GLES20.glEnable(GLES20.GL_CULL_FACE);
-			     if (mBackSided) {
-			          GLES20.glCullFace(GLES20.GL_FRONT);
-			     } else {
-			          GLES20.glCullFace(GLES20.GL_BACK);
-			          GLES20.glFrontFace(GLES20.GL_CCW);
-			     }
-			}
-			if (mEnableBlending) {
-				GLES20.glEnable(GLES20.GL_BLEND);
-				GLES20.glBlendFunc(mBlendFuncSFactor, mBlendFuncDFactor);
-			}
-			if (!mEnableDepthTest) GLES20.glDisable(GLES20.GL_DEPTH_TEST);
-			else {
-				GLES20.glEnable(GLES20.GL_DEPTH_TEST);
-				GLES20.glDepthFunc(GLES20.GL_LESS);
-			}
-
-			GLES20.glDepthMask(mEnableDepthMask);
+			applyRenderState();
 
 			if (!mIsPartOfBatch) {
 				if (material == null) {
@@ -260,94 +239,349 @@ public class Object3D extends ATransformable3D implements Comparable<Object3D>,
 							+ "] This object can't render because there's no material attached to it.");
 					/*throw new RuntimeException(
 							"This object can't render because there's no material attached to it.");*/
-					if (mEnableBlending) {
-						GLES20.glDisable(GLES20.GL_BLEND);
-					}
-
-					if (mDoubleSided) {
-						GLES20.glEnable(GLES20.GL_CULL_FACE);
-					} else if (mBackSided) {
-						GLES20.glCullFace(GLES20.GL_BACK);
-					}
-					if (!mEnableDepthTest) {
-						GLES20.glEnable(GLES20.GL_DEPTH_TEST);
-						GLES20.glDepthFunc(GLES20.GL_LESS);
-					}
 					return;
 				}
+				material.setVertexFormat(mGeometry.getVertexFormat());
 				material.useProgram();
 
 				setShaderParams(camera);
 				material.bindTextures();
-				if(mGeometry.hasTextureCoordinates())
-					material.setTextureCoords(mGeometry.getTexCoordBufferInfo());
-				if(mGeometry.hasNormals())
-					material.setNormals(mGeometry.getNormalBufferInfo());
-				if(mMaterial.usingVertexColors())
-					material.setVertexColors(mGeometry.getColorBufferInfo());
-
-				material.setVertices(mGeometry.getVertexBufferInfo());
+				bindGeometry(material);
 			}
-			material.setCurrentObject(this);
-			if(mOverrideMaterialColor) {
-                material.setColor(mColor);
-            }
-            material.applyParams();
+			drawGeometry(material);
 
-			GLES20.glBindBuffer(GLES20.GL_ARRAY_BUFFER, 0);
+			// Textures stay bound, the next material only rebinds the units which change and the scene unbinds
+			// whatever is left at the end of the frame
+			material.unsetCurrentObject(this);
+		}
 
-			material.setMVPMatrix(mMVPMatrix);
-			material.setModelMatrix(mMMatrix);
-			material.setModelViewMatrix(mMVMatrix);
+		renderBoundingVolumes(camera, vpMatrix, projMatrix, vMatrix);
+		// Draw children without frustum test
+		for (int i = 0, j = mChildren.size(); i < j; i++) {
+			Object3D child = mChildren.get(i);
+            if(mRenderChildrenAsBatch || mIsPartOfBatch) {
+                child.setPartOfBatch(true);
+            }
+			child.render(camera, vpMatrix, projMatrix, vMatrix, mMMatrix, sceneMaterial);
+		}
 
-			if(mIsVisible) {
-                int bufferType = mGeometry.getIndexBufferInfo().bufferType == Geometry3D.BufferType.SHORT_BUFFER ? GLES20.GL_UNSIGNED_SHORT : GLES20.GL_UNSIGNED_INT;
-				GLES20.glBindBuffer(GLES20.GL_ELEMENT_ARRAY_BUFFER, mGeometry.getIndexBufferInfo().bufferHandle);
-				GLES20.glDrawElements(mDrawingMode, mGeometry.getNumIndices(), bufferType, 0);
-				GLES20.glBindBuffer(GLES20.GL_ELEMENT_ARRAY_BUFFER, 0);
-			}
-			if (!mIsPartOfBatch && !mRenderChildrenAsBatch && sceneMaterial == null) {
-				material.unbindTextures();
-			}
+		if (mRenderChildrenAsBatch && sceneMaterial == null) {
+			material.unbindTextures();
+		}
+	}
 
-			material.unsetCurrentObject(this);
+	/**
+	 * Brings the model, model view and model view projection matrices and the transformed bounding volumes up to
+	 * date. The model matrix and bounds are only recalculated when this object or one of its ancestors changed, the
+	 * other matrices when the model matrix or the camera changed.
+	 *
+	 * @param camera The camera
+	 * @param vpMatrix {@link Matrix4} The view-projection matrix
+	 * @param vMatrix {@link Matrix4} The view matrix
+	 * @param parentMatrix {@link Matrix4} This object's parent matrix
+	 * @return Whether the model matrix was recalculated
+	 */
+	protected boolean updateTransforms(Camera camera, final Matrix4 vpMatrix, final Matrix4 vMatrix,
+			final Matrix4 parentMatrix) {
+		final int parentVersion;
+		if (parentMatrix == null) {
+			parentVersion = 0;
+		} else if (mParent != null && parentMatrix == mParent.getModelMatrix()) {
+			parentVersion = mParent.getWorldVersion();
+		} else {
+			parentVersion = UNKNOWN_VERSION;
+		}
 
-			if (mEnableBlending) {
-				GLES20.glDisable(GLES20.GL_BLEND);
+		final boolean modelMatrixWasRecalculated = onRecalculateModelMatrix(parentMatrix, parentVersion);
+		if (modelMatrixWasRecalculated && parentMatrix != null) {
+			if (mParentMatrix == null) {
+				mParentMatrix = new Matrix4();
 			}
+			mParentMatrix.setAll(parentMatrix);
+		}
 
-			if (mDoubleSided) {
-				GLES20.glEnable(GLES20.GL_CULL_FACE);
-			} else if (mBackSided) {
-				GLES20.glCullFace(GLES20.GL_BACK);
+		// -- the camera's version is 0 until its frustum has been updated, e.g. for cameras used outside of a scene
+		final int viewProjectionVersion = camera.getViewProjectionVersion();
+		if (modelMatrixWasRecalculated || viewProjectionVersion == 0 || viewProjectionVersion != mViewProjectionVersion
+				|| camera != mViewProjectionCamera || vpMatrix != mViewProjectionMatrix) {
+			mMVMatrix.setAll(vMatrix).multiply(mMMatrix);
+			mMVPMatrix.setAll(vpMatrix).multiply(mMMatrix);
+			mViewProjectionVersion = viewProjectionVersion;
+			mViewProjectionCamera = camera;
+			mViewProjectionMatrix = vpMatrix;
+		}
+
+		// Transform the bounding volumes if they exist
+		if (mGeometry.hasBoundingBox()) {
+			final BoundingBox boundingBox = getBoundingBox();
+			if (modelMatrixWasRecalculated || !boundingBox.isTransformedBy(mMMatrix)) {
+				boundingBox.transform(mMMatrix);
 			}
-			if (!mEnableDepthTest) {
-				GLES20.glEnable(GLES20.GL_DEPTH_TEST);
-				GLES20.glDepthFunc(GLES20.GL_LESS);
+		}
+		if (mGeometry.hasBoundingSphere()) {
+			final BoundingSphere boundingSphere = mGeometry.getBoundingSphere();
+			if (modelMatrixWasRecalculated || !boundingSphere.isTransformedBy(mMMatrix)) {
+				boundingSphere.transform(mMMatrix);
 			}
 		}
+		return modelMatrixWasRecalculated;
+	}
 
+	/**
+	 * Tests the transformed bounding box against the camera frustum, if frustum testing is enabled for this object.
+	 *
+	 * @param camera The camera
+	 * @return Whether the object may be visible
+	 */
+	protected boolean testFrustum(Camera camera) {
+		if (!mFrustumTest || !mGeometry.hasBoundingBox()) {
+			return true;
+		}
+		return camera.getFrustum().boundsInFrustum(getBoundingBox());
+	}
+
+	/**
+	 * Draws the bounding volumes of this object if {@link #setShowBoundingVolume(boolean)} is enabled.
+	 *
+	 * @param camera The camera
+	 * @param vpMatrix {@link Matrix4} The view-projection matrix
+	 * @param projMatrix {@link Matrix4} The projection matrix
+	 * @param vMatrix {@link Matrix4} The view matrix
+	 */
+	public void renderBoundingVolumes(Camera camera, final Matrix4 vpMatrix, final Matrix4 projMatrix,
+			final Matrix4 vMatrix) {
 		if (mShowBoundingVolume) {
 			if (mGeometry.hasBoundingBox())
 				getBoundingBox().drawBoundingVolume(camera, vpMatrix, projMatrix, vMatrix, mMMatrix);
 			if (mGeometry.hasBoundingSphere())
 				mGeometry.getBoundingSphere().drawBoundingVolume(camera, vpMatrix, projMatrix, vMatrix, mMMatrix);
 		}
-		// Draw children without frustum test
+	}
+
+	/**
+	 * Updates this object and its children for the current frame and adds everything that has to be drawn to a
+	 * {@link RenderQueue} instead of drawing it right away. The queued items are drawn by
+	 * {@link #renderQueued(Camera, Material, boolean, boolean)} once the queue has been sorted.
+	 *
+	 * Batched hierarchies (see {@link #setRenderChildrenAsBatch(boolean)}) share GL state between the parent and its
+	 * children and are therefore queued as a single immediate item which is drawn through
+	 * {@link #render(Camera, Matrix4, Matrix4, Matrix4, Matrix4, Material)}.
+	 *
+	 * No GL calls are made, so hierarchies can be queued from worker threads as long as each object is only queued by
+	 * one thread at a time. See {@link org.rajawali3d.scene.SceneUpdater}.
+	 *
+	 * @param queue The {@link RenderQueue} to add the draw items to
+	 * @param camera The camera
+	 * @param vpMatrix {@link Matrix4} The view-projection matrix
+	 * @param projMatrix {@link Matrix4} The projection matrix
+	 * @param vMatrix {@link Matrix4} The view matrix
+	 * @param parentMatrix {@link Matrix4} This object's parent matrix
+	 */
+	public void queueForRender(RenderQueue queue, Camera camera, final Matrix4 vpMatrix, final Matrix4 projMatrix,
+			final Matrix4 vMatrix, final Matrix4 parentMatrix) {
+		if (!queueSelfForRender(queue, camera, vpMatrix, projMatrix, vMatrix, parentMatrix)) {
+			return;
+		}
+
 		for (int i = 0, j = mChildren.size(); i < j; i++) {
 			Object3D child = mChildren.get(i);
-            if(mRenderChildrenAsBatch || mIsPartOfBatch) {
-                child.setPartOfBatch(true);
-            }
-            if(modelMatrixWasRecalculated) child.markModelMatrixDirty();
-			child.render(camera, vpMatrix, projMatrix, vMatrix, mMMatrix, sceneMaterial);
+			child.queueForRender(queue, camera, vpMatrix, projMatrix, vMatrix, mMMatrix);
 		}
+	}
 
-		if (mRenderChildrenAsBatch && sceneMaterial == null) {
-			material.unbindTextures();
+	/**
+	 * Updates this object, without its children, for the current frame and adds it to a {@link RenderQueue}. Override
+	 * this rather than {@link #queueForRender(RenderQueue, Camera, Matrix4, Matrix4, Matrix4, Matrix4)} to change how
+	 * an object is queued.
+	 *
+	 * @param queue The {@link RenderQueue} to add the draw items to
+	 * @param camera The camera
+	 * @param vpMatrix {@link Matrix4} The view-projection matrix
+	 * @param projMatrix {@link Matrix4} The projection matrix
+	 * @param vMatrix {@link Matrix4} The view matrix
+	 * @param parentMatrix {@link Matrix4} This object's parent matrix
+	 * @return Whether the children of this object have to be queued as well
+	 */
+	public boolean queueSelfForRender(RenderQueue queue, Camera camera, final Matrix4 vpMatrix,
+			final Matrix4 projMatrix, final Matrix4 vMatrix, final Matrix4 parentMatrix) {
+		if (isDestroyed() || (!mIsVisible && !mRenderChildrenAsBatch) || isZeroScale()) {
+			return false;
+		}
+
+		// The sort depth needs this frame's model view matrix. Rendering a batch later on finds it up to date.
+		updateTransforms(camera, vpMatrix, vMatrix, parentMatrix);
+		// The camera looks down the negative z axis in view space
+		final double depth = -mMVMatrix.getDoubleValues()[Matrix4.M23];
+
+		if (mRenderChildrenAsBatch || mIsPartOfBatch) {
+			queue.addImmediate(this, parentMatrix, depth);
+			return false;
+		}
+
+		mIsInFrustum = testFrustum(camera);
+		if (!mIsInFrustum) queue.countCulled();
+
+		if (!mIsContainerOnly && mIsInFrustum) {
+			mPMatrix = projMatrix;
+			if (mMaterial == null) {
+				RajLog.e("[" + this.getClass().getName()
+						+ "] This object can't render because there's no material attached to it.");
+			} else {
+				queue.add(this, mMaterial, depth);
+			}
+		}
+
+		if (mShowBoundingVolume) {
+			// Drawn by the scene once the queue has been submitted
+			queue.addBoundingVolume(this);
+		}
+		return true;
+	}
+
+	/**
+	 * Draws this object after it has been queued by
+	 * {@link #queueForRender(RenderQueue, Camera, Matrix4, Matrix4, Matrix4, Matrix4)}. Children are queued
+	 * separately and are not drawn by this method. The matrices computed while queueing are used as they are.
+	 *
+	 * @param camera The camera
+	 * @param material The {@link Material} to draw with
+	 * @param useProgram Whether the program of the material has to be made current
+	 * @param bindTextures Whether the textures of the material have to be bound
+	 */
+	public void renderQueued(Camera camera, Material material, boolean useProgram, boolean bindTextures) {
+		preRender();
+		applyRenderState();
+
+		// -- the shaders decode the vertex format of the geometry, a different one makes the material rebuild them
+		material.setVertexFormat(mGeometry.getVertexFormat());
+		if (useProgram || material.isDirty()) {
+			final int program = material.getProgramHandle();
+			material.useProgram();
+			// -- the material rebuilt its shaders into another program, which needs its textures
+			bindTextures |= material.getProgramHandle() != program;
+		}
+		setShaderParams(camera);
+		if (bindTextures) {
+			material.bindTextures();
+		}
+		bindGeometry(material);
+		drawGeometry(material);
+
+		material.unsetCurrentObject(this);
+	}
+
+	/**
+	 * Sets the face culling, blending and depth state this object requires. All of the state is set explicitly, the
+	 * {@link GLStateCache} drops whatever matches the previous object so nothing needs to be restored afterwards.
+	 */
+	private void applyRenderState() {
+		final GLStateCache cache = GLStateCache.getCurrent();
+		if (mDoubleSided) {
+			cache.disable(GLES20.GL_CULL_FACE);
+		} else {
+			cache.enable(GLES20.GL_CULL_FACE);
+			cache.cullFace(mBackSided ? GLES20.GL_FRONT : GLES20.GL_BACK);
+			cache.frontFace(GLES20.GL_CCW);
+		}
+		if (mEnableBlending) {
+			cache.enable(GLES20.GL_BLEND);
+			cache.blendFunc(mBlendFuncSFactor, mBlendFuncDFactor);
+		} else {
+			cache.disable(GLES20.GL_BLEND);
+		}
+		if (!mEnableDepthTest) cache.disable(GLES20.GL_DEPTH_TEST);
+		else {
+			cache.enable(GLES20.GL_DEPTH_TEST);
+			cache.depthFunc(GLES20.GL_LESS);
+		}
+
+		cache.depthMask(mEnableDepthMask);
+	}
+
+	/**
+	 * Points the material's vertex attributes at this object's buffers. On GLES 3.0 this binds the geometry's vertex
+	 * array for the material's attribute layout, which only has to be set up the first time.
+	 */
+	protected void bindGeometry(Material material) {
+		final GLStateCache cache = GLStateCache.getCurrent();
+		final boolean textureCoords = mGeometry.hasTextureCoordinates();
+		final boolean normals = mGeometry.hasNormals();
+		final boolean vertexColors = mMaterial.usingVertexColors();
+		final int layout = cache.areVertexArraysSupported()
+				? material.getVertexArrayLayout(textureCoords, normals, vertexColors) : -1;
+		if (layout < 0) {
+			cache.bindVertexArray(0);
+		} else if (mGeometry.getVertexArrays().bind(cache, layout)) {
+			return;
+		}
+
+		if(textureCoords)
+			material.setTextureCoords(mGeometry.getTexCoordBufferInfo());
+		if(normals)
+			material.setNormals(mGeometry.getNormalBufferInfo());
+		if(vertexColors)
+			material.setVertexColors(mGeometry.getColorBufferInfo());
+
+		material.setVertices(mGeometry.getVertexBufferInfo());
+
+		if (layout >= 0) {
+			// The index buffer is recorded as well, the draw call may not happen if the object is invisible
+			cache.bindBuffer(GLES20.GL_ELEMENT_ARRAY_BUFFER, mGeometry.getIndexBufferInfo().bufferHandle);
+		}
+	}
+
+	/**
+	 * Returns the normal matrix of the model matrix, the inverse transpose of its upper 3x3 part in column major
+	 * order. It is only computed again after the model matrix changed, so objects which don't move don't pay for it
+	 * on every frame.
+	 *
+	 * @return The normal matrix. Must not be modified.
+	 */
+	public float[] getNormalMatrix() {
+		if (mNormalMatrixVersion != mWorldVersion) {
+			if (!mMMatrix.toNormalMatrixFloatArray(mNormalMatrix)) {
+				RajLog.d("modelMatrix is degenerate (zero scale)...");
+			}
+			mNormalMatrixVersion = mWorldVersion;
+		}
+		return mNormalMatrix;
+	}
+
+	/**
+	 * Uploads the per object parameters and issues the draw call.
+	 */
+	private void drawGeometry(Material material) {
+		material.setCurrentObject(this);
+		if(mOverrideMaterialColor) {
+			material.overrideColor(mColor);
+		}
+		material.applyParams();
+
+		material.setMVPMatrix(mMVPMatrix);
+		material.setModelMatrix(mMMatrix, material.usesNormalMatrix() ? getNormalMatrix() : null);
+		material.setModelViewMatrix(mMVMatrix);
+		final float[] positionScale = mGeometry.getPositionScale();
+		if (positionScale != null) {
+			material.setPositionQuantization(mGeometry.getPositionOffset(), positionScale);
+		}
+
+		if(mIsVisible) {
+			drawElements();
 		}
 	}
 
+	/**
+	 * Issues the draw call for this object's geometry. The program, vertex attributes and uniforms have been set up
+	 * when this is called.
+	 */
+	protected void drawElements() {
+		int bufferType = mGeometry.getIndexBufferInfo().bufferType == Geometry3D.BufferType.SHORT_BUFFER ? GLES20.GL_UNSIGNED_SHORT : GLES20.GL_UNSIGNED_INT;
+		GLStateCache.getCurrent().bindBuffer(GLES20.GL_ELEMENT_ARRAY_BUFFER,
+				mGeometry.getIndexBufferInfo().bufferHandle);
+		GLES20.glDrawElements(mDrawingMode, mGeometry.getNumIndices(), bufferType, 0);
+		GLStateCache.getCurrent().countDraw(mDrawingMode, mGeometry.getNumIndices(), 1);
+	}
+
 	/**
 	 * Returns a {@link BoundingBox} for this Object3D and creates it if needed.
 	 * Utilizes children's bounding values to calculate its own {@link BoundingBox}.
@@ -403,27 +637,18 @@ public class Object3D extends ATransformable3D implements Comparable<Object3D>,
 		//   All matrices already updated during prior frame
 		//   Bounding box already transformed
 
-		mIsInFrustum = true; // only if mFrustrumTest == true it check frustum
-		if (mFrustumTest && mGeometry.hasBoundingBox()) {
-			BoundingBox bbox = getBoundingBox();
-			if (!camera.getFrustum().boundsInFrustum(bbox)) {
-				mIsInFrustum = false;
-			}
-		}
+		mIsInFrustum = testFrustum(camera); // only if mFrustrumTest == true it check frustum
 
 		// Render this object only if it has visible geometry and didn't fail frustum test
 		if (!mIsContainerOnly && mIsInFrustum && mIsVisible) {
 			// Render same faces as visible render
+			final GLStateCache cache = GLStateCache.getCurrent();
 			if (mDoubleSided) {
-				GLES20.glDisable(GLES20.GL_CULL_FACE);
+				cache.disable(GLES20.GL_CULL_FACE);
 			} else {
-				GLES20.glEnable(GLES20.GL_CULL_FACE);
-				if (mBackSided) {
-					GLES20.glCullFace(GLES20.GL_FRONT);
-				} else {
-					GLES20.glCullFace(GLES20.GL_BACK);
-					GLES20.glFrontFace(GLES20.GL_CCW);
-				}
+				cache.enable(GLES20.GL_CULL_FACE);
+				cache.cullFace(mBackSided ? GLES20.GL_FRONT : GLES20.GL_BACK);
+				cache.frontFace(GLES20.GL_CCW);
 			}
 
 			// Blending and depth testing are set up globally in Scene.doColorPicking()
@@ -431,30 +656,21 @@ public class Object3D extends ATransformable3D implements Comparable<Object3D>,
 			// Material setup is independent of batching, and has no need for
 			// shader params, textures, normals, vertex colors, or current object...
 			pickingMaterial.useProgram();
+			cache.bindVertexArray(0);
 			pickingMaterial.setVertices(mGeometry.getVertexBufferInfo());
-			pickingMaterial.setColor(mPickingColor);
+			pickingMaterial.overrideColor(mPickingColor);
 			pickingMaterial.applyParams();
 
-			// Unbind the array buffer
-			GLES20.glBindBuffer(GLES20.GL_ARRAY_BUFFER, 0);
-
 			// Apply this object's matrices to the pickingMaterial
 			pickingMaterial.setMVPMatrix(mMVPMatrix);
-			pickingMaterial.setModelMatrix(mMMatrix);
+			pickingMaterial.setModelMatrix(mMMatrix, null);
 			pickingMaterial.setModelViewMatrix(mMVMatrix);
 
 			// Draw the object using its picking color
 			int bufferType = mGeometry.getIndexBufferInfo().bufferType == Geometry3D.BufferType.SHORT_BUFFER ? GLES20.GL_UNSIGNED_SHORT : GLES20.GL_UNSIGNED_INT;
-			GLES20.glBindBuffer(GLES20.GL_ELEMENT_ARRAY_BUFFER, mGeometry.getIndexBufferInfo().bufferHandle);
+			cache.bindBuffer(GLES20.GL_ELEMENT_ARRAY_BUFFER, mGeometry.getIndexBufferInfo().bufferHandle);
 			GLES20.glDrawElements(mDrawingMode, mGeometry.getNumIndices(), bufferType, 0);
-			GLES20.glBindBuffer(GLES20.GL_ELEMENT_ARRAY_BUFFER, 0);
-
-			// Only need to undo face culling
-			if (mDoubleSided) {
-				GLES20.glEnable(GLES20.GL_CULL_FACE);
-			} else if (mBackSided) {
-				GLES20.glCullFace(GLES20.GL_BACK);
-			}
+			cache.countDraw(mDrawingMode, mGeometry.getNumIndices(), 1);
 		}
 
 		// No need to draw bounding volumes..
@@ -613,12 +829,15 @@ public class Object3D extends ATransformable3D implements Comparable<Object3D>,
 			child.getParent().removeChild(child);
 		mChildren.add(child);
 		child.setParent(this);
+		child.markModelMatrixDirty();
 		if (mRenderChildrenAsBatch)
 			child.setPartOfBatch(true);
 	}
 
 	public boolean removeChild(Object3D child) {
-		return mChildren.remove(child);
+		if (!mChildren.remove(child)) return false;
+		markSubtreeMoved();
+		return true;
 	}
 
 	public Object3D getParent()
@@ -727,6 +946,8 @@ public class Object3D extends ATransformable3D implements Comparable<Object3D>,
 		clone.mBlendFuncDFactor = this.mBlendFuncDFactor;
 		clone.mEnableDepthTest = this.mEnableDepthTest;
 		clone.mEnableDepthMask = this.mEnableDepthMask;
+		clone.mRenderLayer = this.mRenderLayer;
+		clone.mIsStatic = this.mIsStatic;
 	}
 
 	public Object3D clone(boolean copyMaterial, boolean cloneChildren) {
@@ -756,18 +977,22 @@ public class Object3D extends ATransformable3D implements Comparable<Object3D>,
 	}
 
 	public void setVisible(boolean visible) {
+		RenderDirtyTracker.markSceneChanged();
 		mIsVisible = visible;
 	}
 
     public void setAlpha(int alpha) {
+        RenderDirtyTracker.markSceneChanged();
         mColor[ALPHA] = alpha / 255.f;
     }
 
     public void setAlpha(float alpha) {
+        RenderDirtyTracker.markSceneChanged();
         mColor[ALPHA] = alpha;
     }
 
 	public void setColor(int color) {
+		RenderDirtyTracker.markSceneChanged();
 		mColor[RED] = Color.red(color) / 255.f;
 		mColor[GREEN] = Color.green(color) / 255.f;
 		mColor[BLUE] = Color.blue(color) / 255.f;
@@ -836,6 +1061,23 @@ public class Object3D extends ATransformable3D implements Comparable<Object3D>,
 		return mEnableBlending;
 	}
 
+	/**
+	 * Sets the layer this object is drawn in when the scene uses a {@link RenderQueue}. Lower layers are drawn
+	 * before higher layers, regardless of program, textures or depth.
+	 *
+	 * @param layer The layer, between 0 and {@link RenderQueue#MAX_LAYER}
+	 */
+	public void setRenderLayer(int layer) {
+		if (layer < 0 || layer > RenderQueue.MAX_LAYER) {
+			throw new IllegalArgumentException("Render layer must be between 0 and " + RenderQueue.MAX_LAYER);
+		}
+		mRenderLayer = layer;
+	}
+
+	public int getRenderLayer() {
+		return mRenderLayer;
+	}
+
 	public void setBlendFunc(int sFactor, int dFactor) {
 		mBlendFuncSFactor = sFactor;
 		mBlendFuncDFactor = dFactor;
@@ -857,6 +1099,58 @@ public class Object3D extends ATransformable3D implements Comparable<Object3D>,
 		return mEnableDepthMask;
 	}
 
+	/**
+	 * Marks this object as never moving or changing, which allows a {@link StaticBatcher} to merge it with other
+	 * static objects.
+	 *
+	 * @param isStatic
+	 */
+	public void setStatic(boolean isStatic) {
+		mIsStatic = isStatic;
+	}
+
+	public boolean isStatic() {
+		return mIsStatic;
+	}
+
+	/**
+	 * Checks whether this object and another one set up GL the same way when they are drawn, apart from their
+	 * material, transformation and geometry.
+	 *
+	 * @param other
+	 * @return
+	 */
+	public boolean hasSameRenderState(Object3D other) {
+		return mDoubleSided == other.mDoubleSided && mBackSided == other.mBackSided
+				&& mTransparent == other.mTransparent && mEnableBlending == other.mEnableBlending
+				&& (!mEnableBlending || (mBlendFuncSFactor == other.mBlendFuncSFactor
+						&& mBlendFuncDFactor == other.mBlendFuncDFactor))
+				&& mEnableDepthTest == other.mEnableDepthTest && mEnableDepthMask == other.mEnableDepthMask
+				&& mDrawingMode == other.mDrawingMode && mRenderLayer == other.mRenderLayer
+				&& mOverrideMaterialColor == other.mOverrideMaterialColor
+				&& (!mOverrideMaterialColor || Arrays.equals(mColor, other.mColor));
+	}
+
+	/**
+	 * Copies the settings compared by {@link #hasSameRenderState(Object3D)} from another object.
+	 *
+	 * @param other
+	 */
+	public void copyRenderState(Object3D other) {
+		mDoubleSided = other.mDoubleSided;
+		mBackSided = other.mBackSided;
+		mTransparent = other.mTransparent;
+		mEnableBlending = other.mEnableBlending;
+		mBlendFuncSFactor = other.mBlendFuncSFactor;
+		mBlendFuncDFactor = other.mBlendFuncDFactor;
+		mEnableDepthTest = other.mEnableDepthTest;
+		mEnableDepthMask = other.mEnableDepthMask;
+		mDrawingMode = other.mDrawingMode;
+		mRenderLayer = other.mRenderLayer;
+		mOverrideMaterialColor = other.mOverrideMaterialColor;
+		System.arraycopy(other.mColor, 0, mColor, 0, mColor.length);
+	}
+
 	public Vector3 getWorldPosition() {
 		if(mParentMatrix == null) return mPosition;
 		Vector3 worldPos = mPosition.clone();
@@ -911,10 +1205,81 @@ public class Object3D extends ATransformable3D implements Comparable<Object3D>,
 	 */
 	@Override
 	public IBoundingVolume getTransformedBoundingVolume() {
-		IBoundingVolume volume = null;
-		volume = getBoundingBox();
 		calculateModelMatrix(null);
-		volume.transform(mMMatrix);
-		return volume;
+		if (getNumChildren() == 0) {
+			IBoundingVolume volume = getBoundingBox();
+			volume.transform(mMMatrix);
+			return volume;
+		}
+
+		// The graph only holds top level objects, so a parent is bounded by everything below it. Otherwise it would
+		// be culled along with children which reach beyond its own geometry, or with all of them if it has none.
+		if (mSubtreeBoundingBox == null) {
+			mSubtreeBoundingBox = new BoundingBox();
+			mSubtreeCorner = new Vector3();
+		}
+		final Vector3 min = mSubtreeBoundingBox.getMin();
+		final Vector3 max = mSubtreeBoundingBox.getMax();
+		min.setAll(Double.MAX_VALUE, Double.MAX_VALUE, Double.MAX_VALUE);
+		max.setAll(-Double.MAX_VALUE, -Double.MAX_VALUE, -Double.MAX_VALUE);
+		expandSubtreeBounds(mMMatrix, min, max, mSubtreeCorner);
+		if (min.x > max.x) {
+			// Nothing below has any geometry
+			min.setAll(mPosition);
+			max.setAll(mPosition);
+		}
+		mSubtreeBoundingBox.calculatePoints();
+		mSubtreeBoundingBox.transform(IDENTITY);
+		return mSubtreeBoundingBox;
+	}
+
+	/**
+	 * Grows a world space box by the geometry of this object and its descendants.
+	 *
+	 * @param modelMatrix {@link Matrix4} The world matrix of this object.
+	 * @param min {@link Vector3} The minimum corner of the box.
+	 * @param max {@link Vector3} The maximum corner of the box.
+	 * @param corner {@link Vector3} Scratch vector.
+	 */
+	private void expandSubtreeBounds(Matrix4 modelMatrix, Vector3 min, Vector3 max, Vector3 corner) {
+		if (mGeometry.getVertices() != null) {
+			final BoundingBox box = mGeometry.getBoundingBox();
+			final Vector3 boxMin = box.getMin();
+			final Vector3 boxMax = box.getMax();
+			for (int i = 0; i < 8; ++i) {
+				corner.setAll((i & 1) == 0 ? boxMin.x : boxMax.x, (i & 2) == 0 ? boxMin.y : boxMax.y,
+						(i & 4) == 0 ? boxMin.z : boxMax.z);
+				corner.multiply(modelMatrix);
+				if (corner.x < min.x) min.x = corner.x;
+				if (corner.y < min.y) min.y = corner.y;
+				if (corner.z < min.z) min.z = corner.z;
+				if (corner.x > max.x) max.x = corner.x;
+				if (corner.y > max.y) max.y = corner.y;
+				if (corner.z > max.z) max.z = corner.z;
+			}
+		}
+		for (int i = 0, j = mChildren.size(); i < j; ++i) {
+			final Object3D child = mChildren.get(i);
+			if (child.mSubtreeMatrix == null) child.mSubtreeMatrix = new Matrix4();
+			child.mSubtreeMatrix.setAll(child.mPosition, child.mScale, child.mOrientation).leftMultiply(modelMatrix);
+			child.expandSubtreeBounds(child.mSubtreeMatrix, min, max, corner);
+		}
+	}
+
+	@Override
+	protected void markModelMatrixDirty() {
+		super.markModelMatrixDirty();
+		if (mParent != null) mParent.markSubtreeMoved();
+	}
+
+	/**
+	 * Lets the graph know that the bounds of the top level ancestor changed because something below it moved.
+	 */
+	private void markSubtreeMoved() {
+		if (mGraphNode != null) {
+			mGraphNode.markObjectMoved(this);
+		} else if (mParent != null) {
+			mParent.markSubtreeMoved();
+		}
 	}
 }
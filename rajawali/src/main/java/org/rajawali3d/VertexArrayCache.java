@@ -0,0 +1,119 @@
+/**
+ * Copyright 2013 Dennis Ippel
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package org.rajawali3d;
+
+import android.opengl.GLES30;
+import org.rajawali3d.renderer.GLStateCache;
+
+import java.util.Arrays;
+
+/**
+ * The vertex array objects of a {@link Geometry3D}, one per attribute layout it is drawn with. A vertex array records
+ * which buffers the attribute locations read from and the index buffer, so once it has been set up a draw call only
+ * needs to bind it. Programs which place the same attributes at the same locations share an array.
+ *
+ * The layout is an opaque key, see {@link org.rajawali3d.materials.shaders.VertexShader#getVertexArrayLayout(boolean,
+ * boolean, boolean)}. The arrays have to be invalidated whenever the geometry gets different buffers, Geometry3D does
+ * so itself. Arrays which belong to a GL context that no longer exists are dropped without being deleted.
+ *
+ * Requires GLES 3.0, see {@link GLStateCache#areVertexArraysSupported()}.
+ */
+public class VertexArrayCache {
+
+    private int[] mLayouts = new int[2];
+    private int[] mArrays = new int[2];
+    private int mCount;
+    private int mContextId;
+
+    /**
+     * Binds the vertex array of a layout, creating it if there is none yet. A new array is empty, the caller has to
+     * set up the attributes and bind the index buffer while it is bound.
+     *
+     * @param cache  The {@link GLStateCache} of the current context.
+     * @param layout {@code int} The attribute layout.
+     * @return {@code boolean} True if the array was set up by an earlier call, false if it was just created.
+     */
+    public boolean bind(GLStateCache cache, int layout) {
+        if (mContextId != cache.getContextId()) {
+            forget();
+            mContextId = cache.getContextId();
+        }
+        for (int i = 0; i < mCount; ++i) {
+            if (mLayouts[i] == layout) {
+                cache.bindVertexArray(mArrays[i]);
+                return true;
+            }
+        }
+        final int array = createVertexArray();
+        if (mCount == mArrays.length) {
+            mLayouts = Arrays.copyOf(mLayouts, mCount * 2);
+            mArrays = Arrays.copyOf(mArrays, mCount * 2);
+        }
+        mLayouts[mCount] = layout;
+        mArrays[mCount] = array;
+        ++mCount;
+        cache.bindVertexArray(array);
+        return false;
+    }
+
+    /**
+     * Deletes all arrays, so they are set up again by the next draw calls. Has to be called on the GL thread, on
+     * any other thread the arrays are only dropped.
+     */
+    public void invalidate() {
+        if (mCount == 0) return;
+        final GLStateCache cache = GLStateCache.getCurrent();
+        if (mContextId == cache.getContextId()) {
+            deleteVertexArrays(mArrays, mCount);
+            for (int i = 0; i < mCount; ++i) {
+                cache.onVertexArrayDeleted(mArrays[i]);
+            }
+        }
+        forget();
+    }
+
+    /**
+     * Drops all arrays without deleting them, for instance because their context is gone.
+     */
+    public void forget() {
+        mCount = 0;
+    }
+
+    /**
+     * @return {@code int} The number of arrays, one per layout.
+     */
+    public int getCount() {
+        return mCount;
+    }
+
+    /**
+     * Creates a vertex array in the current context.
+     *
+     * @return {@code int} The handle of the new array.
+     */
+    protected int createVertexArray() {
+        final int[] handles = new int[1];
+        GLES30.glGenVertexArrays(1, handles, 0);
+        return handles[0];
+    }
+
+    /**
+     * Deletes vertex arrays in the current context.
+     *
+     * @param arrays {@code int[]} The handles.
+     * @param count  {@code int} The number of handles to delete.
+     */
+    protected void deleteVertexArrays(int[] arrays, int count) {
+        GLES30.glDeleteVertexArrays(count, arrays, 0);
+    }
+}
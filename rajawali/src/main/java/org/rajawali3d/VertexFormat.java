@@ -0,0 +1,219 @@
+/**
+ * Copyright 2013 Dennis Ippel
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package org.rajawali3d;
+
+import android.opengl.GLES20;
+import android.opengl.GLES30;
+
+/**
+ * Describes how the attributes of a {@link Geometry3D} are stored in its vertex buffer, see
+ * {@link Geometry3D#setVertexFormat(VertexFormat)}. Every attribute is either stored as 32 bit floats or in a
+ * smaller encoding, which saves memory and vertex fetch bandwidth at the cost of precision. The error each encoding
+ * introduces is bounded, see {@link org.rajawali3d.util.VertexEncoder}.
+ *
+ * Quantized positions and octahedral normals have to be decoded by the vertex shader, so objects give their material
+ * the format of their geometry when they are drawn, see
+ * {@link org.rajawali3d.materials.Material#setVertexFormat(VertexFormat)}. The other encodings are decoded by the
+ * vertex fetch itself.
+ */
+public class VertexFormat {
+
+    public enum PositionEncoding {
+        /**
+         * Three 32 bit floats.
+         */
+        FLOAT(GLES20.GL_FLOAT, 3, false, 12),
+        /**
+         * Three 16 bit floats, padded to 8 bytes. Requires GLES 3.0, with GLES 2.0 floats are used instead. Positions
+         * beyond the range of 16 bit floats are stored as floats as well.
+         */
+        HALF_FLOAT(GLES30.GL_HALF_FLOAT, 3, false, 8),
+        /**
+         * Three normalized unsigned shorts relative to the bounding box of the geometry, padded to 8 bytes.
+         */
+        QUANTIZED(GLES20.GL_UNSIGNED_SHORT, 3, true, 8);
+
+        final int mType;
+        final int mComponents;
+        final boolean mNormalized;
+        final int mSize;
+
+        PositionEncoding(int type, int components, boolean normalized, int size) {
+            mType = type;
+            mComponents = components;
+            mNormalized = normalized;
+            mSize = size;
+        }
+    }
+
+    public enum NormalEncoding {
+        /**
+         * Three 32 bit floats.
+         */
+        FLOAT(GLES20.GL_FLOAT, 3, false, 12),
+        /**
+         * The normal projected onto an octahedron, which is unfolded into a square and addressed by two normalized
+         * unsigned shorts.
+         */
+        OCTAHEDRAL(GLES20.GL_UNSIGNED_SHORT, 2, true, 4);
+
+        final int mType;
+        final int mComponents;
+        final boolean mNormalized;
+        final int mSize;
+
+        NormalEncoding(int type, int components, boolean normalized, int size) {
+            mType = type;
+            mComponents = components;
+            mNormalized = normalized;
+            mSize = size;
+        }
+    }
+
+    public enum TextureCoordEncoding {
+        /**
+         * Two 32 bit floats.
+         */
+        FLOAT(GLES20.GL_FLOAT, 2, false, 8),
+        /**
+         * Two normalized unsigned shorts. Texture coordinates outside of [0, 1], for instance of repeated textures,
+         * are stored as floats instead.
+         */
+        UNSIGNED_SHORT(GLES20.GL_UNSIGNED_SHORT, 2, true, 4);
+
+        final int mType;
+        final int mComponents;
+        final boolean mNormalized;
+        final int mSize;
+
+        TextureCoordEncoding(int type, int components, boolean normalized, int size) {
+            mType = type;
+            mComponents = components;
+            mNormalized = normalized;
+            mSize = size;
+        }
+    }
+
+    public enum ColorEncoding {
+        /**
+         * Four 32 bit floats.
+         */
+        FLOAT(GLES20.GL_FLOAT, 4, false, 16),
+        /**
+         * Four normalized unsigned bytes. Colors outside of [0, 1] are stored as floats instead.
+         */
+        UNSIGNED_BYTE(GLES20.GL_UNSIGNED_BYTE, 4, true, 4);
+
+        final int mType;
+        final int mComponents;
+        final boolean mNormalized;
+        final int mSize;
+
+        ColorEncoding(int type, int components, boolean normalized, int size) {
+            mType = type;
+            mComponents = components;
+            mNormalized = normalized;
+            mSize = size;
+        }
+    }
+
+    /**
+     * Every attribute as 32 bit floats, the default.
+     */
+    public static final VertexFormat FLOAT = new VertexFormat(PositionEncoding.FLOAT, NormalEncoding.FLOAT,
+            TextureCoordEncoding.FLOAT, ColorEncoding.FLOAT);
+
+    /**
+     * The smallest encodings, 16 bytes for a vertex with all attributes instead of 48.
+     */
+    public static final VertexFormat COMPACT = new VertexFormat(PositionEncoding.QUANTIZED,
+            NormalEncoding.OCTAHEDRAL, TextureCoordEncoding.UNSIGNED_SHORT, ColorEncoding.UNSIGNED_BYTE);
+
+    private final PositionEncoding mPositions;
+    private final NormalEncoding mNormals;
+    private final TextureCoordEncoding mTextureCoords;
+    private final ColorEncoding mColors;
+
+    public VertexFormat(PositionEncoding positions, NormalEncoding normals, TextureCoordEncoding textureCoords,
+                        ColorEncoding colors) {
+        if (positions == null || normals == null || textureCoords == null || colors == null) {
+            throw new IllegalArgumentException("Every attribute needs an encoding.");
+        }
+        mPositions = positions;
+        mNormals = normals;
+        mTextureCoords = textureCoords;
+        mColors = colors;
+    }
+
+    public PositionEncoding getPositions() {
+        return mPositions;
+    }
+
+    public NormalEncoding getNormals() {
+        return mNormals;
+    }
+
+    public TextureCoordEncoding getTextureCoords() {
+        return mTextureCoords;
+    }
+
+    public ColorEncoding getColors() {
+        return mColors;
+    }
+
+    /**
+     * @return Whether every attribute is stored as 32 bit floats.
+     */
+    public boolean isFloat() {
+        return mPositions == PositionEncoding.FLOAT && mNormals == NormalEncoding.FLOAT
+                && mTextureCoords == TextureCoordEncoding.FLOAT && mColors == ColorEncoding.FLOAT;
+    }
+
+    /**
+     * @return Whether the positions are quantized and have to be decoded by the vertex shader.
+     */
+    public boolean hasQuantizedPositions() {
+        return mPositions == PositionEncoding.QUANTIZED;
+    }
+
+    /**
+     * @return Whether the normals are octahedral and have to be decoded by the vertex shader.
+     */
+    public boolean hasOctahedralNormals() {
+        return mNormals == NormalEncoding.OCTAHEDRAL;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (!(o instanceof VertexFormat)) return false;
+        final VertexFormat other = (VertexFormat) o;
+        return mPositions == other.mPositions && mNormals == other.mNormals
+                && mTextureCoords == other.mTextureCoords && mColors == other.mColors;
+    }
+
+    @Override
+    public int hashCode() {
+        int result = mPositions.hashCode();
+        result = 31 * result + mNormals.hashCode();
+        result = 31 * result + mTextureCoords.hashCode();
+        result = 31 * result + mColors.hashCode();
+        return result;
+    }
+
+    @Override
+    public String toString() {
+        return "VertexFormat positions: " + mPositions + ", normals: " + mNormals + ", texture coordinates: "
+                + mTextureCoords + ", colors: " + mColors;
+    }
+}
@@ -1,5 +1,7 @@
 package org.rajawali3d.animation;
 
+import org.rajawali3d.renderer.RenderDirtyTracker;
+
 public abstract class Playable implements IPlayable {
 
 	protected static enum State {
@@ -39,6 +41,7 @@ public abstract class Playable implements IPlayable {
 
 	@Override
 	public void play() {
+		RenderDirtyTracker.markSceneChanged();
 		mState = State.PLAYING;
 	}
 
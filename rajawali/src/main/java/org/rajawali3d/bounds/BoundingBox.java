@@ -36,6 +36,7 @@ public class BoundingBox implements IBoundingVolume {
 	protected Cube mVisualBox;
 	protected final Matrix4 mTmpMatrix = new Matrix4(); //Assumed to never leave identity state
 	protected AtomicInteger mBoundingColor = new AtomicInteger(0xffffff00);
+	protected Matrix4 mTransformMatrix;
 	
 	public BoundingBox() {
 		this(new Vector3[8]);
@@ -186,6 +187,7 @@ public class BoundingBox implements IBoundingVolume {
         }
     }
 	public void calculatePoints() {
+		mTransformMatrix = null;
 		// -- bottom plane
 		// -- -x, -y, -z
 		mPoints[0].setAll(mMin.x, mMin.y, mMin.z);
@@ -208,6 +210,7 @@ public class BoundingBox implements IBoundingVolume {
 	}
 	
 	public void transform(final Matrix4 matrix) {
+		mTransformMatrix = matrix;
 		mTransformedMin.setAll(Double.MAX_VALUE, Double.MAX_VALUE, Double.MAX_VALUE);
 		mTransformedMax.setAll(-Double.MAX_VALUE, -Double.MAX_VALUE, -Double.MAX_VALUE);
 		
@@ -226,6 +229,17 @@ public class BoundingBox implements IBoundingVolume {
 		}
 	}
 	
+	/**
+	 * Checks whether the transformed extents were calculated with the given matrix and are still current. Calculating
+	 * the points of the box again resets this.
+	 *
+	 * @param matrix {@link Matrix4} The model matrix of the object.
+	 * @return {@code boolean} True if {@link #transform(Matrix4)} was last called with this matrix instance.
+	 */
+	public boolean isTransformedBy(Matrix4 matrix) {
+		return mTransformMatrix == matrix;
+	}
+
 	public Vector3 getMin() {
 		return mMin;
 	}
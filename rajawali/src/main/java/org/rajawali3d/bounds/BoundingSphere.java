@@ -34,6 +34,7 @@ public class BoundingSphere implements IBoundingVolume {
 	protected double mDist, mMinDist, mScale;
 	protected final double[] mScaleValues;
 	protected int mBoundingColor = 0xffffff00;
+	protected Matrix4 mTransformMatrix;
 	
 	public BoundingSphere() {
 		mPosition = new Vector3();
@@ -76,6 +77,7 @@ public class BoundingSphere implements IBoundingVolume {
 	}
 	
 	public void transform(Matrix4 matrix) {
+		mTransformMatrix = matrix;
 		mPosition.setAll(0, 0, 0);
 		mPosition.multiply(matrix);
 		matrix.getScaling(mTmpPos);
@@ -83,7 +85,19 @@ public class BoundingSphere implements IBoundingVolume {
 		mScale = mScale > mTmpPos.z ? mScale : mTmpPos.z;
 	}
 	
+	/**
+	 * Checks whether the position and scale were calculated with the given matrix and are still current. Calculating
+	 * the bounds again resets this.
+	 *
+	 * @param matrix {@link Matrix4} The model matrix of the object.
+	 * @return {@code boolean} True if {@link #transform(Matrix4)} was last called with this matrix instance.
+	 */
+	public boolean isTransformedBy(Matrix4 matrix) {
+		return mTransformMatrix == matrix;
+	}
+
 	public void calculateBounds(Geometry3D geometry) {
+		mTransformMatrix = null;
 		double radius = 0, maxRadius = 0;
 		Vector3 vertex = new Vector3();
 		FloatBuffer vertices = geometry.getVertices();
@@ -19,6 +19,8 @@ import org.rajawali3d.math.Matrix4;
 import org.rajawali3d.math.Quaternion;
 import org.rajawali3d.math.vector.Vector3;
 
+import java.util.Arrays;
+
 public class Camera extends ATransformable3D {
 
 	protected final Object mFrustumLock = new Object();
@@ -29,6 +31,9 @@ public class Camera extends ATransformable3D {
 	protected final Matrix4 mViewMatrix = new Matrix4();
 	protected final Matrix4 mProjMatrix = new Matrix4();
 	protected final Matrix4 mScratchMatrix = new Matrix4();
+	protected final double[] mLastViewProjection = new double[16];
+	protected final double[] mLastView = new double[16];
+	protected volatile int mViewProjectionVersion;
 	protected double mNearPlane = 1.0;
 	protected double mFarPlane = 120.0;
 	protected double mFieldOfView = 45.0;
@@ -182,12 +187,37 @@ public class Camera extends ATransformable3D {
         }
 	}
 
-	public void updateFrustum(Matrix4 invVPMatrix) {
+	/**
+	 * Updates the frustum planes from the current view-projection matrix. The
+	 * {@link #getViewProjectionVersion()} changes if the view or view-projection matrix differ from the previous
+	 * call.
+	 *
+	 * @param vpMatrix {@link Matrix4} The view-projection matrix, calculated from this camera's view matrix.
+	 */
+	public void updateFrustum(Matrix4 vpMatrix) {
 		synchronized (mFrustumLock) {
-			mFrustum.update(invVPMatrix);
+			final double[] vp = vpMatrix.getDoubleValues();
+			final double[] v = mViewMatrix.getDoubleValues();
+			if (mViewProjectionVersion > 0 && Arrays.equals(vp, mLastViewProjection) && Arrays.equals(v, mLastView)) {
+				return;
+			}
+			System.arraycopy(vp, 0, mLastViewProjection, 0, 16);
+			System.arraycopy(v, 0, mLastView, 0, 16);
+			++mViewProjectionVersion;
+			mFrustum.update(vpMatrix);
 		}
 	}
 
+	/**
+	 * The view-projection version changes whenever {@link #updateFrustum(Matrix4)} is called with a different
+	 * view or view-projection matrix. It is 0 until the frustum has been updated for the first time.
+	 *
+	 * @return The view-projection version
+	 */
+	public int getViewProjectionVersion() {
+		return mViewProjectionVersion;
+	}
+
 	public Frustum getFrustum() {
         synchronized (mFrustumLock) {
             return mFrustum;
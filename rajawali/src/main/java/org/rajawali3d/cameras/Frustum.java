@@ -18,20 +18,35 @@ import org.rajawali3d.math.Plane;
 import org.rajawali3d.math.vector.Vector3;
 
 public class Frustum {
+	/**
+	 * Result of {@link #classifyBounds(Vector3, Vector3)}: the bounds are completely outside the frustum.
+	 */
+	public static final int OUTSIDE = 0;
+	/**
+	 * Result of {@link #classifyBounds(Vector3, Vector3)}: the bounds are partially inside the frustum.
+	 */
+	public static final int INTERSECTS = 1;
+	/**
+	 * Result of {@link #classifyBounds(Vector3, Vector3)}: the bounds are completely inside the frustum.
+	 */
+	public static final int INSIDE = 2;
+
 	private final Plane[] mPlanes;
-	private Vector3 mPoint1;
-	private Vector3 mPoint2;
 
 	public Frustum() {
 		mPlanes = new Plane[6];
-		mPoint1 = new Vector3();
-		mPoint2 = new Vector3();
 		for (int i = 0; i < 6; i++)
 			mPlanes[i] = new Plane();
 	}
 
-	public void update(Matrix4 inverseProjectionView) {
-		float[] m = inverseProjectionView.getFloatValues();
+	/**
+	 * Extracts the frustum planes from a view-projection matrix. The planes are in the space the matrix transforms
+	 * from, world space for the camera's view-projection matrix.
+	 *
+	 * @param projectionView {@link Matrix4} The view-projection matrix.
+	 */
+	public void update(Matrix4 projectionView) {
+		float[] m = projectionView.getFloatValues();
 		
 		mPlanes[0].setComponents(m[Matrix4.M30] - m[Matrix4.M00], m[Matrix4.M31] - m[Matrix4.M01], m[Matrix4.M32] - m[Matrix4.M02], m[Matrix4.M33] - m[Matrix4.M03]);
 		mPlanes[1].setComponents(m[Matrix4.M30] + m[Matrix4.M00], m[Matrix4.M31] + m[Matrix4.M01], m[Matrix4.M32] + m[Matrix4.M02], m[Matrix4.M33] + m[Matrix4.M03]);
@@ -58,24 +73,42 @@ public class Frustum {
 		return true;
 	}
 
+	/**
+	 * Tests a bounding box against the frustum using its transformed (world space) extents.
+	 *
+	 * @param bounds {@link BoundingBox} The bounding box, transformed with its object's model matrix.
+	 * @return {@code boolean} True if any part of the box may be inside the frustum.
+	 */
 	public boolean boundsInFrustum(BoundingBox bounds) {
+		return classifyBounds(bounds.getTransformedMin(), bounds.getTransformedMax()) != OUTSIDE;
+	}
+
+	/**
+	 * Determines whether an axis aligned box is outside, intersecting or fully inside the frustum. Boxes close to a
+	 * corner of the frustum can be reported as intersecting although they are outside, never the other way round.
+	 *
+	 * @param min {@link Vector3} The minimum corner of the box.
+	 * @param max {@link Vector3} The maximum corner of the box.
+	 * @return {@code int} One of {@link #OUTSIDE}, {@link #INTERSECTS} or {@link #INSIDE}.
+	 */
+	public int classifyBounds(Vector3 min, Vector3 max) {
+		// No scratch members are used, objects are culled from several threads at once
+		int result = INSIDE;
 		for(int i=0; i<6; i++) {
 			Plane p = mPlanes[i];
-			mPoint1.x = p.getNormal().x > 0 ? bounds.getMin().x : bounds.getMax().x;
-			mPoint2.x = p.getNormal().x > 0 ? bounds.getMax().x : bounds.getMin().x;
-			mPoint1.y = p.getNormal().y > 0 ? bounds.getMin().y : bounds.getMax().y;
-			mPoint2.y = p.getNormal().y > 0 ? bounds.getMax().y : bounds.getMin().y;
-			mPoint1.z = p.getNormal().z > 0 ? bounds.getMin().z : bounds.getMax().z;
-			mPoint2.z = p.getNormal().z > 0 ? bounds.getMax().z : bounds.getMin().z;
-
-			double distance1 = p.getDistanceTo(mPoint1);
-			double distance2 = p.getDistanceTo(mPoint2);
-
-			if ( distance1 < 0 && distance2 < 0 )
-				return false;
+			Vector3 n = p.getNormal();
+			// The corner furthest along the plane normal, and the one furthest against it
+			final double far = p.getD() + n.x * (n.x > 0 ? max.x : min.x) + n.y * (n.y > 0 ? max.y : min.y)
+					+ n.z * (n.z > 0 ? max.z : min.z);
+			if (far < 0)
+				return OUTSIDE;
+			final double near = p.getD() + n.x * (n.x > 0 ? min.x : max.x) + n.y * (n.y > 0 ? min.y : max.y)
+					+ n.z * (n.z > 0 ? min.z : max.z);
+			if (near < 0)
+				result = INTERSECTS;
 		}
-		
-		return true;
+
+		return result;
 	}
 
 	public boolean pointInFrustum(Vector3 point) {
@@ -14,6 +14,7 @@ package org.rajawali3d.lights;
 
 import org.rajawali3d.ATransformable3D;
 import org.rajawali3d.math.vector.Vector3;
+import org.rajawali3d.renderer.RenderDirtyTracker;
 
 public abstract class ALight extends ATransformable3D {
 	public static final int DIRECTIONAL_LIGHT = 0;
@@ -34,18 +35,21 @@ public abstract class ALight extends ATransformable3D {
 	}
 
 	public void setColor(final float r, final float g, final float b) {
+		RenderDirtyTracker.markSceneChanged();
 		mColor[0] = r;
 		mColor[1] = g;
 		mColor[2] = b;
 	}
 
 	public void setColor(int color) {
+		RenderDirtyTracker.markSceneChanged();
 		mColor[0] = ((color >> 16) & 0xFF) / 255f;
 		mColor[1] = ((color >> 8) & 0xFF) / 255f;
 		mColor[2] = (color & 0xFF) / 255f;
 	}
 
 	public void setColor(Vector3 color) {
+		RenderDirtyTracker.markSceneChanged();
 		setColor((float) color.x, (float) color.y, (float) color.z);
 	}
 
@@ -54,6 +58,7 @@ public abstract class ALight extends ATransformable3D {
 	}
 
 	public void setPower(float power) {
+		RenderDirtyTracker.markSceneChanged();
 		mPower = power;
 	}
 
@@ -14,8 +14,10 @@ package org.rajawali3d.loader;
 
 import android.content.res.Resources;
 import android.os.Environment;
+import org.rajawali3d.Object3D;
 import org.rajawali3d.renderer.Renderer;
 import org.rajawali3d.util.LittleEndianDataInputStream;
+import org.rajawali3d.util.MeshOptimizer;
 import org.rajawali3d.util.RajLog;
 
 import java.io.BufferedInputStream;
@@ -36,6 +38,8 @@ public abstract class ALoader implements ILoader {
 	protected String mFileOnSDCard;
 	protected File mFile;
 	protected int mTag;
+	protected boolean mOptimizeMeshes;
+	protected boolean mOptimizeOverdraw;
 
 	public ALoader(File file) {
 		this(file.getAbsolutePath());
@@ -88,6 +92,34 @@ public abstract class ALoader implements ILoader {
 		mTag = tag;
 	}
 
+	/**
+	 * Reorders the triangles and vertices of the parsed meshes for the vertex cache of the GPU, see
+	 * {@link MeshOptimizer}. The work is done on the thread which parses, loaders apply it by calling
+	 * {@link #optimizeMeshes(Object3D)} once they are done.
+	 *
+	 * @param optimize Whether to optimize the meshes.
+	 * @param overdraw Whether to also order the triangles for less overdraw.
+	 */
+	public void setMeshOptimization(boolean optimize, boolean overdraw) {
+		mOptimizeMeshes = optimize;
+		mOptimizeOverdraw = overdraw;
+	}
+
+	/**
+	 * Optimizes the meshes of a parsed object hierarchy if {@link #setMeshOptimization(boolean, boolean)} asked for
+	 * it. Has to be called before the buffers of the geometries are created.
+	 *
+	 * @param object The root of the parsed hierarchy.
+	 * @return The {@link MeshOptimizer.Statistics}, or null if the meshes were not optimized.
+	 */
+	protected MeshOptimizer.Statistics optimizeMeshes(Object3D object) {
+		if (!mOptimizeMeshes || object == null) return null;
+		final MeshOptimizer.Statistics statistics = MeshOptimizer.optimize(object, mOptimizeOverdraw);
+		if (RajLog.isDebugEnabled())
+			RajLog.d("Optimized meshes: " + statistics);
+		return statistics;
+	}
+
 	/**
 	 * Open a BufferedReader for the current resource or file with a buffer size of 8192 bytes.
 	 *
@@ -0,0 +1,27 @@
+package org.rajawali3d.loader.async;
+
+import org.rajawali3d.materials.textures.ASingleTexture;
+import org.rajawali3d.renderer.Renderer;
+
+/**
+ * Interface for defining an asynchronous texture callback. This will be provided to
+ * {@link Renderer#loadTexture(ASingleTexture, org.rajawali3d.materials.textures.TextureSource, IAsyncTextureCallback)}.
+ * Both methods are called on the GL thread.
+ */
+public interface IAsyncTextureCallback {
+
+    /**
+     * Callback listener indicating the texture has been uploaded completely and replaced its placeholder.
+     *
+     * @param texture
+     */
+    public void onTextureResident(ASingleTexture texture);
+
+    /**
+     * Callback listener indicating the texture could not be decoded. It keeps showing the placeholder.
+     *
+     * @param texture
+     * @param e The reason
+     */
+    public void onTextureLoadFailed(ASingleTexture texture, Exception e);
+}
@@ -18,6 +18,7 @@ import android.support.annotation.NonNull;
 import android.util.Log;
 import org.rajawali3d.BufferInfo;
 import org.rajawali3d.Object3D;
+import org.rajawali3d.VertexFormat;
 import org.rajawali3d.lights.ALight;
 import org.rajawali3d.materials.methods.DiffuseMethod;
 import org.rajawali3d.materials.methods.IDiffuseMethod;
@@ -26,6 +27,8 @@ import org.rajawali3d.materials.methods.SpecularMethod;
 import org.rajawali3d.materials.plugins.IMaterialPlugin;
 import org.rajawali3d.materials.shaders.FragmentShader;
 import org.rajawali3d.materials.shaders.IShaderFragment;
+import org.rajawali3d.materials.shaders.ProgramCache;
+import org.rajawali3d.materials.shaders.ShaderProgram;
 import org.rajawali3d.materials.shaders.VertexShader;
 import org.rajawali3d.materials.shaders.fragments.LightsFragmentShaderFragment;
 import org.rajawali3d.materials.shaders.fragments.LightsVertexShaderFragment;
@@ -40,6 +43,8 @@ import org.rajawali3d.materials.textures.CubeMapTexture;
 import org.rajawali3d.materials.textures.SphereMapTexture;
 import org.rajawali3d.materials.textures.TextureManager;
 import org.rajawali3d.math.Matrix4;
+import org.rajawali3d.renderer.GLStateCache;
+import org.rajawali3d.renderer.RenderDirtyTracker;
 import org.rajawali3d.renderer.Renderer;
 import org.rajawali3d.scene.Scene;
 import org.rajawali3d.util.Capabilities;
@@ -47,6 +52,7 @@ import org.rajawali3d.util.RajLog;
 
 import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 
@@ -79,6 +85,11 @@ public class Material {
         PRE_LIGHTING, PRE_DIFFUSE, PRE_SPECULAR, PRE_ALPHA, PRE_TRANSFORM, POST_TRANSFORM, IGNORE
     };
 
+    /**
+     * How many generated shader variants a material keeps, see {@link #createShaderVariantKey()}.
+     */
+    private static final int MAX_SHADER_VARIANTS = 8;
+
     private final boolean mCapabilitiesCheckDeferred;
 
     /**
@@ -120,6 +131,11 @@ public class Material {
      * contained in a separate color buffer.
      */
     private boolean mUseVertexColors;
+    /**
+     * The vertex format of the geometries drawn with this material, which decides which attributes the vertex
+     * shader decodes.
+     */
+    private VertexFormat mVertexFormat = VertexFormat.FLOAT;
     /**
      * Indicates whether lighting should be used or not. This must be set to true when using a
      * {@link DiffuseMethod} or a {@link SpecularMethod}. Lights are added to a scene {@link Scene}
@@ -143,13 +159,24 @@ public class Material {
      */
     private int mProgramHandle = -1;
     /**
-     * Holds a reference to the vertex shader
+     * The linked program, shared with all materials which generate the same shaders
+     */
+    private ShaderProgram mProgram;
+    /**
+     * The shader sources generated so far, by the {@link ShaderVariantKey} they were generated for, least recently
+     * used first
      */
-    private int mVShaderHandle;
+    private final Map<ShaderVariantKey, String[]> mShaderVariants = new LinkedHashMap<ShaderVariantKey, String[]>(
+            MAX_SHADER_VARIANTS, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<ShaderVariantKey, String[]> eldest) {
+            return size() > MAX_SHADER_VARIANTS;
+        }
+    };
     /**
-     * Holds a reference to the fragment shader
+     * The key of the current shaders, null for custom shaders
      */
-    private int mFShaderHandle;
+    private ShaderVariantKey mShaderVariantKey;
     /**
      * The model matrix holds the object's local coordinates
      */
@@ -239,11 +266,6 @@ public class Material {
      * the normal into eye space.
      */
     protected final float[] mNormalFloats = new float[9];
-    /**
-     * Scratch normal amtrix. The normal matrix is used in the shaders to transform
-     * the normal into eye space.
-     */
-    protected Matrix4 mNormalMatrix = new Matrix4();
     protected VertexShader mCustomVertexShader;
     protected FragmentShader mCustomFragmentShader;
 
@@ -320,6 +342,28 @@ public class Material {
         }
     }
 
+    /**
+     * Sets the vertex format of the geometries drawn with this material, see
+     * {@link org.rajawali3d.Geometry3D#setVertexFormat(VertexFormat)}. The vertex shader decodes quantized positions
+     * and octahedral normals, all other encodings need no decoding. Objects pass the format of their geometry every
+     * time they are drawn, geometries drawn with the same material should agree on these two encodings, otherwise the
+     * shaders are rebuilt whenever they alternate.
+     *
+     * @param format The {@link VertexFormat}.
+     */
+    public void setVertexFormat(VertexFormat format) {
+        if (format == null) format = VertexFormat.FLOAT;
+        if (format.hasQuantizedPositions() != mVertexFormat.hasQuantizedPositions()
+                || format.hasOctahedralNormals() != mVertexFormat.hasOctahedralNormals()) {
+            mIsDirty = true;
+        }
+        mVertexFormat = format;
+    }
+
+    public VertexFormat getVertexFormat() {
+        return mVertexFormat;
+    }
+
     /**
      * The material's diffuse color. This can be overwritten by {@link Object3D#setColor(int)}.
      * This color will be applied to the whole object. For vertex colors use {@link Material#useVertexColors(boolean)}
@@ -328,6 +372,7 @@ public class Material {
      * @param color {@code int} color The color to be used. Color.RED for instance. Or 0xffff0000.
      */
     public void setColor(int color) {
+        RenderDirtyTracker.markSceneChanged();
         mColor[0] = (float) Color.red(color) / 255.f;
         mColor[1] = (float) Color.green(color) / 255.f;
         mColor[2] = (float) Color.blue(color) / 255.f;
@@ -345,6 +390,17 @@ public class Material {
      *              the red, green, blue and alpha channels.
      */
     public void setColor(float[] color) {
+        RenderDirtyTracker.markSceneChanged();
+        overrideColor(color);
+    }
+
+    /**
+     * Sets the color for the object which is about to be drawn, see {@link Object3D#setColor(int)}. Unlike
+     * {@link #setColor(float[])} this is not reported as a change, since it happens while drawing.
+     *
+     * @param color A float array containing the normalized red, green, blue and alpha channels.
+     */
+    public void overrideColor(float[] color) {
         mColor[0] = color[0];
         mColor[1] = color[1];
         mColor[2] = color[2];
@@ -376,6 +432,7 @@ public class Material {
      *                  50% color influence, .75 for 75% color influence, etc.
      */
     public void setColorInfluence(float influence) {
+        RenderDirtyTracker.markSceneChanged();
         mColorInfluence = influence;
     }
 
@@ -394,6 +451,7 @@ public class Material {
      * @param color The color to be used. Color.RED for instance. Or 0xffff0000.
      */
     public void setAmbientColor(int color) {
+        RenderDirtyTracker.markSceneChanged();
         mAmbientColor[0] = (float) Color.red(color) / 255.f;
         mAmbientColor[1] = (float) Color.green(color) / 255.f;
         mAmbientColor[2] = (float) Color.blue(color) / 255.f;
@@ -408,6 +466,7 @@ public class Material {
      *              the red, green, blue and alpha channels.
      */
     public void setAmbientColor(float[] color) {
+        RenderDirtyTracker.markSceneChanged();
         mAmbientColor[0] = color[0];
         mAmbientColor[1] = color[1];
         mAmbientColor[2] = color[2];
@@ -432,6 +491,7 @@ public class Material {
      * @param b The value [0..1] for the blue channel
      */
     public void setAmbientIntensity(double r, double g, double b) {
+        RenderDirtyTracker.markSceneChanged();
         setAmbientIntensity((float) r, (float) g, (float) b);
     }
 
@@ -443,6 +503,7 @@ public class Material {
      * @param b The value [0..1] for the blue channel
      */
     public void setAmbientIntensity(float r, float g, float b) {
+        RenderDirtyTracker.markSceneChanged();
         mAmbientIntensity[0] = r;
         mAmbientIntensity[1] = g;
         mAmbientIntensity[2] = b;
@@ -477,10 +538,9 @@ public class Material {
             mTextureList.clear();
 
         if (Renderer.hasGLContext()) {
-            GLES20.glDeleteShader(mVShaderHandle);
-            GLES20.glDeleteShader(mFShaderHandle);
-            GLES20.glDeleteProgram(mProgramHandle);
+            MaterialManager.getInstance().getProgramCache().release(mProgram);
         }
+        mProgram = null;
     }
 
     /**
@@ -517,6 +577,9 @@ public class Material {
         if (!mIsDirty)
             return;
         if (mCustomVertexShader == null && mCustomFragmentShader == null) {
+            final ShaderVariantKey variantKey = createShaderVariantKey();
+            final String[] variant = mShaderVariants.get(variantKey);
+
             //
             // -- Check textures
             //
@@ -589,6 +652,7 @@ public class Material {
             mVertexShader.hasCubeMaps(hasCubeMaps);
             mVertexShader.hasSkyTexture(skyTextures != null && skyTextures.size() > 0);
             mVertexShader.useVertexColors(mUseVertexColors);
+            mVertexShader.setVertexDecode(mVertexFormat.hasQuantizedPositions(), mVertexFormat.hasOctahedralNormals());
             onPreVertexShaderInitialize(mVertexShader);
             mVertexShader.initialize();
             mFragmentShader = new FragmentShader();
@@ -680,9 +744,19 @@ public class Material {
             checkForPlugins(PluginInsertLocation.PRE_TRANSFORM);
             checkForPlugins(PluginInsertLocation.POST_TRANSFORM);
 
-            mVertexShader.buildShader();
-            mFragmentShader.buildShader();
+            // -- the shader objects are still needed for their uniforms, only generating the code can be skipped
+            if (variant != null) {
+                mVertexShader.setShaderString(variant[0]);
+                mFragmentShader.setShaderString(variant[1]);
+            } else {
+                mVertexShader.buildShader();
+                mFragmentShader.buildShader();
+                mShaderVariants.put(variantKey, new String[]{mVertexShader.getShaderString(),
+                        mFragmentShader.getShaderString()});
+            }
+            mShaderVariantKey = variantKey;
         } else {
+            mShaderVariantKey = null;
             mVertexShader = mCustomVertexShader;
             mFragmentShader = mCustomFragmentShader;
 
@@ -700,12 +774,21 @@ public class Material {
             RajLog.d(mFragmentShader.getShaderString());
         }
 
-        mProgramHandle = createProgram(mVertexShader.getShaderString(), mFragmentShader.getShaderString());
-        if (mProgramHandle == 0) {
+        // -- acquire before releasing, so an unchanged program is not deleted and linked again
+        final ProgramCache programCache = MaterialManager.getInstance().getProgramCache();
+        final ShaderProgram program = programCache.acquire(mVertexShader.getShaderString(),
+                mFragmentShader.getShaderString());
+        programCache.release(mProgram);
+        mProgram = program;
+        if (program == null) {
+            mProgramHandle = 0;
             mIsDirty = false;
             return;
         }
+        mProgramHandle = program.getHandle();
 
+        mVertexShader.setProgram(program);
+        mFragmentShader.setProgram(program);
         mVertexShader.setLocations(mProgramHandle);
         mFragmentShader.setLocations(mProgramHandle);
 
@@ -720,6 +803,63 @@ public class Material {
         mIsDirty = false;
     }
 
+    /**
+     * Describes everything the generated shaders depend on. Shaders which were generated for an equal key are reused,
+     * so only the uniform locations have to be set up and the program is usually found in the {@link ProgramCache}.
+     *
+     * @return The {@link ShaderVariantKey} for the current settings.
+     */
+    protected ShaderVariantKey createShaderVariantKey() {
+        final ShaderVariantKey.Builder builder = new ShaderVariantKey.Builder();
+        builder.add(getClass()).add(mTimeEnabled).add(mUseVertexColors).add(mVertexFormat);
+        for (int i = 0, j = mTextureList.size(); i < j; ++i) {
+            final ATexture texture = mTextureList.get(i);
+            builder.add(texture.getClass()).add(texture.getTextureType()).add(texture.getTextureName())
+                    .add(texture.getWrapType()).add(texture.offsetEnabled());
+            if (texture instanceof SphereMapTexture) {
+                builder.add(((SphereMapTexture) texture).isSkyTexture())
+                        .add(((SphereMapTexture) texture).isEnvironmentTexture());
+            } else if (texture instanceof CubeMapTexture) {
+                builder.add(((CubeMapTexture) texture).isSkyTexture())
+                        .add(((CubeMapTexture) texture).isEnvironmentTexture());
+            }
+        }
+        final boolean lighting = mLightingEnabled && mLights != null && mLights.size() > 0;
+        builder.add(lighting);
+        if (lighting) {
+            builder.add(mLights.size());
+            for (int i = 0, j = mLights.size(); i < j; ++i) {
+                builder.add(mLights.get(i).getLightType());
+            }
+            builder.add(mDiffuseMethod).add(mSpecularMethod);
+        }
+        if (mPlugins != null) {
+            for (int i = 0, j = mPlugins.size(); i < j; ++i) {
+                builder.add(mPlugins.get(i));
+            }
+        }
+        onBuildShaderVariantKey(builder);
+        return builder.build();
+    }
+
+    /**
+     * Called by {@link #createShaderVariantKey()}. Subclasses whose {@link #onPreVertexShaderInitialize(VertexShader)}
+     * or {@link #onPreFragmentShaderInitialize(FragmentShader)} generate code from their own settings have to add
+     * those settings here.
+     *
+     * @param builder The {@link ShaderVariantKey.Builder}.
+     */
+    protected void onBuildShaderVariantKey(@NonNull ShaderVariantKey.Builder builder) {
+
+    }
+
+    /**
+     * @return {@code int} The number of generated shader variants this material keeps.
+     */
+    public int getShaderVariantCount() {
+        return mShaderVariants.size();
+    }
+
     /**
      * Checks if the device capabilities need to be checked to update the count of available texture units.
      */
@@ -745,67 +885,10 @@ public class Material {
     }
 
     /**
-     * Loads the shader from a text string and then compiles it.
-     *
-     * @param shaderType
-     * @param source
-     *
-     * @return
+     * @return Whether the shaders have to be rebuilt, which {@link #useProgram()} does.
      */
-    private int loadShader(int shaderType, String source) {
-        int shader = GLES20.glCreateShader(shaderType);
-        if (shader != 0) {
-            GLES20.glShaderSource(shader, source);
-            GLES20.glCompileShader(shader);
-            int[] compiled = new int[1];
-            GLES20.glGetShaderiv(shader, GLES20.GL_COMPILE_STATUS, compiled, 0);
-            if (compiled[0] == 0) {
-                RajLog.e("[" + getClass().getName() + "] Could not compile "
-                    + (shaderType == GLES20.GL_FRAGMENT_SHADER ? "fragment" : "vertex") + " shader:");
-                RajLog.e("Shader log: " + GLES20.glGetShaderInfoLog(shader));
-                GLES20.glDeleteShader(shader);
-                shader = 0;
-            }
-        }
-        return shader;
-    }
-
-    /**
-     * Creates a shader program by compiling the vertex and fragment shaders
-     * from a string.
-     *
-     * @param vertexSource
-     * @param fragmentSource
-     *
-     * @return
-     */
-    private int createProgram(String vertexSource, String fragmentSource) {
-        mVShaderHandle = loadShader(GLES20.GL_VERTEX_SHADER, vertexSource);
-        if (mVShaderHandle == 0) {
-            return 0;
-        }
-
-        mFShaderHandle = loadShader(GLES20.GL_FRAGMENT_SHADER, fragmentSource);
-        if (mFShaderHandle == 0) {
-            return 0;
-        }
-
-        int program = GLES20.glCreateProgram();
-        if (program != 0) {
-            GLES20.glAttachShader(program, mVShaderHandle);
-            GLES20.glAttachShader(program, mFShaderHandle);
-            GLES20.glLinkProgram(program);
-
-            int[] linkStatus = new int[1];
-            GLES20.glGetProgramiv(program, GLES20.GL_LINK_STATUS, linkStatus, 0);
-            if (linkStatus[0] != GLES20.GL_TRUE) {
-                RajLog.e("Could not link program in " + getClass().getCanonicalName() + ": ");
-                RajLog.e(GLES20.glGetProgramInfoLog(program));
-                GLES20.glDeleteProgram(program);
-                program = 0;
-            }
-        }
-        return program;
+    public boolean isDirty() {
+        return mIsDirty;
     }
 
     /**
@@ -815,7 +898,16 @@ public class Material {
         if (mIsDirty) {
             createShaders();
         }
-        GLES20.glUseProgram(mProgramHandle);
+        GLStateCache.getCurrent().useProgram(mProgramHandle);
+    }
+
+    /**
+     * Returns the handle of the linked program.
+     *
+     * @return The program handle, or a value smaller than 1 if the shaders haven't been created yet.
+     */
+    public int getProgramHandle() {
+        return mProgramHandle;
     }
 
     /**
@@ -839,7 +931,7 @@ public class Material {
     private void setTextureParameters(ATexture texture) {
         if (mTextureHandles.containsKey(texture.getTextureName())) return;
 
-        int textureHandle = GLES20.glGetUniformLocation(mProgramHandle, texture.getTextureName());
+        int textureHandle = mProgram != null ? mProgram.getUniformLocation(texture.getTextureName()) : -1;
         if (textureHandle == -1 && RajLog.isDebugEnabled()) {
             RajLog.e("Could not get uniform location for " + texture.getTextureName() + ", "
                      + texture.getTextureType());
@@ -852,7 +944,7 @@ public class Material {
         if (mProgramHandle < 0 || mTextureHandles.containsKey(name) && mTextureHandles.get(name) > -1) {
             return;
         }
-        int textureHandle = GLES20.glGetUniformLocation(mProgramHandle, name);
+        int textureHandle = mProgram != null ? mProgram.getUniformLocation(name) : -1;
         if (textureHandle == -1 && RajLog.isDebugEnabled()) {
             RajLog.e("Could not get uniform location for " + name + " Program Handle: " + mProgramHandle);
             return;
@@ -889,18 +981,18 @@ public class Material {
         if (!mTextureHandles.containsKey(texture.getTextureName())) {
             setTextureParameters(texture);
         }
-        GLES20.glActiveTexture(GLES20.GL_TEXTURE0 + index);
-        GLES20.glBindTexture(texture.getGLTextureType(), texture.getTextureId());
-        GLES20.glUniform1i(mTextureHandles.get(texture.getTextureName()), index);
+        TextureManager.getInstance().markUsed(texture);
+        GLStateCache.getCurrent().bindTexture(index, texture.getGLTextureType(), texture.getTextureId());
+        mFragmentShader.getUniformCache().uniform1i(mTextureHandles.get(texture.getTextureName()), index);
     }
 
     public void bindTextureByName(String name, int index, ATexture texture) {
         if (!mTextureHandles.containsKey(texture.getTextureName())) {
             setTextureHandleForName(name);
         }
-        GLES20.glActiveTexture(GLES20.GL_TEXTURE0 + index);
-        GLES20.glBindTexture(texture.getGLTextureType(), texture.getTextureId());
-        GLES20.glUniform1i(mTextureHandles.get(name), index);
+        TextureManager.getInstance().markUsed(texture);
+        GLStateCache.getCurrent().bindTexture(index, texture.getGLTextureType(), texture.getTextureId());
+        mFragmentShader.getUniformCache().uniform1i(mTextureHandles.get(name), index);
     }
 
     /**
@@ -913,12 +1005,13 @@ public class Material {
             for (IMaterialPlugin plugin : mPlugins)
                 plugin.unbindTextures();
 
+        final GLStateCache cache = GLStateCache.getCurrent();
         for (int i = 0; i < num; i++) {
             ATexture texture = mTextureList.get(i);
-            GLES20.glBindTexture(texture.getGLTextureType(), 0);
+            cache.bindTexture(i, texture.getGLTextureType(), 0);
         }
 
-        GLES20.glBindBuffer(GLES20.GL_ARRAY_BUFFER, 0);
+        cache.bindBuffer(GLES20.GL_ARRAY_BUFFER, 0);
     }
 
     /**
@@ -929,6 +1022,7 @@ public class Material {
      * @throws TextureException
      */
     public void addTexture(ATexture texture) throws TextureException {
+        RenderDirtyTracker.markSceneChanged();
         if (mTextureList.indexOf(texture) > -1) return;
         if (mTextureList.size() + 1 > mMaxTextures) {
             throw new TextureException("Maximum number of textures for this material has been reached. Maximum number of textures is " + mMaxTextures + ".");
@@ -947,6 +1041,7 @@ public class Material {
      * @param texture
      */
     public void removeTexture(ATexture texture) {
+        RenderDirtyTracker.markSceneChanged();
         mTextureList.remove(texture);
         texture.unregisterMaterial(this);
     }
@@ -960,6 +1055,43 @@ public class Material {
         return mTextureList;
     }
 
+    /**
+     * Computes an identifier for the set of textures used by this material. Materials with the same textures in the
+     * same order return the same value. This is used as a sort criterion only, use
+     * {@link #usesSameTexturesAs(Material)} to find out whether textures have to be rebound.
+     *
+     * @return The hash of the texture set.
+     */
+    public int getTextureSetHash() {
+        int hash = 1;
+        for (int i = 0, j = mTextureList.size(); i < j; ++i) {
+            hash = 31 * hash + System.identityHashCode(mTextureList.get(i));
+        }
+        return hash;
+    }
+
+    /**
+     * Checks whether binding the textures of another material leaves the texture units exactly as this material
+     * expects them. Materials with plugins are never considered equal since plugins may bind textures of their own.
+     *
+     * @param other The {@link Material} whose textures are currently bound. May be {@code null}.
+     *
+     * @return {@code true} if the texture binds can be skipped.
+     */
+    public boolean usesSameTexturesAs(Material other) {
+        if (other == this) return true;
+        if (other == null) return false;
+        if ((mPlugins != null && mPlugins.size() > 0) || (other.mPlugins != null && other.mPlugins.size() > 0)) {
+            return false;
+        }
+        final int num = mTextureList.size();
+        if (num != other.mTextureList.size()) return false;
+        for (int i = 0; i < num; ++i) {
+            if (mTextureList.get(i) != other.mTextureList.get(i)) return false;
+        }
+        return true;
+    }
+
     /**
      * Copies this material's textures to another material.
      *
@@ -989,7 +1121,8 @@ public class Material {
      * @param bufferInfo
      */
     public void setVertices(BufferInfo bufferInfo) {
-        mVertexShader.setVertices(bufferInfo.bufferHandle, bufferInfo.type, bufferInfo.stride, bufferInfo.offset);
+        mVertexShader.setVertices(bufferInfo.bufferHandle, bufferInfo.components > 0 ? bufferInfo.components : 3,
+                bufferInfo.type, bufferInfo.normalized, bufferInfo.stride, bufferInfo.offset);
     }
 
     /**
@@ -1007,7 +1140,8 @@ public class Material {
      * @param bufferInfo
      */
     public void setTextureCoords(BufferInfo bufferInfo) {
-        mVertexShader.setTextureCoords(bufferInfo.bufferHandle, bufferInfo.type, bufferInfo.stride, bufferInfo.offset);
+        mVertexShader.setTextureCoords(bufferInfo.bufferHandle, bufferInfo.components > 0 ? bufferInfo.components : 2,
+                bufferInfo.type, bufferInfo.normalized, bufferInfo.stride, bufferInfo.offset);
     }
 
     /**
@@ -1025,7 +1159,8 @@ public class Material {
      * @param bufferInfo
      */
     public void setNormals(BufferInfo bufferInfo) {
-        mVertexShader.setNormals(bufferInfo.bufferHandle, bufferInfo.type, bufferInfo.stride, bufferInfo.offset);
+        mVertexShader.setNormals(bufferInfo.bufferHandle, bufferInfo.components > 0 ? bufferInfo.components : 3,
+                bufferInfo.type, bufferInfo.normalized, bufferInfo.stride, bufferInfo.offset);
     }
 
     /**
@@ -1043,7 +1178,8 @@ public class Material {
      * @param bufferInfo
      */
     public void setVertexColors(BufferInfo bufferInfo) {
-        mVertexShader.setVertexColors(bufferInfo.bufferHandle, bufferInfo.type, bufferInfo.stride, bufferInfo.offset);
+        mVertexShader.setVertexColors(bufferInfo.bufferHandle, bufferInfo.components > 0 ? bufferInfo.components : 4,
+                bufferInfo.type, bufferInfo.normalized, bufferInfo.stride, bufferInfo.offset);
     }
 
     /**
@@ -1074,25 +1210,59 @@ public class Material {
         mModelMatrix = modelMatrix;//.getFloatValues();
         mVertexShader.setModelMatrix(mModelMatrix);
 
-        mNormalMatrix.setAll(modelMatrix);
-        try {
-            mNormalMatrix.setToNormalMatrix();
-        } catch (IllegalStateException exception) {
-            RajLog.d("modelMatrix is degenerate (zero scale)...");
+        if (mVertexShader.usesNormalMatrix()) {
+            if (!modelMatrix.toNormalMatrixFloatArray(mNormalFloats)) {
+                RajLog.d("modelMatrix is degenerate (zero scale)...");
+            }
+            mVertexShader.setNormalMatrix(mNormalFloats);
         }
-        float[] matrix = mNormalMatrix.getFloatValues();
+    }
+
+    /**
+     * Sets the model matrix along with its normal matrix, which the caller keeps up to date, see
+     * {@link Object3D#getNormalMatrix()}.
+     *
+     * @param modelMatrix
+     * @param normalMatrix The normal matrix of the model matrix, column major. Ignored if the program doesn't use it.
+     */
+    public void setModelMatrix(Matrix4 modelMatrix, float[] normalMatrix) {
+        mModelMatrix = modelMatrix;
+        mVertexShader.setModelMatrix(mModelMatrix);
 
-        mNormalFloats[0] = matrix[0];
-        mNormalFloats[1] = matrix[1];
-        mNormalFloats[2] = matrix[2];
-        mNormalFloats[3] = matrix[4];
-        mNormalFloats[4] = matrix[5];
-        mNormalFloats[5] = matrix[6];
-        mNormalFloats[6] = matrix[8];
-        mNormalFloats[7] = matrix[9];
-        mNormalFloats[8] = matrix[10];
+        if (normalMatrix != null && mVertexShader.usesNormalMatrix()) {
+            mVertexShader.setNormalMatrix(normalMatrix);
+        }
+    }
 
-        mVertexShader.setNormalMatrix(mNormalFloats);
+    /**
+     * Sets the bounding box which quantized positions are decoded with, see
+     * {@link VertexShader#setPositionQuantization(float[], float[])}.
+     *
+     * @param offset The smallest value of each axis.
+     * @param scale  The extent of each axis.
+     */
+    public void setPositionQuantization(float[] offset, float[] scale) {
+        mVertexShader.setPositionQuantization(offset, scale);
+    }
+
+    /**
+     * Returns the attribute layout of the program for {@link org.rajawali3d.VertexArrayCache}, see
+     * {@link VertexShader#getVertexArrayLayout(boolean, boolean, boolean)}.
+     *
+     * @param textureCoords Whether texture coordinates are set.
+     * @param normals       Whether normals are set.
+     * @param vertexColors  Whether vertex colors are set.
+     * @return The layout, or -1 if the attributes have to be set for every draw call.
+     */
+    public int getVertexArrayLayout(boolean textureCoords, boolean normals, boolean vertexColors) {
+        return mVertexShader != null ? mVertexShader.getVertexArrayLayout(textureCoords, normals, vertexColors) : -1;
+    }
+
+    /**
+     * @return Whether the program of this material reads the normal matrix.
+     */
+    public boolean usesNormalMatrix() {
+        return mVertexShader != null && mVertexShader.usesNormalMatrix();
     }
 
     /**
@@ -1113,6 +1283,7 @@ public class Material {
      * @param value
      */
     public void enableLighting(boolean value) {
+        RenderDirtyTracker.markSceneChanged();
         mLightingEnabled = value;
     }
 
@@ -1176,6 +1347,7 @@ public class Material {
      * @param time
      */
     public void setTime(float time) {
+        RenderDirtyTracker.markSceneChanged();
         mTime = time;
     }
 
@@ -1214,15 +1386,12 @@ public class Material {
      * @param lights The lights collection
      */
     public void setLights(List<ALight> lights) {
-        if (mLights != null) {
-            for (ALight light : lights) {
-                if (!mLights.contains(light)) {
-                    break;
-                }
-            }
-        } else {
+        if (mLights != lights) {
             mIsDirty = true;
             mLights = lights;
+        } else if (mShaderVariantKey != null && !mShaderVariantKey.equals(createShaderVariantKey())) {
+            // -- the collection was changed in place, lights of other types need other shaders
+            mIsDirty = true;
         }
     }
 
@@ -1237,6 +1406,7 @@ public class Material {
      * @param diffuseMethod The diffuse method
      */
     public void setDiffuseMethod(IDiffuseMethod diffuseMethod) {
+        RenderDirtyTracker.markSceneChanged();
         if (mDiffuseMethod == diffuseMethod) return;
         mDiffuseMethod = diffuseMethod;
         mIsDirty = true;
@@ -1268,6 +1438,7 @@ public class Material {
      * @param specularMethod The specular method to use
      */
     public void setSpecularMethod(ISpecularMethod specularMethod) {
+        RenderDirtyTracker.markSceneChanged();
         if (mSpecularMethod == specularMethod) return;
         mSpecularMethod = specularMethod;
         mIsDirty = true;
@@ -1296,6 +1467,7 @@ public class Material {
      * @param plugin
      */
     public void addPlugin(IMaterialPlugin plugin) {
+        RenderDirtyTracker.markSceneChanged();
         if (mPlugins == null) {
             mPlugins = new ArrayList<IMaterialPlugin>();
         } else {
@@ -1343,6 +1515,7 @@ public class Material {
      * @param plugin
      */
     public void removePlugin(IMaterialPlugin plugin) {
+        RenderDirtyTracker.markSceneChanged();
         if (mPlugins != null && mPlugins.contains(plugin)) {
             mPlugins.remove(plugin);
             mIsDirty = true;
@@ -12,6 +12,7 @@
  */
 package org.rajawali3d.materials;
 
+import org.rajawali3d.materials.shaders.ProgramCache;
 import org.rajawali3d.renderer.Renderer;
 
 import java.util.Collections;
@@ -21,6 +22,7 @@ import java.util.concurrent.CopyOnWriteArrayList;
 public class MaterialManager extends AResourceManager {
 	private static MaterialManager instance = null;
 	private List<Material> mMaterialList;
+	private final ProgramCache mProgramCache = new ProgramCache();
 
 	private MaterialManager() {
 		mMaterialList = Collections.synchronizedList(new CopyOnWriteArrayList<Material>());
@@ -105,4 +107,13 @@ public class MaterialManager extends AResourceManager {
 	public int getMaterialCount() {
 		return mMaterialList.size();
 	}
+
+	/**
+	 * Returns the cache of linked programs, which materials with identical shaders share.
+	 *
+	 * @return The {@link ProgramCache}
+	 */
+	public ProgramCache getProgramCache() {
+		return mProgramCache;
+	}
 }
@@ -0,0 +1,83 @@
+/**
+ * Copyright 2013 Dennis Ippel
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package org.rajawali3d.materials;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Describes everything the shaders a {@link Material} generates depend on, so shaders which were generated before can
+ * be reused instead of being generated again. Two materials, or the same material at two times, with equal keys
+ * generate equal shader sources.
+ *
+ * A key is a list of parts which are compared with {@link Object#equals(Object)}. Values such as flags, texture names
+ * and light types are compared by value. Objects which generate shader code from their own state, such as
+ * {@link org.rajawali3d.materials.plugins.IMaterialPlugin}s and diffuse or specular methods, are compared by
+ * identity, so their code is assumed not to change while they are in use.
+ */
+public final class ShaderVariantKey {
+
+    private final Object[] mParts;
+    private final int mHashCode;
+
+    private ShaderVariantKey(Object[] parts) {
+        mParts = parts;
+        mHashCode = Arrays.hashCode(parts);
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (!(o instanceof ShaderVariantKey)) return false;
+        final ShaderVariantKey other = (ShaderVariantKey) o;
+        return mHashCode == other.mHashCode && Arrays.equals(mParts, other.mParts);
+    }
+
+    @Override
+    public int hashCode() {
+        return mHashCode;
+    }
+
+    @Override
+    public String toString() {
+        return "ShaderVariantKey" + Arrays.toString(mParts);
+    }
+
+    /**
+     * Collects the parts of a key in order.
+     */
+    public static final class Builder {
+
+        private final List<Object> mParts = new ArrayList<>();
+
+        public Builder add(Object part) {
+            mParts.add(part);
+            return this;
+        }
+
+        public Builder add(int part) {
+            mParts.add(part);
+            return this;
+        }
+
+        public Builder add(boolean part) {
+            mParts.add(part);
+            return this;
+        }
+
+        public ShaderVariantKey build() {
+            return new ShaderVariantKey(mParts.toArray());
+        }
+    }
+}
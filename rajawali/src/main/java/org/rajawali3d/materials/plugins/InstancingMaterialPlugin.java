@@ -0,0 +1,115 @@
+/**
+ * Copyright 2013 Dennis Ippel
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package org.rajawali3d.materials.plugins;
+
+import org.rajawali3d.InstancedObject3D;
+import org.rajawali3d.materials.Material.PluginInsertLocation;
+import org.rajawali3d.materials.shaders.AShaderBase.DataType;
+import org.rajawali3d.materials.shaders.AShaderBase.IGlobalShaderVar;
+import org.rajawali3d.materials.shaders.IShaderFragment;
+import org.rajawali3d.materials.shaders.fragments.instancing.InstancingVertexShaderFragment;
+
+/**
+ * Applies a per instance model matrix, color and custom vec4 before the regular vertex transformation. Used by
+ * {@link InstancedObject3D}, which adds it to its material.
+ *
+ * The per instance values either come from vertex attributes with a divisor of 1 (OpenGL ES 3.0) or from uniform
+ * arrays which are indexed with a per vertex instance index (OpenGL ES 2.0). The custom vec4 is available to other
+ * shader fragments as the global {@code gInstanceData}.
+ */
+public class InstancingMaterialPlugin implements IMaterialPlugin {
+	public static enum InstancingShaderVar implements IGlobalShaderVar {
+		A_INSTANCE_MODEL_MATRIX("aInstanceModelMatrix", DataType.MAT4),
+		A_INSTANCE_COLOR("aInstanceColor", DataType.VEC4),
+		A_INSTANCE_DATA("aInstanceData", DataType.VEC4),
+		A_INSTANCE_INDEX("aInstanceIndex", DataType.FLOAT),
+		U_INSTANCE_MODEL_MATRIX("uInstanceModelMatrix", DataType.MAT4),
+		U_INSTANCE_COLOR("uInstanceColor", DataType.VEC4),
+		U_INSTANCE_DATA("uInstanceData", DataType.VEC4),
+		G_INSTANCE_DATA("gInstanceData", DataType.VEC4);
+
+		private String mVarString;
+		private DataType mDataType;
+
+		InstancingShaderVar(String varString, DataType dataType) {
+			mVarString = varString;
+			mDataType = dataType;
+		}
+
+		public String getVarString() {
+			return mVarString;
+		}
+
+		public DataType getDataType() {
+			return mDataType;
+		}
+	}
+
+	private InstancingVertexShaderFragment mVertexShader;
+
+	/**
+	 * Reads the per instance values from vertex attributes. Requires OpenGL ES 3.0.
+	 */
+	public InstancingMaterialPlugin() {
+		this(0);
+	}
+
+	/**
+	 * Reads the per instance values from uniform arrays with room for the given number of instances.
+	 *
+	 * @param batchSize The number of instances per draw call. 0 reads the values from vertex attributes instead.
+	 */
+	public InstancingMaterialPlugin(int batchSize) {
+		mVertexShader = new InstancingVertexShaderFragment(batchSize);
+	}
+
+	public IShaderFragment getVertexShaderFragment() {
+		return mVertexShader;
+	}
+
+	public IShaderFragment getFragmentShaderFragment() {
+		return null;
+	}
+
+	/**
+	 * @return The number of instances per draw call, or 0 if the values are read from vertex attributes.
+	 */
+	public int getBatchSize() {
+		return mVertexShader.getBatchSize();
+	}
+
+	public void setInstanceAttributes(final int instanceBufferHandle) {
+		mVertexShader.setInstanceAttributes(instanceBufferHandle);
+	}
+
+	public void resetInstanceAttributes() {
+		mVertexShader.resetInstanceAttributes();
+	}
+
+	public void setInstanceIndices(final int indexBufferHandle) {
+		mVertexShader.setInstanceIndices(indexBufferHandle);
+	}
+
+	public void setInstanceUniforms(float[] modelMatrices, float[] colors, float[] data, int count) {
+		mVertexShader.setInstanceUniforms(modelMatrices, colors, data, count);
+	}
+
+	public PluginInsertLocation getInsertLocation() {
+		return PluginInsertLocation.PRE_LIGHTING;
+	}
+
+	@Override
+	public void bindTextures(int nextIndex) {}
+	@Override
+	public void unbindTextures() {}
+}
@@ -6,6 +6,7 @@ import org.rajawali3d.materials.shaders.IShaderFragment;
 import org.rajawali3d.materials.textures.ATexture;
 import org.rajawali3d.math.Matrix4;
 import org.rajawali3d.math.vector.Vector3;
+import org.rajawali3d.renderer.GLStateCache;
 import android.opengl.GLES20;
 
 
@@ -231,15 +232,15 @@ public class ShadowMapMaterialPlugin implements IMaterialPlugin {
 		
 		public void bindTextures(int nextIndex) {
 			if(mShadowMapTexture != null) {
-				GLES20.glActiveTexture(GLES20.GL_TEXTURE0 + nextIndex);
-				GLES20.glBindTexture(mShadowMapTexture.getGLTextureType(), mShadowMapTexture.getTextureId());
+				GLStateCache.getCurrent().bindTexture(nextIndex, mShadowMapTexture.getGLTextureType(),
+						mShadowMapTexture.getTextureId());
 				GLES20.glUniform1i(muShadowMapTextureHandle, nextIndex);
 			}
 		}
 		
 		public void unbindTextures() {
 			if(mShadowMapTexture != null)
-				GLES20.glBindTexture(mShadowMapTexture.getGLTextureType(), 0);
+				GLStateCache.getCurrent().bindTexture(mShadowMapTexture.getGLTextureType(), 0);
 		}
 	}
 }
@@ -87,10 +87,12 @@ import java.util.Set;
  * @Override
  * public void applyParams() {
  * 		super.applyParams();
- * 		GLES20.glUniform3fv(muMyVec3UniformHandle, 1, myFloatArrayValue, 0);
+ * 		mUniformCache.uniform3fv(muMyVec3UniformHandle, myFloatArrayValue);
  * }
  * </code></pre>
  *
+ * Uploading through {@link AShader#mUniformCache} skips values which the program already holds.
+ *
  * The shader code that goes into main() in a regular shader goes into {@link AShader#main()}:
  *
  * <pre><code>
@@ -165,6 +167,12 @@ public abstract class AShader extends AShaderBase {
 	protected List<IShaderFragment> mShaderFragments;
 	protected int mProgramHandle;
 	protected boolean mNeedsBuild = true;
+	/**
+	 * Shadow of the uniforms this shader uploads to its program. Shared with all other shaders drawing with the same
+	 * {@link ShaderProgram}.
+	 */
+	protected UniformCache mUniformCache = new UniformCache();
+	private ShaderProgram mProgram;
 
 	public AShader() {}
 
@@ -288,25 +296,25 @@ public abstract class AShader extends AShaderBase {
 	public void setUniform1f(String name, float value)
 	{
 		int handle = getUniformLocation(mProgramHandle, name);
-		GLES20.glUniform1f(handle, value);
+		mUniformCache.uniform1f(handle, value);
 	}
 
 	public void setUniform2fv(String name, float[] value)
 	{
 		int handle = getUniformLocation(mProgramHandle, name);
-		GLES20.glUniform2fv(handle, 1, value, 0);
+		mUniformCache.uniform2fv(handle, value);
 	}
 
 	public void setUniform3fv(String name, float[] value)
 	{
 		int handle = getUniformLocation(mProgramHandle, name);
-		GLES20.glUniform3fv(handle, 1, value, 0);
+		mUniformCache.uniform3fv(handle, value);
 	}
 
 	public void setUniform1i(String name, int value)
 	{
 		int handle = getUniformLocation(mProgramHandle, name);
-		GLES20.glUniform1i(handle, value);
+		mUniformCache.uniform1i(handle, value);
 	}
 
 	/**
@@ -565,9 +573,37 @@ public abstract class AShader extends AShaderBase {
 	public void setLocations(final int programHandle)
 	{
 		mProgramHandle = programHandle;
+		// A newly linked program starts out with default values, a shared one keeps the values of its cache
+		if(mProgram == null)
+			mUniformCache.invalidate();
 		if(mShaderFragments != null)
-			for(int i=0; i<mShaderFragments.size(); i++)
-				mShaderFragments.get(i).setLocations(programHandle);
+			for(int i=0; i<mShaderFragments.size(); i++) {
+				IShaderFragment fragment = mShaderFragments.get(i);
+				if(fragment instanceof AShader)
+					((AShader) fragment).setProgram(mProgram);
+				fragment.setLocations(programHandle);
+			}
+	}
+
+	/**
+	 * Sets the shared program this shader is part of, before {@link #setLocations(int)} is called. Locations are then
+	 * looked up in the tables of the program and uniforms are uploaded through its {@link UniformCache}.
+	 *
+	 * @param program The {@link ShaderProgram}, or null if the program is not shared.
+	 */
+	public void setProgram(ShaderProgram program)
+	{
+		if(program == mProgram) return;
+		mProgram = program;
+		mUniformCache = program != null ? program.getUniformCache() : new UniformCache();
+	}
+
+	/**
+	 * @return The shared {@link ShaderProgram}, or null if the program is not shared.
+	 */
+	public ShaderProgram getProgram()
+	{
+		return mProgram;
 	}
 
 	protected int getUniformLocation(int programHandle, IGlobalShaderVar var) {
@@ -583,7 +619,8 @@ public abstract class AShader extends AShaderBase {
 	}
 
 	protected int getUniformLocation(int programHandle, String name) {
-		int result = GLES20.glGetUniformLocation(programHandle, name);
+		int result = mProgram != null && mProgram.getHandle() == programHandle ? mProgram.getUniformLocation(name)
+				: GLES20.glGetUniformLocation(programHandle, name);
         if (result < 0 && RajLog.isDebugEnabled()) RajLog.e("Getting location of uniform: " + name + " returned -1!");
 		return result;
 	}
@@ -597,7 +634,8 @@ public abstract class AShader extends AShaderBase {
 	}
 
 	protected int getAttribLocation(int programHandle, String name) {
-		int result = GLES20.glGetAttribLocation(programHandle, name);
+		int result = mProgram != null && mProgram.getHandle() == programHandle ? mProgram.getAttribLocation(name)
+				: GLES20.glGetAttribLocation(programHandle, name);
 		return result;
 	}
 
@@ -628,6 +666,16 @@ public abstract class AShader extends AShaderBase {
 		return mShaderString;
 	}
 
+	/**
+	 * Sets the source which {@link #buildShader()} generated for an identical shader earlier, instead of generating
+	 * it again.
+	 *
+	 * @param shaderString The shader source.
+	 */
+	public void setShaderString(String shaderString) {
+		mShaderString = shaderString;
+	}
+
 	public void buildShader() {
 		mShaderSB = new StringBuilder();
 		StringBuilder s = mShaderSB;
@@ -818,6 +866,16 @@ public abstract class AShader extends AShaderBase {
 		return mProgramHandle;
 	}
 
+	/**
+	 * Returns the shadow of the uniforms this shader uploaded to its program.
+	 *
+	 * @return The {@link UniformCache}
+	 */
+	public UniformCache getUniformCache()
+	{
+		return mUniformCache;
+	}
+
 	public ShaderVar subtract(ShaderVar var1, ShaderVar var2)
 	{
 		ShaderVar var = getInstanceForDataType(var1.getDataType());
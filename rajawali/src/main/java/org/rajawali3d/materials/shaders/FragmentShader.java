@@ -12,7 +12,6 @@
  */
 package org.rajawali3d.materials.shaders;
 
-import android.opengl.GLES20;
 
 import org.rajawali3d.lights.ALight;
 
@@ -110,7 +109,7 @@ public class FragmentShader extends AShader {
 	public void applyParams() {
 		super.applyParams();
 		
-		GLES20.glUniform1f(muColorInfluenceHandle, mColorInfluence);
+		mUniformCache.uniform1f(muColorInfluenceHandle, mColorInfluence);
 	}
 	
 	@Override
@@ -0,0 +1,135 @@
+/**
+ * Copyright 2013 Dennis Ippel
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package org.rajawali3d.materials.shaders;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.zip.CRC32;
+
+/**
+ * The binary of a linked program as returned by glGetProgramBinary, along with what it is only valid for: the
+ * {@link ShaderProgram#hash(String, String)} of its sources and the driver which produced it, see
+ * {@link ProgramBinaryCache#getDriver(String, String)}.
+ *
+ * The stored form is big endian:
+ *
+ * <pre>
+ * int    magic 'RJPB'
+ * int    format version
+ * long   source hash
+ * UTF    driver
+ * int    binary format
+ * int    binary length n
+ * byte[] binary, n bytes
+ * long   CRC32 of the binary
+ * </pre>
+ */
+public class ProgramBinary {
+
+    static final int MAGIC = 0x524a5042; // RJPB
+    static final int VERSION = 1;
+
+    /**
+     * Larger binaries are considered corrupt instead of being allocated.
+     */
+    private static final int MAX_LENGTH = 64 * 1024 * 1024;
+
+    private final long mSourceHash;
+    private final String mDriver;
+    private final int mFormat;
+    private final byte[] mData;
+
+    public ProgramBinary(long sourceHash, String driver, int format, byte[] data) {
+        mSourceHash = sourceHash;
+        mDriver = driver;
+        mFormat = format;
+        mData = data;
+    }
+
+    public long getSourceHash() {
+        return mSourceHash;
+    }
+
+    public String getDriver() {
+        return mDriver;
+    }
+
+    /**
+     * @return {@code int} The binary format to pass to glProgramBinary.
+     */
+    public int getFormat() {
+        return mFormat;
+    }
+
+    public byte[] getData() {
+        return mData;
+    }
+
+    /**
+     * @return Whether the binary was produced for the given sources by the given driver.
+     */
+    public boolean matches(long sourceHash, String driver) {
+        return mSourceHash == sourceHash && mDriver.equals(driver);
+    }
+
+    /**
+     * Writes the binary in its stored form. The stream is not closed.
+     *
+     * @param stream The {@link OutputStream}.
+     * @throws IOException if writing fails.
+     */
+    public void writeTo(OutputStream stream) throws IOException {
+        final DataOutputStream out = new DataOutputStream(stream);
+        out.writeInt(MAGIC);
+        out.writeInt(VERSION);
+        out.writeLong(mSourceHash);
+        out.writeUTF(mDriver);
+        out.writeInt(mFormat);
+        out.writeInt(mData.length);
+        out.write(mData);
+        out.writeLong(checksum(mData));
+        out.flush();
+    }
+
+    /**
+     * Reads a binary in its stored form, checking that it is complete and intact. The stream is not closed.
+     *
+     * @param stream The {@link InputStream}.
+     * @return The {@link ProgramBinary}.
+     * @throws IOException if reading fails, or the data is not a binary of the current format version or corrupt.
+     */
+    public static ProgramBinary readFrom(InputStream stream) throws IOException {
+        final DataInputStream in = new DataInputStream(stream);
+        if (in.readInt() != MAGIC) throw new IOException("Not a program binary");
+        final int version = in.readInt();
+        if (version != VERSION) throw new IOException("Unsupported program binary version " + version);
+        final long sourceHash = in.readLong();
+        final String driver = in.readUTF();
+        final int format = in.readInt();
+        final int length = in.readInt();
+        if (length < 0 || length > MAX_LENGTH) throw new IOException("Invalid program binary length " + length);
+        final byte[] data = new byte[length];
+        in.readFully(data);
+        if (in.readLong() != checksum(data)) throw new IOException("Program binary checksum mismatch");
+        return new ProgramBinary(sourceHash, driver, format, data);
+    }
+
+    private static long checksum(byte[] data) {
+        final CRC32 crc = new CRC32();
+        crc.update(data, 0, data.length);
+        return crc.getValue();
+    }
+}
@@ -0,0 +1,254 @@
+/**
+ * Copyright 2013 Dennis Ippel
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package org.rajawali3d.materials.shaders;
+
+import org.rajawali3d.util.IClock;
+import org.rajawali3d.util.RajLog;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.FilenameFilter;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Locale;
+
+/**
+ * Keeps the binaries of linked programs in a directory, so the next start of the app can load them with
+ * glProgramBinary instead of compiling the shaders again. There is one file per source hash, see
+ * {@link ShaderProgram#hash(String, String)}. A binary produced by another driver, for instance before a system
+ * update, is discarded when it is loaded and replaced by the next store.
+ *
+ * The directory is kept below a size limit by deleting the least recently used files, the use being tracked through
+ * the modification times. Files which can't be read are deleted. Only does file I/O, the GL side is in
+ * {@link ProgramCache}.
+ */
+public class ProgramBinaryCache {
+
+    public static final long DEFAULT_MAX_SIZE = 4 * 1024 * 1024;
+
+    private static final String SUFFIX = ".bin";
+    private static final String TEMP_SUFFIX = ".tmp";
+
+    private final File mDirectory;
+    private final String mDriver;
+    private final long mMaxSize;
+    private final IClock mClock;
+
+    /**
+     * @param directory {@link File} The directory, created when the first binary is stored.
+     * @param driver    {@link String} The driver of the current context, see {@link #getDriver(String, String)}.
+     * @param maxSize   {@code long} The size limit of the directory in bytes.
+     */
+    public ProgramBinaryCache(File directory, String driver, long maxSize) {
+        this(directory, driver, maxSize, IClock.CURRENT_TIME_MILLIS);
+    }
+
+    /**
+     * @param directory {@link File} The directory, created when the first binary is stored.
+     * @param driver    {@link String} The driver of the current context, see {@link #getDriver(String, String)}.
+     * @param maxSize   {@code long} The size limit of the directory in bytes.
+     * @param clock     {@link IClock} The time source of the least recently used order, in milliseconds.
+     */
+    public ProgramBinaryCache(File directory, String driver, long maxSize, IClock clock) {
+        mDirectory = directory;
+        mDriver = driver;
+        mMaxSize = maxSize;
+        mClock = clock;
+    }
+
+    /**
+     * Builds the driver identity binaries are only valid for.
+     *
+     * @param renderer {@link String} The GL_RENDERER string.
+     * @param version  {@link String} The GL_VERSION string, which includes the driver version.
+     * @return {@link String} The driver identity.
+     */
+    public static String getDriver(String renderer, String version) {
+        return renderer + '\n' + version;
+    }
+
+    public File getDirectory() {
+        return mDirectory;
+    }
+
+    public String getDriver() {
+        return mDriver;
+    }
+
+    public long getMaxSize() {
+        return mMaxSize;
+    }
+
+    /**
+     * Loads the binary for a source hash.
+     *
+     * @param sourceHash {@code long} The hash of the sources.
+     * @return The {@link ProgramBinary}, or null if there is none for the sources and the current driver.
+     */
+    public ProgramBinary load(long sourceHash) {
+        final File file = getFile(sourceHash);
+        if (!file.isFile()) return null;
+        ProgramBinary binary = null;
+        InputStream in = null;
+        try {
+            in = new BufferedInputStream(new FileInputStream(file));
+            binary = ProgramBinary.readFrom(in);
+        } catch (IOException e) {
+            RajLog.w("Discarding program binary " + file.getName() + ": " + e.getMessage());
+        } finally {
+            close(in);
+        }
+        if (binary == null || !binary.matches(sourceHash, mDriver)) {
+            file.delete();
+            return null;
+        }
+        file.setLastModified(mClock.now());
+        return binary;
+    }
+
+    /**
+     * Stores a binary, replacing the one for the same sources, and evicts the least recently used binaries if the
+     * size limit is exceeded. A binary larger than the limit is not stored.
+     *
+     * @param sourceHash {@code long} The hash of the sources.
+     * @param format     {@code int} The binary format.
+     * @param data       {@code byte[]} The binary.
+     * @return {@code boolean} True if the binary was stored.
+     */
+    public boolean store(long sourceHash, int format, byte[] data) {
+        if (data.length > mMaxSize) return false;
+        if (!mDirectory.isDirectory() && !mDirectory.mkdirs()) {
+            RajLog.w("Could not create program binary directory " + mDirectory);
+            return false;
+        }
+        final File file = getFile(sourceHash);
+        final File temp = new File(mDirectory, file.getName() + TEMP_SUFFIX);
+        OutputStream out = null;
+        boolean written = false;
+        try {
+            out = new BufferedOutputStream(new FileOutputStream(temp));
+            new ProgramBinary(sourceHash, mDriver, format, data).writeTo(out);
+            out.close();
+            out = null;
+            // -- readers never see a partial file
+            written = temp.renameTo(file);
+        } catch (IOException e) {
+            RajLog.w("Could not store program binary " + file.getName() + ": " + e.getMessage());
+        } finally {
+            close(out);
+            if (!written) temp.delete();
+        }
+        if (!written) return false;
+        file.setLastModified(mClock.now());
+        evict(file);
+        return true;
+    }
+
+    /**
+     * Deletes the binary for a source hash, for instance because the driver rejected it.
+     *
+     * @param sourceHash {@code long} The hash of the sources.
+     */
+    public void remove(long sourceHash) {
+        getFile(sourceHash).delete();
+    }
+
+    /**
+     * Deletes all binaries.
+     */
+    public void clear() {
+        for (File file : listFiles()) {
+            file.delete();
+        }
+    }
+
+    /**
+     * @return {@code long} The size of all binaries in bytes.
+     */
+    public long getSize() {
+        long size = 0;
+        for (File file : listFiles()) {
+            size += file.length();
+        }
+        return size;
+    }
+
+    /**
+     * @return {@code int} The number of binaries.
+     */
+    public int getCount() {
+        return listFiles().length;
+    }
+
+    /**
+     * Deletes the least recently used binaries until the size limit is met.
+     *
+     * @param keep {@link File} A file which is never deleted.
+     */
+    private void evict(File keep) {
+        final File[] files = listFiles();
+        final long[] sizes = new long[files.length];
+        long size = 0;
+        for (int i = 0; i < files.length; ++i) {
+            sizes[i] = files[i].length();
+            size += sizes[i];
+        }
+        if (size <= mMaxSize) return;
+        final long[] times = new long[files.length];
+        final Integer[] order = new Integer[files.length];
+        for (int i = 0; i < files.length; ++i) {
+            times[i] = files[i].lastModified();
+            order[i] = i;
+        }
+        Arrays.sort(order, new Comparator<Integer>() {
+            @Override
+            public int compare(Integer lhs, Integer rhs) {
+                return times[lhs] < times[rhs] ? -1 : (times[lhs] == times[rhs] ? 0 : 1);
+            }
+        });
+        for (int i = 0; i < order.length && size > mMaxSize; ++i) {
+            final File file = files[order[i]];
+            if (file.equals(keep) || !file.delete()) continue;
+            size -= sizes[order[i]];
+        }
+    }
+
+    private File[] listFiles() {
+        final File[] files = mDirectory.listFiles(new FilenameFilter() {
+            @Override
+            public boolean accept(File dir, String name) {
+                return name.endsWith(SUFFIX);
+            }
+        });
+        return files != null ? files : new File[0];
+    }
+
+    File getFile(long sourceHash) {
+        return new File(mDirectory, String.format(Locale.US, "%016x", sourceHash) + SUFFIX);
+    }
+
+    private static void close(Closeable closeable) {
+        if (closeable == null) return;
+        try {
+            closeable.close();
+        } catch (IOException ignored) {
+        }
+    }
+}
@@ -0,0 +1,335 @@
+/**
+ * Copyright 2013 Dennis Ippel
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package org.rajawali3d.materials.shaders;
+
+import android.opengl.GLES20;
+import android.opengl.GLES30;
+import org.rajawali3d.renderer.GLStateCache;
+import org.rajawali3d.util.RajLog;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Links each distinct pair of shader sources only once. Materials with the same settings generate the same shader
+ * strings, so they get the same reference counted {@link ShaderProgram}, along with its uniform and attribute
+ * locations and its {@link UniformCache}. The material itself only holds the uniform values. The program is deleted
+ * when the last material releases it.
+ *
+ * Programs are looked up by {@link ShaderProgram#hash(String, String)} and the sources are compared on a hit. The
+ * instance of the app is held by {@link org.rajawali3d.materials.MaterialManager} and is shared by all renderers, so
+ * the programs are kept apart by the {@link GLStateCache#getContextId()} of the context they were linked in. Programs
+ * of a context which no longer exists are dropped without being deleted once the renderer calls
+ * {@link #forget(int)}. Has to be used on a GL thread.
+ *
+ * With a {@link ProgramBinaryCache}, which requires GLES 3.0, programs are loaded from the binaries stored by earlier
+ * runs of the app. Programs which have no binary yet, or whose binary the driver rejects, are compiled and linked, and
+ * their binary is stored for the next run.
+ */
+public class ProgramCache {
+
+    /**
+     * The programs and settings of one GL context.
+     */
+    private static final class ContextPrograms {
+        final Map<Long, List<ShaderProgram>> mPrograms = new HashMap<>();
+        /**
+         * Released programs which could not be deleted yet because another context was current.
+         */
+        final List<ShaderProgram> mPendingDeletes = new ArrayList<>();
+        ProgramBinaryCache mBinaryCache;
+    }
+
+    private final Map<Integer, ContextPrograms> mContexts = new HashMap<>();
+    private int mProgramCount;
+    private int mLinkCount;
+    private int mBinaryLoadCount;
+
+    /**
+     * Returns the program linked from a pair of sources, linking it if there is none yet in the current context, and
+     * adds a reference to it.
+     *
+     * @param vertexSource   {@link String} The vertex shader source.
+     * @param fragmentSource {@link String} The fragment shader source.
+     * @return The {@link ShaderProgram}, or null if the sources could not be compiled or linked.
+     */
+    public ShaderProgram acquire(String vertexSource, String fragmentSource) {
+        final GLStateCache stateCache = GLStateCache.getCurrent();
+        final ContextPrograms context = getContext(stateCache.getContextId());
+        deletePending(context, stateCache);
+        final long hash = ShaderProgram.hash(vertexSource, fragmentSource);
+        List<ShaderProgram> programs = context.mPrograms.get(hash);
+        if (programs != null) {
+            for (int i = 0, j = programs.size(); i < j; ++i) {
+                final ShaderProgram program = programs.get(i);
+                if (program.hasSource(vertexSource, fragmentSource)) {
+                    program.acquire();
+                    return program;
+                }
+            }
+        }
+        final ShaderProgram program = link(vertexSource, fragmentSource, stateCache.getContextId());
+        if (program == null) return null;
+        ++mLinkCount;
+        if (programs == null) {
+            programs = new ArrayList<>(1);
+            context.mPrograms.put(hash, programs);
+        }
+        programs.add(program);
+        ++mProgramCount;
+        program.acquire();
+        return program;
+    }
+
+    /**
+     * Removes a reference to a program and deletes it if that was the last one. A program of another context than the
+     * current one is deleted the next time its context uses the cache, programs of a forgotten context are ignored.
+     *
+     * @param program The {@link ShaderProgram} returned by {@link #acquire(String, String)}.
+     */
+    public void release(ShaderProgram program) {
+        if (program == null) return;
+        final ContextPrograms context = mContexts.get(program.getContextId());
+        if (context == null || program.release() > 0) return;
+        final List<ShaderProgram> programs = context.mPrograms.get(program.getHash());
+        if (programs == null || !programs.remove(program)) return;
+        if (programs.isEmpty()) context.mPrograms.remove(program.getHash());
+        --mProgramCount;
+        context.mPendingDeletes.add(program);
+        deletePending(context, GLStateCache.getCurrent());
+    }
+
+    /**
+     * Drops the programs of a context without deleting them, because the context is gone. Called by the
+     * {@link org.rajawali3d.renderer.Renderer} when its context is recreated.
+     *
+     * @param contextId {@code int} The {@link GLStateCache#getContextId()} of the lost context.
+     */
+    public void forget(int contextId) {
+        final ContextPrograms context = mContexts.remove(contextId);
+        if (context == null) return;
+        for (List<ShaderProgram> programs : context.mPrograms.values()) {
+            mProgramCount -= programs.size();
+        }
+    }
+
+    /**
+     * Drops the programs of all contexts without deleting them.
+     */
+    public void forget() {
+        mContexts.clear();
+        mProgramCount = 0;
+    }
+
+    /**
+     * Sets where the program binaries of a context are loaded from and stored to. Set by the
+     * {@link org.rajawali3d.renderer.Renderer} when its surface is created.
+     *
+     * @param contextId   {@code int} The {@link GLStateCache#getContextId()} of the context.
+     * @param binaryCache The {@link ProgramBinaryCache}, or null to always compile.
+     */
+    public void setBinaryCache(int contextId, ProgramBinaryCache binaryCache) {
+        getContext(contextId).mBinaryCache = binaryCache;
+    }
+
+    public ProgramBinaryCache getBinaryCache(int contextId) {
+        final ContextPrograms context = mContexts.get(contextId);
+        return context != null ? context.mBinaryCache : null;
+    }
+
+    /**
+     * @return {@code int} The number of programs in use, in all contexts.
+     */
+    public int getProgramCount() {
+        return mProgramCount;
+    }
+
+    /**
+     * @return {@code int} The number of programs linked so far. Together with the number of materials this tells how
+     * much linking was saved.
+     */
+    public int getLinkCount() {
+        return mLinkCount;
+    }
+
+    /**
+     * @return {@code int} The number of programs loaded from a stored binary instead of being compiled.
+     */
+    public int getBinaryLoadCount() {
+        return mBinaryLoadCount;
+    }
+
+    /**
+     * Compiles and links a program in the current context.
+     *
+     * @param vertexSource   {@link String} The vertex shader source.
+     * @param fragmentSource {@link String} The fragment shader source.
+     * @param contextId      {@code int} The id of the current context.
+     * @return The {@link ShaderProgram}, or null if compiling or linking failed.
+     */
+    protected ShaderProgram link(String vertexSource, String fragmentSource, int contextId) {
+        final ProgramBinaryCache binaryCache = getBinaryCache(contextId);
+        final long hash = binaryCache != null ? ShaderProgram.hash(vertexSource, fragmentSource) : 0;
+        if (binaryCache != null) {
+            final ProgramBinary binary = binaryCache.load(hash);
+            if (binary != null) {
+                final int program = loadBinary(binary);
+                if (program != 0) {
+                    ++mBinaryLoadCount;
+                    return new ShaderProgram(program, 0, 0, vertexSource, fragmentSource, contextId);
+                }
+                // -- compile instead, the new binary replaces the rejected one
+                binaryCache.remove(hash);
+            }
+        }
+
+        final int vertexShader = loadShader(GLES20.GL_VERTEX_SHADER, vertexSource);
+        if (vertexShader == 0) {
+            return null;
+        }
+
+        final int fragmentShader = loadShader(GLES20.GL_FRAGMENT_SHADER, fragmentSource);
+        if (fragmentShader == 0) {
+            GLES20.glDeleteShader(vertexShader);
+            return null;
+        }
+
+        int program = GLES20.glCreateProgram();
+        if (program != 0) {
+            GLES20.glAttachShader(program, vertexShader);
+            GLES20.glAttachShader(program, fragmentShader);
+            if (binaryCache != null) {
+                GLES30.glProgramParameteri(program, GLES30.GL_PROGRAM_BINARY_RETRIEVABLE_HINT, GLES20.GL_TRUE);
+            }
+            GLES20.glLinkProgram(program);
+
+            int[] linkStatus = new int[1];
+            GLES20.glGetProgramiv(program, GLES20.GL_LINK_STATUS, linkStatus, 0);
+            if (linkStatus[0] != GLES20.GL_TRUE) {
+                RajLog.e("Could not link program: ");
+                RajLog.e(GLES20.glGetProgramInfoLog(program));
+                GLES20.glDeleteProgram(program);
+                program = 0;
+            }
+        }
+        if (program == 0) {
+            GLES20.glDeleteShader(vertexShader);
+            GLES20.glDeleteShader(fragmentShader);
+            return null;
+        }
+        if (binaryCache != null) {
+            storeBinary(binaryCache, program, hash);
+        }
+        return new ShaderProgram(program, vertexShader, fragmentShader, vertexSource, fragmentSource, contextId);
+    }
+
+    private ContextPrograms getContext(int contextId) {
+        ContextPrograms context = mContexts.get(contextId);
+        if (context == null) {
+            context = new ContextPrograms();
+            mContexts.put(contextId, context);
+        }
+        return context;
+    }
+
+    /**
+     * Deletes the released programs of a context, if it is the current one.
+     */
+    private void deletePending(ContextPrograms context, GLStateCache stateCache) {
+        if (context.mPendingDeletes.isEmpty() || mContexts.get(stateCache.getContextId()) != context) return;
+        for (int i = 0, j = context.mPendingDeletes.size(); i < j; ++i) {
+            final ShaderProgram program = context.mPendingDeletes.get(i);
+            delete(program);
+            stateCache.onProgramDeleted(program.getHandle());
+        }
+        context.mPendingDeletes.clear();
+    }
+
+    /**
+     * Creates a program from a stored binary.
+     *
+     * @param binary The {@link ProgramBinary}.
+     * @return {@code int} The program handle, 0 if the driver rejected the binary.
+     */
+    private int loadBinary(ProgramBinary binary) {
+        final int program = GLES20.glCreateProgram();
+        if (program == 0) return 0;
+        final byte[] data = binary.getData();
+        final ByteBuffer buffer = ByteBuffer.allocateDirect(data.length);
+        buffer.put(data).flip();
+        GLES30.glProgramBinary(program, binary.getFormat(), buffer, data.length);
+        final int[] linkStatus = new int[1];
+        GLES20.glGetProgramiv(program, GLES20.GL_LINK_STATUS, linkStatus, 0);
+        if (linkStatus[0] != GLES20.GL_TRUE) {
+            RajLog.w("Program binary rejected, compiling the shaders instead");
+            GLES20.glDeleteProgram(program);
+            return 0;
+        }
+        return program;
+    }
+
+    /**
+     * Retrieves the binary of a linked program and stores it.
+     */
+    private void storeBinary(ProgramBinaryCache binaryCache, int program, long hash) {
+        final int[] length = new int[1];
+        GLES20.glGetProgramiv(program, GLES30.GL_PROGRAM_BINARY_LENGTH, length, 0);
+        if (length[0] <= 0) return;
+        final ByteBuffer buffer = ByteBuffer.allocateDirect(length[0]);
+        final int[] format = new int[1];
+        GLES30.glGetProgramBinary(program, length[0], length, 0, format, 0, buffer);
+        if (length[0] <= 0) return;
+        final byte[] data = new byte[length[0]];
+        buffer.get(data);
+        binaryCache.store(hash, format[0], data);
+    }
+
+    /**
+     * Deletes a program and its shaders in the current context.
+     *
+     * @param program The {@link ShaderProgram}.
+     */
+    protected void delete(ShaderProgram program) {
+        GLES20.glDeleteShader(program.getVertexShaderHandle());
+        GLES20.glDeleteShader(program.getFragmentShaderHandle());
+        GLES20.glDeleteProgram(program.getHandle());
+    }
+
+    /**
+     * Loads the shader from a text string and then compiles it.
+     *
+     * @param shaderType {@code int} GL_VERTEX_SHADER or GL_FRAGMENT_SHADER.
+     * @param source     {@link String} The source.
+     * @return {@code int} The shader handle, 0 if it could not be compiled.
+     */
+    private int loadShader(int shaderType, String source) {
+        int shader = GLES20.glCreateShader(shaderType);
+        if (shader != 0) {
+            GLES20.glShaderSource(shader, source);
+            GLES20.glCompileShader(shader);
+            int[] compiled = new int[1];
+            GLES20.glGetShaderiv(shader, GLES20.GL_COMPILE_STATUS, compiled, 0);
+            if (compiled[0] == 0) {
+                RajLog.e("Could not compile " + (shaderType == GLES20.GL_FRAGMENT_SHADER ? "fragment" : "vertex")
+                         + " shader:");
+                RajLog.e("Shader log: " + GLES20.glGetShaderInfoLog(shader));
+                GLES20.glDeleteShader(shader);
+                shader = 0;
+            }
+        }
+        return shader;
+    }
+}
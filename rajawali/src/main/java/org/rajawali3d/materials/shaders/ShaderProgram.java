@@ -0,0 +1,182 @@
+/**
+ * Copyright 2013 Dennis Ippel
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package org.rajawali3d.materials.shaders;
+
+import android.opengl.GLES20;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * A linked program together with what every material drawing with it can share: the uniform and attribute
+ * locations, which are looked up once per name, and the {@link UniformCache} of the values the program holds.
+ * Materials whose shaders generate the same source get the same instance from {@link ProgramCache}, which counts the
+ * references and deletes the program with the last one.
+ */
+public class ShaderProgram {
+
+    private final int mHandle;
+    private final int mVertexShaderHandle;
+    private final int mFragmentShaderHandle;
+    private final String mVertexSource;
+    private final String mFragmentSource;
+    private final long mHash;
+    private final int mContextId;
+    private final UniformCache mUniformCache = new UniformCache();
+    private final Map<String, Integer> mUniformLocations = new HashMap<>();
+    private final Map<String, Integer> mAttribLocations = new HashMap<>();
+    private int mActiveAttributes = -1;
+    private int mReferences;
+
+    public ShaderProgram(int handle, int vertexShaderHandle, int fragmentShaderHandle, String vertexSource,
+                         String fragmentSource, int contextId) {
+        mHandle = handle;
+        mVertexShaderHandle = vertexShaderHandle;
+        mFragmentShaderHandle = fragmentShaderHandle;
+        mVertexSource = vertexSource;
+        mFragmentSource = fragmentSource;
+        mHash = hash(vertexSource, fragmentSource);
+        mContextId = contextId;
+    }
+
+    /**
+     * A 64 bit FNV-1a hash of a pair of shader sources. Equal hashes don't guarantee equal sources, so lookups by
+     * hash still have to compare them, see {@link #hasSource(String, String)}.
+     *
+     * @param vertexSource   {@link String} The vertex shader source.
+     * @param fragmentSource {@link String} The fragment shader source.
+     * @return {@code long} The hash.
+     */
+    public static long hash(String vertexSource, String fragmentSource) {
+        long hash = 0xcbf29ce484222325L;
+        hash = hash(hash, vertexSource);
+        // -- separates the sources, so moving code from one to the other changes the hash
+        hash = (hash ^ 0xffff) * 0x100000001b3L;
+        return hash(hash, fragmentSource);
+    }
+
+    private static long hash(long hash, String source) {
+        for (int i = 0, length = source.length(); i < length; ++i) {
+            final char c = source.charAt(i);
+            hash = (hash ^ (c & 0xff)) * 0x100000001b3L;
+            hash = (hash ^ (c >>> 8)) * 0x100000001b3L;
+        }
+        return hash;
+    }
+
+    public int getHandle() {
+        return mHandle;
+    }
+
+    /**
+     * @return {@code int} The vertex shader handle, 0 if the program was loaded from a binary.
+     */
+    public int getVertexShaderHandle() {
+        return mVertexShaderHandle;
+    }
+
+    /**
+     * @return {@code int} The fragment shader handle, 0 if the program was loaded from a binary.
+     */
+    public int getFragmentShaderHandle() {
+        return mFragmentShaderHandle;
+    }
+
+    public String getVertexSource() {
+        return mVertexSource;
+    }
+
+    public String getFragmentSource() {
+        return mFragmentSource;
+    }
+
+    public long getHash() {
+        return mHash;
+    }
+
+    /**
+     * @return {@code int} The {@link org.rajawali3d.renderer.GLStateCache#getContextId()} of the context the
+     * program was linked in.
+     */
+    public int getContextId() {
+        return mContextId;
+    }
+
+    public boolean hasSource(String vertexSource, String fragmentSource) {
+        return mVertexSource.equals(vertexSource) && mFragmentSource.equals(fragmentSource);
+    }
+
+    /**
+     * @return The {@link UniformCache} shared by all shaders drawing with this program.
+     */
+    public UniformCache getUniformCache() {
+        return mUniformCache;
+    }
+
+    /**
+     * Looks up the location of a uniform, asking GL only the first time a name is seen.
+     *
+     * @param name {@link String} The name of the uniform.
+     * @return {@code int} The location, -1 if the program has no such active uniform.
+     */
+    public int getUniformLocation(String name) {
+        Integer location = mUniformLocations.get(name);
+        if (location == null) {
+            location = GLES20.glGetUniformLocation(mHandle, name);
+            mUniformLocations.put(name, location);
+        }
+        return location;
+    }
+
+    /**
+     * Looks up the location of an attribute, asking GL only the first time a name is seen.
+     *
+     * @param name {@link String} The name of the attribute.
+     * @return {@code int} The location, -1 if the program has no such active attribute.
+     */
+    public int getAttribLocation(String name) {
+        Integer location = mAttribLocations.get(name);
+        if (location == null) {
+            location = GLES20.glGetAttribLocation(mHandle, name);
+            mAttribLocations.put(name, location);
+        }
+        return location;
+    }
+
+    /**
+     * @return {@code int} The number of active attributes of the program.
+     */
+    public int getActiveAttributeCount() {
+        if (mActiveAttributes < 0) {
+            final int[] count = new int[1];
+            GLES20.glGetProgramiv(mHandle, GLES20.GL_ACTIVE_ATTRIBUTES, count, 0);
+            mActiveAttributes = count[0];
+        }
+        return mActiveAttributes;
+    }
+
+    /**
+     * @return {@code int} The number of materials drawing with this program.
+     */
+    public int getReferenceCount() {
+        return mReferences;
+    }
+
+    int acquire() {
+        return ++mReferences;
+    }
+
+    int release() {
+        return --mReferences;
+    }
+}
@@ -0,0 +1,123 @@
+/**
+ * Copyright 2013 Dennis Ippel
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package org.rajawali3d.materials.shaders;
+
+import android.opengl.GLES20;
+import org.rajawali3d.renderer.GLStateCache;
+
+import java.util.Arrays;
+
+/**
+ * Shadow of the uniform values of a linked program, indexed by uniform location. A program keeps its uniform values
+ * while other programs are in use, so a value only has to be uploaded when it differs from the last upload to the
+ * same location. Static objects under a static camera, or many objects sharing a color, then upload nothing but what
+ * actually changes.
+ *
+ * The values are compared bit for bit against the copies kept here. Every call is counted by the current
+ * {@link GLStateCache} as either an upload or a saved upload. {@link #invalidate()} has to be called whenever the
+ * program is linked again, since that resets its uniforms. Uniforms set without going through this class must not
+ * share a location with uniforms set through it.
+ */
+public class UniformCache {
+
+    /**
+     * Locations beyond this are uploaded every time instead of growing the shadow storage.
+     */
+    private static final int MAX_CACHED_LOCATION = 1023;
+
+    private final float[] mScalar = new float[1];
+    private float[][] mValues = new float[16][];
+
+    /**
+     * Forgets all uploaded values, for instance after the program was linked again.
+     */
+    public void invalidate() {
+        Arrays.fill(mValues, null);
+    }
+
+    public void uniform1f(int location, float value) {
+        if (location < 0) return;
+        mScalar[0] = value;
+        final boolean upload = update(location, mScalar, 1);
+        if (upload) GLES20.glUniform1f(location, value);
+        GLStateCache.getCurrent().countUniform(upload);
+    }
+
+    public void uniform1i(int location, int value) {
+        if (location < 0) return;
+        mScalar[0] = Float.intBitsToFloat(value);
+        final boolean upload = update(location, mScalar, 1);
+        if (upload) GLES20.glUniform1i(location, value);
+        GLStateCache.getCurrent().countUniform(upload);
+    }
+
+    public void uniform2fv(int location, float[] values) {
+        if (location < 0) return;
+        final boolean upload = update(location, values, 2);
+        if (upload) GLES20.glUniform2fv(location, 1, values, 0);
+        GLStateCache.getCurrent().countUniform(upload);
+    }
+
+    public void uniform3fv(int location, float[] values) {
+        if (location < 0) return;
+        final boolean upload = update(location, values, 3);
+        if (upload) GLES20.glUniform3fv(location, 1, values, 0);
+        GLStateCache.getCurrent().countUniform(upload);
+    }
+
+    public void uniform4fv(int location, float[] values) {
+        if (location < 0) return;
+        final boolean upload = update(location, values, 4);
+        if (upload) GLES20.glUniform4fv(location, 1, values, 0);
+        GLStateCache.getCurrent().countUniform(upload);
+    }
+
+    public void uniformMatrix3fv(int location, float[] values) {
+        if (location < 0) return;
+        final boolean upload = update(location, values, 9);
+        if (upload) GLES20.glUniformMatrix3fv(location, 1, false, values, 0);
+        GLStateCache.getCurrent().countUniform(upload);
+    }
+
+    public void uniformMatrix4fv(int location, float[] values) {
+        if (location < 0) return;
+        final boolean upload = update(location, values, 16);
+        if (upload) GLES20.glUniformMatrix4fv(location, 1, false, values, 0);
+        GLStateCache.getCurrent().countUniform(upload);
+    }
+
+    /**
+     * Compares values against the shadow of a location and copies them if they differ. A location which is used for
+     * the first time is always uploaded.
+     *
+     * @return Whether the values have to be uploaded.
+     */
+    private boolean update(int location, float[] values, int size) {
+        if (location > MAX_CACHED_LOCATION) return true;
+        if (location >= mValues.length) {
+            mValues = Arrays.copyOf(mValues, Math.min(MAX_CACHED_LOCATION + 1, Math.max(location + 1,
+                    mValues.length * 2)));
+        }
+        float[] shadow = mValues[location];
+        if (shadow == null || shadow.length != size) {
+            shadow = new float[size];
+            mValues[location] = shadow;
+        } else {
+            int i = 0;
+            while (i < size && Float.floatToRawIntBits(shadow[i]) == Float.floatToRawIntBits(values[i])) ++i;
+            if (i == size) return false;
+        }
+        System.arraycopy(values, 0, shadow, 0, size);
+        return true;
+    }
+}
@@ -18,6 +18,7 @@ import android.opengl.GLES20;
 import org.rajawali3d.lights.ALight;
 import org.rajawali3d.materials.Material.PluginInsertLocation;
 import org.rajawali3d.math.Matrix4;
+import org.rajawali3d.renderer.GLStateCache;
 
 import java.util.List;
 
@@ -29,6 +30,8 @@ public class VertexShader extends AShader {
     private RMat4 muModelMatrix;
     private RMat4 muModelViewMatrix;
     private RVec4 muColor;
+    private RVec3 muPositionOffset;
+    private RVec3 muPositionScale;
 
     private RVec2 maTextureCoord;
     private RVec3 maNormal;
@@ -52,6 +55,8 @@ public class VertexShader extends AShader {
     private int muModelViewMatrixHandle;
     private int muColorHandle;
     private int muTimeHandle;
+    private int muPositionOffsetHandle;
+    private int muPositionScaleHandle;
 
     private int maTextureCoordHandle;
     @SuppressWarnings("unused")
@@ -68,6 +73,9 @@ public class VertexShader extends AShader {
     private boolean mHasSkyTexture;
     private boolean mUseVertexColors;
     private boolean mTimeEnabled;
+    private boolean mQuantizedPositions;
+    private boolean mOctahedralNormals;
+    private boolean mOnlyDefaultAttributes; // Whether the program reads no attributes other than the default ones
 
     public VertexShader() {
         super(ShaderType.VERTEX);
@@ -96,6 +104,10 @@ public class VertexShader extends AShader {
         muColor = (RVec4) addUniform(DefaultShaderVar.U_COLOR);
         if (mTimeEnabled)
             addUniform(DefaultShaderVar.U_TIME);
+        if (mQuantizedPositions) {
+            muPositionOffset = (RVec3) addUniform(DefaultShaderVar.U_POSITION_OFFSET);
+            muPositionScale = (RVec3) addUniform(DefaultShaderVar.U_POSITION_SCALE);
+        }
 
         // -- attributes
 
@@ -124,8 +136,23 @@ public class VertexShader extends AShader {
 
     @Override
     public void main() {
-        mgPosition.assign(maPosition);
-        mgNormal.assign(maNormal);
+        if (mQuantizedPositions) {
+            // -- the positions are relative to the bounding box of the geometry
+            mgPosition.assign("vec4(" + muPositionOffset.getName() + " + " + maPosition.getName() + ".xyz * "
+                    + muPositionScale.getName() + ", 1.0)");
+        } else {
+            mgPosition.assign(maPosition);
+        }
+        if (mOctahedralNormals) {
+            // -- unfold the square back onto the octahedron, the lower half is folded over the upper one
+            mgNormal.assign("vec3(" + maNormal.getName() + ".xy * 2.0 - 1.0, 0.0)");
+            mgNormal.z().assign("1.0 - abs(" + mgNormal.getName() + ".x) - abs(" + mgNormal.getName() + ".y)");
+            mgNormal.xy().assignAdd("(1.0 - 2.0 * step(0.0, " + mgNormal.getName() + ".xy)) * max(-"
+                    + mgNormal.getName() + ".z, 0.0)");
+            mgNormal.assign(normalize(mgNormal));
+        } else {
+            mgNormal.assign(maNormal);
+        }
         mgTextureCoord.assign(maTextureCoord);
         if (mUseVertexColors)
             mgColor.assign(maVertexColor);
@@ -148,7 +175,7 @@ public class VertexShader extends AShader {
 
         mvTextureCoord.assign(mgTextureCoord);
         if (mHasCubeMaps) {
-            mvCubeTextureCoord.assign(castVec3(maPosition));
+            mvCubeTextureCoord.assign(castVec3(mQuantizedPositions ? mgPosition : maPosition));
             if (mHasSkyTexture) {
                 mvCubeTextureCoord.x().assignMultiply(-1);
             }
@@ -168,8 +195,8 @@ public class VertexShader extends AShader {
     @Override
     public void applyParams() {
         super.applyParams();
-        GLES20.glUniform4fv(muColorHandle, 1, mColor, 0);
-        GLES20.glUniform1f(muTimeHandle, mTime);
+        mUniformCache.uniform4fv(muColorHandle, mColor);
+        mUniformCache.uniform1f(muTimeHandle, mTime);
     }
 
     @Override
@@ -186,18 +213,62 @@ public class VertexShader extends AShader {
         muModelViewMatrixHandle = getUniformLocation(programHandle, DefaultShaderVar.U_MODEL_VIEW_MATRIX);
         muColorHandle = getUniformLocation(programHandle, DefaultShaderVar.U_COLOR);
         muTimeHandle = getUniformLocation(programHandle, DefaultShaderVar.U_TIME);
+        muPositionOffsetHandle = getUniformLocation(programHandle, DefaultShaderVar.U_POSITION_OFFSET);
+        muPositionScaleHandle = getUniformLocation(programHandle, DefaultShaderVar.U_POSITION_SCALE);
+
+        int defaultAttributes = 0;
+        if (maTextureCoordHandle >= 0) ++defaultAttributes;
+        if (maNormalHandle >= 0) ++defaultAttributes;
+        if (maPositionHandle >= 0) ++defaultAttributes;
+        if (mUseVertexColors && maVertexColorBufferHandle >= 0) ++defaultAttributes;
+        final ShaderProgram program = getProgram();
+        final int activeAttributes;
+        if (program != null && program.getHandle() == programHandle) {
+            activeAttributes = program.getActiveAttributeCount();
+        } else {
+            final int[] count = new int[1];
+            GLES20.glGetProgramiv(programHandle, GLES20.GL_ACTIVE_ATTRIBUTES, count, 0);
+            activeAttributes = count[0];
+        }
+        mOnlyDefaultAttributes = activeAttributes == defaultAttributes;
 
         super.setLocations(programHandle);
     }
 
+    /**
+     * Describes where the attributes set by {@link #setVertices(int)}, {@link #setTextureCoords(int)},
+     * {@link #setNormals(int)} and {@link #setVertexColors(int)} are located, as a key for
+     * {@link org.rajawali3d.VertexArrayCache}. Programs with the same layout can share vertex arrays.
+     *
+     * @param textureCoords Whether texture coordinates are set.
+     * @param normals       Whether normals are set.
+     * @param vertexColors  Whether vertex colors are set.
+     * @return The layout, or -1 if the program reads attributes which are set up by shader fragments, which have to be
+     * set for every draw call.
+     */
+    public int getVertexArrayLayout(boolean textureCoords, boolean normals, boolean vertexColors) {
+        if (!mOnlyDefaultAttributes || maPositionHandle < 0) return -1;
+        // -- locations are below GL_MAX_VERTEX_ATTRIBS, so each one fits into a byte
+        int layout = maPositionHandle + 1;
+        if (textureCoords && maTextureCoordHandle >= 0) layout |= (maTextureCoordHandle + 1) << 8;
+        if (normals && maNormalHandle >= 0) layout |= (maNormalHandle + 1) << 16;
+        if (vertexColors && maVertexColorBufferHandle >= 0) layout |= (maVertexColorBufferHandle + 1) << 24;
+        return layout;
+    }
+
     public void setVertices(final int vertexBufferHandle) {
         setVertices(vertexBufferHandle, GLES20.GL_FLOAT, 0, 0);
     }
 
     public void setVertices(final int vertexBufferHandle, final int type, final int stride, final int offset) {
-        GLES20.glBindBuffer(GLES20.GL_ARRAY_BUFFER, vertexBufferHandle);
-        GLES20.glEnableVertexAttribArray(maPositionHandle);
-        GLES20.glVertexAttribPointer(maPositionHandle, 3, type, false, stride, offset);
+        setVertices(vertexBufferHandle, 3, type, false, stride, offset);
+    }
+
+    public void setVertices(final int vertexBufferHandle, final int size, final int type,
+            final boolean normalized, final int stride, final int offset) {
+        GLStateCache.getCurrent().bindBuffer(GLES20.GL_ARRAY_BUFFER, vertexBufferHandle);
+        GLStateCache.getCurrent().enableVertexAttribArray(maPositionHandle);
+        GLES20.glVertexAttribPointer(maPositionHandle, size, type, normalized, stride, offset);
     }
 
     public void setTextureCoords(final int textureCoordBufferHandle) {
@@ -205,10 +276,15 @@ public class VertexShader extends AShader {
     }
 
     public void setTextureCoords(final int textureCoordBufferHandle, final int type, final int stride, final int offset) {
+        setTextureCoords(textureCoordBufferHandle, 2, type, false, stride, offset);
+    }
+
+    public void setTextureCoords(final int textureCoordBufferHandle, final int size, final int type,
+            final boolean normalized, final int stride, final int offset) {
         if (maTextureCoordHandle < 0) return;
-        GLES20.glBindBuffer(GLES20.GL_ARRAY_BUFFER, textureCoordBufferHandle);
-        GLES20.glEnableVertexAttribArray(maTextureCoordHandle);
-        GLES20.glVertexAttribPointer(maTextureCoordHandle, 2, type, false, stride, offset);
+        GLStateCache.getCurrent().bindBuffer(GLES20.GL_ARRAY_BUFFER, textureCoordBufferHandle);
+        GLStateCache.getCurrent().enableVertexAttribArray(maTextureCoordHandle);
+        GLES20.glVertexAttribPointer(maTextureCoordHandle, size, type, normalized, stride, offset);
     }
 
     public void setNormals(final int normalBufferHandle) {
@@ -216,10 +292,15 @@ public class VertexShader extends AShader {
     }
 
     public void setNormals(final int normalBufferHandle, final int type, final int stride, final int offset) {
+        setNormals(normalBufferHandle, 3, type, false, stride, offset);
+    }
+
+    public void setNormals(final int normalBufferHandle, final int size, final int type,
+            final boolean normalized, final int stride, final int offset) {
         if (maNormalHandle < 0) return;
-        GLES20.glBindBuffer(GLES20.GL_ARRAY_BUFFER, normalBufferHandle);
-        GLES20.glEnableVertexAttribArray(maNormalHandle);
-        GLES20.glVertexAttribPointer(maNormalHandle, 3, type, false, stride, offset);
+        GLStateCache.getCurrent().bindBuffer(GLES20.GL_ARRAY_BUFFER, normalBufferHandle);
+        GLStateCache.getCurrent().enableVertexAttribArray(maNormalHandle);
+        GLES20.glVertexAttribPointer(maNormalHandle, size, type, normalized, stride, offset);
     }
 
     public void setVertexColors(final int vertexColorBufferHandle) {
@@ -227,26 +308,50 @@ public class VertexShader extends AShader {
     }
 
     public void setVertexColors(final int vertexColorBufferHandle, final int type, final int stride, final int offset) {
+        setVertexColors(vertexColorBufferHandle, 4, type, false, stride, offset);
+    }
+
+    public void setVertexColors(final int vertexColorBufferHandle, final int size, final int type,
+            final boolean normalized, final int stride, final int offset) {
         if (maVertexColorBufferHandle < 0) return;
-        GLES20.glBindBuffer(GLES20.GL_ARRAY_BUFFER, vertexColorBufferHandle);
-        GLES20.glEnableVertexAttribArray(maVertexColorBufferHandle);
-        GLES20.glVertexAttribPointer(maVertexColorBufferHandle, 4, type, false, stride, offset);
+        GLStateCache.getCurrent().bindBuffer(GLES20.GL_ARRAY_BUFFER, vertexColorBufferHandle);
+        GLStateCache.getCurrent().enableVertexAttribArray(maVertexColorBufferHandle);
+        GLES20.glVertexAttribPointer(maVertexColorBufferHandle, size, type, normalized, stride, offset);
+    }
+
+    /**
+     * Sets the bounding box which quantized positions are decoded with, see
+     * {@link org.rajawali3d.Geometry3D#getPositionOffset()}.
+     *
+     * @param offset The smallest value of each axis.
+     * @param scale  The extent of each axis.
+     */
+    public void setPositionQuantization(float[] offset, float[] scale) {
+        mUniformCache.uniform3fv(muPositionOffsetHandle, offset);
+        mUniformCache.uniform3fv(muPositionScaleHandle, scale);
     }
 
     public void setMVPMatrix(float[] mvpMatrix) {
-        GLES20.glUniformMatrix4fv(muMVPMatrixHandle, 1, false, mvpMatrix, 0);
+        mUniformCache.uniformMatrix4fv(muMVPMatrixHandle, mvpMatrix);
     }
 
     public void setModelMatrix(Matrix4 modelMatrix) {
-        GLES20.glUniformMatrix4fv(muModelMatrixHandle, 1, false, modelMatrix.getFloatValues(), 0);
+        mUniformCache.uniformMatrix4fv(muModelMatrixHandle, modelMatrix.getFloatValues());
     }
 
     public void setNormalMatrix(float[] normalMatrix) {
-        GLES20.glUniformMatrix3fv(muNormalMatrixHandle, 1, false, normalMatrix, 0);
+        mUniformCache.uniformMatrix3fv(muNormalMatrixHandle, normalMatrix);
+    }
+
+    /**
+     * @return Whether the linked program reads the normal matrix. Unused uniforms are removed by the GLSL compiler.
+     */
+    public boolean usesNormalMatrix() {
+        return muNormalMatrixHandle >= 0;
     }
 
     public void setModelViewMatrix(float[] modelViewMatrix) {
-        GLES20.glUniformMatrix4fv(muModelViewMatrixHandle, 1, false, modelViewMatrix, 0);
+        mUniformCache.uniformMatrix4fv(muModelViewMatrixHandle, modelViewMatrix);
     }
 
     public void setColor(int color) {
@@ -284,6 +389,17 @@ public class VertexShader extends AShader {
         mUseVertexColors = value;
     }
 
+    /**
+     * Generates the decode of quantized positions and octahedral normals.
+     *
+     * @param quantizedPositions Whether the positions are quantized.
+     * @param octahedralNormals  Whether the normals are octahedral.
+     */
+    public void setVertexDecode(boolean quantizedPositions, boolean octahedralNormals) {
+        mQuantizedPositions = quantizedPositions;
+        mOctahedralNormals = octahedralNormals;
+    }
+
     public void enableTime(boolean value) {
         mTimeEnabled = value;
     }
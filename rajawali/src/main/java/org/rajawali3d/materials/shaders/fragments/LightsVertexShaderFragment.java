@@ -229,6 +229,7 @@ public class LightsVertexShaderFragment extends AShader implements IShaderFragme
 
 	@Override
 	public void setLocations(int programHandle) {
+		mUniformCache.invalidate();
 		int lightDirCount = 0, lightAttCount = 0;
 		int spotCount = 0;
 		
@@ -276,34 +277,34 @@ public class LightsVertexShaderFragment extends AShader implements IShaderFragme
 			ALight light = mLights.get(i);
 			int t = light.getLightType();
 			
-			GLES20.glUniform3fv(muLightColorHandles[i], 1, light.getColor(), 0);
-			GLES20.glUniform1f(muLightPowerHandles[i], light.getPower());
-			GLES20.glUniform3fv(muLightPositionHandles[i], 1, ArrayUtils.convertDoublesToFloats(light.getPositionArray(), mTemp3Floats), 0);
+			mUniformCache.uniform3fv(muLightColorHandles[i], light.getColor());
+			mUniformCache.uniform1f(muLightPowerHandles[i], light.getPower());
+			mUniformCache.uniform3fv(muLightPositionHandles[i], ArrayUtils.convertDoublesToFloats(light.getPositionArray(), mTemp3Floats));
 			
 			if(t == ALight.SPOT_LIGHT)
 			{
 				SpotLight l = (SpotLight)light;
-				GLES20.glUniform3fv(muLightDirectionHandles[spotCount], 1, ArrayUtils.convertDoublesToFloats(l.getDirection(), mTemp3Floats), 0);
-				GLES20.glUniform4fv(muLightAttenuationHandles[attCount], 1, l.getAttenuation(), 0);
+				mUniformCache.uniform3fv(muLightDirectionHandles[spotCount], ArrayUtils.convertDoublesToFloats(l.getDirection(), mTemp3Floats));
+				mUniformCache.uniform4fv(muLightAttenuationHandles[attCount], l.getAttenuation());
 				//GLES20.glUniform1f(muSpotExponentHandles[spotCount], l.get)
-				GLES20.glUniform1f(muSpotCutoffAngleHandles[spotCount], l.getCutoffAngle());
-				GLES20.glUniform1f(muSpotFalloffHandles[spotCount], l.getFalloff());
+				mUniformCache.uniform1f(muSpotCutoffAngleHandles[spotCount], l.getCutoffAngle());
+				mUniformCache.uniform1f(muSpotFalloffHandles[spotCount], l.getFalloff());
 				spotCount++;
 				dirCount++;
 				attCount++;
 			} else if(t == ALight.POINT_LIGHT) {
 				PointLight l = (PointLight)light;
-				GLES20.glUniform4fv(muLightAttenuationHandles[attCount], 1, l.getAttenuation(), 0);
+				mUniformCache.uniform4fv(muLightAttenuationHandles[attCount], l.getAttenuation());
 				attCount++;
 			} else if(t == ALight.DIRECTIONAL_LIGHT) {
 				DirectionalLight l = (DirectionalLight)light;
-				GLES20.glUniform3fv(muLightDirectionHandles[dirCount], 1, ArrayUtils.convertDoublesToFloats(l.getDirection(), mTemp3Floats), 0);
+				mUniformCache.uniform3fv(muLightDirectionHandles[dirCount], ArrayUtils.convertDoublesToFloats(l.getDirection(), mTemp3Floats));
 				dirCount++;
 			}
 		}
 		
-		GLES20.glUniform3fv(muAmbientColorHandle, 1, mAmbientColor, 0);
-		GLES20.glUniform3fv(muAmbientIntensityHandle, 1, mAmbientIntensity, 0);
+		mUniformCache.uniform3fv(muAmbientColorHandle, mAmbientColor);
+		mUniformCache.uniform3fv(muAmbientIntensityHandle, mAmbientIntensity);
 	}
 	
 	public void setAmbientColor(float[] ambientColor)
@@ -0,0 +1,210 @@
+/**
+ * Copyright 2013 Dennis Ippel
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package org.rajawali3d.materials.shaders.fragments.instancing;
+
+import org.rajawali3d.materials.Material.PluginInsertLocation;
+import org.rajawali3d.materials.plugins.InstancingMaterialPlugin.InstancingShaderVar;
+import org.rajawali3d.materials.shaders.AShader;
+import org.rajawali3d.materials.shaders.IShaderFragment;
+import org.rajawali3d.renderer.GLStateCache;
+import android.opengl.GLES20;
+import android.opengl.GLES30;
+
+public class InstancingVertexShaderFragment extends AShader implements IShaderFragment {
+
+	public final static String SHADER_ID = "INSTANCING_VERTEX";
+
+	/**
+	 * The number of floats per instance in the instance buffer: a model matrix, a color and a custom vec4.
+	 */
+	public static final int INSTANCE_STRIDE = 24;
+	public static final int MATRIX_OFFSET = 0;
+	public static final int COLOR_OFFSET = 16;
+	public static final int DATA_OFFSET = 20;
+
+	private final int mBatchSize;
+
+	private ShaderVar mInstanceModelMatrix;
+	private ShaderVar mInstanceColor;
+	private ShaderVar mInstanceData;
+	private RFloat maInstanceIndex;
+	private RVec4 mgInstanceData;
+
+	private int mInstanceModelMatrixHandle;
+	private int mInstanceColorHandle;
+	private int mInstanceDataHandle;
+	private int maInstanceIndexHandle;
+
+	/**
+	 * @param batchSize The length of the per instance uniform arrays. 0 declares per instance vertex attributes
+	 *                  instead.
+	 */
+	public InstancingVertexShaderFragment(int batchSize)
+	{
+		super(ShaderType.VERTEX_SHADER_FRAGMENT);
+		mBatchSize = batchSize;
+		initialize();
+	}
+
+	@Override
+	public void initialize()
+	{
+		super.initialize();
+
+		if (mBatchSize > 0) {
+			mInstanceModelMatrix = addUniform(InstancingShaderVar.U_INSTANCE_MODEL_MATRIX);
+			mInstanceModelMatrix.isArray(mBatchSize);
+			mInstanceColor = addUniform(InstancingShaderVar.U_INSTANCE_COLOR);
+			mInstanceColor.isArray(mBatchSize);
+			mInstanceData = addUniform(InstancingShaderVar.U_INSTANCE_DATA);
+			mInstanceData.isArray(mBatchSize);
+			maInstanceIndex = (RFloat) addAttribute(InstancingShaderVar.A_INSTANCE_INDEX);
+		} else {
+			mInstanceModelMatrix = addAttribute(InstancingShaderVar.A_INSTANCE_MODEL_MATRIX);
+			mInstanceColor = addAttribute(InstancingShaderVar.A_INSTANCE_COLOR);
+			mInstanceData = addAttribute(InstancingShaderVar.A_INSTANCE_DATA);
+		}
+		mgInstanceData = (RVec4) addGlobal(InstancingShaderVar.G_INSTANCE_DATA);
+	}
+
+	public String getShaderId() {
+		return SHADER_ID;
+	}
+
+	public int getBatchSize() {
+		return mBatchSize;
+	}
+
+	@Override
+	public void main() {
+		RVec4 position = (RVec4) getGlobal(DefaultShaderVar.G_POSITION);
+		RVec3 normal = (RVec3) getGlobal(DefaultShaderVar.G_NORMAL);
+		RVec4 color = (RVec4) getGlobal(DefaultShaderVar.G_COLOR);
+
+		ShaderVar modelMatrix = mInstanceModelMatrix;
+		ShaderVar instanceColor = mInstanceColor;
+		ShaderVar instanceData = mInstanceData;
+		if (mBatchSize > 0) {
+			//
+			// -- int index = int(aInstanceIndex);
+			//
+			RInt index = new RInt("instanceIndex", castInt(maInstanceIndex));
+			modelMatrix = mInstanceModelMatrix.elementAt(index);
+			instanceColor = mInstanceColor.elementAt(index);
+			instanceData = mInstanceData.elementAt(index);
+		}
+
+		//
+		// -- gPosition = instanceModelMatrix * gPosition;
+		//
+		position.assign(modelMatrix.multiply(position));
+		//
+		// -- gNormal = vec3(instanceModelMatrix * vec4(gNormal, 0.0));
+		//
+		normal.assign(castVec3(enclose(modelMatrix.multiply(castVec4(normal, 0)))));
+		color.assignMultiply(instanceColor);
+		mgInstanceData.assign(instanceData);
+	}
+
+	@Override
+	public void setLocations(final int programHandle) {
+		if (mBatchSize > 0) {
+			mInstanceModelMatrixHandle = getUniformLocation(programHandle, InstancingShaderVar.U_INSTANCE_MODEL_MATRIX);
+			mInstanceColorHandle = getUniformLocation(programHandle, InstancingShaderVar.U_INSTANCE_COLOR);
+			mInstanceDataHandle = getUniformLocation(programHandle, InstancingShaderVar.U_INSTANCE_DATA);
+			maInstanceIndexHandle = getAttribLocation(programHandle, InstancingShaderVar.A_INSTANCE_INDEX);
+		} else {
+			mInstanceModelMatrixHandle = getAttribLocation(programHandle, InstancingShaderVar.A_INSTANCE_MODEL_MATRIX);
+			mInstanceColorHandle = getAttribLocation(programHandle, InstancingShaderVar.A_INSTANCE_COLOR);
+			mInstanceDataHandle = getAttribLocation(programHandle, InstancingShaderVar.A_INSTANCE_DATA);
+		}
+	}
+
+	/**
+	 * Points the per instance attributes at an interleaved buffer of {@link #INSTANCE_STRIDE} floats per instance
+	 * and advances them once per instance. Requires OpenGL ES 3.0.
+	 *
+	 * @param instanceBufferHandle
+	 */
+	public void setInstanceAttributes(final int instanceBufferHandle)
+	{
+		final GLStateCache cache = GLStateCache.getCurrent();
+		final int stride = INSTANCE_STRIDE * 4;
+		cache.bindBuffer(GLES20.GL_ARRAY_BUFFER, instanceBufferHandle);
+		// -- a mat4 attribute occupies four consecutive locations, one per column
+		for (int i = 0; i < 4; ++i) {
+			setInstanceAttribute(cache, mInstanceModelMatrixHandle + i, stride, (MATRIX_OFFSET + i * 4) * 4);
+		}
+		setInstanceAttribute(cache, mInstanceColorHandle, stride, COLOR_OFFSET * 4);
+		setInstanceAttribute(cache, mInstanceDataHandle, stride, DATA_OFFSET * 4);
+	}
+
+	private void setInstanceAttribute(GLStateCache cache, int handle, int stride, int offset) {
+		if (handle < 0) return;
+		cache.enableVertexAttribArray(handle);
+		GLES20.glVertexAttribPointer(handle, 4, GLES20.GL_FLOAT, false, stride, offset);
+		GLES30.glVertexAttribDivisor(handle, 1);
+	}
+
+	/**
+	 * Restores the divisors and disables the per instance attributes so the locations can be reused by objects
+	 * which are not instanced.
+	 */
+	public void resetInstanceAttributes()
+	{
+		final GLStateCache cache = GLStateCache.getCurrent();
+		for (int i = 0; i < 4; ++i) {
+			resetInstanceAttribute(cache, mInstanceModelMatrixHandle + i);
+		}
+		resetInstanceAttribute(cache, mInstanceColorHandle);
+		resetInstanceAttribute(cache, mInstanceDataHandle);
+	}
+
+	private void resetInstanceAttribute(GLStateCache cache, int handle) {
+		if (handle < 0) return;
+		GLES30.glVertexAttribDivisor(handle, 0);
+		cache.disableVertexAttribArray(handle);
+	}
+
+	public void setInstanceIndices(final int indexBufferHandle)
+	{
+		GLStateCache.getCurrent().bindBuffer(GLES20.GL_ARRAY_BUFFER, indexBufferHandle);
+		GLStateCache.getCurrent().enableVertexAttribArray(maInstanceIndexHandle);
+		GLES20.glVertexAttribPointer(maInstanceIndexHandle, 1, GLES20.GL_FLOAT,
+				false, 0, 0);
+	}
+
+	/**
+	 * Uploads the values of one batch.
+	 *
+	 * @param modelMatrices 16 floats per instance, column major
+	 * @param colors 4 floats per instance
+	 * @param data 4 floats per instance
+	 * @param count The number of instances in this batch. No more than the batch size.
+	 */
+	public void setInstanceUniforms(float[] modelMatrices, float[] colors, float[] data, int count) {
+		GLES20.glUniformMatrix4fv(mInstanceModelMatrixHandle, count, false, modelMatrices, 0);
+		GLES20.glUniform4fv(mInstanceColorHandle, count, colors, 0);
+		GLES20.glUniform4fv(mInstanceDataHandle, count, data, 0);
+	}
+
+	@Override
+	public PluginInsertLocation getInsertLocation() {
+		return PluginInsertLocation.IGNORE;
+	}
+
+	@Override
+	public void bindTextures(int nextIndex) {}
+	@Override
+	public void unbindTextures() {}
+}
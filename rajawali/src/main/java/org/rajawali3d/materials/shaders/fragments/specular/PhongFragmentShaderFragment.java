@@ -23,7 +23,6 @@ import org.rajawali3d.materials.shaders.fragments.LightsVertexShaderFragment.Lig
 import org.rajawali3d.materials.shaders.fragments.texture.ATextureFragmentShaderFragment;
 import org.rajawali3d.materials.textures.ATexture;
 import android.graphics.Color;
-import android.opengl.GLES20;
 
 
 public class PhongFragmentShaderFragment extends ATextureFragmentShaderFragment implements IShaderFragment {
@@ -126,9 +125,9 @@ public class PhongFragmentShaderFragment extends ATextureFragmentShaderFragment
 	@Override
 	public void applyParams() {
 		super.applyParams();
-		GLES20.glUniform3fv(muSpecularColorHandle, 1, mSpecularColor, 0);
-		GLES20.glUniform1f(muShininessHandle, mShininess);
-		GLES20.glUniform1f(muSpecularIntensityHandle, mSpecularIntensity);
+		mUniformCache.uniform3fv(muSpecularColorHandle, mSpecularColor);
+		mUniformCache.uniform1f(muShininessHandle, mShininess);
+		mUniformCache.uniform1f(muSpecularIntensityHandle, mSpecularIntensity);
 	}
 	
 	public void setSpecularColor(int color)
@@ -19,7 +19,6 @@ import org.rajawali3d.materials.shaders.IShaderFragment;
 import org.rajawali3d.materials.textures.ATexture;
 import org.rajawali3d.materials.textures.ATexture.TextureType;
 import org.rajawali3d.materials.textures.ATexture.WrapType;
-import android.opengl.GLES20;
 
 
 public abstract class ATextureFragmentShaderFragment extends AShader implements IShaderFragment {
@@ -100,6 +99,7 @@ public abstract class ATextureFragmentShaderFragment extends AShader implements
 
 	@Override
 	public void setLocations(int programHandle) {
+		mUniformCache.invalidate();
 		if(mTextures == null) return;
 		for(int i=0; i<mTextures.size(); i++)
 		{
@@ -122,11 +122,11 @@ public abstract class ATextureFragmentShaderFragment extends AShader implements
 		for(int i=0; i<mTextures.size(); i++)
 		{
 			ATexture texture = mTextures.get(i);
-			GLES20.glUniform1f(muInfluenceHandles[i], texture.getInfluence());
+			mUniformCache.uniform1f(muInfluenceHandles[i], texture.getInfluence());
 			if(texture.getWrapType() == WrapType.REPEAT)
-				GLES20.glUniform2fv(muRepeatHandles[i], 1, texture.getRepeat(), 0);
+				mUniformCache.uniform2fv(muRepeatHandles[i], texture.getRepeat());
 			if(texture.offsetEnabled())
-				GLES20.glUniform2fv(muOffsetHandles[i], 1, texture.getOffset(), 0);
+				mUniformCache.uniform2fv(muOffsetHandles[i], texture.getOffset());
 		}
 	}
 	
@@ -12,10 +12,15 @@
  */
 package org.rajawali3d.materials.textures;
 
+import java.io.IOException;
 import java.nio.ByteBuffer;
 
 import android.opengl.GLES20;
 
+import org.rajawali3d.materials.textures.utils.ETC2Util;
+import org.rajawali3d.materials.textures.utils.KTXUtil;
+import org.rajawali3d.materials.textures.utils.KTXUtil.KTXContainer;
+import org.rajawali3d.renderer.GLStateCache;
 import org.rajawali3d.util.RajLog;
 
 public abstract class ACompressedTexture extends ATexture {
@@ -34,7 +39,8 @@ public abstract class ACompressedTexture extends ATexture {
 		THREEDC,
 		ATC,
 		DXT1,
-		PVRTC
+		PVRTC,
+		ASTC
 	};
 
 	/**
@@ -45,6 +51,14 @@ public abstract class ACompressedTexture extends ATexture {
 	 * Bitmap compression format. Use together with {@link CompressionType}
 	 */
 	protected int mCompressionFormat;
+	/**
+	 * The file the byte buffers are mapped from for every upload, or null if they are set directly.
+	 */
+	protected CompressedTextureSource mSource;
+	/**
+	 * The size of the levels uploaded last, kept once mapped byte buffers have been dropped.
+	 */
+	protected long mUploadedBytes;
 
 	protected ACompressedTexture() {
 		super();
@@ -77,6 +91,12 @@ public abstract class ACompressedTexture extends ATexture {
 		setByteBuffers(byteBuffers);
 	}
 
+	public ACompressedTexture(String textureName, CompressedTextureSource source)
+	{
+		this(textureName);
+		setSource(source);
+	}
+
 	/**
 	 * Copies every property from another ACompressedTexture object
 	 * 
@@ -128,20 +148,143 @@ public abstract class ACompressedTexture extends ATexture {
 		mByteBuffers = byteBuffers;
 	}
 
+	/**
+	 * Sets a file to map the levels from instead of keeping them in byte buffers. The file is mapped before each
+	 * upload and dropped afterwards, which includes uploads after the context was lost. The size and format are
+	 * taken from the file.
+	 *
+	 * @param source
+	 *            the {@link CompressedTextureSource}
+	 */
+	public void setSource(CompressedTextureSource source) {
+		mSource = source;
+		mByteBuffers = null;
+	}
+
+	public CompressedTextureSource getSource() {
+		return mSource;
+	}
+
     public ByteBuffer[] getByteBuffers() {
         return mByteBuffers;
     }
 
+	/**
+	 * @return The size of all mipmap levels in bytes.
+	 */
+	@Override
+	public long getGpuBytes()
+	{
+		if (mByteBuffers == null)
+			return mUploadedBytes;
+		long bytes = 0;
+		if (mByteBuffers != null)
+		{
+			for (int i = 0; i < mByteBuffers.length; i++) {
+				if (mByteBuffers[i] != null)
+					bytes += mByteBuffers[i].capacity();
+			}
+		}
+		return bytes;
+	}
+
+	@Override
+	boolean canReload()
+	{
+		if (mSource != null)
+			return true;
+		if (mShouldRecycle || mByteBuffers == null || mByteBuffers.length == 0)
+			return false;
+		for (int i = 0; i < mByteBuffers.length; i++) {
+			if (mByteBuffers[i] == null)
+				return false;
+		}
+		return true;
+	}
+
+	@Override
+	void restore() throws TextureException
+	{
+		rewindBuffers();
+		super.restore();
+	}
+
+	/**
+	 * Makes the whole data of every mipmap level readable again, {@link #add()} limits the buffers after uploading
+	 * them.
+	 */
+	void rewindBuffers()
+	{
+		if (mByteBuffers == null)
+			return;
+		for (int i = 0; i < mByteBuffers.length; i++) {
+			mByteBuffers[i].limit(mByteBuffers[i].capacity()).position(0);
+		}
+	}
+
+	/**
+	 * Maps the levels from the source, unless there is none or they are mapped already. The first image of a KTX
+	 * container is used, PKM files hold a single level.
+	 */
+	void mapByteBuffers() throws TextureException
+	{
+		if (mSource == null || mByteBuffers != null)
+			return;
+		try {
+			final ByteBuffer data = mSource.map();
+			if (KTXUtil.isKTX(data))
+			{
+				final KTXContainer container = KTXUtil.createContainer(data);
+				setByteBuffers(container.getLevels(0, 0));
+				setCompressionType(container.getCompressionType());
+				setCompressionFormat(container.getCompressionFormat());
+				setWidth(container.getWidth());
+				setHeight(container.getHeight());
+			} else {
+				final ETC2Util.ETC2Texture texture = ETC2Util.createTexture(data);
+				setByteBuffers(new ByteBuffer[] { texture.getData() });
+				setCompressionType(texture.getCompressionFormat() == ETC2Util.GL_COMPRESSED_ETC1_RGB8_OES
+						? CompressionType.ETC1 : CompressionType.ETC2);
+				setCompressionFormat(texture.getCompressionFormat());
+				setWidth(texture.getWidth());
+				setHeight(texture.getHeight());
+			}
+		} catch (IOException e) {
+			throw new TextureException(e);
+		}
+	}
+
+	/**
+	 * Drops mapped levels after an upload. The mapping is released once the buffers are collected.
+	 */
+	void unmapByteBuffers()
+	{
+		if (mSource == null || mByteBuffers == null)
+			return;
+		mUploadedBytes = getGpuBytes();
+		mByteBuffers = null;
+	}
+
     void add() throws TextureException
 	{
+		mapByteBuffers();
 		int[] textures = new int[1];
 		GLES20.glGenTextures(1, textures, 0);
 		int textureId = textures[0];
 		if (textureId > 0)
 		{
-			GLES20.glBindTexture(GLES20.GL_TEXTURE_2D, textureId);
+			GLStateCache.getCurrent().bindTexture(GLES20.GL_TEXTURE_2D, textureId);
 
-			if (mFilterType == FilterType.LINEAR)
+			// -- compressed mipmaps can't be generated, only a stored chain can be sampled
+			if (mByteBuffers != null && mByteBuffers.length > 1)
+			{
+				if (mFilterType == FilterType.LINEAR)
+					GLES20.glTexParameterf(GLES20.GL_TEXTURE_2D, GLES20.GL_TEXTURE_MIN_FILTER,
+							GLES20.GL_LINEAR_MIPMAP_LINEAR);
+				else
+					GLES20.glTexParameterf(GLES20.GL_TEXTURE_2D, GLES20.GL_TEXTURE_MIN_FILTER,
+							GLES20.GL_NEAREST_MIPMAP_NEAREST);
+			} else if (mFilterType == FilterType.LINEAR)
 				GLES20.glTexParameterf(GLES20.GL_TEXTURE_2D, GLES20.GL_TEXTURE_MIN_FILTER, GLES20.GL_LINEAR);
 			else
 				GLES20.glTexParameterf(GLES20.GL_TEXTURE_2D, GLES20.GL_TEXTURE_MIN_FILTER, GLES20.GL_NEAREST);
@@ -179,17 +322,20 @@ public abstract class ACompressedTexture extends ATexture {
 				mByteBuffers[i].limit(0);
 			}
 		}
+		unmapByteBuffers();
 
-		GLES20.glBindTexture(GLES20.GL_TEXTURE_2D, 0);
+		GLStateCache.getCurrent().bindTexture(GLES20.GL_TEXTURE_2D, 0);
 	}
 
 	void remove() throws TextureException
 	{
 		GLES20.glDeleteTextures(1, new int[] { mTextureId }, 0);
+		GLStateCache.getCurrent().onTextureDeleted(mTextureId);
 	}
 
 	void replace() throws TextureException
 	{
+		mapByteBuffers();
 		if (mByteBuffers == null || mByteBuffers.length == 0)
 			throw new TextureException("Texture could not be replaced because there is no ByteBuffer set.");
 
@@ -197,7 +343,7 @@ public abstract class ACompressedTexture extends ATexture {
 			throw new TextureException(
 					"Could not update ByteBuffer texture. One or more of the following properties haven't been set: width or height");
 
-        GLES20.glBindTexture(GLES20.GL_TEXTURE_2D, mTextureId);
+        GLStateCache.getCurrent().bindTexture(GLES20.GL_TEXTURE_2D, mTextureId);
 		int w = mWidth, h = mHeight;
 		for (int i = 0; i < mByteBuffers.length; i++) {
 			GLES20.glCompressedTexSubImage2D(GLES20.GL_TEXTURE_2D, i, 0, 0, w, h, mCompressionFormat,
@@ -205,7 +351,8 @@ public abstract class ACompressedTexture extends ATexture {
 			w = w > 1 ? w / 2 : 1;
 			h = h > 1 ? h / 2 : 1;
 		}
-        GLES20.glBindTexture(GLES20.GL_TEXTURE_2D, 0);
+        GLStateCache.getCurrent().bindTexture(GLES20.GL_TEXTURE_2D, 0);
+		unmapByteBuffers();
 	}
 
 	void reset() throws TextureException
@@ -123,6 +123,39 @@ public abstract class AMultiTexture extends ATexture {
         mCompressedTextures = compressedTextures;
     }
 	
+	@Override
+	public long getGpuBytes()
+	{
+		if (mCompressedTextures == null)
+			return super.getGpuBytes();
+		long bytes = 0;
+		for (int i = 0; i < mCompressedTextures.length; i++)
+			bytes += mCompressedTextures[i].getGpuBytes();
+		return bytes;
+	}
+
+	@Override
+	boolean canReload()
+	{
+		if (mCompressedTextures != null)
+		{
+			for (int i = 0; i < mCompressedTextures.length; i++) {
+				if (!mCompressedTextures[i].canReload())
+					return false;
+			}
+			return true;
+		}
+		return mResourceIds != null || (!mShouldRecycle && (mBitmaps != null || mByteBuffers != null));
+	}
+
+	@Override
+	void restore() throws TextureException
+	{
+		if (mBitmaps == null && mByteBuffers == null && mResourceIds != null)
+			setResourceIds(mResourceIds);
+		super.restore();
+	}
+
 	void reset() throws TextureException
 	{
 		if(mBitmaps != null)
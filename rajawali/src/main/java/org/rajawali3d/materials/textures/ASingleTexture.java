@@ -19,6 +19,9 @@ import android.graphics.BitmapFactory;
 import android.opengl.GLES20;
 import android.opengl.GLUtils;
 
+import org.rajawali3d.renderer.GLStateCache;
+
+import java.io.IOException;
 import java.nio.ByteBuffer;
 
 /**
@@ -32,6 +35,7 @@ public abstract class ASingleTexture extends ATexture
 	protected Bitmap mBitmap;
 	protected ByteBuffer mByteBuffer;
 	protected int mResourceId;
+	protected TextureSource mTextureSource;
 
 	protected ASingleTexture()
 	{
@@ -117,6 +121,21 @@ public abstract class ASingleTexture extends ATexture
 		return mByteBuffer;
 	}
 
+	/**
+	 * @param textureSource
+	 *            The {@link TextureSource} the bitmap was decoded from. It is decoded again when the texture is
+	 *            restored after it was evicted and the bitmap has been recycled.
+	 */
+	public void setTextureSource(TextureSource textureSource)
+	{
+		mTextureSource = textureSource;
+	}
+
+	public TextureSource getTextureSource()
+	{
+		return mTextureSource;
+	}
+
 	void add() throws TextureException
 	{
 		if(mCompressedTexture != null)
@@ -134,6 +153,7 @@ public abstract class ASingleTexture extends ATexture
 		if (mBitmap != null)
 		{
 			setBitmapFormat(mBitmap.getConfig() == Config.ARGB_8888 ? GLES20.GL_RGBA : GLES20.GL_RGB);
+			setBitmapConfig(mBitmap.getConfig());
 			setWidth(mBitmap.getWidth());
 			setHeight(mBitmap.getHeight());
 		}
@@ -144,35 +164,9 @@ public abstract class ASingleTexture extends ATexture
 
 		if (textureId > 0)
 		{
-			GLES20.glBindTexture(GLES20.GL_TEXTURE_2D, textureId);
+			GLStateCache.getCurrent().bindTexture(GLES20.GL_TEXTURE_2D, textureId);
 
-			if (isMipmap())
-			{
-				if (mFilterType == FilterType.LINEAR)
-					GLES20.glTexParameterf(GLES20.GL_TEXTURE_2D, GLES20.GL_TEXTURE_MIN_FILTER,
-							GLES20.GL_LINEAR_MIPMAP_LINEAR);
-				else
-					GLES20.glTexParameterf(GLES20.GL_TEXTURE_2D, GLES20.GL_TEXTURE_MIN_FILTER,
-							GLES20.GL_NEAREST_MIPMAP_NEAREST);
-			} else {
-				if (mFilterType == FilterType.LINEAR)
-					GLES20.glTexParameterf(GLES20.GL_TEXTURE_2D, GLES20.GL_TEXTURE_MIN_FILTER, GLES20.GL_LINEAR);
-				else
-					GLES20.glTexParameterf(GLES20.GL_TEXTURE_2D, GLES20.GL_TEXTURE_MIN_FILTER, GLES20.GL_NEAREST);
-			}
-
-			if (mFilterType == FilterType.LINEAR)
-				GLES20.glTexParameterf(GLES20.GL_TEXTURE_2D, GLES20.GL_TEXTURE_MAG_FILTER, GLES20.GL_LINEAR);
-			else
-				GLES20.glTexParameterf(GLES20.GL_TEXTURE_2D, GLES20.GL_TEXTURE_MAG_FILTER, GLES20.GL_NEAREST);
-
-			if (mWrapType == WrapType.REPEAT) {
-				GLES20.glTexParameteri(GLES20.GL_TEXTURE_2D, GLES20.GL_TEXTURE_WRAP_S, GLES20.GL_REPEAT);
-				GLES20.glTexParameteri(GLES20.GL_TEXTURE_2D, GLES20.GL_TEXTURE_WRAP_T, GLES20.GL_REPEAT);
-			} else {
-				GLES20.glTexParameteri(GLES20.GL_TEXTURE_2D, GLES20.GL_TEXTURE_WRAP_S, GLES20.GL_CLAMP_TO_EDGE);
-				GLES20.glTexParameteri(GLES20.GL_TEXTURE_2D, GLES20.GL_TEXTURE_WRAP_T, GLES20.GL_CLAMP_TO_EDGE);
-			}
+			setTextureParameters();
 
 			if (mBitmap == null)
 			{
@@ -205,15 +199,81 @@ public abstract class ASingleTexture extends ATexture
 			}
 		}
 
-		GLES20.glBindTexture(GLES20.GL_TEXTURE_2D, 0);
+		GLStateCache.getCurrent().bindTexture(GLES20.GL_TEXTURE_2D, 0);
+	}
+
+	/**
+	 * Sets the filter and wrap parameters of the texture bound to GL_TEXTURE_2D.
+	 */
+	void setTextureParameters()
+	{
+		if (isMipmap())
+		{
+			if (mFilterType == FilterType.LINEAR)
+				GLES20.glTexParameterf(GLES20.GL_TEXTURE_2D, GLES20.GL_TEXTURE_MIN_FILTER,
+						GLES20.GL_LINEAR_MIPMAP_LINEAR);
+			else
+				GLES20.glTexParameterf(GLES20.GL_TEXTURE_2D, GLES20.GL_TEXTURE_MIN_FILTER,
+						GLES20.GL_NEAREST_MIPMAP_NEAREST);
+		} else {
+			if (mFilterType == FilterType.LINEAR)
+				GLES20.glTexParameterf(GLES20.GL_TEXTURE_2D, GLES20.GL_TEXTURE_MIN_FILTER, GLES20.GL_LINEAR);
+			else
+				GLES20.glTexParameterf(GLES20.GL_TEXTURE_2D, GLES20.GL_TEXTURE_MIN_FILTER, GLES20.GL_NEAREST);
+		}
+
+		if (mFilterType == FilterType.LINEAR)
+			GLES20.glTexParameterf(GLES20.GL_TEXTURE_2D, GLES20.GL_TEXTURE_MAG_FILTER, GLES20.GL_LINEAR);
+		else
+			GLES20.glTexParameterf(GLES20.GL_TEXTURE_2D, GLES20.GL_TEXTURE_MAG_FILTER, GLES20.GL_NEAREST);
+
+		if (mWrapType == WrapType.REPEAT) {
+			GLES20.glTexParameteri(GLES20.GL_TEXTURE_2D, GLES20.GL_TEXTURE_WRAP_S, GLES20.GL_REPEAT);
+			GLES20.glTexParameteri(GLES20.GL_TEXTURE_2D, GLES20.GL_TEXTURE_WRAP_T, GLES20.GL_REPEAT);
+		} else {
+			GLES20.glTexParameteri(GLES20.GL_TEXTURE_2D, GLES20.GL_TEXTURE_WRAP_S, GLES20.GL_CLAMP_TO_EDGE);
+			GLES20.glTexParameteri(GLES20.GL_TEXTURE_2D, GLES20.GL_TEXTURE_WRAP_T, GLES20.GL_CLAMP_TO_EDGE);
+		}
+	}
+
+	@Override
+	boolean canReload()
+	{
+		if (mCompressedTexture != null)
+			return mCompressedTexture.canReload();
+		return (mBitmap != null && !mBitmap.isRecycled()) || (mByteBuffer != null && mByteBuffer.limit() > 0)
+				|| mResourceId != 0 || mTextureSource != null;
+	}
+
+	@Override
+	void restore() throws TextureException
+	{
+		if (mCompressedTexture != null)
+		{
+			mCompressedTexture.rewindBuffers();
+		} else if ((mBitmap == null || mBitmap.isRecycled()) && (mByteBuffer == null || mByteBuffer.limit() == 0)) {
+			if (mResourceId != 0)
+			{
+				setResourceId(mResourceId);
+			} else if (mTextureSource != null) {
+				try {
+					setBitmap(mTextureSource.decode());
+				} catch (IOException e) {
+					throw new TextureException(e);
+				}
+			}
+		}
+		super.restore();
 	}
 
 	void remove() throws TextureException
 	{
 		if(mCompressedTexture != null)
 			mCompressedTexture.remove();
-		else
+		else {
 			GLES20.glDeleteTextures(1, new int[] { mTextureId }, 0);
+			GLStateCache.getCurrent().onTextureDeleted(mTextureId);
+		}
 	}
 
 	void replace() throws TextureException
@@ -230,7 +290,7 @@ public abstract class ASingleTexture extends ATexture
 		if (mBitmap == null && (mByteBuffer == null || mByteBuffer.limit() == 0))
 			throw new TextureException("Texture could not be replaced because there is no Bitmap or ByteBuffer set.");
 
-		GLES20.glBindTexture(GLES20.GL_TEXTURE_2D, mTextureId);
+		GLStateCache.getCurrent().bindTexture(GLES20.GL_TEXTURE_2D, mTextureId);
 
 		if (mBitmap != null)
 		{
@@ -251,7 +311,7 @@ public abstract class ASingleTexture extends ATexture
 		if (mMipmap)
 			GLES20.glGenerateMipmap(GLES20.GL_TEXTURE_2D);
 
-		GLES20.glBindTexture(GLES20.GL_TEXTURE_2D, 0);
+		GLStateCache.getCurrent().bindTexture(GLES20.GL_TEXTURE_2D, 0);
 	}
 
 	void reset() throws TextureException
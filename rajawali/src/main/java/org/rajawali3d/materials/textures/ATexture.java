@@ -132,6 +132,20 @@ public abstract class ATexture {
 	protected float[] mRepeat = new float[] { 1, 1 };
 	protected boolean mEnableOffset;
 	protected float[] mOffset = new float[] { 0, 0 };
+	/**
+	 * The frame of the {@link TextureResidency} in which this texture was last bound.
+	 */
+	protected int mLastUsedFrame;
+	/**
+	 * Indicates whether the OpenGL texture was deleted to stay within the GPU memory budget. An evicted texture is
+	 * uploaded again the next time it is bound.
+	 */
+	protected boolean mEvicted;
+	/**
+	 * Indicates whether the texture is still being loaded by the {@link TextureUploadQueue}, which hands it to the
+	 * {@link TextureManager} once it is resident.
+	 */
+	protected volatile boolean mUploadPending;
 
 	/**
 	 * Creates a new ATexture instance with the specified texture type
@@ -501,6 +515,102 @@ public abstract class ATexture {
 		return mCompressedTexture;
 	}
 
+	/**
+	 * Estimates the GPU memory taken by this texture, including its mipmap chain and all faces of a cube map.
+	 *
+	 * @return The size in bytes, 0 as long as the size isn't known.
+	 */
+	public long getGpuBytes()
+	{
+		if (mCompressedTexture != null)
+			return mCompressedTexture.getGpuBytes();
+		long bytes = (long) mWidth * mHeight * getBytesPerPixel();
+		if (mMipmap)
+			bytes += bytes / 3;
+		if (mGLTextureType == GLES20.GL_TEXTURE_CUBE_MAP)
+			bytes *= 6;
+		return bytes;
+	}
+
+	/**
+	 * @return The number of bytes a texel takes, based on the bitmap configuration if there is one and otherwise on
+	 *         the bitmap format. RGB counts as four bytes since most drivers pad it.
+	 */
+	protected int getBytesPerPixel()
+	{
+		if (mBitmapConfig == Config.RGB_565 || mBitmapConfig == Config.ARGB_4444)
+			return 2;
+		if (mBitmapConfig == Config.ALPHA_8 || mBitmapFormat == GLES20.GL_ALPHA
+				|| mBitmapFormat == GLES20.GL_LUMINANCE)
+			return 1;
+		if (mBitmapFormat == GLES20.GL_LUMINANCE_ALPHA)
+			return 2;
+		return 4;
+	}
+
+	/**
+	 * @return Whether the texture has been evicted from GPU memory, see {@link TextureResidency}.
+	 */
+	public boolean isEvicted()
+	{
+		return mEvicted;
+	}
+
+	/**
+	 * @return Whether the texture is still being loaded by the {@link TextureUploadQueue}.
+	 */
+	public boolean isUploadPending()
+	{
+		return mUploadPending;
+	}
+
+	void setUploadPending(boolean pending)
+	{
+		mUploadPending = pending;
+	}
+
+	/**
+	 * @return The frame of the {@link TextureResidency} in which this texture was last bound.
+	 */
+	public int getLastUsedFrame()
+	{
+		return mLastUsedFrame;
+	}
+
+	void setLastUsedFrame(int frame)
+	{
+		mLastUsedFrame = frame;
+	}
+
+	/**
+	 * @return Whether the texture can be uploaded again after it has been evicted, either from data it keeps or from
+	 *         a source it can load cheaply. Textures which can't are never evicted.
+	 */
+	boolean canReload()
+	{
+		return false;
+	}
+
+	/**
+	 * Deletes the OpenGL texture to free GPU memory. The texture stays managed and is uploaded again by
+	 * {@link #restore()}.
+	 */
+	void evict() throws TextureException
+	{
+		remove();
+		mTextureId = 0;
+		mEvicted = true;
+	}
+
+	/**
+	 * Uploads an evicted texture again.
+	 */
+	void restore() throws TextureException
+	{
+		add();
+		mEvicted = false;
+	}
+
 	abstract void add() throws TextureException;
 	abstract void remove() throws TextureException;
 	abstract void replace() throws TextureException;
@@ -0,0 +1,111 @@
+/**
+ * Copyright 2013 Dennis Ippel
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package org.rajawali3d.materials.textures;
+
+import android.content.res.AssetFileDescriptor;
+import android.content.res.AssetManager;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * A file holding a compressed texture, a KTX container or a PKM file, which is memory mapped instead of read. The
+ * mapped region is handed to GL as it is, so loading a texture neither copies its data nor allocates it on the heap.
+ * See {@link ACompressedTexture#setSource(CompressedTextureSource)}.
+ *
+ * A texture maps its source right before every upload and drops the mapping afterwards, it is released once the
+ * buffer is collected. After the GL context was lost the file is simply mapped again.
+ */
+public abstract class CompressedTextureSource {
+
+    /**
+     * @param file {@link File} The file to map.
+     * @return The {@link CompressedTextureSource}.
+     */
+    public static CompressedTextureSource fromFile(final File file) {
+        return new CompressedTextureSource() {
+            @Override
+            public ByteBuffer map() throws IOException {
+                final FileInputStream input = new FileInputStream(file);
+                try {
+                    final FileChannel channel = input.getChannel();
+                    return channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+                } finally {
+                    // -- the mapping stays valid after the file is closed
+                    input.close();
+                }
+            }
+        };
+    }
+
+    /**
+     * Maps an asset through a descriptor which is kept open for as long as the source is used. The asset must be
+     * stored uncompressed, see aapt's {@code -0} option.
+     *
+     * @param descriptor {@link AssetFileDescriptor} The descriptor, it must not be closed by the caller.
+     * @return The {@link CompressedTextureSource}.
+     */
+    public static CompressedTextureSource fromAsset(final AssetFileDescriptor descriptor) {
+        return new CompressedTextureSource() {
+            @Override
+            public ByteBuffer map() throws IOException {
+                return mapAsset(descriptor);
+            }
+        };
+    }
+
+    /**
+     * Maps an asset, opening a new descriptor for each mapping. The asset must be stored uncompressed, see aapt's
+     * {@code -0} option.
+     *
+     * @param assets {@link AssetManager} to read from.
+     * @param path   {@link String} The path of the asset.
+     * @return The {@link CompressedTextureSource}.
+     */
+    public static CompressedTextureSource fromAsset(final AssetManager assets, final String path) {
+        return new CompressedTextureSource() {
+            @Override
+            public ByteBuffer map() throws IOException {
+                final AssetFileDescriptor descriptor = assets.openFd(path);
+                try {
+                    return mapAsset(descriptor);
+                } finally {
+                    descriptor.close();
+                }
+            }
+        };
+    }
+
+    /**
+     * Maps the file read only. Called on the GL thread before each upload, or on a loader thread if the texture is
+     * decoded by a {@link TranscodedTextureSource}.
+     *
+     * @return {@link ByteBuffer} The mapped file, positioned at its start.
+     * @throws IOException if the file can't be mapped.
+     */
+    public abstract ByteBuffer map() throws IOException;
+
+    private static ByteBuffer mapAsset(AssetFileDescriptor descriptor) throws IOException {
+        // -- a stream created from the descriptor doesn't own it, so it is left open
+        final FileChannel channel = new FileInputStream(descriptor.getFileDescriptor()).getChannel();
+        final long offset = descriptor.getStartOffset();
+        long length = descriptor.getLength();
+        if (length == AssetFileDescriptor.UNKNOWN_LENGTH) {
+            length = channel.size() - offset;
+        }
+        return channel.map(FileChannel.MapMode.READ_ONLY, offset, length);
+    }
+}
@@ -17,6 +17,8 @@ import android.graphics.Bitmap.Config;
 import android.opengl.GLES20;
 import android.opengl.GLUtils;
 
+import org.rajawali3d.renderer.GLStateCache;
+
 import java.nio.ByteBuffer;
 
 
@@ -79,7 +81,10 @@ public class CubeMapTexture extends AMultiTexture {
         if (mBitmaps != null && mBitmaps.length != 6)
             throw new TextureException("CubeMapTexture could not be added because it needs six textures instead of " + mBitmaps.length);
 
-        if (mBitmaps != null) {
+        if (mHasCompressedTextures) {
+            setWidth(mCompressedTextures[0].getWidth());
+            setHeight(mCompressedTextures[0].getHeight());
+        } else if (mBitmaps != null) {
             setBitmapConfig(mBitmaps[0].getConfig());
             setBitmapFormat(mBitmapConfig == Config.ARGB_8888 ? GLES20.GL_RGBA : GLES20.GL_RGB);
             setWidth(mBitmaps[0].getWidth());
@@ -88,7 +93,10 @@ public class CubeMapTexture extends AMultiTexture {
     }
 
     private void setTextureData() {
-        if (isMipmap()) {
+        // -- compressed faces bring their own mipmaps, if any
+        final boolean mipmap = mHasCompressedTextures ? mCompressedTextures[0].getByteBuffers().length > 1
+            : isMipmap();
+        if (mipmap) {
             if (mFilterType == FilterType.LINEAR)
                 GLES20.glTexParameterf(GLES20.GL_TEXTURE_CUBE_MAP, GLES20.GL_TEXTURE_MIN_FILTER,
                     GLES20.GL_LINEAR_MIPMAP_LINEAR);
@@ -134,7 +142,7 @@ public class CubeMapTexture extends AMultiTexture {
             }
         }
 
-        if (isMipmap())
+        if (isMipmap() && !mHasCompressedTextures)
             GLES20.glGenerateMipmap(GLES20.GL_TEXTURE_CUBE_MAP);
 
         if (mShouldRecycle) {
@@ -148,50 +156,59 @@ public class CubeMapTexture extends AMultiTexture {
             mByteBuffers = null;
         }
 
-        GLES20.glBindTexture(GLES20.GL_TEXTURE_CUBE_MAP, 0);
+        GLStateCache.getCurrent().bindTexture(GLES20.GL_TEXTURE_CUBE_MAP, 0);
     }
 
-    @Override
-    void add() throws TextureException {
-        if(mHasCompressedTextures) {
-            for(int i=0; i<mCompressedTextures.length; i++) {
-                mCompressedTextures[i].add();
+    private void mapCompressedTextures() throws TextureException {
+        if (mHasCompressedTextures) {
+            for (int i = 0; i < mCompressedTextures.length; i++) {
+                mCompressedTextures[i].mapByteBuffers();
+            }
+        }
+    }
+
+    private void unmapCompressedTextures() {
+        if (mHasCompressedTextures) {
+            for (int i = 0; i < mCompressedTextures.length; i++) {
+                mCompressedTextures[i].unmapByteBuffers();
             }
         }
+    }
+
+    @Override
+    void add() throws TextureException {
+        mapCompressedTextures();
         checkBitmapConfiguration();
         int[] genTextureNames = new int[1];
         GLES20.glGenTextures(1, genTextureNames, 0);
         int textureId = genTextureNames[0];
 
         if (textureId > 0) {
-            GLES20.glBindTexture(GLES20.GL_TEXTURE_CUBE_MAP, textureId);
+            GLStateCache.getCurrent().bindTexture(GLES20.GL_TEXTURE_CUBE_MAP, textureId);
             setTextureData();
             setTextureId(textureId);
         } else {
             throw new TextureException("Couldn't generate a texture name.");
         }
+        unmapCompressedTextures();
     }
 
     @Override
     void remove() throws TextureException {
-        if(mHasCompressedTextures) {
-            for(int i=0; i<mCompressedTextures.length; i++) {
-                mCompressedTextures[i].remove();
-            }
-        }
         GLES20.glDeleteTextures(1, new int[]{mTextureId}, 0);
+        GLStateCache.getCurrent().onTextureDeleted(mTextureId);
     }
 
     @Override
     void replace() throws TextureException {
+        mapCompressedTextures();
         checkBitmapConfiguration();
 
         if (mTextureId > 0) {
-            GLES20.glBindTexture(GLES20.GL_TEXTURE_CUBE_MAP, mTextureId);
+            GLStateCache.getCurrent().bindTexture(GLES20.GL_TEXTURE_CUBE_MAP, mTextureId);
             if(mHasCompressedTextures) {
                 for (int i = 0; i < 6; i++) {
                     ACompressedTexture tex = mCompressedTextures[i];
-                    tex.add();
                     int w = tex.getWidth(), h = tex.getHeight();
                     for (int j = 0; j < tex.getByteBuffers().length; j++) {
                         GLES20.glCompressedTexSubImage2D(CUBE_FACES[i], j, 0, 0, w, h, tex.getCompressionFormat(),
@@ -200,7 +217,8 @@ public class CubeMapTexture extends AMultiTexture {
                         h = h > 1 ? h / 2 : 1;
                     }
                 }
-                GLES20.glBindTexture(GLES20.GL_TEXTURE_CUBE_MAP, 0);
+                GLStateCache.getCurrent().bindTexture(GLES20.GL_TEXTURE_CUBE_MAP, 0);
+                unmapCompressedTextures();
             } else {
                 setTextureData();
             }
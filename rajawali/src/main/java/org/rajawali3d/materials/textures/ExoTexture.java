@@ -6,6 +6,7 @@ import android.opengl.GLES20;
 import android.view.Surface;
 
 import com.google.android.exoplayer2.SimpleExoPlayer;
+import org.rajawali3d.renderer.GLStateCache;
 
 public class ExoTexture extends ATexture {
 
@@ -34,7 +35,7 @@ public class ExoTexture extends ATexture {
         int[] textures = new int[1];
         GLES20.glGenTextures(1, textures, 0);
         int textureId = textures[0];
-        GLES20.glBindTexture(GL_TEXTURE_EXTERNAL_OES, textureId);
+        GLStateCache.getCurrent().bindTexture(GL_TEXTURE_EXTERNAL_OES, textureId);
         GLES20.glTexParameterf(GL_TEXTURE_EXTERNAL_OES,
                 GLES20.GL_TEXTURE_MIN_FILTER, GLES20.GL_NEAREST);
         GLES20.glTexParameterf(GL_TEXTURE_EXTERNAL_OES,
@@ -53,6 +54,7 @@ public class ExoTexture extends ATexture {
 
     void remove() throws TextureException {
         GLES20.glDeleteTextures(1, new int[]{mTextureId}, 0);
+        GLStateCache.getCurrent().onTextureDeleted(mTextureId);
         mSurfaceTexture.release();
     }
 
@@ -0,0 +1,80 @@
+/**
+ * Copyright 2013 Dennis Ippel
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package org.rajawali3d.materials.textures;
+
+import org.rajawali3d.materials.textures.utils.KTXUtil;
+import org.rajawali3d.materials.textures.utils.KTXUtil.KTXContainer;
+
+/**
+ * A compressed texture with the mipmap chain stored in a KTX container, see {@link KTXUtil}. The levels are slices of
+ * the container data, they are uploaded as they are.
+ */
+public class KTXTexture extends ACompressedTexture {
+
+    public KTXTexture(KTXTexture other) {
+        super(other);
+        setByteBuffers(other.getByteBuffers());
+    }
+
+    /**
+     * Creates a texture from the first image of a container.
+     *
+     * @param textureName The texture name that will be used in the shader.
+     * @param container   The {@link KTXContainer}.
+     */
+    public KTXTexture(String textureName, KTXContainer container) {
+        this(textureName, container, 0, 0);
+    }
+
+    /**
+     * Creates a texture from a single layer and face of a container.
+     *
+     * @param textureName The texture name that will be used in the shader.
+     * @param container   The {@link KTXContainer}.
+     * @param layer       The array layer.
+     * @param face        The cube face.
+     */
+    public KTXTexture(String textureName, KTXContainer container, int layer, int face) {
+        super(textureName, container.getLevels(layer, face));
+        setCompressionType(container.getCompressionType());
+        setCompressionFormat(container.getCompressionFormat());
+        setWidth(container.getWidth());
+        setHeight(container.getHeight());
+        setMipmap(container.getLevelCount() > 1);
+    }
+
+    @Override
+    public KTXTexture clone() {
+        return new KTXTexture(this);
+    }
+
+    /**
+     * Creates a cube map from the six faces of a container.
+     *
+     * @param textureName The texture name that will be used in the shader.
+     * @param container   The {@link KTXContainer}, which has to be a cube map.
+     * @return The {@link CubeMapTexture}.
+     */
+    public static CubeMapTexture createCubeMap(String textureName, KTXContainer container) {
+        if (!container.isCubeMap()) {
+            throw new IllegalArgumentException("The KTX container doesn't hold a cube map.");
+        }
+        final ACompressedTexture[] faces = new ACompressedTexture[6];
+        for (int i = 0; i < faces.length; ++i) {
+            faces[i] = new KTXTexture(textureName + i, container, 0, i);
+        }
+        final CubeMapTexture cubeMap = new CubeMapTexture(textureName, faces);
+        cubeMap.setMipmap(container.getLevelCount() > 1);
+        return cubeMap;
+    }
+}
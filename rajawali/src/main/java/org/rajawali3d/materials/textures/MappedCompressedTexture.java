@@ -0,0 +1,38 @@
+/**
+ * Copyright 2013 Dennis Ippel
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package org.rajawali3d.materials.textures;
+
+/**
+ * A compressed texture which maps a KTX container or PKM file for every upload instead of keeping its data in memory,
+ * see {@link CompressedTextureSource}.
+ */
+public class MappedCompressedTexture extends ACompressedTexture {
+
+    public MappedCompressedTexture(MappedCompressedTexture other) {
+        super(other);
+        setSource(other.getSource());
+    }
+
+    /**
+     * @param textureName The texture name that will be used in the shader.
+     * @param source      The {@link CompressedTextureSource} to map.
+     */
+    public MappedCompressedTexture(String textureName, CompressedTextureSource source) {
+        super(textureName, source);
+    }
+
+    @Override
+    public MappedCompressedTexture clone() {
+        return new MappedCompressedTexture(this);
+    }
+}
@@ -14,6 +14,8 @@ package org.rajawali3d.materials.textures;
 
 import android.opengl.GLES20;
 
+import org.rajawali3d.renderer.GLStateCache;
+
 public class RenderTargetTexture extends ATexture {
 
     public static enum RenderTargetTextureFormat {
@@ -119,7 +121,7 @@ public class RenderTargetTexture extends ATexture {
         int textureId = textures[0];
 
         if (textureId > 0) {
-            GLES20.glBindTexture(GLES20.GL_TEXTURE_2D, textureId);
+            GLStateCache.getCurrent().bindTexture(GLES20.GL_TEXTURE_2D, textureId);
 
             if (isMipmap()) {
                 if (mFilterType == FilterType.LINEAR) {
@@ -158,13 +160,14 @@ public class RenderTargetTexture extends ATexture {
                 GLES20.glGenerateMipmap(GLES20.GL_TEXTURE_2D);
             }
 
-            GLES20.glBindTexture(GLES20.GL_TEXTURE_2D, 0);
+            GLStateCache.getCurrent().bindTexture(GLES20.GL_TEXTURE_2D, 0);
             setTextureId(textureId);
         }
     }
 
     @Override void remove() throws TextureException {
         GLES20.glDeleteTextures(1, new int[]{ mTextureId }, 0);
+        GLStateCache.getCurrent().onTextureDeleted(mTextureId);
     }
 
     @Override void replace() throws TextureException {
@@ -172,14 +175,14 @@ public class RenderTargetTexture extends ATexture {
     }
 
     void resize() {
-        GLES20.glBindTexture(GLES20.GL_TEXTURE_2D, mTextureId);
+        GLStateCache.getCurrent().bindTexture(GLES20.GL_TEXTURE_2D, mTextureId);
         GLES20.glTexImage2D(GLES20.GL_TEXTURE_2D, 0, mInternalFormat.getFormat(), mWidth, mHeight, 0,
                             mFormat.getFormat(), mType.getType(), null);
         if (isMipmap()) {
             GLES20.glGenerateMipmap(GLES20.GL_TEXTURE_2D);
         }
 
-        GLES20.glBindTexture(GLES20.GL_TEXTURE_2D, 0);
+        GLStateCache.getCurrent().bindTexture(GLES20.GL_TEXTURE_2D, 0);
     }
 
     void reset() throws TextureException {
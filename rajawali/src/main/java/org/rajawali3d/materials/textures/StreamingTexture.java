@@ -19,6 +19,8 @@ import android.opengl.GLES11Ext;
 import android.opengl.GLES20;
 import android.view.Surface;
 
+import org.rajawali3d.renderer.GLStateCache;
+
 import java.io.IOException;
 
 public class StreamingTexture extends ATexture {
@@ -67,7 +69,7 @@ public class StreamingTexture extends ATexture {
         int[] textures = new int[1];
         GLES20.glGenTextures(1, textures, 0);
         int textureId = textures[0];
-        GLES20.glBindTexture(GL_TEXTURE_EXTERNAL_OES, textureId);
+        GLStateCache.getCurrent().bindTexture(GL_TEXTURE_EXTERNAL_OES, textureId);
         GLES20.glTexParameterf(GL_TEXTURE_EXTERNAL_OES,
             GLES20.GL_TEXTURE_MIN_FILTER, GLES20.GL_NEAREST);
         GLES20.glTexParameterf(GL_TEXTURE_EXTERNAL_OES,
@@ -95,6 +97,7 @@ public class StreamingTexture extends ATexture {
 
     void remove() throws TextureException {
         GLES20.glDeleteTextures(1, new int[]{mTextureId}, 0);
+        GLStateCache.getCurrent().onTextureDeleted(mTextureId);
         mSurfaceTexture.release();
     }
 
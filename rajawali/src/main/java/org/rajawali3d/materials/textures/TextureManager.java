@@ -44,6 +44,10 @@ public final class TextureManager extends AResourceManager {
 	 * A list of managed textures
 	 */
 	private List<ATexture> mTextureList;
+	/**
+	 * Keeps the managed textures within the GPU memory budget
+	 */
+	private final TextureResidency mResidency = new TextureResidency();
 
 	/**
 	 * The constructor can only be instantiated by the TextureManager class itself.
@@ -95,6 +99,9 @@ public final class TextureManager extends AResourceManager {
 	 * @param isUpdatingAfterContextWasLost
 	 */
 	private void taskAdd(ATexture texture, boolean isUpdatingAfterContextWasLost) {
+		// -- the upload queue adds it once it is resident
+		if (texture.isUploadPending())
+			return;
 		if (!isUpdatingAfterContextWasLost) {
 			// -- check if texture exists already
 			int count = mTextureList.size();
@@ -114,11 +121,25 @@ public final class TextureManager extends AResourceManager {
 		} catch (TextureException e) {
 			throw new RuntimeException(e);
 		}
+		texture.setLastUsedFrame(mResidency.getFrame());
 
 		if (!isUpdatingAfterContextWasLost)
 			mTextureList.add(texture);
 	}
 
+	/**
+	 * Adds a {@link ATexture} which has already been uploaded, for instance by the {@link TextureUploadQueue}, so it
+	 * is restored and removed like any other. This should only be called on the GL thread.
+	 *
+	 * @param texture
+	 */
+	public void taskAddResident(ATexture texture) {
+		if (mTextureList.contains(texture)) return;
+		texture.setOwnerIdentity(mRenderer.getClass().toString());
+		texture.setLastUsedFrame(mResidency.getFrame());
+		mTextureList.add(texture);
+	}
+
 	/**
 	 * Replaces an existing {@link ATexture}.
 	 *
@@ -176,7 +197,9 @@ public final class TextureManager extends AResourceManager {
 	 */
 	public void taskRemove(ATexture texture) {
 		try {
-			texture.remove();
+			// -- a texture which is still loading is bound to the shared placeholder
+			if (!texture.isEvicted() && !texture.isUploadPending())
+				texture.remove();
 		} catch (TextureException e) {
 			throw new RuntimeException(e);
 		}
@@ -207,7 +230,7 @@ public final class TextureManager extends AResourceManager {
 			ATexture texture = iterator.next();
 			if (texture.willRecycle()) {
 				iterator.remove();
-			} else {
+			} else if (!texture.isEvicted()) {
 				taskAdd(texture, true);
 			}
 		}
@@ -264,6 +287,48 @@ public final class TextureManager extends AResourceManager {
 		}
 	}
 
+	/**
+	 * Sets the GPU memory budget of the managed textures. Once they take up more, the least recently used ones are
+	 * evicted at the start of a frame and uploaded again when they are bound the next time. See
+	 * {@link TextureResidency} for which textures can be evicted.
+	 *
+	 * @param bytes The budget in bytes, 0 for no budget (the default).
+	 */
+	public void setGpuMemoryBudget(long bytes) {
+		mResidency.setBudget(bytes);
+	}
+
+	/**
+	 * @return The GPU memory budget in bytes, 0 if there is none.
+	 */
+	public long getGpuMemoryBudget() {
+		return mResidency.getBudget();
+	}
+
+	/**
+	 * @return The {@link TextureResidency}, for instance to query the resident bytes and eviction counts.
+	 */
+	public TextureResidency getResidency() {
+		return mResidency;
+	}
+
+	/**
+	 * Starts a new frame and enforces the GPU memory budget. This should only be called by {@link Renderer}.
+	 */
+	public void taskFrameStart() {
+		mResidency.onFrameStart(mTextureList);
+	}
+
+	/**
+	 * Records that a {@link ATexture} is bound in the current frame and uploads it again if it was evicted. This
+	 * should only be called on the GL thread, before the texture id is used.
+	 *
+	 * @param texture
+	 */
+	public void markUsed(ATexture texture) {
+		mResidency.markUsed(texture);
+	}
+
 	public void taskResizeRenderTarget(RenderTargetTexture renderTargetTexture) {
 		renderTargetTexture.resize();
 	}
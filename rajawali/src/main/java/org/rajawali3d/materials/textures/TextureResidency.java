@@ -0,0 +1,154 @@
+/**
+ * Copyright 2013 Dennis Ippel
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package org.rajawali3d.materials.textures;
+
+import org.rajawali3d.materials.textures.ATexture.TextureException;
+import org.rajawali3d.util.RajLog;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * Keeps the GPU memory taken by the textures of the {@link TextureManager} within a budget. Every bind of a texture
+ * records the current frame, and at the start of each frame the least recently used textures are evicted until the
+ * resident ones fit. An evicted texture keeps its settings and is uploaded again, synchronously, the next time it is
+ * bound.
+ *
+ * Only textures which can be uploaded again cheaply are evicted: those created from a resource, a retained bitmap or
+ * buffer, or a {@link TextureSource}. Render targets, streaming textures and textures which recycle their only copy
+ * of the data always stay resident. Textures bound in the last frame are never evicted either, so the budget is
+ * exceeded when a single frame needs more than that.
+ *
+ * The sizes are estimates, see {@link ATexture#getGpuBytes()}. Drivers may align and pad textures.
+ */
+public class TextureResidency {
+
+    private static final Comparator<ATexture> LEAST_RECENTLY_USED = new Comparator<ATexture>() {
+        @Override
+        public int compare(ATexture lhs, ATexture rhs) {
+            final int lhsFrame = lhs.getLastUsedFrame();
+            final int rhsFrame = rhs.getLastUsedFrame();
+            return lhsFrame < rhsFrame ? -1 : (lhsFrame == rhsFrame ? 0 : 1);
+        }
+    };
+
+    private final List<ATexture> mCandidates = new ArrayList<>();
+    private long mBudget;
+    private int mFrame;
+    private long mResidentBytes;
+    private int mEvictionCount;
+    private int mRestoreCount;
+
+    /**
+     * Sets the GPU memory budget of all managed textures.
+     *
+     * @param bytes {@code long} The budget in bytes, 0 for no budget.
+     */
+    public void setBudget(long bytes) {
+        mBudget = Math.max(0, bytes);
+    }
+
+    /**
+     * @return {@code long} The budget in bytes, 0 if there is none.
+     */
+    public long getBudget() {
+        return mBudget;
+    }
+
+    /**
+     * Starts a new frame and evicts textures until the resident ones fit into the budget. Has to be called on the GL
+     * thread.
+     *
+     * @param textures The managed textures.
+     */
+    public void onFrameStart(List<ATexture> textures) {
+        ++mFrame;
+        long resident = 0;
+        final int count = textures.size();
+        for (int i = 0; i < count; ++i) {
+            final ATexture texture = textures.get(i);
+            if (texture.isEvicted()) continue;
+            resident += texture.getGpuBytes();
+            if (mBudget > 0 && texture.getLastUsedFrame() < mFrame - 1 && texture.canReload()) {
+                mCandidates.add(texture);
+            }
+        }
+        if (resident > mBudget && mBudget > 0) {
+            Collections.sort(mCandidates, LEAST_RECENTLY_USED);
+            for (int i = 0, j = mCandidates.size(); i < j && resident > mBudget; ++i) {
+                final ATexture texture = mCandidates.get(i);
+                final long bytes = texture.getGpuBytes();
+                try {
+                    texture.evict();
+                } catch (TextureException e) {
+                    RajLog.e("Could not evict texture " + texture.getTextureName() + ": " + e.getMessage());
+                    continue;
+                }
+                resident -= bytes;
+                ++mEvictionCount;
+            }
+        }
+        mCandidates.clear();
+        mResidentBytes = resident;
+    }
+
+    /**
+     * Records that a texture is bound in the current frame, restoring it first if it was evicted. Has to be called on
+     * the GL thread before the texture id is used.
+     *
+     * @param texture The {@link ATexture} which is about to be bound.
+     */
+    public void markUsed(ATexture texture) {
+        if (texture.isEvicted()) {
+            try {
+                texture.restore();
+            } catch (TextureException e) {
+                throw new RuntimeException(e);
+            }
+            mResidentBytes += texture.getGpuBytes();
+            ++mRestoreCount;
+        }
+        texture.setLastUsedFrame(mFrame);
+    }
+
+    /**
+     * @return {@code int} The current frame.
+     */
+    public int getFrame() {
+        return mFrame;
+    }
+
+    /**
+     * @return {@code long} The estimated size of the resident textures in bytes, as of the last frame start plus
+     * the textures restored since.
+     */
+    public long getResidentBytes() {
+        return mResidentBytes;
+    }
+
+    /**
+     * @return {@code int} The number of evictions so far.
+     */
+    public int getEvictionCount() {
+        return mEvictionCount;
+    }
+
+    /**
+     * @return {@code int} The number of evicted textures which have been uploaded again so far.
+     */
+    public int getRestoreCount() {
+        return mRestoreCount;
+    }
+}
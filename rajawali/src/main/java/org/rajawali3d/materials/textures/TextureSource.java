@@ -0,0 +1,171 @@
+/**
+ * Copyright 2013 Dennis Ippel
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package org.rajawali3d.materials.textures;
+
+import android.content.res.AssetManager;
+import android.content.res.Resources;
+import android.graphics.Bitmap;
+import android.graphics.Bitmap.Config;
+import android.graphics.BitmapFactory;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * Where the image of an asynchronously loaded texture comes from, and how it is decoded. Decoding happens on a loader
+ * thread, see {@link org.rajawali3d.renderer.Renderer#loadTexture(ASingleTexture, TextureSource,
+ * org.rajawali3d.loader.async.IAsyncTextureCallback)}.
+ *
+ * Images larger than {@link #setMaxSize(int)} are downscaled by a power of two while they are decoded, which also
+ * saves decoding time and memory. Opaque images can be converted to RGB 565, which halves their upload size.
+ */
+public abstract class TextureSource {
+
+    private int mMaxSize;
+    private boolean mOpaque;
+
+    /**
+     * @param resources  {@link Resources} to read from.
+     * @param resourceId {@code int} The drawable or raw resource.
+     * @return The {@link TextureSource}.
+     */
+    public static TextureSource fromResource(final Resources resources, final int resourceId) {
+        return new TextureSource() {
+            @Override
+            protected Bitmap decode(BitmapFactory.Options options) throws IOException {
+                return BitmapFactory.decodeResource(resources, resourceId, options);
+            }
+        };
+    }
+
+    /**
+     * @param assets {@link AssetManager} to read from.
+     * @param path   {@link String} The path of the asset.
+     * @return The {@link TextureSource}.
+     */
+    public static TextureSource fromAsset(final AssetManager assets, final String path) {
+        return new TextureSource() {
+            @Override
+            protected Bitmap decode(BitmapFactory.Options options) throws IOException {
+                final InputStream in = assets.open(path);
+                try {
+                    return BitmapFactory.decodeStream(in, null, options);
+                } finally {
+                    in.close();
+                }
+            }
+        };
+    }
+
+    /**
+     * @param file {@link File} The image file.
+     * @return The {@link TextureSource}.
+     */
+    public static TextureSource fromFile(final File file) {
+        return new TextureSource() {
+            @Override
+            protected Bitmap decode(BitmapFactory.Options options) throws IOException {
+                return BitmapFactory.decodeFile(file.getAbsolutePath(), options);
+            }
+        };
+    }
+
+    /**
+     * Limits the size of the decoded image. Larger images are downscaled by the smallest power of two which makes both
+     * sides fit.
+     *
+     * @param maxSize {@code int} The maximum width and height in pixels, 0 for no limit.
+     * @return This {@link TextureSource}.
+     */
+    public TextureSource setMaxSize(int maxSize) {
+        mMaxSize = Math.max(0, maxSize);
+        return this;
+    }
+
+    public int getMaxSize() {
+        return mMaxSize;
+    }
+
+    /**
+     * Declares the image opaque, so it is decoded to RGB 565 instead of ARGB 8888.
+     *
+     * @param opaque {@code boolean} True to decode to RGB 565.
+     * @return This {@link TextureSource}.
+     */
+    public TextureSource setOpaque(boolean opaque) {
+        mOpaque = opaque;
+        return this;
+    }
+
+    public boolean isOpaque() {
+        return mOpaque;
+    }
+
+    /**
+     * Decodes the image, applying the size limit and format. Called on a loader thread.
+     *
+     * @return The decoded {@link Bitmap}.
+     * @throws IOException if the image can't be read or decoded.
+     */
+    public Bitmap decode() throws IOException {
+        final BitmapFactory.Options options = new BitmapFactory.Options();
+        options.inScaled = false;
+        if (mMaxSize > 0) {
+            options.inJustDecodeBounds = true;
+            decode(options);
+            options.inJustDecodeBounds = false;
+            options.inSampleSize = getSampleSize(options.outWidth, options.outHeight, mMaxSize);
+        }
+        options.inPreferredConfig = mOpaque ? Config.RGB_565 : Config.ARGB_8888;
+        final Bitmap bitmap = decode(options);
+        if (bitmap == null) throw new IOException("Image could not be decoded");
+        return bitmap;
+    }
+
+    /**
+     * Decodes the image into an upload. Called on a loader thread. By default the pixels are copied out of the bitmap
+     * {@link #decode()} returns, sources which produce pixels directly can hand them over instead.
+     *
+     * @param upload The {@link TextureUploadQueue.Upload} to pass the image to.
+     * @throws IOException if the image can't be read or decoded.
+     */
+    public void decode(TextureUploadQueue.Upload upload) throws IOException {
+        upload.setBitmap(decode());
+    }
+
+    /**
+     * Decodes the image with the given options.
+     *
+     * @param options {@link BitmapFactory.Options} The options, which may ask for the bounds only.
+     * @return The {@link Bitmap}, null if only the bounds were decoded or the image is invalid.
+     * @throws IOException if the image can't be read.
+     */
+    protected abstract Bitmap decode(BitmapFactory.Options options) throws IOException;
+
+    /**
+     * Calculates the power of two downscale factor which fits an image into a size limit.
+     *
+     * @param width   {@code int} The width of the image.
+     * @param height  {@code int} The height of the image.
+     * @param maxSize {@code int} The maximum width and height.
+     * @return {@code int} The factor, 1 if the image fits.
+     */
+    public static int getSampleSize(int width, int height, int maxSize) {
+        int sampleSize = 1;
+        while (width / sampleSize > maxSize || height / sampleSize > maxSize) {
+            sampleSize *= 2;
+        }
+        return sampleSize;
+    }
+}
@@ -0,0 +1,478 @@
+/**
+ * Copyright 2013 Dennis Ippel
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package org.rajawali3d.materials.textures;
+
+import android.graphics.Bitmap;
+import android.graphics.Bitmap.Config;
+import android.graphics.Color;
+import android.opengl.GLES20;
+import android.opengl.GLES30;
+import org.rajawali3d.loader.async.IAsyncTextureCallback;
+import org.rajawali3d.renderer.GLStateCache;
+import org.rajawali3d.renderer.RenderDirtyTracker;
+import org.rajawali3d.util.RajLog;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * Uploads textures which were decoded on loader threads, spread over as many frames as it takes to stay within a byte
+ * budget per frame. Large textures are uploaded in stripes of rows with glTexSubImage2D. On GLES 3.0 the rows are
+ * staged through a pixel buffer object, so the driver can transfer them without stalling the GL thread.
+ *
+ * Until its upload is complete a texture is bound to a 1x1 placeholder, so materials using it can draw right away.
+ * Completion is reported through the {@link Upload}, which is a {@link Future}, and through an
+ * {@link IAsyncTextureCallback}, after which the texture is managed by the {@link TextureManager} like any other. The
+ * {@link TextureManager} skips textures which are still pending when materials add them, see
+ * {@link ATexture#isUploadPending()}.
+ *
+ * {@link #run()} has to be called on the GL thread once per frame, the {@link org.rajawali3d.renderer.Renderer} does
+ * so after its frame tasks. Uploads in progress when the GL context is lost start over in the new context.
+ */
+public class TextureUploadQueue {
+
+    public static final long DEFAULT_BYTE_BUDGET = 2 * 1024 * 1024;
+
+    /**
+     * A texture on its way to the GPU.
+     */
+    public static final class Upload implements Future<ASingleTexture> {
+
+        final ASingleTexture mTexture;
+        final IAsyncTextureCallback mCallback;
+        private final CountDownLatch mDone = new CountDownLatch(1);
+        private volatile boolean mDecoded;
+        private volatile boolean mCancelled;
+        private volatile Exception mError;
+
+        Bitmap mBitmap;
+        ByteBuffer mPixels;
+        int mWidth;
+        int mHeight;
+        int mFormat;
+        int mType;
+        int mRowBytes;
+
+        // -- only accessed on the GL thread
+        boolean mPlaceholderSet;
+        int mTextureId;
+        int mUploadedRows;
+
+        Upload(ASingleTexture texture, IAsyncTextureCallback callback) {
+            mTexture = texture;
+            mCallback = callback;
+        }
+
+        /**
+         * Sets the decoded image. Called on the loader thread, which also copies the pixels out of the bitmap.
+         *
+         * @param bitmap {@link Bitmap} The decoded image, recycled unless the texture keeps it for context restores.
+         */
+        public void setBitmap(Bitmap bitmap) {
+            if (bitmap.getConfig() != Config.ARGB_8888 && bitmap.getConfig() != Config.RGB_565) {
+                final Bitmap converted = bitmap.copy(Config.ARGB_8888, false);
+                bitmap.recycle();
+                bitmap = converted;
+            }
+            final boolean rgb565 = bitmap.getConfig() == Config.RGB_565;
+            final ByteBuffer pixels = ByteBuffer.allocateDirect(bitmap.getRowBytes() * bitmap.getHeight())
+                    .order(ByteOrder.nativeOrder());
+            bitmap.copyPixelsToBuffer(pixels);
+            pixels.clear();
+            setPixels(pixels, bitmap.getWidth(), bitmap.getHeight(), rgb565 ? GLES20.GL_RGB : GLES20.GL_RGBA,
+                    rgb565 ? GLES20.GL_UNSIGNED_SHORT_5_6_5 : GLES20.GL_UNSIGNED_BYTE, bitmap.getRowBytes());
+            if (mTexture.willRecycle()) {
+                bitmap.recycle();
+            } else {
+                mBitmap = bitmap;
+            }
+        }
+
+        /**
+         * Sets the decoded pixels, tightly packed rows from top to bottom.
+         *
+         * @param pixels   {@link ByteBuffer} The pixels.
+         * @param width    {@code int} The width in pixels.
+         * @param height   {@code int} The height in pixels.
+         * @param format   {@code int} The GL format, GL_RGBA or GL_RGB.
+         * @param type     {@code int} The GL type, GL_UNSIGNED_BYTE, GL_UNSIGNED_SHORT_5_6_5 or
+         *                 GL_UNSIGNED_SHORT_4_4_4_4.
+         * @param rowBytes {@code int} The size of a row in bytes.
+         */
+        public void setPixels(ByteBuffer pixels, int width, int height, int format, int type, int rowBytes) {
+            mPixels = pixels;
+            mWidth = width;
+            mHeight = height;
+            mFormat = format;
+            mType = type;
+            mRowBytes = rowBytes;
+            mDecoded = true;
+        }
+
+        /**
+         * Marks the upload as failed. Called on the loader thread.
+         *
+         * @param e {@link Exception} The reason.
+         */
+        public void setError(Exception e) {
+            mError = e;
+            mDecoded = true;
+        }
+
+        public ASingleTexture getTexture() {
+            return mTexture;
+        }
+
+        /**
+         * @return {@code int} The number of rows uploaded so far.
+         */
+        public int getUploadedRows() {
+            return mUploadedRows;
+        }
+
+        public int getHeight() {
+            return mHeight;
+        }
+
+        @Override
+        public boolean cancel(boolean mayInterruptIfRunning) {
+            if (isDone()) return false;
+            mCancelled = true;
+            mDone.countDown();
+            return true;
+        }
+
+        @Override
+        public boolean isCancelled() {
+            return mCancelled;
+        }
+
+        @Override
+        public boolean isDone() {
+            return mDone.getCount() == 0;
+        }
+
+        @Override
+        public ASingleTexture get() throws InterruptedException, ExecutionException {
+            mDone.await();
+            return getResult();
+        }
+
+        @Override
+        public ASingleTexture get(long timeout, TimeUnit unit) throws InterruptedException, ExecutionException,
+                TimeoutException {
+            if (!mDone.await(timeout, unit)) throw new TimeoutException();
+            return getResult();
+        }
+
+        private ASingleTexture getResult() throws ExecutionException {
+            if (mCancelled) throw new CancellationException();
+            if (mError != null) throw new ExecutionException(mError);
+            return mTexture;
+        }
+
+        void finish() {
+            mPixels = null;
+            mDone.countDown();
+        }
+    }
+
+    private final ConcurrentLinkedQueue<Upload> mIncoming = new ConcurrentLinkedQueue<>();
+    private final List<Upload> mPending = new ArrayList<>();
+    private volatile long mByteBudget = DEFAULT_BYTE_BUDGET;
+    private volatile boolean mPixelBuffersSupported;
+    private volatile int mPlaceholderColor = Color.WHITE;
+    private int mContextId;
+    private int mPlaceholder;
+    private int mPixelBuffer;
+    private long mLastFrameBytes;
+
+    /**
+     * Queues a texture. It gets its placeholder with the next {@link #run()} and is uploaded once
+     * {@link Upload#setBitmap(Bitmap)} or {@link Upload#setError(Exception)} was called. Can be called from any
+     * thread.
+     *
+     * @param texture  The {@link ASingleTexture} to upload.
+     * @param callback The {@link IAsyncTextureCallback}, or null.
+     * @return The {@link Upload} to pass the decoded image to.
+     */
+    public Upload request(ASingleTexture texture, IAsyncTextureCallback callback) {
+        final Upload upload = new Upload(texture, callback);
+        texture.setUploadPending(true);
+        mIncoming.add(upload);
+        return upload;
+    }
+
+    /**
+     * Uploads as many rows as the byte budget allows, at least one stripe per frame. Must be called on the GL thread.
+     *
+     * @return {@code int} The number of textures which became resident.
+     */
+    public int run() {
+        final int contextId = GLStateCache.getCurrent().getContextId();
+        if (mContextId != contextId) {
+            forget();
+            mContextId = contextId;
+        }
+        Upload incoming;
+        while ((incoming = mIncoming.poll()) != null) {
+            mPending.add(incoming);
+        }
+
+        final long budget = mByteBudget;
+        long used = 0;
+        boolean full = false;
+        int completed = 0;
+        for (int i = 0; i < mPending.size(); ++i) {
+            final Upload upload = mPending.get(i);
+            if (upload.isCancelled()) {
+                if (upload.mTextureId != 0) delete(upload);
+                mPending.remove(i--);
+                upload.mTexture.setUploadPending(false);
+                continue;
+            }
+            if (!upload.mPlaceholderSet) {
+                if (mPlaceholder == 0) mPlaceholder = createPlaceholder(mPlaceholderColor);
+                upload.mTexture.setTextureId(mPlaceholder);
+                upload.mPlaceholderSet = true;
+            }
+            if (!upload.mDecoded) continue;
+            if (upload.mError != null) {
+                RajLog.e("Could not load texture " + upload.mTexture.getTextureName() + ": " + upload.mError);
+                mPending.remove(i--);
+                upload.mTexture.setUploadPending(false);
+                upload.finish();
+                if (upload.mCallback != null) upload.mCallback.onTextureLoadFailed(upload.mTexture, upload.mError);
+                continue;
+            }
+            // -- uploads stay in order, the ones after a texture which doesn't fit only get their placeholder
+            full |= used > 0 && used + upload.mRowBytes > budget;
+            if (full) continue;
+
+            if (upload.mTextureId == 0) {
+                allocate(upload);
+            }
+            final int rows = (int) Math.min(upload.mHeight - upload.mUploadedRows,
+                    Math.max(1, (budget - used) / upload.mRowBytes));
+            uploadRows(upload, upload.mUploadedRows, rows);
+            upload.mUploadedRows += rows;
+            used += (long) rows * upload.mRowBytes;
+
+            if (upload.mUploadedRows == upload.mHeight) {
+                mPending.remove(i--);
+                upload.mTexture.setUploadPending(false);
+                complete(upload);
+                upload.finish();
+                ++completed;
+                RenderDirtyTracker.markSceneChanged();
+                if (upload.mCallback != null) upload.mCallback.onTextureResident(upload.mTexture);
+            }
+        }
+        mLastFrameBytes = used;
+        return completed;
+    }
+
+    /**
+     * Sets how many bytes {@link #run()} uploads per frame. A stripe of at least one row is uploaded per frame, even
+     * if it is larger.
+     *
+     * @param budget {@code long} The budget in bytes.
+     */
+    public void setByteBudget(long budget) {
+        mByteBudget = Math.max(1, budget);
+    }
+
+    public long getByteBudget() {
+        return mByteBudget;
+    }
+
+    /**
+     * Enables staging the uploads through a pixel buffer object, which requires GLES 3.0.
+     *
+     * @param supported {@code boolean} True if the context supports pixel buffer objects.
+     */
+    public void setPixelBuffersSupported(boolean supported) {
+        mPixelBuffersSupported = supported;
+    }
+
+    /**
+     * Sets the color of the placeholder textures are bound to until they are resident. Takes effect in the next
+     * GL context.
+     *
+     * @param color {@code int} The ARGB color.
+     */
+    public void setPlaceholderColor(int color) {
+        mPlaceholderColor = color;
+    }
+
+    /**
+     * @return {@code int} The number of textures which are not resident yet.
+     */
+    public int getPendingCount() {
+        return mPending.size() + mIncoming.size();
+    }
+
+    /**
+     * @return {@code long} The number of bytes the last {@link #run()} uploaded.
+     */
+    public long getLastFrameBytes() {
+        return mLastFrameBytes;
+    }
+
+    /**
+     * Drops all GL objects without deleting them, because their context is gone. Uploads in progress start over.
+     */
+    private void forget() {
+        mPlaceholder = 0;
+        mPixelBuffer = 0;
+        for (int i = 0, j = mPending.size(); i < j; ++i) {
+            final Upload upload = mPending.get(i);
+            upload.mPlaceholderSet = false;
+            upload.mTextureId = 0;
+            upload.mUploadedRows = 0;
+        }
+    }
+
+    /**
+     * Creates the 1x1 placeholder texture.
+     *
+     * @param color {@code int} The ARGB color.
+     * @return {@code int} The texture handle.
+     */
+    protected int createPlaceholder(int color) {
+        final int[] handles = new int[1];
+        GLES20.glGenTextures(1, handles, 0);
+        final ByteBuffer texel = ByteBuffer.allocateDirect(4);
+        texel.put((byte) Color.red(color)).put((byte) Color.green(color)).put((byte) Color.blue(color))
+                .put((byte) Color.alpha(color)).flip();
+        final GLStateCache cache = GLStateCache.getCurrent();
+        cache.bindTexture(GLES20.GL_TEXTURE_2D, handles[0]);
+        GLES20.glTexParameteri(GLES20.GL_TEXTURE_2D, GLES20.GL_TEXTURE_MIN_FILTER, GLES20.GL_NEAREST);
+        GLES20.glTexParameteri(GLES20.GL_TEXTURE_2D, GLES20.GL_TEXTURE_MAG_FILTER, GLES20.GL_NEAREST);
+        GLES20.glTexImage2D(GLES20.GL_TEXTURE_2D, 0, GLES20.GL_RGBA, 1, 1, 0, GLES20.GL_RGBA,
+                GLES20.GL_UNSIGNED_BYTE, texel);
+        cache.bindTexture(GLES20.GL_TEXTURE_2D, 0);
+        return handles[0];
+    }
+
+    /**
+     * Creates the texture of an upload and allocates its storage, without any pixels yet.
+     *
+     * @param upload The {@link Upload}.
+     */
+    protected void allocate(Upload upload) {
+        final int[] handles = new int[1];
+        GLES20.glGenTextures(1, handles, 0);
+        upload.mTextureId = handles[0];
+        final GLStateCache cache = GLStateCache.getCurrent();
+        cache.bindTexture(GLES20.GL_TEXTURE_2D, upload.mTextureId);
+        upload.mTexture.setTextureParameters();
+        GLES20.glTexImage2D(GLES20.GL_TEXTURE_2D, 0, upload.mFormat, upload.mWidth, upload.mHeight, 0,
+                upload.mFormat, upload.mType, null);
+        cache.bindTexture(GLES20.GL_TEXTURE_2D, 0);
+    }
+
+    /**
+     * Uploads a stripe of rows.
+     *
+     * @param upload The {@link Upload}.
+     * @param y      {@code int} The first row.
+     * @param rows   {@code int} The number of rows.
+     */
+    protected void uploadRows(Upload upload, int y, int rows) {
+        final GLStateCache cache = GLStateCache.getCurrent();
+        cache.bindTexture(GLES20.GL_TEXTURE_2D, upload.mTextureId);
+        final int size = rows * upload.mRowBytes;
+        final ByteBuffer pixels = upload.mPixels;
+        pixels.limit(y * upload.mRowBytes + size).position(y * upload.mRowBytes);
+        GLES20.glPixelStorei(GLES20.GL_UNPACK_ALIGNMENT, 1);
+
+        boolean staged = false;
+        if (mPixelBuffersSupported) {
+            if (mPixelBuffer == 0) {
+                final int[] handles = new int[1];
+                GLES20.glGenBuffers(1, handles, 0);
+                mPixelBuffer = handles[0];
+            }
+            cache.bindBuffer(GLES30.GL_PIXEL_UNPACK_BUFFER, mPixelBuffer);
+            // -- orphans the storage of the last stripe, so there is no need to wait for its transfer
+            GLES20.glBufferData(GLES30.GL_PIXEL_UNPACK_BUFFER, size, null, GLES30.GL_STREAM_DRAW);
+            final ByteBuffer mapped = (ByteBuffer) GLES30.glMapBufferRange(GLES30.GL_PIXEL_UNPACK_BUFFER, 0, size,
+                    GLES30.GL_MAP_WRITE_BIT | GLES30.GL_MAP_INVALIDATE_BUFFER_BIT);
+            if (mapped != null) {
+                mapped.put(pixels);
+                if (GLES30.glUnmapBuffer(GLES30.GL_PIXEL_UNPACK_BUFFER)) {
+                    GLES30.glTexSubImage2D(GLES20.GL_TEXTURE_2D, 0, 0, y, upload.mWidth, rows, upload.mFormat,
+                            upload.mType, 0);
+                    staged = true;
+                }
+                pixels.limit(y * upload.mRowBytes + size).position(y * upload.mRowBytes);
+            }
+            cache.bindBuffer(GLES30.GL_PIXEL_UNPACK_BUFFER, 0);
+        }
+        if (!staged) {
+            GLES20.glTexSubImage2D(GLES20.GL_TEXTURE_2D, 0, 0, y, upload.mWidth, rows, upload.mFormat, upload.mType,
+                    pixels);
+        }
+
+        GLES20.glPixelStorei(GLES20.GL_UNPACK_ALIGNMENT, 4);
+        pixels.clear();
+        cache.bindTexture(GLES20.GL_TEXTURE_2D, 0);
+    }
+
+    /**
+     * Finishes an upload whose rows are all uploaded. Replaces the placeholder and hands the texture to the
+     * {@link TextureManager}.
+     *
+     * @param upload The {@link Upload}.
+     */
+    protected void complete(Upload upload) {
+        final ASingleTexture texture = upload.mTexture;
+        if (texture.isMipmap()) {
+            final GLStateCache cache = GLStateCache.getCurrent();
+            cache.bindTexture(GLES20.GL_TEXTURE_2D, upload.mTextureId);
+            GLES20.glGenerateMipmap(GLES20.GL_TEXTURE_2D);
+            cache.bindTexture(GLES20.GL_TEXTURE_2D, 0);
+        }
+        texture.setWidth(upload.mWidth);
+        texture.setHeight(upload.mHeight);
+        texture.setBitmapFormat(upload.mFormat);
+        if (upload.mType == GLES20.GL_UNSIGNED_SHORT_5_6_5) {
+            texture.setBitmapConfig(Config.RGB_565);
+        } else if (upload.mType == GLES20.GL_UNSIGNED_SHORT_4_4_4_4) {
+            texture.setBitmapConfig(Config.ARGB_4444);
+        }
+        texture.setBitmap(upload.mBitmap);
+        texture.setTextureId(upload.mTextureId);
+        TextureManager.getInstance().taskAddResident(texture);
+    }
+
+    /**
+     * Deletes the texture of a cancelled upload.
+     *
+     * @param upload The {@link Upload}.
+     */
+    protected void delete(Upload upload) {
+        GLES20.glDeleteTextures(1, new int[]{upload.mTextureId}, 0);
+        GLStateCache.getCurrent().onTextureDeleted(upload.mTextureId);
+    }
+}
@@ -0,0 +1,152 @@
+/**
+ * Copyright 2013 Dennis Ippel
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package org.rajawali3d.materials.textures;
+
+import android.graphics.Bitmap;
+import android.graphics.Bitmap.Config;
+import android.graphics.BitmapFactory;
+
+import org.rajawali3d.materials.textures.utils.ETC2Decoder;
+import org.rajawali3d.materials.textures.utils.ETC2Util;
+import org.rajawali3d.materials.textures.utils.KTXUtil;
+import org.rajawali3d.materials.textures.utils.KTXUtil.KTXContainer;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+/**
+ * Decodes an ETC1 or ETC2 texture on the CPU, for devices which can't sample the format. The file is mapped from a
+ * {@link CompressedTextureSource}, so the same KTX and PKM assets can be used on every device:
+ *
+ * <pre>
+ * if (ETC2Util.isETC2Supported()) {
+ *     renderer.getTextureManager().addTexture(new MappedCompressedTexture(name, source));
+ * } else {
+ *     renderer.loadTexture(new Texture(name), new TranscodedTextureSource(source), callback);
+ * }
+ * </pre>
+ *
+ * The blocks are decoded with an {@link ETC2Decoder} on the loader thread. Formats without alpha are decoded to
+ * RGB 565 and formats with alpha to RGBA 8888, unless another {@link ETC2Decoder.Output} is set. Textures which keep
+ * their bitmap for context restores get one, which can't be RGBA 4444, so it falls back to ARGB 8888. With a size
+ * limit the smallest mipmap level of a KTX container which fits is decoded.
+ */
+public class TranscodedTextureSource extends TextureSource {
+
+    private final CompressedTextureSource mSource;
+    private final ETC2Decoder mDecoder;
+    private ETC2Decoder.Output mOutput;
+
+    /**
+     * @param source {@link CompressedTextureSource} The KTX or PKM file.
+     */
+    public TranscodedTextureSource(CompressedTextureSource source) {
+        this(source, new ETC2Decoder());
+    }
+
+    /**
+     * @param source  {@link CompressedTextureSource} The KTX or PKM file.
+     * @param decoder {@link ETC2Decoder} The decoder, for instance one with its own pool.
+     */
+    public TranscodedTextureSource(CompressedTextureSource source, ETC2Decoder decoder) {
+        mSource = source;
+        mDecoder = decoder;
+    }
+
+    /**
+     * @param output {@link ETC2Decoder.Output} The pixel format to decode to, or null to choose it by the format of
+     *               the file.
+     * @return This {@link TranscodedTextureSource}.
+     */
+    public TranscodedTextureSource setOutput(ETC2Decoder.Output output) {
+        mOutput = output;
+        return this;
+    }
+
+    public ETC2Decoder.Output getOutput() {
+        return mOutput;
+    }
+
+    @Override
+    public void decode(TextureUploadQueue.Upload upload) throws IOException {
+        if (!upload.getTexture().willRecycle()) {
+            super.decode(upload);
+            return;
+        }
+        final ETC2Util.ETC2Texture texture = map(0);
+        final ETC2Decoder.Output output = getOutput(texture.getCompressionFormat());
+        final ByteBuffer pixels = mDecoder.decode(texture, output);
+        upload.setPixels(pixels, texture.getWidth(), texture.getHeight(), output.getGLFormat(), output.getGLType(),
+                texture.getWidth() * output.getBytesPerPixel());
+    }
+
+    @Override
+    protected Bitmap decode(BitmapFactory.Options options) throws IOException {
+        final ETC2Util.ETC2Texture texture = map(options.inSampleSize);
+        if (options.inJustDecodeBounds) {
+            options.outWidth = texture.getWidth();
+            options.outHeight = texture.getHeight();
+            return null;
+        }
+        // -- the pixels are copied as they are, Bitmap only stores them
+        final ETC2Decoder.Output output = getOutput(texture.getCompressionFormat()) == ETC2Decoder.Output.RGB565
+                ? ETC2Decoder.Output.RGB565 : ETC2Decoder.Output.RGBA8888;
+        final Bitmap bitmap = Bitmap.createBitmap(texture.getWidth(), texture.getHeight(),
+                output == ETC2Decoder.Output.RGB565 ? Config.RGB_565 : Config.ARGB_8888);
+        bitmap.copyPixelsFromBuffer(mDecoder.decode(texture, output));
+        return bitmap;
+    }
+
+    private ETC2Decoder.Output getOutput(int format) {
+        if (mOutput != null) {
+            return mOutput;
+        }
+        if (isOpaque() || !ETC2Decoder.hasAlpha(format)) {
+            return ETC2Decoder.Output.RGB565;
+        }
+        return ETC2Decoder.Output.RGBA8888;
+    }
+
+    /**
+     * Maps the file and picks the image to decode.
+     *
+     * @param sampleSize {@code int} The power of two the image should be downscaled by, which selects a mipmap level,
+     *                   or 0 to derive it from the size limit.
+     * @return {@link ETC2Util.ETC2Texture} The image.
+     * @throws IOException if the file can't be mapped or its format can't be decoded.
+     */
+    private ETC2Util.ETC2Texture map(int sampleSize) throws IOException {
+        final ByteBuffer data = mSource.map();
+        final ETC2Util.ETC2Texture texture;
+        if (KTXUtil.isKTX(data)) {
+            final KTXContainer container = KTXUtil.createContainer(data);
+            if (sampleSize <= 0) {
+                sampleSize = getMaxSize() > 0
+                        ? getSampleSize(container.getWidth(), container.getHeight(), getMaxSize()) : 1;
+            }
+            int level = 0;
+            while (level + 1 < container.getLevelCount() && (1 << (level + 1)) <= sampleSize) {
+                ++level;
+            }
+            texture = new ETC2Util.ETC2Texture(container.getCompressionFormat(),
+                    Math.max(1, container.getWidth() >> level), Math.max(1, container.getHeight() >> level),
+                    container.getImage(level, 0, 0));
+        } else {
+            texture = ETC2Util.createTexture(data);
+        }
+        if (!ETC2Decoder.canDecode(texture.getCompressionFormat())) {
+            throw new IOException("Compression format " + texture.getCompressionFormat() + " can't be decoded.");
+        }
+        return texture;
+    }
+}
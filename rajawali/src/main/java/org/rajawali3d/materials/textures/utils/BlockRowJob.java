@@ -0,0 +1,141 @@
+package org.rajawali3d.materials.textures.utils;
+
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Processes the block rows of a compressed image on several threads. The rows are cut into ranges which the threads
+ * claim until none are left, the calling thread takes part and {@link #execute(Executor, int)} only returns once
+ * every range is done. A helper which only gets to run after the job has finished finds nothing to claim, so the job
+ * may be executed on the executor the calling thread belongs to.
+ */
+abstract class BlockRowJob implements Runnable {
+
+    private static final ThreadFactory DAEMON_THREAD_FACTORY = new ThreadFactory() {
+        private final AtomicInteger mCount = new AtomicInteger();
+
+        @Override
+        public Thread newThread(Runnable runnable) {
+            final Thread thread = new Thread(runnable, "BlockRowJob-" + mCount.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        }
+    };
+
+    private static ExecutorService sDefaultExecutor;
+
+    private final int mRows;
+    private final int mRowsPerRange;
+    private final int mRanges;
+    private final AtomicInteger mNext = new AtomicInteger();
+
+    /**
+     * Guarded by this.
+     */
+    private int mRemaining;
+    private Throwable mError;
+
+    /**
+     * @param rows         {@code int} The number of block rows.
+     * @param rowsPerRange {@code int} The number of block rows claimed at once.
+     */
+    BlockRowJob(int rows, int rowsPerRange) {
+        mRows = rows;
+        mRowsPerRange = rowsPerRange;
+        mRanges = (rows + rowsPerRange - 1) / rowsPerRange;
+        mRemaining = mRanges;
+    }
+
+    /**
+     * @return {@link Executor} A pool of daemon threads, one less than there are cores, shared by all encoders and
+     * decoders which weren't given an executor of their own.
+     */
+    static synchronized Executor getDefaultExecutor() {
+        if (sDefaultExecutor == null) {
+            sDefaultExecutor = Executors.newFixedThreadPool(Math.max(1, getDefaultThreadCount() - 1),
+                    DAEMON_THREAD_FACTORY);
+        }
+        return sDefaultExecutor;
+    }
+
+    /**
+     * @return {@code int} The number of threads working on a job with the default executor, including the calling
+     * thread.
+     */
+    static int getDefaultThreadCount() {
+        return Runtime.getRuntime().availableProcessors();
+    }
+
+    /**
+     * Processes a range of block rows.
+     *
+     * @param start {@code int} The first row.
+     * @param end   {@code int} The row after the last one.
+     */
+    protected abstract void processRows(int start, int end);
+
+    /**
+     * Runs the job and waits for it to finish.
+     *
+     * @param executor    {@link Executor} The executor to run the helpers on, or null to only use the calling thread.
+     * @param threadCount {@code int} The number of threads working on the job, including the calling thread.
+     */
+    void execute(Executor executor, int threadCount) {
+        final int helpers = executor == null ? 0 : Math.min(threadCount, mRanges) - 1;
+        for (int i = 0; i < helpers; ++i) {
+            executor.execute(this);
+        }
+        run();
+        await();
+
+        if (mError instanceof RuntimeException) {
+            throw (RuntimeException) mError;
+        } else if (mError instanceof Error) {
+            throw (Error) mError;
+        } else if (mError != null) {
+            throw new RuntimeException(mError);
+        }
+    }
+
+    @Override
+    public void run() {
+        int index;
+        while ((index = mNext.getAndIncrement()) < mRanges) {
+            try {
+                final int start = index * mRowsPerRange;
+                processRows(start, Math.min(mRows, start + mRowsPerRange));
+            } catch (Throwable t) {
+                synchronized (this) {
+                    if (mError == null) mError = t;
+                }
+            } finally {
+                synchronized (this) {
+                    if (--mRemaining == 0) notifyAll();
+                }
+            }
+        }
+    }
+
+    /**
+     * Waits for the ranges which are still being worked on. The output has to be complete before the caller
+     * continues, so an interrupt is only passed on afterwards.
+     */
+    private void await() {
+        boolean interrupted = false;
+        synchronized (this) {
+            while (mRemaining > 0) {
+                try {
+                    wait();
+                } catch (InterruptedException e) {
+                    interrupted = true;
+                }
+            }
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
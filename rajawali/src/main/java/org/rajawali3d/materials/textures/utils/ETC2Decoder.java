@@ -0,0 +1,452 @@
+package org.rajawali3d.materials.textures.utils;
+
+import android.opengl.GLES20;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.concurrent.Executor;
+
+/**
+ * CPU decoder for ETC1, ETC2 and ETC2 EAC textures, for devices without ETC2 support (see
+ * {@link ETC2Util#isETC2Supported()}). The blocks are transcoded to uncompressed pixels which can be uploaded with
+ * glTexImage2D, so the same compressed assets can be shipped to every device. The image is cut into ranges of block
+ * rows which are decoded in parallel on an {@link Executor}, the calling thread takes part. Only classes available
+ * since API 15 are used, the devices which need the decoder are mostly older ones.
+ *
+ * All modes of ETC2 are decoded: individual, differential, T, H and planar, as well as punchthrough alpha and EAC
+ * alpha. Which mode a block uses follows from the differential base colors: an overflow of red selects T, of green H
+ * and of blue planar. The sRGB formats are decoded like their linear counterparts, the values are not converted. The
+ * single and two channel EAC formats are not supported.
+ *
+ * The output rows are tightly packed from top to bottom. 16 bit pixels are stored in native byte order, which is
+ * what GL_UNSIGNED_SHORT_5_6_5 and GL_UNSIGNED_SHORT_4_4_4_4 expect. Channels are rounded to the nearest value when
+ * they are reduced to fewer bits.
+ */
+public class ETC2Decoder {
+
+    public enum Output {
+        /**
+         * 16 bit, alpha is dropped.
+         */
+        RGB565(GLES20.GL_RGB, GLES20.GL_UNSIGNED_SHORT_5_6_5, 2),
+        /**
+         * 16 bit.
+         */
+        RGBA4444(GLES20.GL_RGBA, GLES20.GL_UNSIGNED_SHORT_4_4_4_4, 2),
+        /**
+         * 32 bit, exactly what a GPU would sample.
+         */
+        RGBA8888(GLES20.GL_RGBA, GLES20.GL_UNSIGNED_BYTE, 4);
+
+        private final int mGLFormat;
+        private final int mGLType;
+        private final int mBytesPerPixel;
+
+        Output(int format, int type, int bytesPerPixel) {
+            mGLFormat = format;
+            mGLType = type;
+            mBytesPerPixel = bytesPerPixel;
+        }
+
+        /**
+         * @return {@code int} The GL format to upload the pixels with.
+         */
+        public int getGLFormat() {
+            return mGLFormat;
+        }
+
+        /**
+         * @return {@code int} The GL type to upload the pixels with.
+         */
+        public int getGLType() {
+            return mGLType;
+        }
+
+        public int getBytesPerPixel() {
+            return mBytesPerPixel;
+        }
+    }
+
+    private static final int[][] ETC1_MODIFIERS = {
+        {2, 8, -2, -8}, {5, 17, -5, -17}, {9, 29, -9, -29}, {13, 42, -13, -42},
+        {18, 60, -18, -60}, {24, 80, -24, -80}, {33, 106, -33, -106}, {47, 183, -47, -183}
+    };
+
+    /**
+     * The distances of the T and H modes.
+     */
+    private static final int[] DISTANCES = {3, 6, 11, 16, 23, 32, 41, 64};
+
+    private static final int[][] EAC_MODIFIERS = {
+        {-3, -6, -9, -15, 2, 5, 8, 14}, {-3, -7, -10, -13, 2, 6, 9, 12}, {-2, -5, -8, -13, 1, 4, 7, 12},
+        {-2, -4, -6, -13, 1, 3, 5, 12}, {-3, -6, -8, -12, 2, 5, 7, 11}, {-3, -7, -9, -11, 2, 6, 8, 10},
+        {-4, -7, -8, -11, 3, 6, 7, 10}, {-3, -5, -8, -11, 2, 4, 7, 10}, {-2, -6, -8, -10, 1, 5, 7, 9},
+        {-2, -5, -8, -10, 1, 4, 7, 9}, {-2, -4, -8, -10, 1, 3, 7, 9}, {-2, -5, -7, -10, 1, 4, 6, 9},
+        {-3, -4, -7, -10, 2, 3, 6, 9}, {-1, -2, -3, -10, 0, 1, 2, 9}, {-4, -6, -8, -9, 3, 5, 7, 8},
+        {-3, -5, -7, -9, 2, 4, 6, 8}
+    };
+
+    /**
+     * Rounds 8 bit channels to 4, 5 and 6 bits.
+     */
+    private static final byte[] TO_4 = new byte[256];
+    private static final byte[] TO_5 = new byte[256];
+    private static final byte[] TO_6 = new byte[256];
+
+    static {
+        for (int i = 0; i < 256; ++i) {
+            TO_4[i] = (byte) ((i * 15 + 127) / 255);
+            TO_5[i] = (byte) ((i * 31 + 127) / 255);
+            TO_6[i] = (byte) ((i * 63 + 127) / 255);
+        }
+    }
+
+    /**
+     * Block rows claimed by a thread at once.
+     */
+    private static final int ROWS_PER_TASK = 8;
+
+    private final Executor mExecutor;
+    private final int mThreadCount;
+
+    /**
+     * Creates a decoder which uses one thread per available core, including the calling thread. The threads are
+     * shared with all other encoders and decoders created this way.
+     */
+    public ETC2Decoder() {
+        this(BlockRowJob.getDefaultExecutor(), BlockRowJob.getDefaultThreadCount());
+    }
+
+    /**
+     * Creates a decoder which runs on a given {@link Executor}, for instance the loader executor of the renderer. A
+     * decode may be started from a thread of the executor itself.
+     *
+     * @param executor    {@link Executor} The executor to run the helpers on, {@code null} to decode on the calling
+     *                    thread.
+     * @param threadCount {@code int} The number of threads working on an image, including the calling thread.
+     */
+    public ETC2Decoder(Executor executor, int threadCount) {
+        mExecutor = executor;
+        mThreadCount = executor == null ? 1 : Math.max(1, threadCount);
+    }
+
+    /**
+     * @param format {@code int} One of the GL_COMPRESSED_* constants of {@link ETC2Util}.
+     * @return {@code boolean} True if blocks of the format can be decoded.
+     */
+    public static boolean canDecode(int format) {
+        return format == ETC2Util.GL_COMPRESSED_ETC1_RGB8_OES || format == ETC2Util.GL_COMPRESSED_RGB8_ETC2
+            || format == ETC2Util.GL_COMPRESSED_SRGB8_ETC2 || hasAlpha(format);
+    }
+
+    /**
+     * @param format {@code int} One of the GL_COMPRESSED_* constants of {@link ETC2Util}.
+     * @return {@code boolean} True if the format stores alpha.
+     */
+    public static boolean hasAlpha(int format) {
+        return isEAC(format) || isPunchthrough(format);
+    }
+
+    private static boolean isEAC(int format) {
+        return format == ETC2Util.GL_COMPRESSED_RGBA8_ETC2_EAC
+            || format == ETC2Util.GL_COMPRESSED_SRGB8_ALPHA8_ETC2_EAC;
+    }
+
+    private static boolean isPunchthrough(int format) {
+        return format == ETC2Util.GL_COMPRESSED_RGB8_PUNCHTHROUGH_ALPHA1_ETC2
+            || format == ETC2Util.GL_COMPRESSED_SRGB8_PUNCHTHROUGH_ALPHA1_ETC2;
+    }
+
+    /**
+     * @return {@code int} The size of the decoded image in bytes.
+     */
+    public static int getDecodedDataSize(Output output, int width, int height) {
+        return width * height * output.getBytesPerPixel();
+    }
+
+    /**
+     * Decodes a texture into a new direct buffer.
+     *
+     * @param texture {@link ETC2Util.ETC2Texture} The texture.
+     * @param output  {@link Output} The pixel format to decode to.
+     * @return {@link ByteBuffer} The pixels.
+     */
+    public ByteBuffer decode(ETC2Util.ETC2Texture texture, Output output) {
+        final ByteBuffer pixels = ByteBuffer.allocateDirect(
+            getDecodedDataSize(output, texture.getWidth(), texture.getHeight())).order(ByteOrder.nativeOrder());
+        decode(texture.getData(), texture.getCompressionFormat(), texture.getWidth(), texture.getHeight(), output,
+            pixels);
+        return pixels;
+    }
+
+    /**
+     * Decodes blocks into a buffer. The positions of both buffers are left unchanged.
+     *
+     * @param data   {@link ByteBuffer} The blocks, starting at the position of the buffer.
+     * @param format {@code int} The compression format, see {@link #canDecode(int)}.
+     * @param width  {@code int} The width in pixels.
+     * @param height {@code int} The height in pixels.
+     * @param output {@link Output} The pixel format to decode to.
+     * @param out    {@link ByteBuffer} Receives the pixels, starting at its position.
+     */
+    public void decode(ByteBuffer data, int format, int width, int height, Output output, ByteBuffer out) {
+        if (!canDecode(format)) {
+            throw new IllegalArgumentException("Unsupported compression format " + format + ".");
+        }
+        if (width <= 0 || height <= 0) {
+            throw new IllegalArgumentException("Invalid image size " + width + "x" + height + ".");
+        }
+        final int blockSize = isEAC(format) ? 16 : 8;
+        if (data.remaining() < ((width + 3) >> 2) * ((height + 3) >> 2) * blockSize) {
+            throw new IllegalArgumentException("The block buffer is too small.");
+        }
+        if (out.remaining() < getDecodedDataSize(output, width, height)) {
+            throw new IllegalArgumentException("The output buffer is too small.");
+        }
+        // -- 32 bit pixels are written as RGBA bytes, 16 bit pixels as native shorts
+        final ByteOrder order = output == Output.RGBA8888 ? ByteOrder.BIG_ENDIAN : ByteOrder.nativeOrder();
+        new DecodeJob(data.slice().order(ByteOrder.BIG_ENDIAN), format, width, height, output,
+            out.slice().order(order)).execute(mExecutor, mThreadCount);
+    }
+
+    private static final class DecodeJob extends BlockRowJob {
+
+        private final ByteBuffer mData;
+        private final int mFormat;
+        private final int mWidth;
+        private final int mHeight;
+        private final Output mOutput;
+        private final ByteBuffer mOut;
+
+        DecodeJob(ByteBuffer data, int format, int width, int height, Output output, ByteBuffer out) {
+            super((height + 3) >> 2, ROWS_PER_TASK);
+            mData = data;
+            mFormat = format;
+            mWidth = width;
+            mHeight = height;
+            mOutput = output;
+            mOut = out;
+        }
+
+        @Override
+        protected void processRows(int start, int end) {
+            final int[] block = new int[16];
+            final boolean eac = isEAC(mFormat);
+            final boolean punchthrough = isPunchthrough(mFormat);
+            final int blocksX = (mWidth + 3) >> 2;
+            final int blockSize = eac ? 16 : 8;
+            final int bytesPerPixel = mOutput.getBytesPerPixel();
+            for (int by = start; by < end; ++by) {
+                for (int bx = 0; bx < blocksX; ++bx) {
+                    int offset = (by * blocksX + bx) * blockSize;
+                    if (eac) {
+                        final long alpha = mData.getLong(offset);
+                        decodeColor(mData.getLong(offset + 8), false, block);
+                        decodeAlpha(alpha, block);
+                    } else {
+                        decodeColor(mData.getLong(offset), punchthrough, block);
+                    }
+
+                    final int x0 = bx << 2;
+                    final int y0 = by << 2;
+                    final int columns = Math.min(4, mWidth - x0);
+                    final int rows = Math.min(4, mHeight - y0);
+                    for (int y = 0; y < rows; ++y) {
+                        int position = ((y0 + y) * mWidth + x0) * bytesPerPixel;
+                        for (int x = 0; x < columns; ++x) {
+                            store(block[(x << 2) | y], position);
+                            position += bytesPerPixel;
+                        }
+                    }
+                }
+            }
+        }
+
+        private void store(int rgba, int position) {
+            final int r = rgba >>> 24;
+            final int g = (rgba >> 16) & 0xFF;
+            final int b = (rgba >> 8) & 0xFF;
+            switch (mOutput) {
+                case RGB565:
+                    mOut.putShort(position, (short) (TO_5[r] << 11 | TO_6[g] << 5 | TO_5[b]));
+                    break;
+                case RGBA4444:
+                    mOut.putShort(position, (short) (TO_4[r] << 12 | TO_4[g] << 8 | TO_4[b] << 4
+                        | TO_4[rgba & 0xFF]));
+                    break;
+                default:
+                    mOut.putInt(position, rgba);
+            }
+        }
+    }
+
+    /**
+     * Decodes an ETC1 or ETC2 color block into pixels packed as RGBA, numbered column by column. The pixels are
+     * opaque unless a punchthrough block makes them transparent.
+     *
+     * @param bits         {@code long} The block.
+     * @param punchthrough {@code boolean} True if the block is part of a punchthrough alpha texture, which replaces
+     *                     the individual mode with an opacity flag.
+     * @param out          {@code int[]} Receives the 16 pixels.
+     */
+    static void decodeColor(long bits, boolean punchthrough, int[] out) {
+        final int high = (int) (bits >>> 32);
+        final int low = (int) bits;
+        final boolean differential = (high & 0x2) != 0;
+        if (!punchthrough && !differential) {
+            decodeIndividual(high, low, out);
+            return;
+        }
+        final boolean opaque = !punchthrough || differential;
+        final int r = (high >>> 27) & 0x1F;
+        final int g = (high >>> 19) & 0x1F;
+        final int b = (high >>> 11) & 0x1F;
+        final int r2 = r + signExtend3(high >>> 24);
+        final int g2 = g + signExtend3(high >>> 16);
+        final int b2 = b + signExtend3(high >>> 8);
+        if (r2 < 0 || r2 > 31) {
+            decodeT(high, low, opaque, out);
+        } else if (g2 < 0 || g2 > 31) {
+            decodeH(high, low, opaque, out);
+        } else if (b2 < 0 || b2 > 31) {
+            decodePlanar(bits, out);
+        } else {
+            decodeSubBlocks(high, low, rgb(expand5(r), expand5(g), expand5(b)),
+                rgb(expand5(r2), expand5(g2), expand5(b2)), opaque, out);
+        }
+    }
+
+    private static void decodeIndividual(int high, int low, int[] out) {
+        final int first = rgb(((high >>> 28) & 0xF) * 17, ((high >>> 20) & 0xF) * 17, ((high >>> 12) & 0xF) * 17);
+        final int second = rgb(((high >>> 24) & 0xF) * 17, ((high >>> 16) & 0xF) * 17, ((high >>> 8) & 0xF) * 17);
+        decodeSubBlocks(high, low, first, second, true, out);
+    }
+
+    private static void decodeSubBlocks(int high, int low, int first, int second, boolean opaque, int[] out) {
+        final int[] firstModifiers = ETC1_MODIFIERS[(high >>> 5) & 0x7];
+        final int[] secondModifiers = ETC1_MODIFIERS[(high >>> 2) & 0x7];
+        final boolean flip = (high & 0x1) != 0;
+        for (int i = 0; i < 16; ++i) {
+            final int index = ((low >>> (15 + i)) & 0x2) | ((low >>> i) & 0x1);
+            if (!opaque && index == 2) {
+                out[i] = 0;
+                continue;
+            }
+            final boolean isFirst = flip ? (i & 0x3) < 2 : i < 8;
+            // -- transparent punchthrough blocks have no modifier for index 0
+            final int modifier = !opaque && index == 0 ? 0
+                : (isFirst ? firstModifiers[index] : secondModifiers[index]);
+            out[i] = add(isFirst ? first : second, modifier);
+        }
+    }
+
+    private static void decodeT(int high, int low, boolean opaque, int[] out) {
+        final int first = rgb(((high >>> 25) & 0xC | (high >>> 24) & 0x3) * 17, ((high >>> 20) & 0xF) * 17,
+            ((high >>> 16) & 0xF) * 17);
+        final int second = rgb(((high >>> 12) & 0xF) * 17, ((high >>> 8) & 0xF) * 17, ((high >>> 4) & 0xF) * 17);
+        final int distance = DISTANCES[(high >>> 1) & 0x6 | high & 0x1];
+        decodePaintColors(low, first, add(second, distance), second, add(second, -distance), opaque, out);
+    }
+
+    private static void decodeH(int high, int low, boolean opaque, int[] out) {
+        final int r1 = (high >>> 27) & 0xF;
+        final int g1 = (high >>> 23) & 0xE | (high >>> 20) & 0x1;
+        final int b1 = (high >>> 16) & 0x8 | (high >>> 15) & 0x7;
+        final int r2 = (high >>> 11) & 0xF;
+        final int g2 = (high >>> 7) & 0xF;
+        final int b2 = (high >>> 3) & 0xF;
+        final int first = rgb(r1 * 17, g1 * 17, b1 * 17);
+        final int second = rgb(r2 * 17, g2 * 17, b2 * 17);
+        // -- the order of the base colors stores the lowest bit of the distance
+        final int order = (r1 << 8 | g1 << 4 | b1) >= (r2 << 8 | g2 << 4 | b2) ? 1 : 0;
+        final int distance = DISTANCES[high & 0x4 | (high << 1) & 0x2 | order];
+        decodePaintColors(low, add(first, distance), add(first, -distance), add(second, distance),
+            add(second, -distance), opaque, out);
+    }
+
+    private static void decodePaintColors(int low, int c0, int c1, int c2, int c3, boolean opaque, int[] out) {
+        for (int i = 0; i < 16; ++i) {
+            final int index = ((low >>> (15 + i)) & 0x2) | ((low >>> i) & 0x1);
+            switch (index) {
+                case 0:
+                    out[i] = c0;
+                    break;
+                case 1:
+                    out[i] = c1;
+                    break;
+                case 2:
+                    out[i] = opaque ? c2 : 0;
+                    break;
+                default:
+                    out[i] = c3;
+            }
+        }
+    }
+
+    private static void decodePlanar(long bits, int[] out) {
+        final int ro = expand6((int) (bits >>> 57) & 0x3F);
+        final int go = expand7((int) (bits >>> 50) & 0x40 | (int) (bits >>> 49) & 0x3F);
+        final int bo = expand6((int) (bits >>> 43) & 0x20 | (int) (bits >>> 40) & 0x18 | (int) (bits >>> 39) & 0x7);
+        final int rh = expand6((int) (bits >>> 33) & 0x3E | (int) (bits >>> 32) & 0x1);
+        final int gh = expand7((int) (bits >>> 25) & 0x7F);
+        final int bh = expand6((int) (bits >>> 19) & 0x3F);
+        final int rv = expand6((int) (bits >>> 13) & 0x3F);
+        final int gv = expand7((int) (bits >>> 6) & 0x7F);
+        final int bv = expand6((int) bits & 0x3F);
+        for (int i = 0; i < 16; ++i) {
+            final int x = i >> 2;
+            final int y = i & 0x3;
+            out[i] = clamp((x * (rh - ro) + y * (rv - ro) + 4 * ro + 2) >> 2) << 24
+                | clamp((x * (gh - go) + y * (gv - go) + 4 * go + 2) >> 2) << 16
+                | clamp((x * (bh - bo) + y * (bv - bo) + 4 * bo + 2) >> 2) << 8 | 0xFF;
+        }
+    }
+
+    /**
+     * Replaces the alpha of 16 pixels with the values of an EAC block.
+     *
+     * @param bits {@code long} The block.
+     * @param out  {@code int[]} The pixels packed as RGBA, numbered column by column.
+     */
+    static void decodeAlpha(long bits, int[] out) {
+        final int base = (int) (bits >>> 56) & 0xFF;
+        final int multiplier = (int) (bits >>> 52) & 0xF;
+        final int[] modifiers = EAC_MODIFIERS[(int) (bits >>> 48) & 0xF];
+        for (int i = 0; i < 16; ++i) {
+            final int index = (int) (bits >>> (45 - 3 * i)) & 0x7;
+            out[i] = out[i] & 0xFFFFFF00 | clamp(base + modifiers[index] * multiplier);
+        }
+    }
+
+    private static int rgb(int r, int g, int b) {
+        return r << 24 | g << 16 | b << 8 | 0xFF;
+    }
+
+    /**
+     * Adds a value to all color channels of an opaque pixel, clamping each.
+     */
+    private static int add(int rgba, int value) {
+        return clamp((rgba >>> 24) + value) << 24 | clamp(((rgba >> 16) & 0xFF) + value) << 16
+            | clamp(((rgba >> 8) & 0xFF) + value) << 8 | 0xFF;
+    }
+
+    private static int expand5(int c) {
+        return (c << 3) | (c >> 2);
+    }
+
+    private static int expand6(int c) {
+        return (c << 2) | (c >> 4);
+    }
+
+    private static int expand7(int c) {
+        return (c << 1) | (c >> 6);
+    }
+
+    private static int clamp(int value) {
+        return value < 0 ? 0 : (value > 255 ? 255 : value);
+    }
+
+    private static int signExtend3(int value) {
+        return ((value & 0x7) << 29) >> 29;
+    }
+}
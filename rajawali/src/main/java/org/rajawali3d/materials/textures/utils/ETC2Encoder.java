@@ -0,0 +1,624 @@
+package org.rajawali3d.materials.textures.utils;
+
+import android.graphics.Bitmap;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.concurrent.Executor;
+
+/**
+ * CPU encoder for ETC1, ETC2 RGB8 and ETC2 RGBA8 EAC textures, meant for images created at runtime such as texture
+ * atlas pages, generated color maps or render targets which were read back. The image is cut into ranges of block
+ * rows which are encoded in parallel on an {@link Executor}, the calling thread takes part.
+ *
+ * Color blocks use the individual and differential modes of ETC1, ETC2 blocks also the planar mode, which suits
+ * smooth gradients. The T and H modes of ETC2 are not used. Alpha is encoded with EAC.
+ *
+ * {@link Quality#FAST} quantizes the average colors of the sub blocks in both base color modes and searches all
+ * modifier tables. {@link Quality#MEDIUM} additionally refines the quantized base colors and searches the neighbours
+ * of the fitted planes and alpha ranges. The output is deterministic, whatever the number of threads.
+ *
+ * The input is RGBA8888 without row padding, which is what {@link Bitmap#copyPixelsToBuffer(java.nio.Buffer)}
+ * produces for {@link Bitmap.Config#ARGB_8888} bitmaps. The result can be uploaded as an
+ * {@link ETC2Util.ETC2Texture}.
+ */
+public class ETC2Encoder {
+
+    public enum Quality {
+        FAST,
+        MEDIUM
+    }
+
+    /**
+     * The ETC1 modifier tables, indexed by the 2 bit pixel index (MSB, LSB).
+     */
+    static final int[][] ETC1_MODIFIERS = {
+        {2, 8, -2, -8}, {5, 17, -5, -17}, {9, 29, -9, -29}, {13, 42, -13, -42},
+        {18, 60, -18, -60}, {24, 80, -24, -80}, {33, 106, -33, -106}, {47, 183, -47, -183}
+    };
+
+    /**
+     * The EAC modifier tables, indexed by the 3 bit pixel index.
+     */
+    static final int[][] EAC_MODIFIERS = {
+        {-3, -6, -9, -15, 2, 5, 8, 14}, {-3, -7, -10, -13, 2, 6, 9, 12}, {-2, -5, -8, -13, 1, 4, 7, 12},
+        {-2, -4, -6, -13, 1, 3, 5, 12}, {-3, -6, -8, -12, 2, 5, 7, 11}, {-3, -7, -9, -11, 2, 6, 8, 10},
+        {-4, -7, -8, -11, 3, 6, 7, 10}, {-3, -5, -8, -11, 2, 4, 7, 10}, {-2, -6, -8, -10, 1, 5, 7, 9},
+        {-2, -5, -8, -10, 1, 4, 7, 9}, {-2, -4, -8, -10, 1, 3, 7, 9}, {-2, -5, -7, -10, 1, 4, 6, 9},
+        {-3, -4, -7, -10, 2, 3, 6, 9}, {-1, -2, -3, -10, 0, 1, 2, 9}, {-4, -6, -8, -9, 3, 5, 7, 8},
+        {-3, -5, -7, -9, 2, 4, 6, 8}
+    };
+
+    /**
+     * The pixels of the two sub blocks for each flip bit. Pixels are numbered column by column, like the index bits.
+     */
+    private static final int[][][] SUB_BLOCKS = {
+        {{0, 1, 2, 3, 4, 5, 6, 7}, {8, 9, 10, 11, 12, 13, 14, 15}},
+        {{0, 1, 4, 5, 8, 9, 12, 13}, {2, 3, 6, 7, 10, 11, 14, 15}}
+    };
+
+    /**
+     * Block rows claimed by a thread at once.
+     */
+    private static final int ROWS_PER_TASK = 4;
+
+    private final Executor mExecutor;
+    private final int mThreadCount;
+    private volatile Quality mQuality = Quality.FAST;
+
+    /**
+     * Creates an encoder which uses one thread per available core, including the calling thread. The threads are
+     * shared with all other encoders and decoders created this way.
+     */
+    public ETC2Encoder() {
+        this(BlockRowJob.getDefaultExecutor(), BlockRowJob.getDefaultThreadCount());
+    }
+
+    /**
+     * Creates an encoder which runs on a given {@link Executor}, for instance the loader executor of the renderer.
+     *
+     * @param executor    {@link Executor} The executor to run the helpers on, {@code null} to encode on the calling
+     *                    thread.
+     * @param threadCount {@code int} The number of threads working on an image, including the calling thread.
+     */
+    public ETC2Encoder(Executor executor, int threadCount) {
+        mExecutor = executor;
+        mThreadCount = executor == null ? 1 : Math.max(1, threadCount);
+    }
+
+    /**
+     * @param quality {@link Quality} The quality of the following encodes.
+     */
+    public void setQuality(Quality quality) {
+        mQuality = quality;
+    }
+
+    public Quality getQuality() {
+        return mQuality;
+    }
+
+    /**
+     * @param format {@code int} {@link ETC2Util#GL_COMPRESSED_ETC1_RGB8_OES}, {@link ETC2Util#GL_COMPRESSED_RGB8_ETC2}
+     *               or {@link ETC2Util#GL_COMPRESSED_RGBA8_ETC2_EAC}.
+     * @return {@code int} The size of a 4x4 block in bytes.
+     */
+    public static int getBlockSize(int format) {
+        if (format == ETC2Util.GL_COMPRESSED_RGBA8_ETC2_EAC) {
+            return 16;
+        } else if (format == ETC2Util.GL_COMPRESSED_ETC1_RGB8_OES || format == ETC2Util.GL_COMPRESSED_RGB8_ETC2) {
+            return 8;
+        }
+        throw new IllegalArgumentException("Unsupported compression format " + format + ".");
+    }
+
+    /**
+     * @return {@code int} The size of an encoded image in bytes, made of whole blocks.
+     */
+    public static int getEncodedDataSize(int format, int width, int height) {
+        return ((width + 3) >> 2) * ((height + 3) >> 2) * getBlockSize(format);
+    }
+
+    /**
+     * Encodes a bitmap. Bitmaps which aren't ARGB_8888 are converted first.
+     *
+     * @param bitmap {@link Bitmap} The image.
+     * @param format {@code int} The compression format, see {@link #getBlockSize(int)}.
+     * @return {@link ETC2Util.ETC2Texture} The encoded texture.
+     */
+    public ETC2Util.ETC2Texture encode(Bitmap bitmap, int format) {
+        final Bitmap source = bitmap.getConfig() == Bitmap.Config.ARGB_8888 ? bitmap
+            : bitmap.copy(Bitmap.Config.ARGB_8888, false);
+        final ByteBuffer pixels = ByteBuffer.allocateDirect(source.getWidth() * source.getHeight() * 4);
+        source.copyPixelsToBuffer(pixels);
+        if (source != bitmap) {
+            source.recycle();
+        }
+        pixels.position(0);
+        return encode(pixels, bitmap.getWidth(), bitmap.getHeight(), format);
+    }
+
+    /**
+     * Encodes RGBA8888 pixels into a new direct buffer.
+     *
+     * @param rgba   {@link ByteBuffer} The pixels, starting at the position of the buffer.
+     * @param width  {@code int} The width in pixels.
+     * @param height {@code int} The height in pixels.
+     * @param format {@code int} The compression format, see {@link #getBlockSize(int)}.
+     * @return {@link ETC2Util.ETC2Texture} The encoded texture.
+     */
+    public ETC2Util.ETC2Texture encode(ByteBuffer rgba, int width, int height, int format) {
+        final ByteBuffer data = ByteBuffer.allocateDirect(getEncodedDataSize(format, width, height));
+        encode(rgba, width, height, format, data);
+        return new ETC2Util.ETC2Texture(format, width, height, data);
+    }
+
+    /**
+     * Encodes RGBA8888 pixels into a buffer. The positions of both buffers are left unchanged.
+     *
+     * @param rgba   {@link ByteBuffer} The pixels, starting at the position of the buffer.
+     * @param width  {@code int} The width in pixels.
+     * @param height {@code int} The height in pixels.
+     * @param format {@code int} The compression format, see {@link #getBlockSize(int)}.
+     * @param out    {@link ByteBuffer} Receives the blocks, starting at its position.
+     */
+    public void encode(ByteBuffer rgba, int width, int height, int format, ByteBuffer out) {
+        if (width <= 0 || height <= 0) {
+            throw new IllegalArgumentException("Invalid image size " + width + "x" + height + ".");
+        }
+        if (rgba.remaining() < width * height * 4) {
+            throw new IllegalArgumentException("The pixel buffer is too small.");
+        }
+        if (out.remaining() < getEncodedDataSize(format, width, height)) {
+            throw new IllegalArgumentException("The output buffer is too small.");
+        }
+        // -- the tasks only use absolute accesses on their own views, so the buffers are shared safely
+        new EncodeJob(rgba.slice(), width, height, format, out.slice().order(ByteOrder.BIG_ENDIAN), mQuality)
+            .execute(mExecutor, mThreadCount);
+    }
+
+    private static final class EncodeJob extends BlockRowJob {
+
+        private final ByteBuffer mPixels;
+        private final int mWidth;
+        private final int mHeight;
+        private final int mFormat;
+        private final ByteBuffer mOut;
+        private final Quality mQuality;
+
+        EncodeJob(ByteBuffer pixels, int width, int height, int format, ByteBuffer out, Quality quality) {
+            super((height + 3) >> 2, ROWS_PER_TASK);
+            mPixels = pixels;
+            mWidth = width;
+            mHeight = height;
+            mFormat = format;
+            mOut = out;
+            mQuality = quality;
+        }
+
+        @Override
+        protected void processRows(int start, int end) {
+            final BlockEncoder encoder = new BlockEncoder(mQuality);
+            final int blockSize = getBlockSize(mFormat);
+            final boolean alpha = mFormat == ETC2Util.GL_COMPRESSED_RGBA8_ETC2_EAC;
+            final boolean etc2 = mFormat != ETC2Util.GL_COMPRESSED_ETC1_RGB8_OES;
+            final int blocksX = (mWidth + 3) >> 2;
+            for (int by = start; by < end; ++by) {
+                for (int bx = 0; bx < blocksX; ++bx) {
+                    encoder.load(mPixels, mWidth, mHeight, bx << 2, by << 2);
+                    int offset = (by * blocksX + bx) * blockSize;
+                    if (alpha) {
+                        mOut.putLong(offset, encoder.encodeAlpha());
+                        offset += 8;
+                    }
+                    mOut.putLong(offset, encoder.encodeColor(etc2));
+                }
+            }
+        }
+    }
+
+    /**
+     * Encodes single blocks. Holds the pixels of the current block and the best candidate found so far, so each
+     * thread needs its own instance.
+     */
+    static final class BlockEncoder {
+
+        private final Quality mQuality;
+        // -- pixels numbered column by column
+        final int[] mR = new int[16];
+        final int[] mG = new int[16];
+        final int[] mB = new int[16];
+        final int[] mA = new int[16];
+
+        private long mBest;
+        private int mBestError;
+        // -- the candidate being refined: base colors of both sub blocks, expanded to 8 bits, and their tables
+        private final int[] mBase = new int[6];
+        private final int[] mTable = new int[2];
+        private final int[] mPlane = new int[9];
+        private final int[] mAverage = new int[6];
+        private final int[] mCodes = new int[6];
+
+        BlockEncoder(Quality quality) {
+            mQuality = quality;
+        }
+
+        /**
+         * Loads a block, repeating the last row and column of the image where the block exceeds it.
+         */
+        void load(ByteBuffer rgba, int width, int height, int x0, int y0) {
+            for (int x = 0; x < 4; ++x) {
+                final int px = Math.min(x0 + x, width - 1);
+                for (int y = 0; y < 4; ++y) {
+                    final int offset = (Math.min(y0 + y, height - 1) * width + px) << 2;
+                    final int i = (x << 2) | y;
+                    mR[i] = rgba.get(offset) & 0xFF;
+                    mG[i] = rgba.get(offset + 1) & 0xFF;
+                    mB[i] = rgba.get(offset + 2) & 0xFF;
+                    mA[i] = rgba.get(offset + 3) & 0xFF;
+                }
+            }
+        }
+
+        /**
+         * @param etc2 {@code boolean} Whether the ETC2 planar mode may be used.
+         * @return {@code long} The color block.
+         */
+        long encodeColor(boolean etc2) {
+            mBestError = Integer.MAX_VALUE;
+            for (int flip = 0; flip < 2; ++flip) {
+                encodeSubBlocks(flip);
+            }
+            if (etc2 && mBestError > 0) {
+                encodePlanar();
+            }
+            return mBest;
+        }
+
+        private void encodeSubBlocks(int flip) {
+            final int[][] sub = SUB_BLOCKS[flip];
+            final int[] average = mAverage;
+            for (int s = 0; s < 2; ++s) {
+                int r = 0, g = 0, b = 0;
+                for (int i : sub[s]) {
+                    r += mR[i];
+                    g += mG[i];
+                    b += mB[i];
+                }
+                average[s * 3] = (r + 4) >> 3;
+                average[s * 3 + 1] = (g + 4) >> 3;
+                average[s * 3 + 2] = (b + 4) >> 3;
+            }
+
+            final int[] codes = mCodes;
+            for (int c = 0; c < 6; ++c) {
+                codes[c] = quantize(average[c], 31);
+            }
+            boolean differential = true;
+            for (int c = 0; c < 3; ++c) {
+                final int delta = codes[c + 3] - codes[c];
+                differential &= delta >= -4 && delta <= 3;
+            }
+            if (differential) {
+                tryDifferential(flip, codes);
+            }
+            for (int c = 0; c < 6; ++c) {
+                codes[c] = quantize(average[c], 15);
+            }
+            tryIndividual(flip, codes);
+        }
+
+        private void tryIndividual(int flip, int[] codes) {
+            int error = 0;
+            for (int s = 0; s < 2; ++s) {
+                error += refine(flip, s, codes, s * 3, 15, null);
+            }
+            if (error < mBestError) {
+                mBestError = error;
+                long block = 0;
+                for (int c = 0; c < 3; ++c) {
+                    block |= (long) codes[c] << (60 - c * 8);
+                    block |= (long) codes[c + 3] << (56 - c * 8);
+                }
+                mBest = packIndices(block, flip, false, codes, 15);
+            }
+        }
+
+        private void tryDifferential(int flip, int[] codes) {
+            int error = refine(flip, 0, codes, 0, 31, null);
+            error += refine(flip, 1, codes, 3, 31, codes);
+            if (error < mBestError) {
+                mBestError = error;
+                long block = 0;
+                for (int c = 0; c < 3; ++c) {
+                    block |= (long) codes[c] << (59 - c * 8);
+                    block |= (long) ((codes[c + 3] - codes[c]) & 7) << (56 - c * 8);
+                }
+                mBest = packIndices(block, flip, true, codes, 31);
+            }
+        }
+
+        /**
+         * Finds the best table for the base color of a sub block, refining the quantized color first for
+         * {@link Quality#MEDIUM} by moving one channel at a time by one step as long as that helps.
+         *
+         * @param codes     The quantized colors of both sub blocks, updated in place.
+         * @param offset    The first channel of this sub block in codes.
+         * @param max       15 for 4 bit colors, 31 for 5 bit colors.
+         * @param reference The colors the second sub block of a differential pair has to stay close to, or null.
+         * @return The error of the best table, which is stored in {@link #mTable}.
+         */
+        private int refine(int flip, int sub, int[] codes, int offset, int max, int[] reference) {
+            int error = searchTables(flip, sub, codes, offset, max);
+            if (mQuality != Quality.MEDIUM) {
+                return error;
+            }
+            final int table = mTable[sub];
+            int bestTable = table;
+            boolean improved = true;
+            for (int pass = 0; pass < 4 && improved; ++pass) {
+                improved = false;
+                for (int c = offset; c < offset + 3; ++c) {
+                    for (int step = -1; step <= 1; step += 2) {
+                        final int code = codes[c] + step;
+                        if (code < 0 || code > max) continue;
+                        if (reference != null && (code - reference[c - 3] < -4 || code - reference[c - 3] > 3)) {
+                            continue;
+                        }
+                        final int previous = codes[c];
+                        codes[c] = code;
+                        final int candidate = searchTables(flip, sub, codes, offset, max);
+                        if (candidate < error) {
+                            error = candidate;
+                            bestTable = mTable[sub];
+                            improved = true;
+                        } else {
+                            codes[c] = previous;
+                        }
+                    }
+                }
+            }
+            mTable[sub] = bestTable;
+            return error;
+        }
+
+        private int searchTables(int flip, int sub, int[] codes, int offset, int max) {
+            final int r = expand(codes[offset], max);
+            final int g = expand(codes[offset + 1], max);
+            final int b = expand(codes[offset + 2], max);
+            final int[] pixels = SUB_BLOCKS[flip][sub];
+            int best = Integer.MAX_VALUE;
+            for (int t = 0; t < 8; ++t) {
+                final int[] modifiers = ETC1_MODIFIERS[t];
+                int error = 0;
+                for (int i = 0; i < 8 && error < best; ++i) {
+                    error += pixelError(pixels[i], r, g, b, modifiers);
+                }
+                if (error < best) {
+                    best = error;
+                    mTable[sub] = t;
+                }
+            }
+            return best;
+        }
+
+        private int pixelError(int i, int r, int g, int b, int[] modifiers) {
+            int best = Integer.MAX_VALUE;
+            for (int m = 0; m < 4; ++m) {
+                final int modifier = modifiers[m];
+                final int error = square(clamp(r + modifier) - mR[i]) + square(clamp(g + modifier) - mG[i])
+                    + square(clamp(b + modifier) - mB[i]);
+                if (error < best) best = error;
+            }
+            return best;
+        }
+
+        private long packIndices(long block, int flip, boolean differential, int[] codes, int max) {
+            block |= (long) mTable[0] << 37 | (long) mTable[1] << 34 | (differential ? 1L << 33 : 0) | (long) flip << 32;
+            for (int s = 0; s < 2; ++s) {
+                final int r = expand(codes[s * 3], max);
+                final int g = expand(codes[s * 3 + 1], max);
+                final int b = expand(codes[s * 3 + 2], max);
+                final int[] modifiers = ETC1_MODIFIERS[mTable[s]];
+                for (int i : SUB_BLOCKS[flip][s]) {
+                    int bestIndex = 0;
+                    int best = Integer.MAX_VALUE;
+                    for (int m = 0; m < 4; ++m) {
+                        final int modifier = modifiers[m];
+                        final int error = square(clamp(r + modifier) - mR[i]) + square(clamp(g + modifier) - mG[i])
+                            + square(clamp(b + modifier) - mB[i]);
+                        if (error < best) {
+                            best = error;
+                            bestIndex = m;
+                        }
+                    }
+                    block |= (long) (bestIndex >> 1) << (16 + i) | (long) (bestIndex & 1) << i;
+                }
+            }
+            return block;
+        }
+
+        /**
+         * Fits a plane to each channel by least squares and quantizes its corners, for {@link Quality#MEDIUM} also
+         * trying the neighbouring codes of each corner. The channels don't depend on each other.
+         */
+        private void encodePlanar() {
+            int error = 0;
+            error += fitPlane(mR, 0, 63);
+            error += fitPlane(mG, 1, 127);
+            error += fitPlane(mB, 2, 63);
+            if (error >= mBestError) return;
+            mBestError = error;
+
+            final int ro = mPlane[0], go = mPlane[1], bo = mPlane[2];
+            final int rh = mPlane[3], gh = mPlane[4], bh = mPlane[5];
+            final int rv = mPlane[6], gv = mPlane[7], bv = mPlane[8];
+            int b0 = (ro << 1) | (go >> 6);
+            int b1 = ((go & 0x3F) << 1) | (bo >> 5);
+            int b2 = (bo & 0x18) | ((bo >> 1) & 0x3);
+            final int b3 = ((bo & 1) << 7) | ((rh >> 1) << 2) | 0x2 | (rh & 1);
+            final int b4 = (gh << 1) | (bh >> 5);
+            final int b5 = ((bh & 0x1F) << 3) | (rv >> 3);
+            final int b6 = ((rv & 0x7) << 5) | (gv >> 2);
+            final int b7 = ((gv & 0x3) << 6) | bv;
+            // -- the unused bits keep red and green of the differential mode in range and push blue out of it
+            if (((b0 >> 3) & 0x1F) + signExtend3(b0) < 0) b0 |= 0x80;
+            if (((b1 >> 3) & 0x1F) + signExtend3(b1) < 0) b1 |= 0x80;
+            if (((b2 >> 3) & 0x3) + (b2 & 0x3) >= 4) {
+                b2 |= 0xE0;
+            } else {
+                b2 |= 0x04;
+            }
+            mBest = (long) b0 << 56 | (long) b1 << 48 | (long) b2 << 40 | (long) b3 << 32 | (long) b4 << 24
+                | (long) b5 << 16 | (long) b6 << 8 | b7;
+        }
+
+        private int fitPlane(int[] pixels, int channel, int max) {
+            int sum = 0, sumX = 0, sumY = 0;
+            for (int i = 0; i < 16; ++i) {
+                final int x = i >> 2;
+                final int y = i & 3;
+                sum += pixels[i];
+                // -- twice the distance from the center, to stay in integers
+                sumX += (2 * x - 3) * pixels[i];
+                sumY += (2 * y - 3) * pixels[i];
+            }
+            // -- slopes per pixel are sumX / 40, the corners are 4 pixels apart
+            final float mean = sum / 16f;
+            final float slopeX = sumX / 40f;
+            final float slopeY = sumY / 40f;
+            final float o = mean - 1.5f * slopeX - 1.5f * slopeY;
+            int codeO = quantize(o, max);
+            int codeH = quantize(o + 4 * slopeX, max);
+            int codeV = quantize(o + 4 * slopeY, max);
+            int best = planeError(pixels, codeO, codeH, codeV, max);
+            if (mQuality == Quality.MEDIUM) {
+                final int o0 = codeO, h0 = codeH, v0 = codeV;
+                for (int dO = -1; dO <= 1; ++dO) {
+                    for (int dH = -1; dH <= 1; ++dH) {
+                        for (int dV = -1; dV <= 1; ++dV) {
+                            final int co = o0 + dO, ch = h0 + dH, cv = v0 + dV;
+                            if (co < 0 || co > max || ch < 0 || ch > max || cv < 0 || cv > max) continue;
+                            final int error = planeError(pixels, co, ch, cv, max);
+                            if (error < best) {
+                                best = error;
+                                codeO = co;
+                                codeH = ch;
+                                codeV = cv;
+                            }
+                        }
+                    }
+                }
+            }
+            mPlane[channel] = codeO;
+            mPlane[channel + 3] = codeH;
+            mPlane[channel + 6] = codeV;
+            return best;
+        }
+
+        private static int planeError(int[] pixels, int codeO, int codeH, int codeV, int max) {
+            final int o = expand(codeO, max);
+            final int h = expand(codeH, max);
+            final int v = expand(codeV, max);
+            int error = 0;
+            for (int i = 0; i < 16; ++i) {
+                final int x = i >> 2;
+                final int y = i & 3;
+                error += square(clamp((x * (h - o) + y * (v - o) + 4 * o + 2) >> 2) - pixels[i]);
+            }
+            return error;
+        }
+
+        /**
+         * @return {@code long} The EAC alpha block.
+         */
+        long encodeAlpha() {
+            int min = 255, max = 0;
+            for (int i = 0; i < 16; ++i) {
+                min = Math.min(min, mA[i]);
+                max = Math.max(max, mA[i]);
+            }
+            final int center = (min + max + 1) >> 1;
+            final int radius = mQuality == Quality.MEDIUM ? 2 : 0;
+            int bestError = Integer.MAX_VALUE;
+            int bestBase = center, bestMultiplier = 1, bestTable = 0;
+            for (int t = 0; t < 16 && bestError > 0; ++t) {
+                final int[] modifiers = EAC_MODIFIERS[t];
+                final int spread = modifiers[7] - modifiers[3];
+                final int multiplier = Math.max(1, Math.min(15, (max - min + spread / 2) / spread));
+                for (int base = center - radius; base <= center + radius; ++base) {
+                    if (base < 0 || base > 255) continue;
+                    for (int m = Math.max(1, multiplier - radius / 2); m <= Math.min(15, multiplier + radius / 2);
+                         ++m) {
+                        int error = 0;
+                        for (int i = 0; i < 16 && error < bestError; ++i) {
+                            error += alphaError(mA[i], base, m, modifiers);
+                        }
+                        if (error < bestError) {
+                            bestError = error;
+                            bestBase = base;
+                            bestMultiplier = m;
+                            bestTable = t;
+                        }
+                    }
+                }
+            }
+
+            long block = (long) bestBase << 56 | (long) bestMultiplier << 52 | (long) bestTable << 48;
+            final int[] modifiers = EAC_MODIFIERS[bestTable];
+            for (int i = 0; i < 16; ++i) {
+                int bestIndex = 0;
+                int best = Integer.MAX_VALUE;
+                for (int m = 0; m < 8; ++m) {
+                    final int error = square(clamp(bestBase + modifiers[m] * bestMultiplier) - mA[i]);
+                    if (error < best) {
+                        best = error;
+                        bestIndex = m;
+                    }
+                }
+                block |= (long) bestIndex << (45 - 3 * i);
+            }
+            return block;
+        }
+
+        private static int alphaError(int alpha, int base, int multiplier, int[] modifiers) {
+            int best = Integer.MAX_VALUE;
+            for (int m = 0; m < 8; ++m) {
+                final int error = square(clamp(base + modifiers[m] * multiplier) - alpha);
+                if (error < best) best = error;
+            }
+            return best;
+        }
+    }
+
+    static int quantize(float value, int max) {
+        return Math.max(0, Math.min(max, Math.round(value * max / 255f)));
+    }
+
+    /**
+     * Expands a 4, 5, 6 or 7 bit color code to 8 bits by repeating its high bits.
+     */
+    static int expand(int code, int max) {
+        switch (max) {
+            case 15:
+                return code * 17;
+            case 31:
+                return (code << 3) | (code >> 2);
+            case 63:
+                return (code << 2) | (code >> 4);
+            default:
+                return (code << 1) | (code >> 6);
+        }
+    }
+
+    static int clamp(int value) {
+        return value < 0 ? 0 : (value > 255 ? 255 : value);
+    }
+
+    private static int square(int value) {
+        return value * value;
+    }
+
+    private static int signExtend3(int value) {
+        return ((value & 0x7) << 29) >> 29;
+    }
+}
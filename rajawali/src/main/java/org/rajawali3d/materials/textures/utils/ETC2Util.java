@@ -203,6 +203,31 @@ public class ETC2Util {
         return new ETC2Texture(format, width, height, dataBuffer);
     }
 
+    /**
+     * Create a new ETC2Texture from a buffer containing a PKM formatted compressed texture, for instance a mapped
+     * file. The data of the texture is a slice of the buffer, nothing is copied.
+     *
+     * @param buffer a buffer positioned at the start of a PKM formatted compressed texture.
+     *
+     * @return an ETC2Texture sharing the content of the buffer.
+     * @throws IOException
+     */
+    public static ETC2Texture createTexture(ByteBuffer buffer) throws IOException {
+        final ByteBuffer data = buffer.slice().order(ByteOrder.BIG_ENDIAN);
+        if (data.remaining() < ETC1.ETC_PKM_HEADER_SIZE || !ETC2.isValid(data)) {
+            throw new IOException("Not a PKM file.");
+        }
+        final int width = ETC2.getWidth(data);
+        final int height = ETC2.getHeight(data);
+        final int format = ETC2.getETC2CompressionType(data);
+        final int encodedSize = ETC2.getEncodedDataSize(width, height);
+        if (data.remaining() < ETC1.ETC_PKM_HEADER_SIZE + encodedSize) {
+            throw new IOException("Unable to read PKM file data.");
+        }
+        data.limit(ETC1.ETC_PKM_HEADER_SIZE + encodedSize).position(ETC1.ETC_PKM_HEADER_SIZE);
+        return new ETC2Texture(format, width, height, data.slice());
+    }
+
     /**
      * Parsing and data utility class for ETC2 textures.
      *
@@ -0,0 +1,514 @@
+package org.rajawali3d.materials.textures.utils;
+
+import org.rajawali3d.materials.textures.ACompressedTexture.CompressionType;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+/**
+ * Reader for KTX 1.1 and KTX 2.0 texture containers. Unlike the PKM files read by {@link ETC2Util}, a container holds
+ * a full mipmap chain, and possibly array layers and the six faces of a cube map. Supported are the ETC1, ETC2, EAC
+ * and ASTC formats. KTX 2.0 files must not be supercompressed, and 3D textures are not supported.
+ *
+ * The images are slices of the buffer the container was read from, see {@link KTXContainer#getImage(int, int, int)},
+ * so they can be handed to {@link org.rajawali3d.materials.textures.ACompressedTexture} without being copied.
+ */
+public class KTXUtil {
+
+    // -- The containers store the raw GL enums, the ASTC ones are only defined by GLES 3.2 and the extension.
+    public static final int GL_ETC1_RGB8_OES = 0x8D64;
+    public static final int GL_COMPRESSED_R11_EAC = 0x9270;
+    public static final int GL_COMPRESSED_SIGNED_R11_EAC = 0x9271;
+    public static final int GL_COMPRESSED_RG11_EAC = 0x9272;
+    public static final int GL_COMPRESSED_SIGNED_RG11_EAC = 0x9273;
+    public static final int GL_COMPRESSED_RGB8_ETC2 = 0x9274;
+    public static final int GL_COMPRESSED_SRGB8_ETC2 = 0x9275;
+    public static final int GL_COMPRESSED_RGB8_PUNCHTHROUGH_ALPHA1_ETC2 = 0x9276;
+    public static final int GL_COMPRESSED_SRGB8_PUNCHTHROUGH_ALPHA1_ETC2 = 0x9277;
+    public static final int GL_COMPRESSED_RGBA8_ETC2_EAC = 0x9278;
+    public static final int GL_COMPRESSED_SRGB8_ALPHA8_ETC2_EAC = 0x9279;
+    /**
+     * The first of the 14 ASTC block sizes, from 4x4 to 12x12 in the order of {@link #ASTC_BLOCK_SIZES}.
+     */
+    public static final int GL_COMPRESSED_RGBA_ASTC_4x4_KHR = 0x93B0;
+    /**
+     * The sRGB variant of {@link #GL_COMPRESSED_RGBA_ASTC_4x4_KHR}.
+     */
+    public static final int GL_COMPRESSED_SRGB8_ALPHA8_ASTC_4x4_KHR = 0x93D0;
+
+    /**
+     * The block widths and heights of the ASTC formats.
+     */
+    private static final int[][] ASTC_BLOCK_SIZES = {
+        {4, 4}, {5, 4}, {5, 5}, {6, 5}, {6, 6}, {8, 5}, {8, 6}, {8, 8}, {10, 5}, {10, 6}, {10, 8}, {10, 10},
+        {12, 10}, {12, 12}
+    };
+
+    /**
+     * The Vulkan formats used by KTX 2.0, from VK_FORMAT_ETC2_R8G8B8_UNORM_BLOCK to VK_FORMAT_EAC_R11G11_SNORM_BLOCK.
+     */
+    private static final int VK_FORMAT_ETC2_R8G8B8_UNORM_BLOCK = 147;
+    private static final int[] VK_ETC2_FORMATS = {
+        GL_COMPRESSED_RGB8_ETC2, GL_COMPRESSED_SRGB8_ETC2, GL_COMPRESSED_RGB8_PUNCHTHROUGH_ALPHA1_ETC2,
+        GL_COMPRESSED_SRGB8_PUNCHTHROUGH_ALPHA1_ETC2, GL_COMPRESSED_RGBA8_ETC2_EAC, GL_COMPRESSED_SRGB8_ALPHA8_ETC2_EAC,
+        GL_COMPRESSED_R11_EAC, GL_COMPRESSED_SIGNED_R11_EAC, GL_COMPRESSED_RG11_EAC, GL_COMPRESSED_SIGNED_RG11_EAC
+    };
+    /**
+     * VK_FORMAT_ASTC_4x4_UNORM_BLOCK, followed by the sRGB variant and then the other block sizes in pairs.
+     */
+    private static final int VK_FORMAT_ASTC_4x4_UNORM_BLOCK = 157;
+
+    private static final byte[] KTX1_IDENTIFIER = {
+        (byte) 0xAB, 0x4B, 0x54, 0x58, 0x20, 0x31, 0x31, (byte) 0xBB, 0x0D, 0x0A, 0x1A, 0x0A
+    };
+    private static final byte[] KTX2_IDENTIFIER = {
+        (byte) 0xAB, 0x4B, 0x54, 0x58, 0x20, 0x32, 0x30, (byte) 0xBB, 0x0D, 0x0A, 0x1A, 0x0A
+    };
+    private static final int IDENTIFIER_SIZE = 12;
+    private static final int KTX1_HEADER_SIZE = 64;
+    private static final int KTX2_HEADER_SIZE = 80;
+    private static final int KTX2_LEVEL_INDEX_ENTRY_SIZE = 24;
+    private static final int KTX1_ENDIANNESS = 0x04030201;
+
+    /**
+     * A parsed KTX container. Images are addressed by mipmap level, array layer and cube face, level 0 being the
+     * full size one.
+     */
+    public static class KTXContainer {
+
+        private final int mCompressionFormat;
+        private final int mWidth;
+        private final int mHeight;
+        private final int mLevelCount;
+        private final int mLayerCount;
+        private final int mFaceCount;
+        private final ByteBuffer[] mImages;
+
+        KTXContainer(int compressionFormat, int width, int height, int levelCount, int layerCount, int faceCount,
+                     ByteBuffer[] images) {
+            mCompressionFormat = compressionFormat;
+            mWidth = width;
+            mHeight = height;
+            mLevelCount = levelCount;
+            mLayerCount = layerCount;
+            mFaceCount = faceCount;
+            mImages = images;
+        }
+
+        /**
+         * @return {@code int} One of the GL_COMPRESSED_* formats of this class.
+         */
+        public int getCompressionFormat() {
+            return mCompressionFormat;
+        }
+
+        /**
+         * @return {@link CompressionType} The type of the compression format.
+         */
+        public CompressionType getCompressionType() {
+            return KTXUtil.getCompressionType(mCompressionFormat);
+        }
+
+        /**
+         * @return {@code int} The width of level 0 in pixels.
+         */
+        public int getWidth() {
+            return mWidth;
+        }
+
+        /**
+         * @return {@code int} The height of level 0 in pixels.
+         */
+        public int getHeight() {
+            return mHeight;
+        }
+
+        /**
+         * @return {@code int} The number of mipmap levels, at least 1.
+         */
+        public int getLevelCount() {
+            return mLevelCount;
+        }
+
+        /**
+         * @return {@code int} The number of array layers, 1 if this isn't an array texture.
+         */
+        public int getLayerCount() {
+            return mLayerCount;
+        }
+
+        /**
+         * @return {@code int} 6 for a cube map, otherwise 1.
+         */
+        public int getFaceCount() {
+            return mFaceCount;
+        }
+
+        /**
+         * @return {@code boolean} True if the container holds the six faces of a cube map.
+         */
+        public boolean isCubeMap() {
+            return mFaceCount == 6;
+        }
+
+        /**
+         * Retrieves the data of a single image. The buffer shares its content with the buffer the container was read
+         * from, and its position and limit are independent of it.
+         *
+         * @param level {@code int} The mipmap level.
+         * @param layer {@code int} The array layer.
+         * @param face  {@code int} The cube face, in the order +X, -X, +Y, -Y, +Z, -Z.
+         * @return {@link ByteBuffer} The compressed image.
+         */
+        public ByteBuffer getImage(int level, int layer, int face) {
+            return mImages[(level * mLayerCount + layer) * mFaceCount + face].duplicate();
+        }
+
+        /**
+         * Retrieves the mipmap chain of a single image, as expected by
+         * {@link org.rajawali3d.materials.textures.ACompressedTexture#setByteBuffers(ByteBuffer[])}.
+         *
+         * @param layer {@code int} The array layer.
+         * @param face  {@code int} The cube face.
+         * @return {@link ByteBuffer}[] The images of all levels, largest first.
+         */
+        public ByteBuffer[] getLevels(int layer, int face) {
+            final ByteBuffer[] levels = new ByteBuffer[mLevelCount];
+            for (int i = 0; i < mLevelCount; ++i) {
+                levels[i] = getImage(i, layer, face);
+            }
+            return levels;
+        }
+    }
+
+    /**
+     * Reads a container from a stream. The container is read into a single direct buffer which all images share.
+     *
+     * @param input {@link InputStream} The stream, positioned at the start of the container.
+     * @return {@link KTXContainer} The parsed container.
+     * @throws IOException if the stream ends early or the container is invalid or unsupported.
+     */
+    public static KTXContainer createContainer(InputStream input) throws IOException {
+        final byte[] header = new byte[KTX2_HEADER_SIZE];
+        readFully(input, header, 0, IDENTIFIER_SIZE);
+        final int size;
+        byte[] prefix = header;
+        int prefixLength;
+        if (startsWith(header, KTX1_IDENTIFIER)) {
+            readFully(input, header, IDENTIFIER_SIZE, KTX1_HEADER_SIZE - IDENTIFIER_SIZE);
+            prefixLength = KTX1_HEADER_SIZE;
+            size = getKTX1Size(wrapKTX1Header(ByteBuffer.wrap(header, 0, KTX1_HEADER_SIZE)));
+        } else if (startsWith(header, KTX2_IDENTIFIER)) {
+            readFully(input, header, IDENTIFIER_SIZE, KTX2_HEADER_SIZE - IDENTIFIER_SIZE);
+            final int levelCount = Math.max(1, ByteBuffer.wrap(header).order(ByteOrder.LITTLE_ENDIAN).getInt(40));
+            prefixLength = KTX2_HEADER_SIZE + levelCount * KTX2_LEVEL_INDEX_ENTRY_SIZE;
+            prefix = new byte[prefixLength];
+            System.arraycopy(header, 0, prefix, 0, KTX2_HEADER_SIZE);
+            readFully(input, prefix, KTX2_HEADER_SIZE, prefixLength - KTX2_HEADER_SIZE);
+            size = getKTX2Size(ByteBuffer.wrap(prefix).order(ByteOrder.LITTLE_ENDIAN), levelCount);
+        } else {
+            throw new IOException("Not a KTX file.");
+        }
+
+        final ByteBuffer data = ByteBuffer.allocateDirect(size);
+        data.put(prefix, 0, prefixLength);
+        final byte[] ioBuffer = new byte[4096];
+        while (data.hasRemaining()) {
+            final int read = input.read(ioBuffer, 0, Math.min(ioBuffer.length, data.remaining()));
+            if (read < 0) {
+                throw new IOException("Unable to read KTX file data.");
+            }
+            data.put(ioBuffer, 0, read);
+        }
+        data.position(0);
+        return createContainer(data);
+    }
+
+    /**
+     * Parses a container held by a buffer, for instance a mapped file. The images are slices of the buffer, nothing
+     * is copied. The position and limit of the buffer are left unchanged.
+     *
+     * @param data {@link ByteBuffer} The buffer, the container starts at its position.
+     * @return {@link KTXContainer} The parsed container.
+     * @throws IOException if the container is invalid, truncated or unsupported.
+     */
+    public static KTXContainer createContainer(ByteBuffer data) throws IOException {
+        final ByteBuffer buffer = data.slice();
+        if (buffer.remaining() < IDENTIFIER_SIZE) {
+            throw new IOException("Not a KTX file.");
+        }
+        final byte[] identifier = new byte[IDENTIFIER_SIZE];
+        buffer.get(identifier).position(0);
+        try {
+            if (startsWith(identifier, KTX1_IDENTIFIER)) {
+                return parseKTX1(buffer);
+            } else if (startsWith(identifier, KTX2_IDENTIFIER)) {
+                return parseKTX2(buffer.order(ByteOrder.LITTLE_ENDIAN));
+            }
+        } catch (IndexOutOfBoundsException | IllegalArgumentException e) {
+            throw new IOException("Truncated KTX file.", e);
+        }
+        throw new IOException("Not a KTX file.");
+    }
+
+    /**
+     * Checks whether a buffer starts with the identifier of a KTX 1.1 or 2.0 file.
+     *
+     * @param data {@link ByteBuffer} The buffer, its position is left unchanged.
+     * @return {@code boolean} True if the data at the position of the buffer is a KTX container.
+     */
+    public static boolean isKTX(ByteBuffer data) {
+        if (data.remaining() < IDENTIFIER_SIZE) return false;
+        final byte[] identifier = new byte[IDENTIFIER_SIZE];
+        data.duplicate().get(identifier);
+        return startsWith(identifier, KTX1_IDENTIFIER) || startsWith(identifier, KTX2_IDENTIFIER);
+    }
+
+    /**
+     * Maps a KTX 2.0 Vulkan format to its GL format.
+     *
+     * @param vkFormat {@code int} The VkFormat.
+     * @return {@code int} The GL compression format, or -1 if it isn't supported.
+     */
+    public static int getCompressionFormat(int vkFormat) {
+        final int etc2 = vkFormat - VK_FORMAT_ETC2_R8G8B8_UNORM_BLOCK;
+        if (etc2 >= 0 && etc2 < VK_ETC2_FORMATS.length) {
+            return VK_ETC2_FORMATS[etc2];
+        }
+        final int astc = vkFormat - VK_FORMAT_ASTC_4x4_UNORM_BLOCK;
+        if (astc >= 0 && astc < ASTC_BLOCK_SIZES.length * 2) {
+            return ((astc & 1) == 0 ? GL_COMPRESSED_RGBA_ASTC_4x4_KHR : GL_COMPRESSED_SRGB8_ALPHA8_ASTC_4x4_KHR)
+                + (astc >> 1);
+        }
+        return -1;
+    }
+
+    /**
+     * @param format {@code int} A GL compression format.
+     * @return {@link CompressionType} The type of the format, or {@link CompressionType#NONE} if it isn't supported.
+     */
+    public static CompressionType getCompressionType(int format) {
+        if (format == GL_ETC1_RGB8_OES) {
+            return CompressionType.ETC1;
+        } else if (format >= GL_COMPRESSED_R11_EAC && format <= GL_COMPRESSED_SRGB8_ALPHA8_ETC2_EAC) {
+            return CompressionType.ETC2;
+        } else if (getASTCBlockSize(format) != null) {
+            return CompressionType.ASTC;
+        }
+        return CompressionType.NONE;
+    }
+
+    /**
+     * Calculates the size of a compressed image, which is always made of whole blocks.
+     *
+     * @param format {@code int} A supported GL compression format.
+     * @param width  {@code int} The width in pixels.
+     * @param height {@code int} The height in pixels.
+     * @return {@code int} The size in bytes, or -1 if the format isn't supported.
+     */
+    public static int getImageSize(int format, int width, int height) {
+        final int blockWidth;
+        final int blockHeight;
+        final int blockSize;
+        switch (getCompressionType(format)) {
+            case ETC1:
+            case ETC2:
+                blockWidth = blockHeight = 4;
+                blockSize = format == GL_COMPRESSED_RG11_EAC || format == GL_COMPRESSED_SIGNED_RG11_EAC
+                    || format == GL_COMPRESSED_RGBA8_ETC2_EAC || format == GL_COMPRESSED_SRGB8_ALPHA8_ETC2_EAC ? 16 : 8;
+                break;
+            case ASTC:
+                final int[] block = getASTCBlockSize(format);
+                blockWidth = block[0];
+                blockHeight = block[1];
+                blockSize = 16;
+                break;
+            default:
+                return -1;
+        }
+        return ((width + blockWidth - 1) / blockWidth) * ((height + blockHeight - 1) / blockHeight) * blockSize;
+    }
+
+    private static int[] getASTCBlockSize(int format) {
+        int index = format - GL_COMPRESSED_RGBA_ASTC_4x4_KHR;
+        if (index < 0 || index >= ASTC_BLOCK_SIZES.length) {
+            index = format - GL_COMPRESSED_SRGB8_ALPHA8_ASTC_4x4_KHR;
+        }
+        return index >= 0 && index < ASTC_BLOCK_SIZES.length ? ASTC_BLOCK_SIZES[index] : null;
+    }
+
+    private static KTXContainer parseKTX1(ByteBuffer buffer) throws IOException {
+        wrapKTX1Header(buffer);
+        final int format = buffer.getInt(28);
+        final int width = buffer.getInt(36);
+        final int height = Math.max(1, buffer.getInt(40));
+        final int layerCount = Math.max(1, buffer.getInt(48));
+        final int faceCount = buffer.getInt(52);
+        final int levelCount = Math.max(1, buffer.getInt(56));
+        final boolean cubeImageSize = faceCount == 6 && buffer.getInt(48) == 0;
+        checkHeader(format, width, buffer.getInt(44), layerCount, faceCount, levelCount);
+        if (buffer.getInt(16) != 0) {
+            throw new IOException("KTX file is not compressed.");
+        }
+
+        final ByteBuffer[] images = new ByteBuffer[levelCount * layerCount * faceCount];
+        int offset = KTX1_HEADER_SIZE + buffer.getInt(60);
+        for (int level = 0; level < levelCount; ++level) {
+            final int imageSize = getImageSize(format, getLevelSize(width, level), getLevelSize(height, level));
+            final int levelImageSize = buffer.getInt(offset);
+            if (levelImageSize != (cubeImageSize ? imageSize : imageSize * layerCount * faceCount)) {
+                throw new IOException("KTX level " + level + " has an unexpected size of " + levelImageSize + ".");
+            }
+            offset += 4;
+            for (int layer = 0; layer < layerCount; ++layer) {
+                for (int face = 0; face < faceCount; ++face) {
+                    images[(level * layerCount + layer) * faceCount + face] = slice(buffer, offset, imageSize);
+                    // -- cube padding, then mip padding, both to 4 bytes
+                    offset += align(imageSize);
+                }
+            }
+        }
+        return new KTXContainer(format, width, height, levelCount, layerCount, faceCount, images);
+    }
+
+    private static KTXContainer parseKTX2(ByteBuffer buffer) throws IOException {
+        final int format = getCompressionFormat(buffer.getInt(12));
+        final int width = buffer.getInt(20);
+        final int height = Math.max(1, buffer.getInt(24));
+        final int layerCount = Math.max(1, buffer.getInt(32));
+        final int faceCount = buffer.getInt(36);
+        final int levelCount = Math.max(1, buffer.getInt(40));
+        if (format == -1) {
+            throw new IOException("Unsupported KTX2 format " + buffer.getInt(12) + ".");
+        }
+        if (buffer.getInt(44) != 0) {
+            throw new IOException("Supercompressed KTX2 files are not supported.");
+        }
+        checkHeader(format, width, buffer.getInt(28), layerCount, faceCount, levelCount);
+
+        final ByteBuffer[] images = new ByteBuffer[levelCount * layerCount * faceCount];
+        for (int level = 0; level < levelCount; ++level) {
+            final int entry = KTX2_HEADER_SIZE + level * KTX2_LEVEL_INDEX_ENTRY_SIZE;
+            final long levelOffset = buffer.getLong(entry);
+            final long levelLength = buffer.getLong(entry + 8);
+            final int imageSize = getImageSize(format, getLevelSize(width, level), getLevelSize(height, level));
+            if (levelLength != (long) imageSize * layerCount * faceCount || levelOffset < 0
+                || levelOffset + levelLength > buffer.limit()) {
+                throw new IOException("KTX2 level " + level + " has an unexpected size or offset.");
+            }
+            int offset = (int) levelOffset;
+            for (int layer = 0; layer < layerCount; ++layer) {
+                for (int face = 0; face < faceCount; ++face) {
+                    images[(level * layerCount + layer) * faceCount + face] = slice(buffer, offset, imageSize);
+                    offset += imageSize;
+                }
+            }
+        }
+        return new KTXContainer(format, width, height, levelCount, layerCount, faceCount, images);
+    }
+
+    private static void checkHeader(int format, int width, int depth, int layerCount, int faceCount, int levelCount)
+        throws IOException {
+        if (getCompressionType(format) == CompressionType.NONE) {
+            throw new IOException("Unsupported KTX format 0x" + Integer.toHexString(format) + ".");
+        }
+        if (width <= 0) {
+            throw new IOException("Invalid KTX width " + width + ".");
+        }
+        if (depth > 1) {
+            throw new IOException("3D KTX textures are not supported.");
+        }
+        if (faceCount != 1 && faceCount != 6) {
+            throw new IOException("Invalid KTX face count " + faceCount + ".");
+        }
+        if (levelCount > 32 || layerCount > 2048) {
+            throw new IOException("Invalid KTX level or layer count.");
+        }
+    }
+
+    /**
+     * Sets the byte order of a KTX 1.1 header according to its endianness field.
+     */
+    private static ByteBuffer wrapKTX1Header(ByteBuffer header) throws IOException {
+        header.order(ByteOrder.LITTLE_ENDIAN);
+        final int endianness = header.getInt(IDENTIFIER_SIZE);
+        if (endianness != KTX1_ENDIANNESS) {
+            if (Integer.reverseBytes(endianness) != KTX1_ENDIANNESS) {
+                throw new IOException("Invalid KTX endianness.");
+            }
+            header.order(ByteOrder.BIG_ENDIAN);
+        }
+        return header;
+    }
+
+    /**
+     * Calculates the size of a KTX 1.1 file from its header.
+     */
+    private static int getKTX1Size(ByteBuffer header) throws IOException {
+        final int format = header.getInt(28);
+        final int width = header.getInt(36);
+        final int height = Math.max(1, header.getInt(40));
+        final int layerCount = Math.max(1, header.getInt(48));
+        final int faceCount = header.getInt(52);
+        final int levelCount = Math.max(1, header.getInt(56));
+        checkHeader(format, width, header.getInt(44), layerCount, faceCount, levelCount);
+        long size = KTX1_HEADER_SIZE + (header.getInt(60) & 0xFFFFFFFFL);
+        for (int level = 0; level < levelCount; ++level) {
+            final int imageSize = getImageSize(format, getLevelSize(width, level), getLevelSize(height, level));
+            size += 4 + (long) align(imageSize) * layerCount * faceCount;
+        }
+        if (size > Integer.MAX_VALUE) {
+            throw new IOException("KTX file is too large.");
+        }
+        return (int) size;
+    }
+
+    /**
+     * Calculates the size of a KTX 2.0 file from its header and level index, the levels may be stored in any order.
+     */
+    private static int getKTX2Size(ByteBuffer prefix, int levelCount) throws IOException {
+        long size = prefix.limit();
+        for (int level = 0; level < levelCount; ++level) {
+            final int entry = KTX2_HEADER_SIZE + level * KTX2_LEVEL_INDEX_ENTRY_SIZE;
+            size = Math.max(size, prefix.getLong(entry) + prefix.getLong(entry + 8));
+        }
+        if (size > Integer.MAX_VALUE || size < 0) {
+            throw new IOException("KTX2 file is too large.");
+        }
+        return (int) size;
+    }
+
+    private static int getLevelSize(int size, int level) {
+        return Math.max(1, size >> level);
+    }
+
+    private static int align(int size) {
+        return (size + 3) & ~3;
+    }
+
+    private static ByteBuffer slice(ByteBuffer buffer, int offset, int size) {
+        final ByteBuffer image = buffer.duplicate();
+        image.limit(offset + size).position(offset);
+        return image.slice();
+    }
+
+    private static boolean startsWith(byte[] data, byte[] identifier) {
+        for (int i = 0; i < identifier.length; ++i) {
+            if (data[i] != identifier[i]) return false;
+        }
+        return true;
+    }
+
+    private static void readFully(InputStream input, byte[] buffer, int offset, int length) throws IOException {
+        while (length > 0) {
+            final int read = input.read(buffer, offset, length);
+            if (read < 0) {
+                throw new IOException("Unable to read KTX file header.");
+            }
+            offset += read;
+            length -= read;
+        }
+    }
+}
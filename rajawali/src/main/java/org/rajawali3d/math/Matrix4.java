@@ -1271,6 +1271,59 @@ public final class Matrix4 implements Cloneable {
         // @formatter:on
     }
 
+    /**
+     * Writes the normal matrix of this {@link Matrix4}, the inverse transpose of its upper 3x3 part, into the provided
+     * float array in column major order. Unlike {@link #setToNormalMatrix()} this matrix is left untouched and only the
+     * 3x3 part is inverted. A rotation with a uniform scale needs no inverse at all, it is divided by the squared
+     * scale.
+     *
+     * @param floatArray float array to store the normal matrix in. Must be at least 9 elements long.
+     *
+     * @return {@code boolean} False if the matrix is singular, in which case its upper 3x3 part is stored instead.
+     */
+    public boolean toNormalMatrixFloatArray(@NonNull @Size(min = 9) float[] floatArray) {
+        final double x0 = m[M00], y0 = m[M10], z0 = m[M20];
+        final double x1 = m[M01], y1 = m[M11], z1 = m[M21];
+        final double x2 = m[M02], y2 = m[M12], z2 = m[M22];
+
+        final double len0 = x0 * x0 + y0 * y0 + z0 * z0;
+        final double len1 = x1 * x1 + y1 * y1 + z1 * z1;
+        final double len2 = x2 * x2 + y2 * y2 + z2 * z2;
+        final double tolerance = 1e-9 * len0;
+        if (len0 > 0 && Math.abs(len1 - len0) <= tolerance && Math.abs(len2 - len0) <= tolerance
+            && Math.abs(x0 * x1 + y0 * y1 + z0 * z1) <= tolerance
+            && Math.abs(x1 * x2 + y1 * y2 + z1 * z2) <= tolerance
+            && Math.abs(x2 * x0 + y2 * y0 + z2 * z0) <= tolerance) {
+            // -- orthogonal axes of equal length, (s * R)^-T = R / s = (s * R) / s^2
+            final double inv = 1.0 / len0;
+            floatArray[0] = (float) (x0 * inv); floatArray[1] = (float) (y0 * inv); floatArray[2] = (float) (z0 * inv);
+            floatArray[3] = (float) (x1 * inv); floatArray[4] = (float) (y1 * inv); floatArray[5] = (float) (z1 * inv);
+            floatArray[6] = (float) (x2 * inv); floatArray[7] = (float) (y2 * inv); floatArray[8] = (float) (z2 * inv);
+            return true;
+        }
+
+        // -- the columns of the cofactor matrix are the cross products of the other two axes
+        final double cx0 = y1 * z2 - z1 * y2, cy0 = z1 * x2 - x1 * z2, cz0 = x1 * y2 - y1 * x2;
+        final double det = x0 * cx0 + y0 * cy0 + z0 * cz0;
+        if (det == 0) {
+            floatArray[0] = (float) x0; floatArray[1] = (float) y0; floatArray[2] = (float) z0;
+            floatArray[3] = (float) x1; floatArray[4] = (float) y1; floatArray[5] = (float) z1;
+            floatArray[6] = (float) x2; floatArray[7] = (float) y2; floatArray[8] = (float) z2;
+            return false;
+        }
+        final double inv = 1.0 / det;
+        floatArray[0] = (float) (cx0 * inv);
+        floatArray[1] = (float) (cy0 * inv);
+        floatArray[2] = (float) (cz0 * inv);
+        floatArray[3] = (float) ((y2 * z0 - z2 * y0) * inv);
+        floatArray[4] = (float) ((z2 * x0 - x2 * z0) * inv);
+        floatArray[5] = (float) ((x2 * y0 - y2 * x0) * inv);
+        floatArray[6] = (float) ((y0 * z1 - z0 * y1) * inv);
+        floatArray[7] = (float) ((z0 * x1 - x0 * z1) * inv);
+        floatArray[8] = (float) ((x0 * y1 - y0 * x1) * inv);
+        return true;
+    }
+
     @Override
     public boolean equals(Object o) {
         if (this == o) {
@@ -18,6 +18,7 @@ import org.rajawali3d.Object3D;
 import org.rajawali3d.materials.Material;
 import org.rajawali3d.math.Matrix4;
 import org.rajawali3d.postprocessing.passes.EffectPass;
+import org.rajawali3d.scene.RenderQueue;
 
 /**
  * A screen quad is a plane that covers the whole screen. When used in conjunction with
@@ -250,6 +251,14 @@ public class ScreenQuad extends Object3D {
 		super.render(mCamera, mVPMatrix, projMatrix, viewMatrix, null, sceneMaterial);
 	}
 
+	@Override
+	public boolean queueSelfForRender(RenderQueue queue, Camera camera, final Matrix4 vpMatrix,
+			final Matrix4 projMatrix, final Matrix4 vMatrix, final Matrix4 parentMatrix) {
+		// The quad renders with its own camera, let it draw itself when its turn comes
+		queue.addImmediate(this, parentMatrix, 0);
+		return false;
+	}
+
 	@Override
 	protected void setShaderParams(Camera camera) {
 		super.setShaderParams(camera);
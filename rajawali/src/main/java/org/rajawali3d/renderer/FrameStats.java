@@ -0,0 +1,405 @@
+/**
+ * Copyright 2013 Dennis Ippel
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package org.rajawali3d.renderer;
+
+import org.rajawali3d.util.IClock;
+
+import java.util.Arrays;
+
+/**
+ * Per frame profile of the {@link Renderer}: the CPU time spent in each phase of a frame and the number of draw calls,
+ * triangles, binds and culled objects.
+ *
+ * The GL thread records every frame into a ring buffer of primitive arrays, which costs a handful of
+ * {@link System#nanoTime()} calls and no allocations, so the statistics can be left enabled in production builds.
+ * Other threads read the buffer without locking, frames which are overwritten while they are being read are dropped
+ * from the result. {@link #summarize(Summary)} reduces the buffered frames to percentiles, and a
+ * {@link IFrameStatsListener} receives such a summary at a fixed frame interval.
+ *
+ * Several scenes may be rendered per frame, for instance by post processing passes, their phase times add up.
+ */
+public class FrameStats {
+
+    public static final int DEFAULT_CAPACITY = 256;
+    public static final int DEFAULT_LISTENER_INTERVAL = 60;
+
+    /**
+     * Timed parts of a frame, in nanoseconds.
+     */
+    public enum Phase {
+        /**
+         * Frame tasks of the renderer and the scene.
+         */
+        FRAME_TASKS,
+        /**
+         * Animation updates.
+         */
+        ANIMATIONS,
+        /**
+         * Model matrices, bounding volumes and frustum tests, when they run ahead of the submission. Scenes which are
+         * not rendered through a render queue update while they draw, which is counted as {@link #SUBMIT}.
+         */
+        UPDATE,
+        /**
+         * Issuing the GL calls of the scene, including the skybox.
+         */
+        SUBMIT,
+        /**
+         * Renderer plugins and post frame callbacks.
+         */
+        PLUGINS,
+        /**
+         * The whole frame, from the start of {@link Renderer#onRenderFrame} to its end.
+         */
+        FRAME,
+        /**
+         * The time between the start of the previous frame and the start of this one.
+         */
+        INTERVAL
+    }
+
+    /**
+     * Counted events of a frame.
+     */
+    public enum Counter {
+        DRAW_CALLS,
+        TRIANGLES,
+        PROGRAM_BINDS,
+        TEXTURE_BINDS,
+        BUFFER_BINDS,
+        /**
+         * Objects which failed their frustum test.
+         */
+        CULLED_OBJECTS,
+        UNIFORM_UPLOADS,
+        /**
+         * Uniform uploads which were skipped since the program already held the value.
+         */
+        UNIFORM_UPLOADS_SAVED
+    }
+
+    /**
+     * Receives a {@link Summary} every {@link #setListenerInterval(int)} frames, on the GL thread.
+     */
+    public interface IFrameStatsListener {
+        /**
+         * @param stats   The {@link FrameStats} which produced the summary.
+         * @param summary The {@link Summary} of the buffered frames. Reused, it must not be kept.
+         */
+        void onFrameStats(FrameStats stats, Summary summary);
+    }
+
+    private static final Phase[] PHASES = Phase.values();
+    private static final Counter[] COUNTERS = Counter.values();
+    private static final int COLUMNS = PHASES.length + COUNTERS.length;
+
+    /**
+     * Percentiles of the buffered frames. Instances can be reused to avoid allocations.
+     */
+    public static final class Summary {
+        private final long[] mP50 = new long[COLUMNS];
+        private final long[] mP95 = new long[COLUMNS];
+        private final long[] mP99 = new long[COLUMNS];
+        private final long[] mMax = new long[COLUMNS];
+        private final double[] mMean = new double[COLUMNS];
+        private long[] mRows = new long[0];
+        private long[] mColumn = new long[0];
+        private int mFrameCount;
+
+        /**
+         * @return The number of frames the summary covers.
+         */
+        public int getFrameCount() {
+            return mFrameCount;
+        }
+
+        public long getP50(Phase phase) {
+            return mP50[phase.ordinal()];
+        }
+
+        public long getP95(Phase phase) {
+            return mP95[phase.ordinal()];
+        }
+
+        public long getP99(Phase phase) {
+            return mP99[phase.ordinal()];
+        }
+
+        public long getMax(Phase phase) {
+            return mMax[phase.ordinal()];
+        }
+
+        public double getMean(Phase phase) {
+            return mMean[phase.ordinal()];
+        }
+
+        public long getP50(Counter counter) {
+            return mP50[PHASES.length + counter.ordinal()];
+        }
+
+        public long getP95(Counter counter) {
+            return mP95[PHASES.length + counter.ordinal()];
+        }
+
+        public long getP99(Counter counter) {
+            return mP99[PHASES.length + counter.ordinal()];
+        }
+
+        public long getMax(Counter counter) {
+            return mMax[PHASES.length + counter.ordinal()];
+        }
+
+        public double getMean(Counter counter) {
+            return mMean[PHASES.length + counter.ordinal()];
+        }
+
+        /**
+         * @return The mean frame rate, derived from the {@link Phase#INTERVAL} of the frames.
+         */
+        public double getFrameRate() {
+            final double interval = getMean(Phase.INTERVAL);
+            return interval > 0 ? 1e9 / interval : 0;
+        }
+
+        void ensureCapacity(int frames) {
+            if (mColumn.length < frames) {
+                mRows = new long[frames * COLUMNS];
+                mColumn = new long[frames];
+            }
+        }
+
+        void compute(int first, int count) {
+            mFrameCount = count;
+            for (int c = 0; c < COLUMNS; ++c) {
+                if (count == 0) {
+                    mP50[c] = mP95[c] = mP99[c] = mMax[c] = 0;
+                    mMean[c] = 0;
+                    continue;
+                }
+                long sum = 0;
+                for (int f = 0; f < count; ++f) {
+                    final long value = mRows[(first + f) * COLUMNS + c];
+                    mColumn[f] = value;
+                    sum += value;
+                }
+                Arrays.sort(mColumn, 0, count);
+                mP50[c] = percentile(mColumn, count, 50);
+                mP95[c] = percentile(mColumn, count, 95);
+                mP99[c] = percentile(mColumn, count, 99);
+                mMax[c] = mColumn[count - 1];
+                mMean[c] = (double) sum / count;
+            }
+        }
+
+        /**
+         * Nearest rank percentile of sorted values.
+         */
+        private static long percentile(long[] sorted, int count, int percent) {
+            final int rank = (percent * count + 99) / 100;
+            return sorted[Math.max(0, rank - 1)];
+        }
+    }
+
+    private final int mCapacity;
+    private final IClock mClock;
+    private final long[] mFrames;
+    /**
+     * The number of frames written so far. Written by the GL thread after a frame has been stored.
+     */
+    private volatile long mFrameIndex;
+
+    // -- only accessed by the GL thread
+    private final long[] mCurrent = new long[COLUMNS];
+    private final Summary mListenerSummary = new Summary();
+    private long mFrameStart;
+    private long mPreviousFrameStart;
+    private int mFramesSinceListener;
+
+    private volatile boolean mEnabled = true;
+    private volatile IFrameStatsListener mListener;
+    private volatile int mListenerInterval = DEFAULT_LISTENER_INTERVAL;
+
+    public FrameStats() {
+        this(DEFAULT_CAPACITY);
+    }
+
+    /**
+     * @param capacity The number of frames to keep.
+     */
+    public FrameStats(int capacity) {
+        this(capacity, IClock.NANO_TIME);
+    }
+
+    /**
+     * @param capacity The number of frames to keep.
+     * @param clock    {@link IClock} The time source, in nanoseconds. It must never return 0.
+     */
+    public FrameStats(int capacity, IClock clock) {
+        if (capacity < 1) throw new IllegalArgumentException("Capacity must be at least 1, was " + capacity);
+        mCapacity = capacity;
+        mClock = clock;
+        mFrames = new long[capacity * COLUMNS];
+    }
+
+    public void setEnabled(boolean enabled) {
+        mEnabled = enabled;
+    }
+
+    public boolean isEnabled() {
+        return mEnabled;
+    }
+
+    public int getCapacity() {
+        return mCapacity;
+    }
+
+    /**
+     * @param listener The {@link IFrameStatsListener} to notify, {@code null} to stop notifications.
+     */
+    public void setListener(IFrameStatsListener listener) {
+        mListener = listener;
+    }
+
+    /**
+     * @param frames The number of frames between two notifications of the listener.
+     */
+    public void setListenerInterval(int frames) {
+        if (frames < 1) throw new IllegalArgumentException("Interval must be at least 1 frame, was " + frames);
+        mListenerInterval = frames;
+    }
+
+    /**
+     * Starts recording a frame. Called by the {@link Renderer} on the GL thread.
+     */
+    public void beginFrame() {
+        if (!mEnabled) return;
+        mFrameStart = mClock.now();
+        Arrays.fill(mCurrent, 0);
+        mCurrent[Phase.INTERVAL.ordinal()] = mPreviousFrameStart == 0 ? 0 : mFrameStart - mPreviousFrameStart;
+        mPreviousFrameStart = mFrameStart;
+    }
+
+    /**
+     * Starts timing a phase. Called on the GL thread.
+     *
+     * @return The time stamp to pass to {@link #addPhase(Phase, long)}, 0 if the statistics are disabled.
+     */
+    public long mark() {
+        return mEnabled ? mClock.now() : 0;
+    }
+
+    /**
+     * Adds the time since a mark to a phase of the current frame. Called on the GL thread.
+     *
+     * @param phase The {@link Phase} to add to.
+     * @param mark  The time stamp returned by {@link #mark()} or a previous call to this method.
+     * @return The current time stamp, so consecutive phases can be timed with one clock read each.
+     */
+    public long addPhase(Phase phase, long mark) {
+        if (!mEnabled || mark == 0) return 0;
+        final long now = mClock.now();
+        mCurrent[phase.ordinal()] += now - mark;
+        return now;
+    }
+
+    /**
+     * Adds to a counter of the current frame. Called on the GL thread.
+     */
+    public void addCount(Counter counter, int count) {
+        mCurrent[PHASES.length + counter.ordinal()] += count;
+    }
+
+    /**
+     * Finishes the current frame, takes the counts from the {@link GLStateCache} and stores the frame. Called by the
+     * {@link Renderer} on the GL thread.
+     *
+     * @param cache The {@link GLStateCache} of the renderer, may be {@code null}.
+     */
+    public void endFrame(GLStateCache cache) {
+        if (!mEnabled || mFrameStart == 0) return;
+        mCurrent[Phase.FRAME.ordinal()] = mClock.now() - mFrameStart;
+        mFrameStart = 0;
+        if (cache != null) {
+            addCount(Counter.DRAW_CALLS, cache.getDrawCalls());
+            addCount(Counter.TRIANGLES, cache.getTriangles());
+            addCount(Counter.PROGRAM_BINDS, cache.getProgramBinds());
+            addCount(Counter.TEXTURE_BINDS, cache.getTextureBinds());
+            addCount(Counter.BUFFER_BINDS, cache.getBufferBinds());
+            addCount(Counter.CULLED_OBJECTS, cache.getCulledObjects());
+            addCount(Counter.UNIFORM_UPLOADS, cache.getUniformUploads());
+            addCount(Counter.UNIFORM_UPLOADS_SAVED, cache.getUniformUploadsSaved());
+        }
+
+        final long index = mFrameIndex;
+        System.arraycopy(mCurrent, 0, mFrames, (int) (index % mCapacity) * COLUMNS, COLUMNS);
+        mFrameIndex = index + 1;
+
+        final IFrameStatsListener listener = mListener;
+        if (listener != null && ++mFramesSinceListener >= mListenerInterval) {
+            mFramesSinceListener = 0;
+            summarize(mListenerSummary);
+            listener.onFrameStats(this, mListenerSummary);
+        }
+    }
+
+    /**
+     * @return The number of frames recorded since the statistics were created.
+     */
+    public long getTotalFrameCount() {
+        return mFrameIndex;
+    }
+
+    /**
+     * Reads a phase of the most recent frame. Should be called on the GL thread, other threads may see a frame which
+     * is being overwritten.
+     *
+     * @return The time in nanoseconds, 0 if no frame was recorded yet.
+     */
+    public long getLastFrame(Phase phase) {
+        return getLastFrame(phase.ordinal());
+    }
+
+    /**
+     * Reads a counter of the most recent frame, see {@link #getLastFrame(Phase)}.
+     */
+    public long getLastFrame(Counter counter) {
+        return getLastFrame(PHASES.length + counter.ordinal());
+    }
+
+    private long getLastFrame(int column) {
+        final long index = mFrameIndex;
+        if (index == 0) return 0;
+        return mFrames[(int) ((index - 1) % mCapacity) * COLUMNS + column];
+    }
+
+    /**
+     * Computes percentiles over the buffered frames. Can be called from any thread.
+     *
+     * @param summary The {@link Summary} to fill.
+     * @return The summary.
+     */
+    public Summary summarize(Summary summary) {
+        summary.ensureCapacity(mCapacity);
+        final long end = mFrameIndex;
+        final long start = Math.max(0, end - mCapacity);
+        for (long f = start; f < end; ++f) {
+            System.arraycopy(mFrames, (int) (f % mCapacity) * COLUMNS, summary.mRows, (int) (f - start) * COLUMNS,
+                    COLUMNS);
+        }
+        // -- frames which the GL thread started to overwrite while they were copied are dropped
+        final long overwritten = mFrameIndex + 1 - mCapacity;
+        final long first = Math.max(start, overwritten);
+        summary.compute((int) (first - start), (int) Math.max(0, end - first));
+        return summary;
+    }
+}
@@ -0,0 +1,201 @@
+/**
+ * Copyright 2013 Dennis Ippel
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package org.rajawali3d.renderer;
+
+import org.rajawali3d.util.IClock;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Queue of {@link AFrameTask}s which any number of threads can add to without locking, while only the GL thread
+ * takes tasks out and runs them.
+ *
+ * Producers append by swapping the tail of a linked list, so a burst of tasks from loader threads never blocks the GL
+ * thread or the other producers. Tasks offered together through {@link #offerAll(List)} are appended in one step and
+ * run back to back, without tasks of other threads in between.
+ *
+ * {@link #run()} stops once the time budget of the frame is used up. The remaining tasks stay queued, in order, and
+ * are run by the next frames. At least one task runs per frame, so a single long task can't stall the queue.
+ */
+public class FrameTaskQueue {
+
+    private static final class Node {
+        volatile Node mNext;
+        AFrameTask mTask;
+
+        Node(AFrameTask task) {
+            mTask = task;
+        }
+    }
+
+    private final IClock mClock;
+    private final AtomicReference<Node> mTail;
+    private final AtomicInteger mDepth = new AtomicInteger();
+
+    /**
+     * Only accessed by the consumer. Always a node whose task has already been taken.
+     */
+    private Node mHead;
+
+    private volatile long mTimeBudget;
+    private volatile int mLastExecutedCount;
+    private volatile int mLastDeferredCount;
+    private volatile long mTotalDeferredCount;
+
+    public FrameTaskQueue() {
+        this(IClock.NANO_TIME);
+    }
+
+    /**
+     * @param clock {@link IClock} The time source of the budget, in nanoseconds.
+     */
+    public FrameTaskQueue(IClock clock) {
+        mClock = clock;
+        mHead = new Node(null);
+        mTail = new AtomicReference<>(mHead);
+    }
+
+    /**
+     * Adds a task. Can be called from any thread.
+     *
+     * @param task The {@link AFrameTask} to run on the GL thread.
+     * @return {@code true}, the queue is unbounded.
+     */
+    public boolean offer(AFrameTask task) {
+        if (task == null) throw new NullPointerException("Task must not be null");
+        final Node node = new Node(task);
+        mDepth.incrementAndGet();
+        mTail.getAndSet(node).mNext = node;
+        return true;
+    }
+
+    /**
+     * Adds several tasks at once. They run in the order of the list, with no other tasks in between. Can be called
+     * from any thread.
+     *
+     * @param tasks The {@link AFrameTask}s to run on the GL thread.
+     * @return {@code true}, the queue is unbounded.
+     */
+    public boolean offerAll(List<? extends AFrameTask> tasks) {
+        final int count = tasks.size();
+        if (count == 0) return true;
+
+        // -- link the batch privately, then publish it with a single swap
+        Node first = null;
+        Node last = null;
+        for (int i = 0; i < count; ++i) {
+            final AFrameTask task = tasks.get(i);
+            if (task == null) throw new NullPointerException("Task must not be null");
+            final Node node = new Node(task);
+            if (last == null) {
+                first = node;
+            } else {
+                last.mNext = node;
+            }
+            last = node;
+        }
+        mDepth.addAndGet(count);
+        mTail.getAndSet(last).mNext = first;
+        return true;
+    }
+
+    /**
+     * Takes the next task out of the queue. Must only be called from the consumer thread.
+     *
+     * @return The next {@link AFrameTask}, or {@code null} if the queue is empty or a producer is still linking the
+     * next task in.
+     */
+    public AFrameTask poll() {
+        final Node next = mHead.mNext;
+        if (next == null) return null;
+        final AFrameTask task = next.mTask;
+        next.mTask = null;
+        mHead = next;
+        mDepth.decrementAndGet();
+        return task;
+    }
+
+    /**
+     * Runs queued tasks until the queue is empty or the time budget is used up. Must only be called from the GL
+     * thread.
+     *
+     * @return The number of tasks which were run.
+     */
+    public int run() {
+        final long budget = mTimeBudget;
+        final long start = budget > 0 ? mClock.now() : 0;
+        int executed = 0;
+        boolean outOfTime = false;
+        AFrameTask task;
+        while (!outOfTime && (task = poll()) != null) {
+            task.run();
+            ++executed;
+            outOfTime = budget > 0 && mClock.now() - start >= budget;
+        }
+
+        final int deferred = outOfTime ? mDepth.get() : 0;
+        mLastExecutedCount = executed;
+        mLastDeferredCount = deferred;
+        mTotalDeferredCount += deferred;
+        return executed;
+    }
+
+    /**
+     * Limits the time {@link #run()} spends per frame. Tasks which don't fit are carried over to the next frames.
+     *
+     * @param budget The time budget, 0 or less to run all queued tasks every frame.
+     * @param unit   The {@link TimeUnit} of the budget.
+     */
+    public void setTimeBudget(long budget, TimeUnit unit) {
+        mTimeBudget = unit.toNanos(budget);
+    }
+
+    /**
+     * @return The time budget in nanoseconds, 0 or less if there is none.
+     */
+    public long getTimeBudget() {
+        return mTimeBudget;
+    }
+
+    /**
+     * @return The number of tasks waiting to run.
+     */
+    public int getDepth() {
+        return mDepth.get();
+    }
+
+    /**
+     * @return The number of tasks the last {@link #run()} executed.
+     */
+    public int getLastExecutedCount() {
+        return mLastExecutedCount;
+    }
+
+    /**
+     * @return The number of tasks the last {@link #run()} carried over because the time budget was used up.
+     */
+    public int getLastDeferredCount() {
+        return mLastDeferredCount;
+    }
+
+    /**
+     * @return The sum of the tasks carried over by all calls to {@link #run()} so far. A task which is carried over
+     * several times is counted each time.
+     */
+    public long getTotalDeferredCount() {
+        return mTotalDeferredCount;
+    }
+}
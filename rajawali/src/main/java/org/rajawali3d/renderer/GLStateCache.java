@@ -0,0 +1,835 @@
+/**
+ * Copyright 2013 Dennis Ippel
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package org.rajawali3d.renderer;
+
+import android.opengl.GLES11Ext;
+import android.opengl.GLES20;
+import android.opengl.GLES30;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Shadows the fixed function GL state which is changed on every draw call (capabilities, blend function, depth state,
+ * the current program, buffer, framebuffer and per unit texture bindings as well as enabled vertex attribute arrays)
+ * and only forwards calls which actually change it.
+ *
+ * On GLES 3.0 contexts the vertex array object binding is shadowed as well. The element array buffer binding is part
+ * of a vertex array object, so it is remembered per array. The enabled attribute arrays are only remembered for the
+ * default array, they are unknown while any other array is bound.
+ *
+ * Every {@link Renderer} owns an instance, which it makes current on its GL thread when the surface is created and
+ * before every frame. Engine code accesses it through {@link #getCurrent()}. State is initially
+ * unknown, so the first call for any piece of state is always forwarded. Code which changes the shadowed state without
+ * going through this class has to call {@link #invalidate()} afterwards. The {@link org.rajawali3d.scene.Scene} does so
+ * once per frame before drawing, after frame tasks and callbacks have run.
+ *
+ * For testing, the GL calls can be redirected to a different {@link IBackend}, and the number of forwarded and
+ * suppressed calls can be read per frame.
+ */
+public class GLStateCache {
+
+	private static final byte UNKNOWN = -1;
+	private static final byte FALSE = 0;
+	private static final byte TRUE = 1;
+
+	private static final int MAX_TEXTURE_UNITS = 32;
+	private static final int MAX_VERTEX_ATTRIBS = 32;
+	private static final int MAX_VERTEX_ARRAYS = 4096; // Element bindings of arrays beyond this are not remembered
+
+	private static final int CAP_CULL_FACE = 0;
+	private static final int CAP_BLEND = 1;
+	private static final int CAP_DEPTH_TEST = 2;
+	private static final int CAP_SCISSOR_TEST = 3;
+	private static final int CAP_STENCIL_TEST = 4;
+	private static final int CAP_POLYGON_OFFSET_FILL = 5;
+	private static final int CAP_DITHER = 6;
+	private static final int CAP_COUNT = 7;
+
+	private static final int TEXTURE_TARGET_2D = 0;
+	private static final int TEXTURE_TARGET_CUBE_MAP = 1;
+	private static final int TEXTURE_TARGET_EXTERNAL = 2;
+	private static final int TEXTURE_TARGET_COUNT = 3;
+
+	private static final int BUFFER_TARGET_ARRAY = 0;
+	private static final int BUFFER_TARGET_ELEMENT_ARRAY = 1;
+	private static final int BUFFER_TARGET_PIXEL_PACK = 2;
+	private static final int BUFFER_TARGET_PIXEL_UNPACK = 3;
+	private static final int BUFFER_TARGET_COUNT = 4;
+
+	/**
+	 * The GL calls issued by the cache. The default implementation forwards to {@link GLES20}.
+	 */
+	public interface IBackend {
+		void enable(int capability);
+
+		void disable(int capability);
+
+		void blendFunc(int sFactor, int dFactor);
+
+		void cullFace(int mode);
+
+		void frontFace(int mode);
+
+		void depthFunc(int func);
+
+		void depthMask(boolean flag);
+
+		void useProgram(int program);
+
+		void bindBuffer(int target, int buffer);
+
+		void bindFramebuffer(int target, int framebuffer);
+
+		void activeTexture(int unit);
+
+		void bindTexture(int target, int texture);
+
+		void enableVertexAttribArray(int index);
+
+		void disableVertexAttribArray(int index);
+
+		void bindVertexArray(int array);
+	}
+
+	/**
+	 * {@link IBackend} which issues the calls to the current GL context.
+	 */
+	public static class GLES20Backend implements IBackend {
+		@Override
+		public void enable(int capability) {
+			GLES20.glEnable(capability);
+		}
+
+		@Override
+		public void disable(int capability) {
+			GLES20.glDisable(capability);
+		}
+
+		@Override
+		public void blendFunc(int sFactor, int dFactor) {
+			GLES20.glBlendFunc(sFactor, dFactor);
+		}
+
+		@Override
+		public void cullFace(int mode) {
+			GLES20.glCullFace(mode);
+		}
+
+		@Override
+		public void frontFace(int mode) {
+			GLES20.glFrontFace(mode);
+		}
+
+		@Override
+		public void depthFunc(int func) {
+			GLES20.glDepthFunc(func);
+		}
+
+		@Override
+		public void depthMask(boolean flag) {
+			GLES20.glDepthMask(flag);
+		}
+
+		@Override
+		public void useProgram(int program) {
+			GLES20.glUseProgram(program);
+		}
+
+		@Override
+		public void bindBuffer(int target, int buffer) {
+			GLES20.glBindBuffer(target, buffer);
+		}
+
+		@Override
+		public void bindFramebuffer(int target, int framebuffer) {
+			GLES20.glBindFramebuffer(target, framebuffer);
+		}
+
+		@Override
+		public void activeTexture(int unit) {
+			GLES20.glActiveTexture(unit);
+		}
+
+		@Override
+		public void bindTexture(int target, int texture) {
+			GLES20.glBindTexture(target, texture);
+		}
+
+		@Override
+		public void enableVertexAttribArray(int index) {
+			GLES20.glEnableVertexAttribArray(index);
+		}
+
+		@Override
+		public void disableVertexAttribArray(int index) {
+			GLES20.glDisableVertexAttribArray(index);
+		}
+
+		@Override
+		public void bindVertexArray(int array) {
+			// Only called when vertex arrays are supported
+			GLES30.glBindVertexArray(array);
+		}
+	}
+
+	private static final ThreadLocal<GLStateCache> sCurrent = new ThreadLocal<GLStateCache>() {
+		@Override
+		protected GLStateCache initialValue() {
+			return new GLStateCache();
+		}
+	};
+
+	private static final AtomicInteger sContextIds = new AtomicInteger();
+
+	private final IBackend mBackend;
+	private int mContextId;
+
+	private final byte[] mCapabilities = new byte[CAP_COUNT];
+	private int mBlendSFactor;
+	private int mBlendDFactor;
+	private int mCullFace;
+	private int mFrontFace;
+	private int mDepthFunc;
+	private byte mDepthMask;
+	private int mProgram;
+	private int mFramebuffer;
+	private final int[] mBuffers = new int[BUFFER_TARGET_COUNT];
+	private int mActiveTextureUnit;
+	private final int[] mTextures = new int[MAX_TEXTURE_UNITS * TEXTURE_TARGET_COUNT];
+	private final byte[] mVertexAttribArrays = new byte[MAX_VERTEX_ATTRIBS];
+	private final byte[] mDefaultVertexAttribArrays = new byte[MAX_VERTEX_ATTRIBS];
+	private boolean mVertexArraysSupported;
+	private int mVertexArray;
+	private int[] mVertexArrayElementBuffers = new int[64]; // Indexed by array, 0 is the default array
+
+	private boolean mEnabled = true;
+
+	private int mForwardedCalls;
+	private int mSuppressedCalls;
+	private int mLastFrameForwardedCalls;
+	private int mLastFrameSuppressedCalls;
+
+	// -- counts of the current frame, read by FrameStats when the frame ends
+	private int mProgramBinds;
+	private int mTextureBinds;
+	private int mBufferBinds;
+	private int mDrawCalls;
+	private int mTriangles;
+	private int mCulledObjects;
+	private int mUniformUploads;
+	private int mUniformUploadsSaved;
+
+	public GLStateCache() {
+		this(new GLES20Backend());
+	}
+
+	public GLStateCache(IBackend backend) {
+		mBackend = backend;
+		mContextId = sContextIds.incrementAndGet();
+		invalidate();
+	}
+
+	/**
+	 * Returns the cache which is current on the calling thread. Every GL thread has its own context, so every thread
+	 * has its own cache.
+	 *
+	 * @return The current {@link GLStateCache}.
+	 */
+	public static GLStateCache getCurrent() {
+		return sCurrent.get();
+	}
+
+	/**
+	 * Makes a cache current on the calling thread. Called on the GL thread by the {@link Renderer} which owns it.
+	 *
+	 * @param cache The {@link GLStateCache} to use for subsequent GL calls.
+	 */
+	public static void makeCurrent(GLStateCache cache) {
+		sCurrent.set(cache);
+	}
+
+	/**
+	 * Identifies the GL context this cache currently shadows. The id changes whenever the context is recreated and is
+	 * unique among all caches, so objects which were created in a context can tell whether it still exists.
+	 *
+	 * @return {@code int} The context id.
+	 */
+	public int getContextId() {
+		return mContextId;
+	}
+
+	/**
+	 * Sets whether the context supports vertex array objects, which requires GLES 3.0. Set by the {@link Renderer}
+	 * when its surface is created.
+	 *
+	 * @param supported {@code boolean} Whether {@link #bindVertexArray(int)} may be forwarded.
+	 */
+	public void setVertexArraysSupported(boolean supported) {
+		mVertexArraysSupported = supported;
+	}
+
+	public boolean areVertexArraysSupported() {
+		return mVertexArraysSupported;
+	}
+
+	/**
+	 * Enables or disables suppression. When disabled every call is forwarded, the shadow state is still kept up to
+	 * date so that suppression can be turned on again at any time.
+	 *
+	 * @param enabled {@code boolean} Whether redundant calls should be suppressed.
+	 */
+	public void setEnabled(boolean enabled) {
+		mEnabled = enabled;
+	}
+
+	public boolean isEnabled() {
+		return mEnabled;
+	}
+
+	/**
+	 * Forgets all shadowed state. The next call for any piece of state will be forwarded.
+	 */
+	public void invalidate() {
+		for (int i = 0; i < CAP_COUNT; ++i) {
+			mCapabilities[i] = UNKNOWN;
+		}
+		mBlendSFactor = -1;
+		mBlendDFactor = -1;
+		mCullFace = -1;
+		mFrontFace = -1;
+		mDepthFunc = -1;
+		mDepthMask = UNKNOWN;
+		mProgram = -1;
+		mFramebuffer = -1;
+		for (int i = 0; i < BUFFER_TARGET_COUNT; ++i) {
+			mBuffers[i] = -1;
+		}
+		mActiveTextureUnit = -1;
+		for (int i = 0, j = mTextures.length; i < j; ++i) {
+			mTextures[i] = -1;
+		}
+		for (int i = 0; i < MAX_VERTEX_ATTRIBS; ++i) {
+			mVertexAttribArrays[i] = UNKNOWN;
+			mDefaultVertexAttribArrays[i] = UNKNOWN;
+		}
+		mVertexArray = -1;
+		Arrays.fill(mVertexArrayElementBuffers, -1);
+	}
+
+	/**
+	 * Forgets all shadowed state and clears the statistics. Called when the GL context has been (re)created, which
+	 * also changes the {@link #getContextId()}.
+	 */
+	public void reset() {
+		mContextId = sContextIds.incrementAndGet();
+		invalidate();
+		mForwardedCalls = 0;
+		mSuppressedCalls = 0;
+		mLastFrameForwardedCalls = 0;
+		mLastFrameSuppressedCalls = 0;
+		resetFrameCounts();
+	}
+
+	/**
+	 * Marks the start of a new frame, the counts of the frame which just ended become available through
+	 * {@link #getLastFrameForwardedCalls()} and {@link #getLastFrameSuppressedCalls()}. The draw, bind and cull counts
+	 * start over.
+	 */
+	public void onFrameStart() {
+		mLastFrameForwardedCalls = mForwardedCalls;
+		mLastFrameSuppressedCalls = mSuppressedCalls;
+		mForwardedCalls = 0;
+		mSuppressedCalls = 0;
+		resetFrameCounts();
+	}
+
+	private void resetFrameCounts() {
+		mProgramBinds = 0;
+		mTextureBinds = 0;
+		mBufferBinds = 0;
+		mDrawCalls = 0;
+		mTriangles = 0;
+		mCulledObjects = 0;
+		mUniformUploads = 0;
+		mUniformUploadsSaved = 0;
+	}
+
+	/**
+	 * Counts a draw call of the current frame.
+	 *
+	 * @param mode      {@code int} The primitive type, for example {@link GLES20#GL_TRIANGLES}.
+	 * @param count     {@code int} The number of indices or vertices drawn per instance.
+	 * @param instances {@code int} The number of instances drawn.
+	 */
+	public void countDraw(int mode, int count, int instances) {
+		++mDrawCalls;
+		switch (mode) {
+			case GLES20.GL_TRIANGLES:
+				mTriangles += count / 3 * instances;
+				break;
+			case GLES20.GL_TRIANGLE_STRIP:
+			case GLES20.GL_TRIANGLE_FAN:
+				if (count > 2) mTriangles += (count - 2) * instances;
+				break;
+			default:
+				break;
+		}
+	}
+
+	/**
+	 * Counts objects of the current frame which were rejected by their frustum test.
+	 *
+	 * @param objects {@code int} The number of culled objects.
+	 */
+	public void countCulled(int objects) {
+		mCulledObjects += objects;
+	}
+
+	/**
+	 * Counts a uniform of the current frame which was either uploaded or skipped because the program already held
+	 * its value.
+	 *
+	 * @param uploaded {@code boolean} True if the value was uploaded.
+	 */
+	public void countUniform(boolean uploaded) {
+		if (uploaded) {
+			++mUniformUploads;
+		} else {
+			++mUniformUploadsSaved;
+		}
+	}
+
+	/**
+	 * @return The number of programs made current during the current frame.
+	 */
+	public int getProgramBinds() {
+		return mProgramBinds;
+	}
+
+	/**
+	 * @return The number of texture binds forwarded during the current frame.
+	 */
+	public int getTextureBinds() {
+		return mTextureBinds;
+	}
+
+	/**
+	 * @return The number of buffer binds forwarded during the current frame.
+	 */
+	public int getBufferBinds() {
+		return mBufferBinds;
+	}
+
+	public int getDrawCalls() {
+		return mDrawCalls;
+	}
+
+	public int getTriangles() {
+		return mTriangles;
+	}
+
+	public int getCulledObjects() {
+		return mCulledObjects;
+	}
+
+	/**
+	 * @return The number of uniform uploads issued during the current frame.
+	 */
+	public int getUniformUploads() {
+		return mUniformUploads;
+	}
+
+	/**
+	 * @return The number of uniform uploads skipped during the current frame because the value was unchanged.
+	 */
+	public int getUniformUploadsSaved() {
+		return mUniformUploadsSaved;
+	}
+
+	public int getForwardedCalls() {
+		return mForwardedCalls;
+	}
+
+	public int getSuppressedCalls() {
+		return mSuppressedCalls;
+	}
+
+	public int getLastFrameForwardedCalls() {
+		return mLastFrameForwardedCalls;
+	}
+
+	public int getLastFrameSuppressedCalls() {
+		return mLastFrameSuppressedCalls;
+	}
+
+	public void enable(int capability) {
+		setCapability(capability, true);
+	}
+
+	public void disable(int capability) {
+		setCapability(capability, false);
+	}
+
+	/**
+	 * Enables or disables a capability.
+	 *
+	 * @param capability {@code int} The GL capability, for example {@link GLES20#GL_DEPTH_TEST}.
+	 * @param enabled    {@code boolean} The requested state.
+	 */
+	public void setCapability(int capability, boolean enabled) {
+		final int index = getCapabilityIndex(capability);
+		final byte value = enabled ? TRUE : FALSE;
+		if (index >= 0) {
+			if (skip(mCapabilities[index] == value)) return;
+			mCapabilities[index] = value;
+		}
+		++mForwardedCalls;
+		if (enabled) {
+			mBackend.enable(capability);
+		} else {
+			mBackend.disable(capability);
+		}
+	}
+
+	public void blendFunc(int sFactor, int dFactor) {
+		if (skip(mBlendSFactor == sFactor && mBlendDFactor == dFactor)) return;
+		mBlendSFactor = sFactor;
+		mBlendDFactor = dFactor;
+		++mForwardedCalls;
+		mBackend.blendFunc(sFactor, dFactor);
+	}
+
+	public void cullFace(int mode) {
+		if (skip(mCullFace == mode)) return;
+		mCullFace = mode;
+		++mForwardedCalls;
+		mBackend.cullFace(mode);
+	}
+
+	public void frontFace(int mode) {
+		if (skip(mFrontFace == mode)) return;
+		mFrontFace = mode;
+		++mForwardedCalls;
+		mBackend.frontFace(mode);
+	}
+
+	public void depthFunc(int func) {
+		if (skip(mDepthFunc == func)) return;
+		mDepthFunc = func;
+		++mForwardedCalls;
+		mBackend.depthFunc(func);
+	}
+
+	public void depthMask(boolean flag) {
+		final byte value = flag ? TRUE : FALSE;
+		if (skip(mDepthMask == value)) return;
+		mDepthMask = value;
+		++mForwardedCalls;
+		mBackend.depthMask(flag);
+	}
+
+	public void useProgram(int program) {
+		if (skip(mProgram == program)) return;
+		mProgram = program;
+		++mForwardedCalls;
+		++mProgramBinds;
+		mBackend.useProgram(program);
+	}
+
+	/**
+	 * Binds a buffer. Targets other than the array, element array and pixel pack/unpack buffers are always forwarded.
+	 *
+	 * @param target {@code int} The buffer target.
+	 * @param buffer {@code int} The buffer handle.
+	 */
+	public void bindBuffer(int target, int buffer) {
+		final int index = getBufferIndex(target);
+		if (index >= 0) {
+			if (skip(mBuffers[index] == buffer)) return;
+			mBuffers[index] = buffer;
+		}
+		++mForwardedCalls;
+		++mBufferBinds;
+		mBackend.bindBuffer(target, buffer);
+	}
+
+	public void bindFramebuffer(int target, int framebuffer) {
+		if (target == GLES20.GL_FRAMEBUFFER) {
+			if (skip(mFramebuffer == framebuffer)) return;
+			mFramebuffer = framebuffer;
+		} else {
+			// Read or draw framebuffer targets, we no longer know what GL_FRAMEBUFFER refers to
+			mFramebuffer = -1;
+		}
+		++mForwardedCalls;
+		mBackend.bindFramebuffer(target, framebuffer);
+	}
+
+	/**
+	 * Selects the active texture unit.
+	 *
+	 * @param unit {@code int} The unit, {@link GLES20#GL_TEXTURE0} plus the unit index.
+	 */
+	public void activeTexture(int unit) {
+		if (skip(mActiveTextureUnit == unit)) return;
+		mActiveTextureUnit = unit;
+		++mForwardedCalls;
+		mBackend.activeTexture(unit);
+	}
+
+	/**
+	 * Binds a texture to the active texture unit.
+	 *
+	 * @param target  {@code int} The texture target.
+	 * @param texture {@code int} The texture handle.
+	 */
+	public void bindTexture(int target, int texture) {
+		final int unitIndex = mActiveTextureUnit - GLES20.GL_TEXTURE0;
+		final int slot = getTextureSlot(unitIndex, target);
+		if (slot >= 0) {
+			if (skip(mTextures[slot] == texture)) return;
+			mTextures[slot] = texture;
+		}
+		++mForwardedCalls;
+		++mTextureBinds;
+		mBackend.bindTexture(target, texture);
+	}
+
+	/**
+	 * Binds a texture to a texture unit, only selecting the unit if the binding actually changes. Callers must not
+	 * rely on the active texture unit afterwards, use {@link #activeTexture(int)} for operations which act on the
+	 * active unit.
+	 *
+	 * @param unitIndex {@code int} The zero based index of the texture unit.
+	 * @param target    {@code int} The texture target.
+	 * @param texture   {@code int} The texture handle.
+	 */
+	public void bindTexture(int unitIndex, int target, int texture) {
+		final int slot = getTextureSlot(unitIndex, target);
+		if (slot >= 0 && skip(mTextures[slot] == texture)) return;
+		activeTexture(GLES20.GL_TEXTURE0 + unitIndex);
+		bindTexture(target, texture);
+	}
+
+	/**
+	 * Binds texture 0 to every unit and target which is known or suspected to have a texture bound.
+	 */
+	public void unbindTextures() {
+		for (int unit = 0; unit < MAX_TEXTURE_UNITS; ++unit) {
+			for (int target = 0; target < TEXTURE_TARGET_COUNT; ++target) {
+				final int slot = unit * TEXTURE_TARGET_COUNT + target;
+				// Unknown bindings are left alone, they may belong to code which doesn't use the cache
+				if (mTextures[slot] > 0) {
+					bindTexture(unit, getTextureTarget(target), 0);
+				}
+			}
+		}
+	}
+
+	public void enableVertexAttribArray(int index) {
+		if (index >= 0 && index < MAX_VERTEX_ATTRIBS) {
+			if (skip(mVertexAttribArrays[index] == TRUE)) return;
+			mVertexAttribArrays[index] = TRUE;
+		}
+		++mForwardedCalls;
+		mBackend.enableVertexAttribArray(index);
+	}
+
+	public void disableVertexAttribArray(int index) {
+		if (index >= 0 && index < MAX_VERTEX_ATTRIBS) {
+			if (skip(mVertexAttribArrays[index] == FALSE)) return;
+			mVertexAttribArrays[index] = FALSE;
+		}
+		++mForwardedCalls;
+		mBackend.disableVertexAttribArray(index);
+	}
+
+	/**
+	 * Binds a vertex array object, 0 binds the default array. Does nothing when vertex arrays are not supported, so
+	 * code which needs the default array can call this unconditionally.
+	 *
+	 * @param array {@code int} The vertex array handle.
+	 */
+	public void bindVertexArray(int array) {
+		if (!mVertexArraysSupported) return;
+		if (skip(mVertexArray == array)) return;
+		// -- remember the element binding of the array we leave and restore the one of the array we enter
+		setVertexArrayElementBuffer(mVertexArray, mBuffers[BUFFER_TARGET_ELEMENT_ARRAY]);
+		if (mVertexArray == 0) {
+			System.arraycopy(mVertexAttribArrays, 0, mDefaultVertexAttribArrays, 0, MAX_VERTEX_ATTRIBS);
+		}
+		mVertexArray = array;
+		mBuffers[BUFFER_TARGET_ELEMENT_ARRAY] = array >= 0 && array < mVertexArrayElementBuffers.length
+				? mVertexArrayElementBuffers[array] : -1;
+		if (array == 0) {
+			System.arraycopy(mDefaultVertexAttribArrays, 0, mVertexAttribArrays, 0, MAX_VERTEX_ATTRIBS);
+		} else {
+			Arrays.fill(mVertexAttribArrays, UNKNOWN);
+		}
+		++mForwardedCalls;
+		mBackend.bindVertexArray(array);
+	}
+
+	private void setVertexArrayElementBuffer(int array, int buffer) {
+		if (array < 0 || array >= MAX_VERTEX_ARRAYS) return;
+		if (array >= mVertexArrayElementBuffers.length) {
+			final int oldLength = mVertexArrayElementBuffers.length;
+			mVertexArrayElementBuffers = Arrays.copyOf(mVertexArrayElementBuffers,
+					Math.min(MAX_VERTEX_ARRAYS, Math.max(array + 1, oldLength * 2)));
+			Arrays.fill(mVertexArrayElementBuffers, oldLength, mVertexArrayElementBuffers.length, -1);
+		}
+		mVertexArrayElementBuffers[array] = buffer;
+	}
+
+	/**
+	 * Has to be called when vertex arrays are deleted. GL binds the default array if a deleted one was bound, and
+	 * reuses the handles of deleted arrays.
+	 *
+	 * @param array {@code int} The deleted vertex array handle.
+	 */
+	public void onVertexArrayDeleted(int array) {
+		if (array <= 0) return;
+		if (array < mVertexArrayElementBuffers.length) {
+			mVertexArrayElementBuffers[array] = -1;
+		}
+		if (mVertexArray == array) {
+			mVertexArray = 0;
+			mBuffers[BUFFER_TARGET_ELEMENT_ARRAY] = mVertexArrayElementBuffers[0];
+			System.arraycopy(mDefaultVertexAttribArrays, 0, mVertexAttribArrays, 0, MAX_VERTEX_ATTRIBS);
+		}
+	}
+
+	/**
+	 * Has to be called when a program is deleted. GL reuses handles, so a new program could otherwise be mistaken for
+	 * the deleted one.
+	 *
+	 * @param program {@code int} The deleted program handle.
+	 */
+	public void onProgramDeleted(int program) {
+		if (mProgram == program) mProgram = -1;
+	}
+
+	/**
+	 * Has to be called when buffers are deleted. GL unbinds deleted buffers from all targets.
+	 *
+	 * @param buffer {@code int} The deleted buffer handle.
+	 */
+	public void onBufferDeleted(int buffer) {
+		for (int i = 0; i < BUFFER_TARGET_COUNT; ++i) {
+			if (mBuffers[i] == buffer) mBuffers[i] = 0;
+		}
+		// -- other arrays keep referring to the deleted buffer, whose handle may be reused
+		for (int i = 0, j = mVertexArrayElementBuffers.length; i < j; ++i) {
+			if (mVertexArrayElementBuffers[i] == buffer) mVertexArrayElementBuffers[i] = -1;
+		}
+	}
+
+	/**
+	 * Has to be called when textures are deleted. GL unbinds deleted textures from all units.
+	 *
+	 * @param texture {@code int} The deleted texture handle.
+	 */
+	public void onTextureDeleted(int texture) {
+		for (int i = 0, j = mTextures.length; i < j; ++i) {
+			if (mTextures[i] == texture) mTextures[i] = 0;
+		}
+	}
+
+	/**
+	 * Has to be called when a framebuffer is deleted. GL binds the default framebuffer if it was bound.
+	 *
+	 * @param framebuffer {@code int} The deleted framebuffer handle.
+	 */
+	public void onFramebufferDeleted(int framebuffer) {
+		if (mFramebuffer == framebuffer) mFramebuffer = 0;
+	}
+
+	/**
+	 * Decides whether a call can be suppressed and counts it if so.
+	 */
+	private boolean skip(boolean redundant) {
+		if (redundant && mEnabled) {
+			++mSuppressedCalls;
+			return true;
+		}
+		return false;
+	}
+
+	private static int getCapabilityIndex(int capability) {
+		switch (capability) {
+			case GLES20.GL_CULL_FACE:
+				return CAP_CULL_FACE;
+			case GLES20.GL_BLEND:
+				return CAP_BLEND;
+			case GLES20.GL_DEPTH_TEST:
+				return CAP_DEPTH_TEST;
+			case GLES20.GL_SCISSOR_TEST:
+				return CAP_SCISSOR_TEST;
+			case GLES20.GL_STENCIL_TEST:
+				return CAP_STENCIL_TEST;
+			case GLES20.GL_POLYGON_OFFSET_FILL:
+				return CAP_POLYGON_OFFSET_FILL;
+			case GLES20.GL_DITHER:
+				return CAP_DITHER;
+			default:
+				return -1;
+		}
+	}
+
+	private static int getBufferIndex(int target) {
+		switch (target) {
+			case GLES20.GL_ARRAY_BUFFER:
+				return BUFFER_TARGET_ARRAY;
+			case GLES20.GL_ELEMENT_ARRAY_BUFFER:
+				return BUFFER_TARGET_ELEMENT_ARRAY;
+			case GLES30.GL_PIXEL_PACK_BUFFER:
+				return BUFFER_TARGET_PIXEL_PACK;
+			case GLES30.GL_PIXEL_UNPACK_BUFFER:
+				return BUFFER_TARGET_PIXEL_UNPACK;
+			default:
+				return -1;
+		}
+	}
+
+	private static int getTextureSlot(int unitIndex, int target) {
+		if (unitIndex < 0 || unitIndex >= MAX_TEXTURE_UNITS) return -1;
+		final int targetIndex;
+		switch (target) {
+			case GLES20.GL_TEXTURE_2D:
+				targetIndex = TEXTURE_TARGET_2D;
+				break;
+			case GLES20.GL_TEXTURE_CUBE_MAP:
+				targetIndex = TEXTURE_TARGET_CUBE_MAP;
+				break;
+			case GLES11Ext.GL_TEXTURE_EXTERNAL_OES:
+				targetIndex = TEXTURE_TARGET_EXTERNAL;
+				break;
+			default:
+				return -1;
+		}
+		return unitIndex * TEXTURE_TARGET_COUNT + targetIndex;
+	}
+
+	private static int getTextureTarget(int targetIndex) {
+		switch (targetIndex) {
+			case TEXTURE_TARGET_CUBE_MAP:
+				return GLES20.GL_TEXTURE_CUBE_MAP;
+			case TEXTURE_TARGET_EXTERNAL:
+				return GLES11Ext.GL_TEXTURE_EXTERNAL_OES;
+			default:
+				return GLES20.GL_TEXTURE_2D;
+		}
+	}
+}
@@ -0,0 +1,116 @@
+/**
+ * Copyright 2013 Dennis Ippel
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package org.rajawali3d.renderer;
+
+import org.rajawali3d.util.IClock;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Decides whether the {@link Renderer} has to draw a frame when it renders on demand, see
+ * {@link Renderer#setRenderWhenDirty(boolean)}.
+ *
+ * A frame is needed when anything changed since the start of the last frame. Transformations, cameras and materials
+ * report their changes through {@link #markSceneChanged()}, which only bumps a shared counter. Frame tasks, scene
+ * switches and surface changes mark their renderer dirty through {@link #markDirty()}. While animations play every
+ * frame is drawn, and once they are done frames keep being drawn until the idle timeout has passed.
+ *
+ * The scene change counter is shared by all renderers of the process, so a change in one of them may cause a
+ * redundant frame in another, but never a missing one.
+ */
+public class RenderDirtyTracker {
+
+    public static final long DEFAULT_IDLE_TIMEOUT = TimeUnit.MILLISECONDS.toNanos(500);
+
+    /**
+     * Bumped by every change. Increments may race, but a racing increment still changes the value, which is all
+     * that is compared.
+     */
+    private static volatile int sSceneChangeCount;
+
+    private final IClock mClock;
+    private volatile boolean mDirty = true;
+    private volatile long mIdleTimeout = DEFAULT_IDLE_TIMEOUT;
+    private volatile long mIdleDeadline; // 0 until an animation played
+    private volatile int mRenderedChangeCount;
+
+    public RenderDirtyTracker() {
+        this(IClock.NANO_TIME);
+    }
+
+    /**
+     * @param clock {@link IClock} The time source of the idle timeout, in nanoseconds.
+     */
+    public RenderDirtyTracker(IClock clock) {
+        mClock = clock;
+    }
+
+    /**
+     * Reports a change which affects the next frame of any renderer. Can be called from any thread.
+     */
+    public static void markSceneChanged() {
+        ++sSceneChangeCount;
+    }
+
+    /**
+     * Requests a frame from this renderer. Can be called from any thread.
+     */
+    public void markDirty() {
+        mDirty = true;
+    }
+
+    /**
+     * @return Whether the next frame would differ from the last one, or the idle timeout has not passed yet.
+     */
+    public boolean shouldRender() {
+        final long idleDeadline = mIdleDeadline;
+        return mDirty || mRenderedChangeCount != sSceneChangeCount || (idleDeadline != 0 && mClock.now() - idleDeadline < 0);
+    }
+
+    /**
+     * Called on the GL thread before a frame is drawn. Changes made from here on cause another frame.
+     */
+    public void onFrameStart() {
+        mDirty = false;
+        mRenderedChangeCount = sSceneChangeCount;
+    }
+
+    /**
+     * Called on the GL thread after a frame was drawn.
+     *
+     * @param animating Whether any animation is still playing.
+     */
+    public void onFrameEnd(boolean animating) {
+        if (animating) {
+            mIdleDeadline = mClock.now() + mIdleTimeout;
+        }
+    }
+
+    /**
+     * Sets how long frames keep being drawn after the last animation stopped, so that effects which don't report
+     * their changes, such as shaders driven by time, can settle.
+     *
+     * @param timeout The timeout, 0 to stop right away.
+     * @param unit    The {@link TimeUnit} of the timeout.
+     */
+    public void setIdleTimeout(long timeout, TimeUnit unit) {
+        mIdleTimeout = Math.max(0, unit.toNanos(timeout));
+    }
+
+    /**
+     * @return The idle timeout in nanoseconds.
+     */
+    public long getIdleTimeout() {
+        return mIdleTimeout;
+    }
+}
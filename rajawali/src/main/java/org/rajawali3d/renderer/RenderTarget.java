@@ -248,7 +248,7 @@ public class RenderTarget {
 		GLES20.glGenFramebuffers(1, bufferHandles, 0);
 		mFrameBufferHandle = bufferHandles[0];
 
-		GLES20.glBindFramebuffer(GLES20.GL_FRAMEBUFFER, mFrameBufferHandle);
+		GLStateCache.getCurrent().bindFramebuffer(GLES20.GL_FRAMEBUFFER, mFrameBufferHandle);
 
 		checkGLError("Could not create framebuffer: ");
 		// -- add the texture directly. we can afford to do this because the create()
@@ -280,17 +280,17 @@ public class RenderTarget {
 			checkGLError("Could not create stencil buffer: ");
 		}
 	*/
-		GLES20.glBindFramebuffer(GLES20.GL_FRAMEBUFFER, 0);
+		GLStateCache.getCurrent().bindFramebuffer(GLES20.GL_FRAMEBUFFER, 0);
 	}
 
 	public void bind() {
-		GLES20.glBindFramebuffer(GLES20.GL_FRAMEBUFFER, mFrameBufferHandle);
+		GLStateCache.getCurrent().bindFramebuffer(GLES20.GL_FRAMEBUFFER, mFrameBufferHandle);
 		GLES20.glFramebufferTexture2D(
 			      GLES20.GL_FRAMEBUFFER, GLES20.GL_COLOR_ATTACHMENT0, GLES20.GL_TEXTURE_2D, mTexture.getTextureId(), 0);
 
 		int status = GLES20.glCheckFramebufferStatus(GLES20.GL_FRAMEBUFFER);
 		if (status != GLES20.GL_FRAMEBUFFER_COMPLETE) {
-			GLES20.glBindFramebuffer(GLES20.GL_FRAMEBUFFER, 0);
+			GLStateCache.getCurrent().bindFramebuffer(GLES20.GL_FRAMEBUFFER, 0);
 			String errorString = "";
 			switch(status)
 			{
@@ -313,11 +313,12 @@ public class RenderTarget {
 	}
 
 	public void unbind() {
-		GLES20.glBindFramebuffer(GLES20.GL_FRAMEBUFFER, 0);
+		GLStateCache.getCurrent().bindFramebuffer(GLES20.GL_FRAMEBUFFER, 0);
 	}
 
 	public void remove() {
-		GLES20.glDeleteFramebuffers(GLES20.GL_FRAMEBUFFER, new int[] { mFrameBufferHandle }, 0);
+		GLES20.glDeleteFramebuffers(1, new int[] { mFrameBufferHandle }, 0);
+		GLStateCache.getCurrent().onFramebufferDeleted(mFrameBufferHandle);
 	}
 
 	public void reload() {
@@ -17,6 +17,7 @@ import android.content.Context;
 import android.content.res.Resources;
 import android.graphics.SurfaceTexture;
 import android.opengl.GLES20;
+import android.opengl.GLES30;
 import android.os.Handler;
 import android.os.Looper;
 import android.os.Message;
@@ -27,33 +28,39 @@ import android.view.WindowManager;
 import org.rajawali3d.cameras.Camera;
 import org.rajawali3d.loader.ALoader;
 import org.rajawali3d.loader.async.IAsyncLoaderCallback;
+import org.rajawali3d.loader.async.IAsyncTextureCallback;
 import org.rajawali3d.materials.Material;
 import org.rajawali3d.materials.MaterialManager;
+import org.rajawali3d.materials.shaders.ProgramBinaryCache;
+import org.rajawali3d.materials.textures.ASingleTexture;
 import org.rajawali3d.materials.textures.ATexture;
 import org.rajawali3d.materials.textures.RenderTargetTexture;
 import org.rajawali3d.materials.textures.TextureManager;
+import org.rajawali3d.materials.textures.TextureSource;
+import org.rajawali3d.materials.textures.TextureUploadQueue;
 import org.rajawali3d.math.Matrix;
 import org.rajawali3d.math.Matrix4;
 import org.rajawali3d.math.vector.Vector3;
 import org.rajawali3d.scene.Scene;
 import org.rajawali3d.view.ISurface;
 import org.rajawali3d.util.Capabilities;
+import org.rajawali3d.util.IClock;
 import org.rajawali3d.util.ObjectColorPicker;
 import org.rajawali3d.util.OnFPSUpdateListener;
 import org.rajawali3d.util.RajLog;
 import org.rajawali3d.util.RawShaderLoader;
 
+import java.io.File;
 import java.lang.ref.WeakReference;
 import java.lang.reflect.Constructor;
 import java.util.Collection;
 import java.util.Collections;
-import java.util.LinkedList;
 import java.util.List;
 import java.util.Locale;
-import java.util.Queue;
 import java.util.concurrent.CopyOnWriteArrayList;
 import java.util.concurrent.Executor;
 import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicInteger;
@@ -80,20 +87,29 @@ public abstract class Renderer implements ISurfaceRenderer {
 
     protected TextureManager mTextureManager; // Texture manager for ALL textures across ALL scenes.
     protected MaterialManager mMaterialManager; // Material manager for ALL materials across ALL scenes.
+    protected final TextureUploadQueue mTextureUploadQueue = new TextureUploadQueue(); // Uploads of async textures
+    protected final GLStateCache mGLStateCache = new GLStateCache(); // Shadow of the GL state of this renderer's context
+    protected final IClock mClock; // Time source of frame times, task budgets and the idle timeout
+    protected final FrameStats mFrameStats; // Per frame timings and counts
 
     // Frame related members
     protected ScheduledExecutorService mTimer; // Timer used to schedule drawing
     protected double mFrameRate; // Target frame rate to render at
+    protected final RenderDirtyTracker mRenderDirtyTracker; // Decides when to render on demand
+    protected volatile boolean mRenderWhenDirty; // Only render frames when something changed?
     protected int mFrameCount; // Used for determining FPS
     protected double mLastMeasuredFPS; // Last measured FPS value
     protected OnFPSUpdateListener mFPSUpdateListener; // Listener to notify of new FPS values.
-    private long mStartTime = System.nanoTime(); // Used for determining FPS
+    private long mStartTime; // Used for determining FPS
     private long mLastRender; // Time of last rendering. Used for animation delta time
 
     //In case we cannot parse the version number, assume OpenGL ES 2.0
     protected int mGLES_Major_Version = 2; // The GL ES major version of the surface
     protected int mGLES_Minor_Version = 0; // The GL ES minor version of the surface
 
+    private static final String PROGRAM_BINARY_DIRECTORY = "rajawali_programs";
+    private volatile long mProgramBinaryCacheSize = ProgramBinaryCache.DEFAULT_MAX_SIZE; // 0 to always compile
+
     /**
      * Scene caching stores all textures and relevant OpenGL-specific
      * data. This is used when the OpenGL context needs to be restored.
@@ -108,7 +124,7 @@ public abstract class Renderer implements ISurfaceRenderer {
 
     protected final List<Scene>                     mScenes; //List of all scenes this renderer is aware of.
     protected final List<RenderTarget>              mRenderTargets; //List of all render targets this renderer is aware of.
-    private final Queue<AFrameTask>                 mFrameTaskQueue;
+    private final FrameTaskQueue                    mFrameTaskQueue;
     private final SparseArray<ModelRunnable>        mLoaderThreads;
     private final SparseArray<IAsyncLoaderCallback> mLoaderCallbacks;
 
@@ -160,15 +176,29 @@ public abstract class Renderer implements ISurfaceRenderer {
     }
 
     public Renderer(Context context, boolean registerForResources) {
+        this(context, registerForResources, IClock.NANO_TIME);
+    }
+
+    /**
+     * @param context              {@link Context} The context the renderer is running in.
+     * @param registerForResources {@code boolean} Whether to register with the texture and material managers now.
+     * @param clock                {@link IClock} The time source of frame times, frame task budgets and the idle
+     *                             timeout of rendering on demand, in nanoseconds. Tests pass a clock of their own.
+     */
+    public Renderer(Context context, boolean registerForResources, IClock clock) {
         RajLog.i("Rajawali | Bombshell | v1.1.777 Release ");
         RajLog.i("This is a stable release.");
         mHaveRegisteredForResources = registerForResources;
         mContext = context;
+        mClock = clock;
+        mStartTime = clock.now();
+        mFrameStats = new FrameStats(FrameStats.DEFAULT_CAPACITY, clock);
+        mRenderDirtyTracker = new RenderDirtyTracker(clock);
         RawShaderLoader.mContext = new WeakReference<>(context);
         mFrameRate = getRefreshRate();
         mScenes = Collections.synchronizedList(new CopyOnWriteArrayList<Scene>());
         mRenderTargets = Collections.synchronizedList(new CopyOnWriteArrayList<RenderTarget>());
-        mFrameTaskQueue = new LinkedList<>();
+        mFrameTaskQueue = new FrameTaskQueue(clock);
 
         mSceneCachingEnabled = true;
         mSceneInitialized = false;
@@ -202,6 +232,66 @@ public abstract class Renderer implements ISurfaceRenderer {
         return mContext;
     }
 
+    /**
+     * Returns the {@link GLStateCache} which shadows the GL state of this renderer's context.
+     *
+     * @return The {@link GLStateCache}.
+     */
+    public GLStateCache getGLStateCache() {
+        return mGLStateCache;
+    }
+
+    /**
+     * Returns the {@link FrameStats} which record the timings and counts of every frame.
+     *
+     * @return The {@link FrameStats}.
+     */
+    public FrameStats getFrameStats() {
+        return mFrameStats;
+    }
+
+    /**
+     * @return The {@link IClock} this renderer and its scenes take their time from.
+     */
+    public IClock getClock() {
+        return mClock;
+    }
+
+    /**
+     * Switches between rendering every frame and rendering on demand. On demand, the frame rate timer only requests a
+     * frame when transformations, cameras, lights, materials, animations or frame tasks changed something since the
+     * last frame, or when the idle timeout of the {@link RenderDirtyTracker} has not yet passed after the last
+     * animation. Changes which aren't reported, for instance to buffers or texture contents, need a call to
+     * {@link #requestRender()}.
+     *
+     * @param renderWhenDirty {@code boolean} True to render on demand.
+     */
+    public void setRenderWhenDirty(boolean renderWhenDirty) {
+        mRenderWhenDirty = renderWhenDirty;
+        mRenderDirtyTracker.markDirty();
+    }
+
+    public boolean isRenderWhenDirty() {
+        return mRenderWhenDirty;
+    }
+
+    /**
+     * Requests a frame when rendering on demand. Has no effect otherwise, every frame is drawn anyway.
+     */
+    public void requestRender() {
+        mRenderDirtyTracker.markDirty();
+    }
+
+    /**
+     * Returns the {@link RenderDirtyTracker} which decides when frames are drawn while rendering on demand, for
+     * instance to change its idle timeout.
+     *
+     * @return The {@link RenderDirtyTracker}.
+     */
+    public RenderDirtyTracker getRenderDirtyTracker() {
+        return mRenderDirtyTracker;
+    }
+
     public TextureManager getTextureManager() {
         return mTextureManager;
     }
@@ -242,6 +332,7 @@ public abstract class Renderer implements ISurfaceRenderer {
 
     @Override
     public void onResume() {
+        mRenderDirtyTracker.markDirty();
         if (mSceneInitialized) {
             getCurrentScene().resetGLState();
             startRendering();
@@ -253,7 +344,7 @@ public abstract class Renderer implements ISurfaceRenderer {
         if (!mSceneInitialized) {
             return;
         }
-        mRenderStartTime = System.nanoTime();
+        mRenderStartTime = mClock.now();
         mLastRender = mRenderStartTime;
         if (mTimer != null) return;
         mTimer = Executors.newScheduledThreadPool(1);
@@ -300,6 +391,11 @@ public abstract class Renderer implements ISurfaceRenderer {
 
     @Override
     public void onRenderSurfaceCreated(EGLConfig config, GL10 gl, int width, int height) {
+        // The context is new, nothing the cache knows about the previous one applies
+        mMaterialManager.getProgramCache().forget(mGLStateCache.getContextId());
+        mGLStateCache.reset();
+        GLStateCache.makeCurrent(mGLStateCache);
+
         Capabilities.getInstance();
 
         String[] versionString = (GLES20.glGetString(GLES20.GL_VERSION)).split(" ");
@@ -313,6 +409,9 @@ public abstract class Renderer implements ISurfaceRenderer {
             }
         }
         RajLog.d(String.format(Locale.US, "Derived GL ES Version: %d.%d", mGLES_Major_Version, mGLES_Minor_Version));
+        mGLStateCache.setVertexArraysSupported(mGLES_Major_Version >= 3);
+        mTextureUploadQueue.setPixelBuffersSupported(mGLES_Major_Version >= 3);
+        mMaterialManager.getProgramCache().setBinaryCache(mGLStateCache.getContextId(), createProgramBinaryCache());
 
         if (!mHaveRegisteredForResources) {
             mTextureManager.registerRenderer(this);
@@ -346,6 +445,10 @@ public abstract class Renderer implements ISurfaceRenderer {
         final int hViewport = mOverrideViewportHeight > -1 ? mOverrideViewportHeight : mDefaultViewportHeight;
         setViewPort(wViewport, hViewport);
 
+        GLStateCache.makeCurrent(mGLStateCache);
+        mGLStateCache.invalidate();
+        mRenderDirtyTracker.markDirty();
+
         if (!mSceneInitialized) {
             getCurrentScene().resetGLState();
             initScene();
@@ -374,7 +477,20 @@ public abstract class Renderer implements ISurfaceRenderer {
 
     @Override
     public void onRenderFrame(GL10 gl) {
+        GLStateCache.makeCurrent(mGLStateCache);
+        mGLStateCache.onFrameStart();
+        mFrameStats.beginFrame();
+        mRenderDirtyTracker.onFrameStart();
+
+        final long mark = mFrameStats.mark();
         performFrameTasks(); //Execute any pending frame tasks
+        mTextureUploadQueue.run();
+        if (mTextureUploadQueue.getPendingCount() > 0) {
+            // -- keep drawing on demand until all textures are resident
+            mRenderDirtyTracker.markDirty();
+        }
+        mTextureManager.taskFrameStart();
+        mFrameStats.addPhase(FrameStats.Phase.FRAME_TASKS, mark);
         synchronized (mNextSceneLock) {
             //Check if we need to switch the scene, and if so, do it.
             if (mNextScene != null) {
@@ -383,16 +499,18 @@ public abstract class Renderer implements ISurfaceRenderer {
             }
         }
 
-        final long currentTime = System.nanoTime();
+        final long currentTime = mClock.now();
         final long elapsedRenderTime = currentTime - mRenderStartTime;
         final double deltaTime = (currentTime - mLastRender) / 1e9;
         mLastRender = currentTime;
 
         onRender(elapsedRenderTime, deltaTime);
+        mFrameStats.endFrame(mGLStateCache);
+        mRenderDirtyTracker.onFrameEnd(getCurrentScene().hasPlayingAnimations());
 
         ++mFrameCount;
         if (mFrameCount % 50 == 0) {
-            long now = System.nanoTime();
+            long now = mClock.now();
             double elapsedS = (now - mStartTime) / 1.0e9;
             double msPerFrame = (1000 * elapsedS / mFrameCount);
             mLastMeasuredFPS = 1000 / msPerFrame;
@@ -438,6 +556,37 @@ public abstract class Renderer implements ISurfaceRenderer {
         return mSceneCachingEnabled;
     }
 
+    /**
+     * Sets the size limit of the on-disk cache of linked program binaries, which spares compiling the shaders again
+     * on the next start of the app. Requires GLES 3.0 and a driver which supports at least one binary format. Takes
+     * effect when the surface is created.
+     *
+     * @param size {@code long} The size limit in bytes, 0 to always compile the shaders.
+     */
+    public void setProgramBinaryCacheSize(long size) {
+        mProgramBinaryCacheSize = Math.max(0, size);
+    }
+
+    public long getProgramBinaryCacheSize() {
+        return mProgramBinaryCacheSize;
+    }
+
+    /**
+     * Creates the program binary cache for the current context.
+     *
+     * @return The {@link ProgramBinaryCache}, or null if it is disabled or the context can't load binaries.
+     */
+    private ProgramBinaryCache createProgramBinaryCache() {
+        if (mProgramBinaryCacheSize == 0 || mGLES_Major_Version < 3) return null;
+        final int[] formats = new int[1];
+        GLES20.glGetIntegerv(GLES30.GL_NUM_PROGRAM_BINARY_FORMATS, formats, 0);
+        if (formats[0] == 0) return null;
+        final Capabilities capabilities = Capabilities.getInstance();
+        return new ProgramBinaryCache(new File(getContext().getCacheDir(), PROGRAM_BINARY_DIRECTORY),
+                ProgramBinaryCache.getDriver(capabilities.getRenderer(), capabilities.getVersion()),
+                mProgramBinaryCacheSize);
+    }
+
     public Vector3 unProject(double x, double y, double z) {
         x = mDefaultViewportWidth - x;
         y = mDefaultViewportHeight - y;
@@ -469,6 +618,12 @@ public abstract class Renderer implements ISurfaceRenderer {
                 .getRefreshRate();
     }
 
+    /**
+     * Sets a listener for the frame rate averaged over 50 frames. {@link #getFrameStats()} provides the time of
+     * every frame along with percentiles.
+     *
+     * @param listener
+     */
     public void setFPSUpdateListener(OnFPSUpdateListener listener) {
         mFPSUpdateListener = listener;
     }
@@ -568,6 +723,44 @@ public abstract class Renderer implements ISurfaceRenderer {
         return loader;
     }
 
+    /**
+     * Loads a texture without stalling the GL thread. The image is decoded on the loader executor, then uploaded by
+     * the {@link TextureUploadQueue} within its byte budget per frame. Until then the texture is bound to a
+     * placeholder, so it can be added to materials right away. The {@link TextureManager} leaves it to the queue
+     * until it is resident and manages it from then on.
+     *
+     * @param texture  The {@link ASingleTexture} to load, without a bitmap.
+     * @param source   The {@link TextureSource} to decode.
+     * @param callback The {@link IAsyncTextureCallback}, or null.
+     * @return A {@link Future} which completes when the texture is resident.
+     */
+    public Future<ASingleTexture> loadTexture(ASingleTexture texture, final TextureSource source,
+                                              IAsyncTextureCallback callback) {
+        texture.setTextureSource(source);
+        final TextureUploadQueue.Upload upload = mTextureUploadQueue.request(texture, callback);
+        mRenderDirtyTracker.markDirty();
+        mLoaderExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                if (upload.isCancelled()) return;
+                try {
+                    source.decode(upload);
+                } catch (Exception e) {
+                    upload.setError(e);
+                }
+                mRenderDirtyTracker.markDirty();
+            }
+        });
+        return upload;
+    }
+
+    /**
+     * @return The {@link TextureUploadQueue}, for instance to change its byte budget.
+     */
+    public TextureUploadQueue getTextureUploadQueue() {
+        return mTextureUploadQueue;
+    }
+
     /**
      * Create and add an {@link ALoader} instance using reflection to queue parsing of the given resource ID. Use
      * {@link IAsyncLoaderCallback#onModelLoadComplete(ALoader)}, {@link IAsyncLoaderCallback#onModelLoadFailed(ALoader)}
@@ -630,6 +823,7 @@ public abstract class Renderer implements ISurfaceRenderer {
         synchronized (mNextSceneLock) {
             mNextScene = scene;
         }
+        mRenderDirtyTracker.markDirty();
     }
 
     /**
@@ -1018,26 +1212,34 @@ public abstract class Renderer implements ISurfaceRenderer {
     }
 
     protected boolean internalOfferTask(AFrameTask task) {
-        synchronized (mFrameTaskQueue) {
-            return mFrameTaskQueue.offer(task);
-        }
+        mRenderDirtyTracker.markDirty();
+        return mFrameTaskQueue.offer(task);
     }
 
     protected void performFrameTasks() {
-        synchronized (mFrameTaskQueue) {
-            //Fetch the first task
-            AFrameTask task = mFrameTaskQueue.poll();
-            while (task != null) {
-                task.run();
-                //Retrieve the next task
-                task = mFrameTaskQueue.poll();
-            }
+        mFrameTaskQueue.run();
+        if (mFrameTaskQueue.getDepth() > 0) {
+            // Tasks carried over by the time budget still need frames
+            mRenderDirtyTracker.markDirty();
         }
     }
 
-    private class RequestRenderTask implements Runnable {
+    /**
+     * Retrieves the queue of tasks this renderer runs on the GL thread at the start of each frame, for instance to set
+     * a time budget, to offer several tasks at once or to read the queue depth. Tasks must only be run by the renderer.
+     *
+     * @return The {@link FrameTaskQueue} instance.
+     */
+    public FrameTaskQueue getFrameTaskQueue() {
+        return mFrameTaskQueue;
+    }
+
+    /**
+     * Run by the frame rate timer. Requests a frame from the surface, unless rendering on demand and nothing changed.
+     */
+    class RequestRenderTask implements Runnable {
         public void run() {
-            if (mSurface != null) {
+            if (mSurface != null && (!mRenderWhenDirty || mRenderDirtyTracker.shouldRender())) {
                 mSurface.requestRenderUpdate();
             }
         }
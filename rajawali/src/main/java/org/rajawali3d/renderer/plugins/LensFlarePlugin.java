@@ -20,6 +20,7 @@ import org.rajawali3d.materials.textures.ASingleTexture;
 import org.rajawali3d.math.Matrix4;
 import org.rajawali3d.math.vector.Vector2;
 import org.rajawali3d.math.vector.Vector3;
+import org.rajawali3d.renderer.GLStateCache;
 import org.rajawali3d.renderer.Renderer;
 
 import java.util.Stack;
@@ -310,28 +311,29 @@ public final class LensFlarePlugin extends Plugin {
 		Camera camera = mRenderer.getCurrentScene().getCamera();
 		Matrix4 viewMatrix = camera.getViewMatrix().clone(), projMatrix = camera.getProjectionMatrix().clone();
 
+		final GLStateCache cache = GLStateCache.getCurrent();
 		useProgram(mProgram);
 
 		// Push the VBOs to the GPU.
-		GLES20.glBindBuffer(GLES20.GL_ARRAY_BUFFER, mGeometry.getVertexBufferInfo().bufferHandle);
-		GLES20.glEnableVertexAttribArray(maPositionHandle);
+		cache.bindBuffer(GLES20.GL_ARRAY_BUFFER, mGeometry.getVertexBufferInfo().bufferHandle);
+		cache.enableVertexAttribArray(maPositionHandle);
 		GLES20.glVertexAttribPointer(maPositionHandle, 2, GLES20.GL_FLOAT, false, 0, 0);
-		GLES20.glBindBuffer(GLES20.GL_ARRAY_BUFFER, 0);
+		cache.bindBuffer(GLES20.GL_ARRAY_BUFFER, 0);
 
 		// Push texture coordinates to the GPU.
-		GLES20.glBindBuffer(GLES20.GL_ARRAY_BUFFER, mGeometry.getTexCoordBufferInfo().bufferHandle);
-		GLES20.glEnableVertexAttribArray(maTextureCoordHandle);
+		cache.bindBuffer(GLES20.GL_ARRAY_BUFFER, mGeometry.getTexCoordBufferInfo().bufferHandle);
+		cache.enableVertexAttribArray(maTextureCoordHandle);
 		GLES20.glVertexAttribPointer(maTextureCoordHandle, 2, GLES20.GL_FLOAT, false, 0, 0);
 
 		// Push vertex element indices to the GPU.
-		GLES20.glBindBuffer(GLES20.GL_ELEMENT_ARRAY_BUFFER, mGeometry.getIndexBufferInfo().bufferHandle);
+		cache.bindBuffer(GLES20.GL_ELEMENT_ARRAY_BUFFER, mGeometry.getIndexBufferInfo().bufferHandle);
 
 		// Set up texture locations.
 		GLES20.glUniform1i(muOcclusionMapTextureHandle, 0);
 		GLES20.glUniform1i(muMapTextureHandle, 1);
 
-		GLES20.glDisable(GLES20.GL_CULL_FACE);
-		GLES20.glDepthMask(false);
+		cache.disable(GLES20.GL_CULL_FACE);
+		cache.depthMask(false);
 
 		// Calculate camera direction vector.
 		Vector3 cameraPosition = camera.getPosition().clone();
@@ -367,8 +369,8 @@ public final class LensFlarePlugin extends Plugin {
 						screenPositionPixels_x > -64 && screenPositionPixels_x < viewportWidth + 64 &&
 						screenPositionPixels_y > -64 && screenPositionPixels_y < viewportHeight + 64)) {
 					// Bind current framebuffer to texture.
-					GLES20.glActiveTexture(GLES20.GL_TEXTURE1);
-					GLES20.glBindTexture(GLES20.GL_TEXTURE_2D, mMapTexture.getTextureId());
+					cache.activeTexture(GLES20.GL_TEXTURE1);
+					cache.bindTexture(GLES20.GL_TEXTURE_2D, mMapTexture.getTextureId());
 					GLES20.glCopyTexImage2D(GLES20.GL_TEXTURE_2D, 0, GLES20.GL_RGB,
 							(int)screenPositionPixels_x - 8, (int)screenPositionPixels_y - 8, 16, 16, 0);
 
@@ -377,23 +379,23 @@ public final class LensFlarePlugin extends Plugin {
 					GLES20.glUniform2fv(muScaleHandle, 1, new float[] { (float) scale.getX(), (float) scale.getY() }, 0);
 					GLES20.glUniform3fv(muScreenPositionHandle, 1, new float[] { (float) screenPosition.x, (float) screenPosition.y, (float) screenPosition.z }, 0);
 
-					GLES20.glDisable(GLES20.GL_BLEND);
-					GLES20.glEnable(GLES20.GL_DEPTH_TEST);
+					cache.disable(GLES20.GL_BLEND);
+					cache.enable(GLES20.GL_DEPTH_TEST);
 
 					GLES20.glDrawElements(GLES20.GL_TRIANGLES, 6, GLES20.GL_UNSIGNED_INT, 0);
 
 					// Copy result to occlusion map.
-					GLES20.glActiveTexture(GLES20.GL_TEXTURE0);
-					GLES20.glBindTexture(GLES20.GL_TEXTURE_2D, mOcclusionMapTexture.getTextureId());
+					cache.activeTexture(GLES20.GL_TEXTURE0);
+					cache.bindTexture(GLES20.GL_TEXTURE_2D, mOcclusionMapTexture.getTextureId());
 					GLES20.glCopyTexImage2D(GLES20.GL_TEXTURE_2D, 0, GLES20.GL_RGBA,
 							(int)screenPositionPixels_x - 8, (int)screenPositionPixels_y - 8, 16, 16, 0);
 
 					// Second render pass.
 					GLES20.glUniform1i(muRenderTypeHandle, 2);
-					GLES20.glDisable(GLES20.GL_DEPTH_TEST);
+					cache.disable(GLES20.GL_DEPTH_TEST);
 
-					GLES20.glActiveTexture(GLES20.GL_TEXTURE1);
-					GLES20.glBindTexture(GLES20.GL_TEXTURE_2D, mMapTexture.getTextureId());
+					cache.activeTexture(GLES20.GL_TEXTURE1);
+					cache.bindTexture(GLES20.GL_TEXTURE_2D, mMapTexture.getTextureId());
 					GLES20.glDrawElements(GLES20.GL_TRIANGLES, 6, GLES20.GL_UNSIGNED_INT, 0);
 
 					// Update the flare's screen positions.
@@ -402,7 +404,7 @@ public final class LensFlarePlugin extends Plugin {
 
 					// Third render pass.
 					GLES20.glUniform1i(muRenderTypeHandle, 3);
-					GLES20.glEnable(GLES20.GL_BLEND);
+					cache.enable(GLES20.GL_BLEND);
 
 					// DEBUG - Shows the current uMap and uOcclusionMap textures on screen.
 					// NOTE: UNCOMMENT IF THE LENS FLARE DOES NOT GET OCCLUDED.
@@ -449,29 +451,28 @@ public final class LensFlarePlugin extends Plugin {
 							GLES20.glUniform1f(muOpacityHandle, (float) sprite.getOpacity());
 							GLES20.glUniform3fv(muColorHandle, 1, new float[] { (float) sprite.getColor().x, (float) sprite.getColor().y, (float) sprite.getColor().z }, 0);
 
-							GLES20.glActiveTexture(GLES20.GL_TEXTURE1);
-							GLES20.glBindTexture(GLES20.GL_TEXTURE_2D, sprite.getTexture().getTextureId());
+							cache.activeTexture(GLES20.GL_TEXTURE1);
+							cache.bindTexture(GLES20.GL_TEXTURE_2D, sprite.getTexture().getTextureId());
 
 							//GLES20.glBlendEquation(GLES20.GL_FUNC_ADD);
-							GLES20.glBlendFunc(GLES20.GL_SRC_ALPHA, GLES20.GL_ONE);
+							cache.blendFunc(GLES20.GL_SRC_ALPHA, GLES20.GL_ONE);
 
 							// Draw the elements.
 							GLES20.glDrawElements(GLES20.GL_TRIANGLES, mGeometry.getNumIndices(),
 												  GLES20.GL_UNSIGNED_INT, 0);
-
-							// Unbind texture.
-							GLES20.glBindTexture(GLES20.GL_TEXTURE_2D, 0);
-							GLES20.glBindBuffer(GLES20.GL_ARRAY_BUFFER, 0);
 						}
 					}
 				}
 			}
 		}
-		// Unbind element array.
-		GLES20.glBindBuffer(GLES20.GL_ELEMENT_ARRAY_BUFFER, 0);
-		GLES20.glEnable(GLES20.GL_CULL_FACE);
-		GLES20.glEnable(GLES20.GL_DEPTH_TEST);
-		GLES20.glDepthMask(true);
+		// Unbind textures and buffers.
+		cache.bindTexture(1, GLES20.GL_TEXTURE_2D, 0);
+		cache.bindTexture(0, GLES20.GL_TEXTURE_2D, 0);
+		cache.bindBuffer(GLES20.GL_ARRAY_BUFFER, 0);
+		cache.bindBuffer(GLES20.GL_ELEMENT_ARRAY_BUFFER, 0);
+		cache.enable(GLES20.GL_CULL_FACE);
+		cache.enable(GLES20.GL_DEPTH_TEST);
+		cache.depthMask(true);
 	}
 
 	@Override
@@ -15,6 +15,7 @@ package org.rajawali3d.renderer.plugins;
 import android.opengl.GLES20;
 
 import org.rajawali3d.Geometry3D;
+import org.rajawali3d.renderer.GLStateCache;
 import org.rajawali3d.renderer.Renderer;
 import org.rajawali3d.util.RajLog;
 
@@ -162,6 +163,7 @@ public abstract class Plugin implements IRendererPlugin {
 		GLES20.glDeleteShader(mVShaderHandle);
 		GLES20.glDeleteShader(mFShaderHandle);
 		GLES20.glDeleteProgram(mProgram);
+		GLStateCache.getCurrent().onProgramDeleted(mProgram);
 	}
 
 	protected void useProgram(int programHandle) {
@@ -169,6 +171,6 @@ public abstract class Plugin implements IRendererPlugin {
 			reload();
 		}
 		// Signal that we'll be using the shader program.
-		GLES20.glUseProgram(programHandle);
+		GLStateCache.getCurrent().useProgram(programHandle);
 	}
 }
@@ -0,0 +1,441 @@
+/**
+ * Copyright 2013 Dennis Ippel
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package org.rajawali3d.scene;
+
+import org.rajawali3d.Object3D;
+import org.rajawali3d.materials.Material;
+import org.rajawali3d.math.Matrix4;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * Per-frame list of draw items which is sorted by a packed 64 bit key before submission. Sorting groups draws that
+ * share a program, texture set and geometry so that the expensive state changes are only issued when the key
+ * actually changes instead of once per object.
+ *
+ * Key layout for opaque items, from the most significant bit down:
+ * <pre>
+ * | 0 | layer (7) | 0 | program (12) | texture set (12) | geometry (12) | depth, front to back (19) |
+ * </pre>
+ * Transparent items sort after all opaque items of the same layer and are ordered back to front first:
+ * <pre>
+ * | 0 | layer (7) | 1 | depth, back to front (24) | program (12) | texture set (10) | geometry (9) |
+ * </pre>
+ *
+ * Program, texture set and geometry only need to be stable for a frame, they are folded into the available bits.
+ * Collisions only affect the quality of the ordering, never correctness, since {@link #submit(ISubmitter)} compares
+ * the actual program handles and texture lists before skipping a bind.
+ */
+public class RenderQueue {
+
+    public static final int MAX_LAYER = 0x7F;
+
+    private static final int LAYER_SHIFT = 56;
+    private static final int TRANSPARENT_SHIFT = 55;
+
+    private static final int OPAQUE_PROGRAM_BITS = 12;
+    private static final int OPAQUE_TEXTURE_BITS = 12;
+    private static final int OPAQUE_GEOMETRY_BITS = 12;
+    private static final int OPAQUE_DEPTH_BITS = 19;
+
+    private static final int TRANSPARENT_DEPTH_BITS = 24;
+    private static final int TRANSPARENT_PROGRAM_BITS = 12;
+    private static final int TRANSPARENT_TEXTURE_BITS = 10;
+    private static final int TRANSPARENT_GEOMETRY_BITS = 9;
+
+    /**
+     * Receives the sorted draw items. The {@link Scene} implementation issues the GL calls, tests can count them.
+     */
+    public interface ISubmitter {
+        /**
+         * Draws a single item.
+         *
+         * @param item         The {@link DrawItem} to draw.
+         * @param useProgram   Whether the item's material has to be made current, see {@link Material#useProgram()}.
+         * @param bindTextures Whether the textures of the item's material have to be bound.
+         */
+        void draw(DrawItem item, boolean useProgram, boolean bindTextures);
+
+        /**
+         * Called when the textures of a material are no longer needed, either because the queue has been fully
+         * submitted or because an immediate item is about to take over the GL state.
+         *
+         * @param material The {@link Material} whose textures were bound last.
+         */
+        void unbindTextures(Material material);
+    }
+
+    /**
+     * A single entry of the queue. Instances are pooled and reused from frame to frame.
+     */
+    public static final class DrawItem {
+        public long key;
+        public Object3D object;
+        public Material material;
+        /**
+         * The matrix of the parent of {@link #object}, only used for immediate items.
+         */
+        public Matrix4 parentMatrix;
+        public int program;
+        public int textureSet;
+        public int geometry;
+        public double depth;
+        public boolean transparent;
+        /**
+         * Immediate items are drawn through {@link Object3D#render}, they take care of their own GL state. This is used
+         * for batched hierarchies which share state between a parent and its children.
+         */
+        public boolean immediate;
+
+        void reset() {
+            object = null;
+            material = null;
+            parentMatrix = null;
+        }
+
+        void set(DrawItem other) {
+            key = other.key;
+            object = other.object;
+            material = other.material;
+            parentMatrix = other.parentMatrix;
+            program = other.program;
+            textureSet = other.textureSet;
+            geometry = other.geometry;
+            depth = other.depth;
+            transparent = other.transparent;
+            immediate = other.immediate;
+        }
+    }
+
+    private static final Comparator<DrawItem> KEY_COMPARATOR = new Comparator<DrawItem>() {
+        @Override
+        public int compare(DrawItem lhs, DrawItem rhs) {
+            // Long.compare() is not available on all supported API levels
+            return lhs.key < rhs.key ? -1 : (lhs.key == rhs.key ? 0 : 1);
+        }
+    };
+
+    private DrawItem[] mItems = new DrawItem[64];
+    private int mSize;
+    private final List<Object3D> mBoundingVolumes = new ArrayList<>();
+    private int mCulledCount;
+
+    private int mProgramSwitches;
+    private int mTextureSwitches;
+    private int mDrawCount;
+
+    /**
+     * Removes all items. Pooled items release their object references so destroyed objects can be collected.
+     */
+    public void clear() {
+        for (int i = 0; i < mSize; ++i) {
+            mItems[i].reset();
+        }
+        mSize = 0;
+        mBoundingVolumes.clear();
+        mCulledCount = 0;
+    }
+
+    /**
+     * Adds an object which is drawn with its own material. The sort key is derived from the object's render layer,
+     * blending state, the material's program and textures and the object's vertex buffer.
+     *
+     * @param object   The {@link Object3D} to draw.
+     * @param material The {@link Material} to draw it with.
+     * @param depth    The view space distance of the object to the camera.
+     *
+     * @return The queued {@link DrawItem}.
+     */
+    public DrawItem add(Object3D object, Material material, double depth) {
+        return add(object, material, object.getRenderLayer(), object.isBlendingEnabled(),
+                   material.getProgramHandle(), material.getTextureSetHash(),
+                   object.getGeometry().getVertexBufferInfo() == null ? 0
+                           : object.getGeometry().getVertexBufferInfo().bufferHandle, depth);
+    }
+
+    /**
+     * Adds an item with explicit sort criteria.
+     *
+     * @param object      The {@link Object3D} to draw. May be {@code null} if the {@link ISubmitter} doesn't need it.
+     * @param material    The {@link Material} to draw with.
+     * @param layer       The render layer, between 0 and {@link #MAX_LAYER}. Lower layers are drawn first.
+     * @param transparent Whether the item is blended and has to be drawn back to front.
+     * @param program     The program handle of the material.
+     * @param textureSet  An identifier of the set of textures used by the material.
+     * @param geometry    An identifier of the geometry, typically the vertex buffer handle.
+     * @param depth       The view space distance of the item to the camera.
+     *
+     * @return The queued {@link DrawItem}.
+     */
+    public DrawItem add(Object3D object, Material material, int layer, boolean transparent, int program,
+                        int textureSet, int geometry, double depth) {
+        final DrawItem item = obtain();
+        item.object = object;
+        item.material = material;
+        item.parentMatrix = null;
+        item.program = program;
+        item.textureSet = textureSet;
+        item.geometry = geometry;
+        item.depth = depth;
+        item.transparent = transparent;
+        item.immediate = false;
+        item.key = makeKey(layer, transparent, program, textureSet, geometry, depth);
+        return item;
+    }
+
+    /**
+     * Adds an object which renders itself, including its children, through
+     * {@link Object3D#render(org.rajawali3d.cameras.Camera, Matrix4, Matrix4, Matrix4, Matrix4, Material)}.
+     *
+     * @param object       The {@link Object3D} to draw.
+     * @param parentMatrix The model matrix of the object's parent, may be {@code null}.
+     * @param depth        The view space distance of the object to the camera.
+     *
+     * @return The queued {@link DrawItem}.
+     */
+    public DrawItem addImmediate(Object3D object, Matrix4 parentMatrix, double depth) {
+        final Material material = object.getMaterial();
+        final int program = material == null ? 0 : material.getProgramHandle();
+        final DrawItem item = add(object, material, object.getRenderLayer(), object.isBlendingEnabled(), program, 0, 0,
+                                  depth);
+        item.parentMatrix = parentMatrix;
+        item.immediate = true;
+        return item;
+    }
+
+    /**
+     * Appends the items of another queue, in their current order. The items are copied, the other queue is left
+     * untouched.
+     *
+     * @param other The {@link RenderQueue} to copy the items from.
+     */
+    public void addAll(RenderQueue other) {
+        for (int i = 0; i < other.mSize; ++i) {
+            obtain().set(other.mItems[i]);
+        }
+        mBoundingVolumes.addAll(other.mBoundingVolumes);
+        mCulledCount += other.mCulledCount;
+    }
+
+    /**
+     * Counts an object which was not queued because it failed its frustum test.
+     */
+    public void countCulled() {
+        ++mCulledCount;
+    }
+
+    /**
+     * @return The number of objects counted with {@link #countCulled()} since the queue was cleared.
+     */
+    public int getCulledCount() {
+        return mCulledCount;
+    }
+
+    /**
+     * Adds an object whose bounding volumes have to be drawn. They are not part of the sorted items, the owner of the
+     * queue draws them after {@link #submit(ISubmitter)}.
+     *
+     * @param object The {@link Object3D} which shows its bounding volumes.
+     */
+    public void addBoundingVolume(Object3D object) {
+        mBoundingVolumes.add(object);
+    }
+
+    /**
+     * @return The number of objects added with {@link #addBoundingVolume(Object3D)}.
+     */
+    public int getBoundingVolumeCount() {
+        return mBoundingVolumes.size();
+    }
+
+    /**
+     * @param index The index of the object, in the order the objects were added.
+     *
+     * @return The {@link Object3D} whose bounding volumes have to be drawn.
+     */
+    public Object3D getBoundingVolume(int index) {
+        return mBoundingVolumes.get(index);
+    }
+
+    /**
+     * Sorts the queued items by their keys.
+     */
+    public void sort() {
+        Arrays.sort(mItems, 0, mSize, KEY_COMPARATOR);
+    }
+
+    /**
+     * Walks the items in their current order and hands them to the submitter, flagging program and texture binds only
+     * when they differ from the previously drawn item. Every change of material is flagged as a program bind, so the
+     * material can rebuild its shaders, even if it shares the program of the previous one.
+     *
+     * @param submitter The {@link ISubmitter} which issues the draw calls.
+     */
+    public void submit(ISubmitter submitter) {
+        mProgramSwitches = 0;
+        mTextureSwitches = 0;
+        mDrawCount = 0;
+
+        Material currentMaterial = null;
+        int currentProgram = 0;
+
+        for (int i = 0; i < mSize; ++i) {
+            final DrawItem item = mItems[i];
+            if (item.immediate) {
+                if (currentMaterial != null) {
+                    submitter.unbindTextures(currentMaterial);
+                }
+                submitter.draw(item, true, true);
+                ++mProgramSwitches;
+                ++mTextureSwitches;
+                ++mDrawCount;
+                // The object has left the GL state in an unknown configuration
+                currentMaterial = null;
+                currentProgram = 0;
+                continue;
+            }
+
+            // A program handle below 1 means the material hasn't been compiled yet. It has to be made current so the
+            // material gets a chance to build its shaders.
+            final boolean switchProgram = item.program < 1 || item.program != currentProgram
+                                          || currentMaterial == null;
+            // Materials sharing a program are still made current, which is where a dirty material rebuilds its
+            // shaders. The GLStateCache drops the glUseProgram itself.
+            final boolean useProgram = switchProgram || item.material != currentMaterial;
+            final boolean bindTextures = switchProgram || (item.material != currentMaterial
+                                                           && !item.material.usesSameTexturesAs(currentMaterial));
+            if (switchProgram) ++mProgramSwitches;
+            if (bindTextures) ++mTextureSwitches;
+
+            submitter.draw(item, useProgram, bindTextures);
+            ++mDrawCount;
+
+            currentMaterial = item.material;
+            currentProgram = item.program;
+        }
+
+        if (currentMaterial != null) {
+            submitter.unbindTextures(currentMaterial);
+        }
+    }
+
+    /**
+     * @return The number of queued items.
+     */
+    public int size() {
+        return mSize;
+    }
+
+    /**
+     * @param index The index of the item, in submission order after {@link #sort()}.
+     *
+     * @return The {@link DrawItem} at the index.
+     */
+    public DrawItem get(int index) {
+        if (index < 0 || index >= mSize) {
+            throw new IndexOutOfBoundsException("Index " + index + " is out of bounds for size " + mSize);
+        }
+        return mItems[index];
+    }
+
+    /**
+     * @return The number of times a program was made current during the last {@link #submit(ISubmitter)}.
+     */
+    public int getProgramSwitches() {
+        return mProgramSwitches;
+    }
+
+    /**
+     * @return The number of times a texture set was bound during the last {@link #submit(ISubmitter)}.
+     */
+    public int getTextureSwitches() {
+        return mTextureSwitches;
+    }
+
+    /**
+     * @return The number of items drawn during the last {@link #submit(ISubmitter)}.
+     */
+    public int getDrawCount() {
+        return mDrawCount;
+    }
+
+    /**
+     * Packs the sort criteria into a single key. See the class documentation for the layout.
+     *
+     * @param layer       The render layer, between 0 and {@link #MAX_LAYER}.
+     * @param transparent Whether the item is blended.
+     * @param program     The program handle.
+     * @param textureSet  The texture set identifier.
+     * @param geometry    The geometry identifier.
+     * @param depth       The view space distance to the camera. Negative values are clamped to 0.
+     *
+     * @return The packed key.
+     */
+    public static long makeKey(int layer, boolean transparent, int program, int textureSet, int geometry,
+                               double depth) {
+        if (layer < 0 || layer > MAX_LAYER) {
+            throw new IllegalArgumentException("Render layer must be between 0 and " + MAX_LAYER + ", was " + layer);
+        }
+        long key = ((long) layer) << LAYER_SHIFT;
+        if (!transparent) {
+            key |= fold(program, OPAQUE_PROGRAM_BITS)
+                   << (OPAQUE_TEXTURE_BITS + OPAQUE_GEOMETRY_BITS + OPAQUE_DEPTH_BITS);
+            key |= fold(textureSet, OPAQUE_TEXTURE_BITS) << (OPAQUE_GEOMETRY_BITS + OPAQUE_DEPTH_BITS);
+            key |= fold(geometry, OPAQUE_GEOMETRY_BITS) << OPAQUE_DEPTH_BITS;
+            key |= quantizeDepth(depth, OPAQUE_DEPTH_BITS);
+        } else {
+            key |= 1L << TRANSPARENT_SHIFT;
+            final long mask = (1L << TRANSPARENT_DEPTH_BITS) - 1;
+            // Invert the depth so that the furthest items come first
+            key |= (mask - quantizeDepth(depth, TRANSPARENT_DEPTH_BITS))
+                   << (TRANSPARENT_PROGRAM_BITS + TRANSPARENT_TEXTURE_BITS + TRANSPARENT_GEOMETRY_BITS);
+            key |= fold(program, TRANSPARENT_PROGRAM_BITS) << (TRANSPARENT_TEXTURE_BITS + TRANSPARENT_GEOMETRY_BITS);
+            key |= fold(textureSet, TRANSPARENT_TEXTURE_BITS) << TRANSPARENT_GEOMETRY_BITS;
+            key |= fold(geometry, TRANSPARENT_GEOMETRY_BITS);
+        }
+        return key;
+    }
+
+    /**
+     * Folds an identifier into the requested number of bits. Small values, such as GL handles, map onto themselves.
+     */
+    private static long fold(int value, int bits) {
+        final int mask = (1 << bits) - 1;
+        return (value ^ (value >>> bits) ^ (value >>> (bits << 1))) & mask;
+    }
+
+    /**
+     * Quantizes a non negative depth while preserving its order. The bit pattern of a positive IEEE 754 float grows
+     * monotonically with its value, so the top bits of the pattern are a logarithmic quantization of the depth.
+     */
+    private static long quantizeDepth(double depth, int bits) {
+        final float clamped = depth > 0 ? (float) depth : 0f;
+        return (Float.floatToRawIntBits(clamped) >>> (31 - bits)) & ((1L << bits) - 1);
+    }
+
+    private DrawItem obtain() {
+        if (mSize == mItems.length) {
+            mItems = Arrays.copyOf(mItems, mSize << 1);
+        }
+        DrawItem item = mItems[mSize];
+        if (item == null) {
+            item = new DrawItem();
+            mItems[mSize] = item;
+        }
+        ++mSize;
+        return item;
+    }
+}
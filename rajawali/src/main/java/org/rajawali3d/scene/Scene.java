@@ -32,12 +32,16 @@ import org.rajawali3d.math.Matrix4;
 import org.rajawali3d.math.vector.Vector3;
 import org.rajawali3d.primitives.Cube;
 import org.rajawali3d.renderer.AFrameTask;
+import org.rajawali3d.renderer.FrameTaskQueue;
+import org.rajawali3d.renderer.FrameStats;
+import org.rajawali3d.renderer.GLStateCache;
 import org.rajawali3d.renderer.Renderer;
 import org.rajawali3d.renderer.RenderTarget;
 import org.rajawali3d.renderer.plugins.IRendererPlugin;
 import org.rajawali3d.renderer.plugins.Plugin;
 import org.rajawali3d.scenegraph.IGraphNode;
 import org.rajawali3d.scenegraph.IGraphNode.GRAPH_TYPE;
+import org.rajawali3d.scenegraph.IGraphNodeMember;
 import org.rajawali3d.scenegraph.Octree;
 import org.rajawali3d.view.ISurface;
 import org.rajawali3d.util.ObjectColorPicker;
@@ -47,7 +51,6 @@ import org.rajawali3d.util.RajLog;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
-import java.util.LinkedList;
 import java.util.List;
 import java.util.concurrent.CopyOnWriteArrayList;
 
@@ -86,7 +89,7 @@ public class Scene {
 	protected ATexture mSkyboxTexture;
 
     /**
-     * Guarded by {@link #mFrameTaskQueue}.
+     * Set from any thread, cleared by the render thread before it updates the materials.
      */
 	private volatile boolean                mLightsDirty;
 	protected volatile ColorPickerInfo      mPickerInfo;
@@ -126,13 +129,43 @@ public class Scene {
 	 * handle the necessary operations at an appropriate time, ensuring
 	 * thread safety and general correct operation.
 	 *
-	 * Guarded by itself
+	 * Lock free, tasks are only run by the render thread.
 	 */
-	private final LinkedList<AFrameTask> mFrameTaskQueue;
+	private final FrameTaskQueue mFrameTaskQueue;
+
+	/**
+	 * Per frame queue of draw items, only used when {@link #mRenderQueueEnabled} is set.
+	 * Only accessed by the GL thread.
+	 */
+	private final RenderQueue mRenderQueue = new RenderQueue();
+	private final RenderQueue.ISubmitter mRenderQueueSubmitter = new RenderQueue.ISubmitter() {
+		@Override
+		public void draw(RenderQueue.DrawItem item, boolean useProgram, boolean bindTextures) {
+			if (item.immediate) {
+				item.object.render(mCamera, mVPMatrix, mPMatrix, mVMatrix, item.parentMatrix, null);
+			} else {
+				item.object.renderQueued(mCamera, item.material, useProgram, bindTextures);
+			}
+		}
+
+		@Override
+		public void unbindTextures(Material material) {
+			material.unbindTextures();
+		}
+	};
+	protected volatile boolean mRenderQueueEnabled = false;
+	/**
+	 * Runs the update and cull phase on several threads if set.
+	 */
+	protected volatile SceneUpdater mSceneUpdater;
+	private final List<Object3D> mVisibleObjects = new ArrayList<>(); //Roots handed to the scene updater
+	private volatile boolean mAnimationsPlaying; //Whether any animation was still playing after the last frame
 
 	protected boolean mDisplaySceneGraph = false;
 	protected IGraphNode mSceneGraph; //The scenegraph for this scene
 	protected GRAPH_TYPE mSceneGraphType = GRAPH_TYPE.NONE; //The type of graph type for this scene.
+	protected volatile boolean mSceneGraphCullingEnabled = false;
+	private final List<IGraphNodeMember> mVisibleMembers = new ArrayList<>(); //Members which survived the last cull
 
 	public Scene(Renderer renderer) {
 		mRenderer = renderer;
@@ -145,7 +178,7 @@ public class Scene {
 		mPlugins = Collections.synchronizedList(new CopyOnWriteArrayList<IRendererPlugin>());
 		mCameras = Collections.synchronizedList(new CopyOnWriteArrayList<Camera>());
 		mLights = Collections.synchronizedList(new CopyOnWriteArrayList<ALight>());
-		mFrameTaskQueue = new LinkedList<>();
+		mFrameTaskQueue = new FrameTaskQueue(renderer.getClock());
 
 		mCamera = new Camera();
 		mCamera.setZ(mEyeZ);
@@ -426,8 +459,8 @@ public class Scene {
             protected void doTask() {
                 final Object3D old = mChildren.set(location, child);
                 if (mSceneGraph != null) {
-                    //mSceneGraph.removeObject(old);
-                    //mSceneGraph.addObject(child); //TODO: Uncomment
+                    mSceneGraph.removeObject(old);
+                    mSceneGraph.addObject(child);
                 }
             }
         };
@@ -447,8 +480,8 @@ public class Scene {
             protected void doTask() {
                 mChildren.set(mChildren.indexOf(oldChild), newChild);
                 if (mSceneGraph != null) {
-                    //mSceneGraph.removeObject(oldChild);
-                    //mSceneGraph.addObject(newChild); //TODO: Uncomment
+                    mSceneGraph.removeObject(oldChild);
+                    mSceneGraph.addObject(newChild);
                 }
             }
         };
@@ -468,7 +501,7 @@ public class Scene {
             protected void doTask() {
                 mChildren.add(child);
                 if (mSceneGraph != null) {
-                    //mSceneGraph.addObject(child); //TODO: Uncomment
+                    mSceneGraph.addObject(child);
                 }
             }
         };
@@ -489,7 +522,7 @@ public class Scene {
             protected void doTask() {
                 mChildren.add(index, child);
                 if (mSceneGraph != null) {
-                    //mSceneGraph.addObject(child); //TODO: Uncomment
+                    mSceneGraph.addObject(child);
                 }
             }
         };
@@ -508,7 +541,7 @@ public class Scene {
             protected void doTask() {
                 mChildren.addAll(children);
                 if (mSceneGraph != null) {
-                    //mSceneGraph.addObject(child); //TODO: Uncomment
+                    mSceneGraph.addObjects(new ArrayList<IGraphNodeMember>(children));
                 }
             }
         };
@@ -527,7 +560,7 @@ public class Scene {
             protected void doTask() {
                 mChildren.remove(child);
                 if (mSceneGraph != null) {
-                    //mSceneGraph.removeObject(child); //TODO: Uncomment
+                    mSceneGraph.removeObject(child);
                 }
             }
         };
@@ -543,9 +576,9 @@ public class Scene {
         final AFrameTask task = new AFrameTask() {
             @Override
             protected void doTask() {
-                /*if (mSceneGraph != null) {
+                if (mSceneGraph != null) {
                     mSceneGraph.removeObjects(new ArrayList<IGraphNodeMember>(mChildren));
-                }*/ //TODO: Uncomment
+                }
                 mChildren.clear();
             }
         };
@@ -734,6 +767,15 @@ public class Scene {
         return internalOfferTask(task);
 	}
 
+	/**
+	 * Indicates whether any animation of this scene was still playing when the last frame was rendered.
+	 *
+	 * @return {@code boolean} True if an animation is playing.
+	 */
+	public boolean hasPlayingAnimations() {
+		return mAnimationsPlaying;
+	}
+
 	/**
 	 * Removes all {@link Animation} objects from the scene.
 	 *
@@ -987,11 +1029,12 @@ public class Scene {
 	 * to change this default behavior can override this method.
 	 */
 	public void resetGLState() {
-		GLES20.glEnable(GLES20.GL_CULL_FACE);
-		GLES20.glCullFace(GLES20.GL_BACK);
-		GLES20.glFrontFace(GLES20.GL_CCW);
-		GLES20.glDisable(GLES20.GL_BLEND);
-		GLES20.glEnable(GLES20.GL_DEPTH_TEST);
+		final GLStateCache cache = GLStateCache.getCurrent();
+		cache.enable(GLES20.GL_CULL_FACE);
+		cache.cullFace(GLES20.GL_BACK);
+		cache.frontFace(GLES20.GL_CCW);
+		cache.disable(GLES20.GL_BLEND);
+		cache.enable(GLES20.GL_DEPTH_TEST);
 	}
 
 	public void render(long ellapsedTime, double deltaTime, RenderTarget renderTarget) {
@@ -999,6 +1042,10 @@ public class Scene {
 	}
 
 	public void render(long ellapsedTime, double deltaTime, RenderTarget renderTarget, Material sceneMaterial) {
+		// Anything which ran since the last scene was drawn may have changed GL state behind the cache's back
+		final GLStateCache cache = GLStateCache.getCurrent();
+		cache.invalidate();
+
 		// Scene color-picking requests are relative to the prior frame's render
 		// state, so handle any pending request before applying this frame's updates...
 		if (mPickerInfo != null) {
@@ -1007,14 +1054,16 @@ public class Scene {
 			mPickerInfo = null;
 		}
 
+		final FrameStats stats = mRenderer.getFrameStats();
+		long mark = stats.mark();
 		performFrameTasks(); //Handle the task queue
 
-        synchronized (mFrameTaskQueue) {
-            if (mLightsDirty) {
-                updateMaterialsWithLights();
-                mLightsDirty = false;
-            }
+        if (mLightsDirty) {
+            // Cleared first so a change made while the materials are updated isn't lost
+            mLightsDirty = false;
+            updateMaterialsWithLights();
         }
+		stats.addPhase(FrameStats.Phase.FRAME_TASKS, mark);
 
 		synchronized (mNextSkyboxLock) {
 			//Check if we need to switch the skybox, and if so, do it.
@@ -1044,9 +1093,9 @@ public class Scene {
 
 		if (mEnableDepthBuffer) {
 			clearMask |= GLES20.GL_DEPTH_BUFFER_BIT;
-			GLES20.glEnable(GLES20.GL_DEPTH_TEST);
-			GLES20.glDepthFunc(GLES20.GL_LESS);
-			GLES20.glDepthMask(true);
+			cache.enable(GLES20.GL_DEPTH_TEST);
+			cache.depthFunc(GLES20.GL_LESS);
+			cache.depthMask(true);
 			GLES20.glClearDepthf(1.0f);
 		}
 		if (mAntiAliasingConfig.equals(ISurface.ANTI_ALIASING_CONFIG.COVERAGE)) {
@@ -1067,13 +1116,19 @@ public class Scene {
         }
 
         // Update all registered animations
+        mark = stats.mark();
+        boolean animationsPlaying = false;
         synchronized (mAnimations) {
             for (int i = 0, j = mAnimations.size(); i < j; ++i) {
                 Animation anim = mAnimations.get(i);
-                if (anim.isPlaying())
+                if (anim.isPlaying()) {
                     anim.update(deltaTime);
+                    animationsPlaying |= anim.isPlaying();
+                }
             }
         }
+        mAnimationsPlaying = animationsPlaying;
+        stats.addPhase(FrameStats.Phase.ANIMATIONS, mark);
 
         // We are beginning the render process so we need to update the camera matrix before fetching its values
         mCamera.onRecalculateModelMatrix(null);
@@ -1084,7 +1139,7 @@ public class Scene {
 		// Pre-multiply View and Projection matrices once for speed
 		mVPMatrix.setAll(mPMatrix).multiply(mVMatrix);
 		mInvVPMatrix.setAll(mVPMatrix).inverse();
-        mCamera.updateFrustum(mInvVPMatrix); // Update frustum plane
+        mCamera.updateFrustum(mVPMatrix); // Update frustum plane
 
         // Update the model matrices of all the lights
         synchronized (mLights) {
@@ -1105,18 +1160,28 @@ public class Scene {
             }
         }
 
+        if (preCount > 0 || preDrawCount > 0) {
+            // Callbacks are free to issue GL calls directly
+            cache.invalidate();
+        }
+
+		mark = stats.mark();
 		if (mSkybox != null) {
-			GLES20.glDisable(GLES20.GL_DEPTH_TEST);
-			GLES20.glDepthMask(false);
+			cache.disable(GLES20.GL_DEPTH_TEST);
+			cache.depthMask(false);
 
-			mSkybox.setPosition(mCamera.getX(), mCamera.getY(), mCamera.getZ());
+			// Only moved when needed, a move counts as a change which would keep on demand rendering busy
+			if (mSkybox.getX() != mCamera.getX() || mSkybox.getY() != mCamera.getY()
+					|| mSkybox.getZ() != mCamera.getZ()) {
+				mSkybox.setPosition(mCamera.getX(), mCamera.getY(), mCamera.getZ());
+			}
             // Model matrix updates are deferred to the render method due to parent matrix needs
             // Render the skybox
 			mSkybox.render(mCamera, mVPMatrix, mPMatrix, mVMatrix, null);
 
 			if (mEnableDepthBuffer) {
-				GLES20.glEnable(GLES20.GL_DEPTH_TEST);
-				GLES20.glDepthMask(true);
+				cache.enable(GLES20.GL_DEPTH_TEST);
+				cache.depthMask(true);
 			}
 		}
 
@@ -1125,25 +1190,92 @@ public class Scene {
 			sceneMaterial.bindTextures();
 		}
 
-        synchronized (mChildren) {
-			for (int i = 0, j = mChildren.size(); i < j; ++i) {
-                // Model matrix updates are deferred to the render method due to parent matrix needs
-				mChildren.get(i).render(mCamera, mVPMatrix, mPMatrix, mVMatrix, sceneMaterial);
+		final SceneUpdater sceneUpdater = sceneMaterial == null ? mSceneUpdater : null;
+		if (mSceneGraphCullingEnabled && mSceneGraph != null) {
+			// Only the members of partitions which survive the frustum test are updated and drawn
+			mSceneGraph.updateMovedObjects();
+			mVisibleMembers.clear();
+			mSceneGraph.cullFromFrustum(mCamera.getFrustum(), mVisibleMembers);
+			if (sceneUpdater != null) {
+				mVisibleObjects.clear();
+				for (int i = 0, j = mVisibleMembers.size(); i < j; ++i) {
+					mVisibleObjects.add((Object3D) mVisibleMembers.get(i));
+				}
+				mRenderQueue.clear();
+				sceneUpdater.update(mVisibleObjects, mCamera, mVPMatrix, mPMatrix, mVMatrix);
+				sceneUpdater.mergeInto(mRenderQueue);
+				mark = stats.addPhase(FrameStats.Phase.UPDATE, mark);
+				submitRenderQueue(mRenderQueueEnabled);
+				mVisibleObjects.clear();
+			} else if (mRenderQueueEnabled && sceneMaterial == null) {
+				mRenderQueue.clear();
+				for (int i = 0, j = mVisibleMembers.size(); i < j; ++i) {
+					((Object3D) mVisibleMembers.get(i)).queueForRender(mRenderQueue, mCamera, mVPMatrix, mPMatrix,
+							mVMatrix, null);
+				}
+				mark = stats.addPhase(FrameStats.Phase.UPDATE, mark);
+				submitRenderQueue(true);
+			} else {
+				for (int i = 0, j = mVisibleMembers.size(); i < j; ++i) {
+					((Object3D) mVisibleMembers.get(i)).render(mCamera, mVPMatrix, mPMatrix, mVMatrix, sceneMaterial);
+				}
+			}
+			mVisibleMembers.clear();
+		} else if (sceneUpdater != null) {
+			mRenderQueue.clear();
+			synchronized (mChildren) {
+				sceneUpdater.update(mChildren, mCamera, mVPMatrix, mPMatrix, mVMatrix);
+			}
+			sceneUpdater.mergeInto(mRenderQueue);
+			mark = stats.addPhase(FrameStats.Phase.UPDATE, mark);
+			submitRenderQueue(mRenderQueueEnabled);
+		} else if (mRenderQueueEnabled && sceneMaterial == null) {
+			mRenderQueue.clear();
+			synchronized (mChildren) {
+				for (int i = 0, j = mChildren.size(); i < j; ++i) {
+					mChildren.get(i).queueForRender(mRenderQueue, mCamera, mVPMatrix, mPMatrix, mVMatrix, null);
+				}
+			}
+			mark = stats.addPhase(FrameStats.Phase.UPDATE, mark);
+			submitRenderQueue(true);
+		} else {
+			synchronized (mChildren) {
+				for (int i = 0, j = mChildren.size(); i < j; ++i) {
+					// Model matrix updates are deferred to the render method due to parent matrix needs
+					mChildren.get(i).render(mCamera, mVPMatrix, mPMatrix, mVMatrix, sceneMaterial);
+				}
 			}
 		}
 
+		if (mSceneGraph != null) {
+			// Graph members whose model matrix changed during the update are moved on this thread
+			mSceneGraph.updateMovedObjects();
+		}
+
 		if (mDisplaySceneGraph) {
 			mSceneGraph.displayGraph(mCamera, mVPMatrix, mPMatrix, mVMatrix);
         }
+		stats.addPhase(FrameStats.Phase.SUBMIT, mark);
+
+		// Plugins and callbacks set up their attributes on the default vertex array
+		cache.bindVertexArray(0);
 
 		if(sceneMaterial != null) {
 			sceneMaterial.unbindTextures();
 		}
 
+		mark = stats.mark();
 		synchronized (mPlugins) {
 			for (int i = 0, j = mPlugins.size(); i < j; i++)
 				mPlugins.get(i).render();
 		}
+		stats.addPhase(FrameStats.Phase.PLUGINS, mark);
+
+		// Objects no longer restore the state they change, so leave the defaults behind for whoever draws next
+		cache.unbindTextures();
+		cache.bindBuffer(GLES20.GL_ARRAY_BUFFER, 0);
+		cache.bindBuffer(GLES20.GL_ELEMENT_ARRAY_BUFFER, 0);
+		resetGLState();
 
 		if(renderTarget != null) {
 			renderTarget.unbind();
@@ -1153,14 +1285,32 @@ public class Scene {
         // We explicitly break out the steps here to help the compiler optimize
         final int postCount = mPostCallbacks.size();
         if (postCount > 0) {
+            mark = stats.mark();
             synchronized (mPostCallbacks) {
                 for (int i = 0; i < postCount; ++i) {
                     mPostCallbacks.get(i).onPostFrame(ellapsedTime, deltaTime);
                 }
             }
+            stats.addPhase(FrameStats.Phase.PLUGINS, mark);
         }
 	}
 
+	/**
+	 * Draws the contents of the render queue, followed by the bounding volumes which were queued along with them.
+	 *
+	 * @param sort Whether the queue is sorted first, otherwise the items are drawn in traversal order.
+	 */
+	private void submitRenderQueue(boolean sort) {
+		if (sort) {
+			mRenderQueue.sort();
+		}
+		mRenderQueue.submit(mRenderQueueSubmitter);
+		GLStateCache.getCurrent().countCulled(mRenderQueue.getCulledCount());
+		for (int i = 0, j = mRenderQueue.getBoundingVolumeCount(); i < j; ++i) {
+			mRenderQueue.getBoundingVolume(i).renderBoundingVolumes(mCamera, mVPMatrix, mPMatrix, mVMatrix);
+		}
+	}
+
 	protected void doColorPicking(ColorPickerInfo pickerInfo) {
 		ObjectColorPicker picker = pickerInfo.getPicker();
 		picker.getRenderTarget().bind();
@@ -1169,9 +1319,10 @@ public class Scene {
 		GLES20.glClearColor(1.0f, 1.0f, 1.0f, 1.0f);
 
 		// Configure depth testing
-		GLES20.glEnable(GLES20.GL_DEPTH_TEST);
-		GLES20.glDepthFunc(GLES20.GL_LESS);
-		GLES20.glDepthMask(true);
+		final GLStateCache cache = GLStateCache.getCurrent();
+		cache.enable(GLES20.GL_DEPTH_TEST);
+		cache.depthFunc(GLES20.GL_LESS);
+		cache.depthMask(true);
 		GLES20.glClearDepthf(1.0f);
 
 		// Clear buffers used for color-picking
@@ -1181,15 +1332,15 @@ public class Scene {
 		Material pickingMaterial = picker.getMaterial();
 
 		// Can't blend picking colors
-		GLES20.glDisable(GLES20.GL_BLEND);
+		cache.disable(GLES20.GL_BLEND);
 
 		// Render the Skybox first (no need for depth testing)
 		if (mSkybox != null && mSkybox.isPickingEnabled()) {
-			GLES20.glDisable(GLES20.GL_DEPTH_TEST);
-			GLES20.glDepthMask(false);
+			cache.disable(GLES20.GL_DEPTH_TEST);
+			cache.depthMask(false);
 			mSkybox.renderColorPicking(mCamera, pickingMaterial);
-			GLES20.glEnable(GLES20.GL_DEPTH_TEST);
-			GLES20.glDepthMask(true);
+			cache.enable(GLES20.GL_DEPTH_TEST);
+			cache.depthMask(true);
 		}
 
 		// Render all children using their picking colors
@@ -1210,9 +1361,8 @@ public class Scene {
 	 * @return boolean True on successful addition to queue.
 	 */
 	private boolean internalOfferTask(AFrameTask task) {
-		synchronized (mFrameTaskQueue) {
-			return mFrameTaskQueue.offer(task);
-		}
+		mRenderer.getRenderDirtyTracker().markDirty();
+		return mFrameTaskQueue.offer(task);
 	}
 
 	/**
@@ -1220,17 +1370,23 @@ public class Scene {
 	 * start of onDrawFrame() prior to render().
 	 */
 	private void performFrameTasks() {
-		synchronized (mFrameTaskQueue) {
-			//Fetch the first task
-			AFrameTask task = mFrameTaskQueue.poll();
-			while (task != null) {
-                task.run();
-				//Retrieve the next task
-                task = mFrameTaskQueue.poll();
-			}
+		mFrameTaskQueue.run();
+		if (mFrameTaskQueue.getDepth() > 0) {
+			// Tasks carried over by the time budget still need frames
+			mRenderer.getRenderDirtyTracker().markDirty();
 		}
 	}
 
+	/**
+	 * Retrieves the queue of tasks which modify this scene on the render thread, for instance to set a time budget,
+	 * to offer several tasks at once or to read the queue depth. Tasks must only be run by the scene.
+	 *
+	 * @return The {@link FrameTaskQueue} instance.
+	 */
+	public FrameTaskQueue getFrameTaskQueue() {
+		return mFrameTaskQueue;
+	}
+
 	/**
 	 * Creates a shallow copy of the internal cameras list.
 	 *
@@ -1282,9 +1438,7 @@ public class Scene {
      * to be updated on the next render loop.
      */
     public void markLightingDirty() {
-        synchronized (mFrameTaskQueue) {
-            mLightsDirty = true;
-        }
+        mLightsDirty = true;
     }
 
 	/**
@@ -1489,6 +1643,74 @@ public class Scene {
 		mDisplaySceneGraph = display;
 	}
 
+	/**
+	 * Enables sorted rendering. Instead of drawing the children in insertion order, every frame the visible objects
+	 * are collected into a {@link RenderQueue}, sorted by render layer, blending, program, textures, geometry and
+	 * depth and then drawn in that order. Opaque objects are drawn front to back, blended objects back to front.
+	 * Program and texture binds are only issued when they change between two consecutive draws.
+	 *
+	 * Sorted rendering is not used for frames rendered with a scene wide material. Subclasses of {@link Object3D}
+	 * which override {@link Object3D#render} should override {@link Object3D#queueSelfForRender} as well.
+	 *
+	 * @param enabled If true, the scene will be rendered through a {@link RenderQueue}.
+	 */
+	public void setRenderQueueEnabled(boolean enabled) {
+		mRenderQueueEnabled = enabled;
+	}
+
+	public boolean isRenderQueueEnabled() {
+		return mRenderQueueEnabled;
+	}
+
+	/**
+	 * Sets the {@link SceneUpdater} which runs the update and cull phase of each frame, the model matrices, bounding
+	 * volumes and frustum tests of all children, on several threads before anything is drawn. The GL thread then only
+	 * submits the queued draw items. Updated children are drawn through the {@link RenderQueue}, which is only sorted
+	 * if {@link #setRenderQueueEnabled(boolean)} is enabled as well.
+	 *
+	 * Animations and frame callbacks still run on the GL thread, before the update. Frames rendered with a scene wide
+	 * material are not updated in parallel. The scene does not shut the updater down.
+	 *
+	 * @param updater The {@link SceneUpdater} to use, {@code null} to update the children on the GL thread.
+	 */
+	public void setSceneUpdater(SceneUpdater updater) {
+		mSceneUpdater = updater;
+	}
+
+	public SceneUpdater getSceneUpdater() {
+		return mSceneUpdater;
+	}
+
+	/**
+	 * Enables hierarchical frustum culling through the scene graph. Instead of visiting every child, each frame the
+	 * graph is traversed against the camera frustum: partitions outside of it are rejected with all of their members,
+	 * partitions fully inside of it are accepted without testing their members and only the members of partially
+	 * visible partitions are tested individually. Only the surviving children are updated and drawn.
+	 *
+	 * This has no effect unless the scene was created with a graph type other than {@link GRAPH_TYPE#NONE}. Children
+	 * which are not visible do not have their model matrices recalculated, so the graph is told about moved children
+	 * when they are moved rather than when they are drawn.
+	 *
+	 * @param enabled If true, the scene graph is used to cull the children each frame.
+	 */
+	public void setSceneGraphCullingEnabled(boolean enabled) {
+		mSceneGraphCullingEnabled = enabled;
+	}
+
+	public boolean isSceneGraphCullingEnabled() {
+		return mSceneGraphCullingEnabled;
+	}
+
+	/**
+	 * Retrieves the {@link RenderQueue} of this scene, for instance to inspect the number of program and texture
+	 * switches of the last frame. Should only be accessed from the GL thread.
+	 *
+	 * @return The {@link RenderQueue} instance.
+	 */
+	public RenderQueue getRenderQueue() {
+		return mRenderQueue;
+	}
+
 	/**
 	 * Retrieve the number of triangles this scene contains, recursive method
 	 *
@@ -0,0 +1,301 @@
+/**
+ * Copyright 2013 Dennis Ippel
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package org.rajawali3d.scene;
+
+import org.rajawali3d.Object3D;
+import org.rajawali3d.cameras.Camera;
+import org.rajawali3d.math.Matrix4;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Runs the per object CPU work of a frame, model matrices, model view projection matrices, bounding volumes and
+ * frustum tests, on several threads ahead of the GL submission.
+ *
+ * The hierarchy is cut into partitions, each a subtree which is queued through
+ * {@link Object3D#queueForRender(RenderQueue, Camera, Matrix4, Matrix4, Matrix4, Matrix4)} into a {@link RenderQueue}
+ * of its own. Every object belongs to exactly one partition, so the results are written into the object's own
+ * matrices without any locking. Large hierarchies are split further by updating a parent up front and handing its
+ * children out as partitions of their own. The calling thread takes part in the update and
+ * {@link #update(List, Camera, Matrix4, Matrix4, Matrix4)} only returns once every partition is done.
+ *
+ * No GL calls are made during the update, {@link #mergeInto(RenderQueue)} then hands the results to the GL thread in
+ * the order a serial traversal would have produced them. Members of a scene graph only record that they moved, the
+ * {@link Scene} moves them within the graph on the GL thread once the update is done.
+ *
+ * <pre>
+ * getCurrentScene().setSceneUpdater(new SceneUpdater());
+ * </pre>
+ */
+public class SceneUpdater {
+
+    private static final int PARTITIONS_PER_THREAD = 4;
+
+    private static final ThreadFactory DAEMON_THREAD_FACTORY = new ThreadFactory() {
+        private final AtomicInteger mCount = new AtomicInteger();
+
+        @Override
+        public Thread newThread(Runnable runnable) {
+            final Thread thread = new Thread(runnable, "SceneUpdater-" + mCount.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        }
+    };
+
+    private final Executor mExecutor;
+    private final ExecutorService mOwnedExecutor;
+    private final int mThreadCount;
+
+    private final List<Partition> mPool = new ArrayList<>();
+    private List<Partition> mPartitions = new ArrayList<>();
+    private List<Partition> mSplitPartitions = new ArrayList<>();
+    private int mPoolSize;
+
+    /**
+     * Creates an updater which uses one thread per available core, including the calling thread.
+     */
+    public SceneUpdater() {
+        this(Runtime.getRuntime().availableProcessors());
+    }
+
+    /**
+     * Creates an updater with a pool of its own.
+     *
+     * @param threadCount The number of threads working on an update, including the calling thread.
+     */
+    public SceneUpdater(int threadCount) {
+        mThreadCount = Math.max(1, threadCount);
+        mOwnedExecutor = mThreadCount > 1 ? Executors.newFixedThreadPool(mThreadCount - 1, DAEMON_THREAD_FACTORY)
+                : null;
+        mExecutor = mOwnedExecutor;
+    }
+
+    /**
+     * Creates an updater which runs on a shared {@link Executor}. The executor is not shut down by
+     * {@link #shutdown()}.
+     *
+     * @param executor    The {@link Executor} to run the partitions on, {@code null} to update on the calling thread.
+     * @param threadCount The number of threads working on an update, including the calling thread.
+     */
+    public SceneUpdater(Executor executor, int threadCount) {
+        mThreadCount = executor == null ? 1 : Math.max(1, threadCount);
+        mOwnedExecutor = null;
+        mExecutor = executor;
+    }
+
+    /**
+     * @return The number of threads working on an update, including the calling thread.
+     */
+    public int getThreadCount() {
+        return mThreadCount;
+    }
+
+    /**
+     * @return The number of partitions of the last update.
+     */
+    public int getPartitionCount() {
+        return mPartitions.size();
+    }
+
+    /**
+     * Updates and culls the given objects and their children. Blocks until all of them are done.
+     *
+     * @param roots      The top level objects, which have no parent matrix.
+     * @param camera     The camera
+     * @param vpMatrix   {@link Matrix4} The view-projection matrix
+     * @param projMatrix {@link Matrix4} The projection matrix
+     * @param vMatrix    {@link Matrix4} The view matrix
+     */
+    public void update(List<Object3D> roots, Camera camera, Matrix4 vpMatrix, Matrix4 projMatrix, Matrix4 vMatrix) {
+        mPoolSize = 0;
+        mPartitions.clear();
+        for (int i = 0, j = roots.size(); i < j; ++i) {
+            mPartitions.add(obtain(roots.get(i), null));
+        }
+        if (mThreadCount > 1) {
+            split(mThreadCount * PARTITIONS_PER_THREAD, camera, vpMatrix, projMatrix, vMatrix);
+        }
+
+        final Update update = new Update(mPartitions, camera, vpMatrix, projMatrix, vMatrix);
+        final int helpers = Math.min(mThreadCount, mPartitions.size()) - 1;
+        for (int i = 0; i < helpers; ++i) {
+            mExecutor.execute(update);
+        }
+        update.run();
+        update.await();
+
+        if (update.mError instanceof RuntimeException) {
+            throw (RuntimeException) update.mError;
+        } else if (update.mError instanceof Error) {
+            throw (Error) update.mError;
+        } else if (update.mError != null) {
+            throw new RuntimeException(update.mError);
+        }
+    }
+
+    /**
+     * Appends the results of the last update to a queue, in the order a serial traversal of the roots would have
+     * queued them. Must be called from the thread which called {@link #update(List, Camera, Matrix4, Matrix4,
+     * Matrix4)}.
+     *
+     * @param queue The {@link RenderQueue} to append the draw items to.
+     */
+    public void mergeInto(RenderQueue queue) {
+        for (int i = 0, j = mPartitions.size(); i < j; ++i) {
+            queue.addAll(mPartitions.get(i).mQueue);
+        }
+    }
+
+    /**
+     * Stops the threads of the pool this updater created. Has no effect on a shared {@link Executor}.
+     */
+    public void shutdown() {
+        if (mOwnedExecutor != null) {
+            mOwnedExecutor.shutdown();
+        }
+    }
+
+    /**
+     * Splits the partitions breadth first until there are enough of them to keep all threads busy. A parent is
+     * queued right away since its children need its model matrix, its children become partitions of their own.
+     */
+    private void split(int target, Camera camera, Matrix4 vpMatrix, Matrix4 projMatrix, Matrix4 vMatrix) {
+        boolean didSplit = true;
+        while (didSplit && mPartitions.size() < target) {
+            didSplit = false;
+            mSplitPartitions.clear();
+            for (int i = 0, j = mPartitions.size(); i < j; ++i) {
+                final Partition partition = mPartitions.get(i);
+                final Object3D object = partition.mObject;
+                final int numChildren = object.getNumChildren();
+                if (partition.mDone || numChildren == 0 || mSplitPartitions.size() + (j - i) >= target) {
+                    mSplitPartitions.add(partition);
+                    continue;
+                }
+
+                partition.mDone = true;
+                mSplitPartitions.add(partition);
+                if (object.queueSelfForRender(partition.mQueue, camera, vpMatrix, projMatrix, vMatrix,
+                        partition.mParentMatrix)) {
+                    for (int k = 0; k < numChildren; ++k) {
+                        mSplitPartitions.add(obtain(object.getChildAt(k), object.getModelMatrix()));
+                    }
+                    didSplit = true;
+                }
+            }
+            final List<Partition> partitions = mPartitions;
+            mPartitions = mSplitPartitions;
+            mSplitPartitions = partitions;
+        }
+    }
+
+    private Partition obtain(Object3D object, Matrix4 parentMatrix) {
+        if (mPoolSize == mPool.size()) {
+            mPool.add(new Partition());
+        }
+        final Partition partition = mPool.get(mPoolSize++);
+        partition.mObject = object;
+        partition.mParentMatrix = parentMatrix;
+        partition.mDone = false;
+        partition.mQueue.clear();
+        return partition;
+    }
+
+    private static final class Partition {
+        final RenderQueue mQueue = new RenderQueue();
+        Object3D mObject;
+        Matrix4 mParentMatrix;
+        /**
+         * Set for parents which were already queued while splitting.
+         */
+        boolean mDone;
+    }
+
+    /**
+     * The state of a single update. Threads claim partitions until none are left, a thread which only gets to run
+     * after the update has finished finds nothing to claim.
+     */
+    private static final class Update implements Runnable {
+        private final List<Partition> mPartitions;
+        private final int mCount;
+        private final Camera mCamera;
+        private final Matrix4 mVPMatrix;
+        private final Matrix4 mProjMatrix;
+        private final Matrix4 mVMatrix;
+        private final AtomicInteger mNext = new AtomicInteger();
+
+        /**
+         * Guarded by this.
+         */
+        private int mRemaining;
+        private Throwable mError;
+
+        Update(List<Partition> partitions, Camera camera, Matrix4 vpMatrix, Matrix4 projMatrix, Matrix4 vMatrix) {
+            mPartitions = partitions;
+            mCount = partitions.size();
+            mRemaining = mCount;
+            mCamera = camera;
+            mVPMatrix = vpMatrix;
+            mProjMatrix = projMatrix;
+            mVMatrix = vMatrix;
+        }
+
+        @Override
+        public void run() {
+            int index;
+            while ((index = mNext.getAndIncrement()) < mCount) {
+                try {
+                    final Partition partition = mPartitions.get(index);
+                    if (!partition.mDone) {
+                        partition.mObject.queueForRender(partition.mQueue, mCamera, mVPMatrix, mProjMatrix, mVMatrix,
+                                partition.mParentMatrix);
+                    }
+                } catch (Throwable t) {
+                    synchronized (this) {
+                        if (mError == null) mError = t;
+                    }
+                } finally {
+                    synchronized (this) {
+                        if (--mRemaining == 0) notifyAll();
+                    }
+                }
+            }
+        }
+
+        /**
+         * Waits for the partitions which are still being worked on. The results have to be complete before the
+         * caller continues, so an interrupt is only passed on afterwards.
+         */
+        void await() {
+            boolean interrupted = false;
+            synchronized (this) {
+                while (mRemaining > 0) {
+                    try {
+                        wait();
+                    } catch (InterruptedException e) {
+                        interrupted = true;
+                    }
+                }
+            }
+            if (interrupted) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+}
@@ -15,9 +15,11 @@ package org.rajawali3d.scenegraph;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.List;
+import java.util.Set;
 
 import org.rajawali3d.ATransformable3D;
 import org.rajawali3d.cameras.Camera;
+import org.rajawali3d.cameras.Frustum;
 import org.rajawali3d.bounds.BoundingBox;
 import org.rajawali3d.bounds.BoundingSphere;
 import org.rajawali3d.bounds.IBoundingVolume;
@@ -62,6 +64,11 @@ public abstract class A_nAABBTree extends BoundingBox implements IGraphNode {
 	protected boolean mSplit = false; //Have we split to child partitions
 	protected List<IGraphNodeMember> mMembers; //A list of all the member objects
 	protected List<IGraphNodeMember> mOutside; //A list of all the objects outside the root
+	protected Set<IGraphNodeMember> mMoved; //The members which moved since the last update (root only)
+	protected final List<IGraphNodeMember> mMovedScratch = new ArrayList<IGraphNodeMember>();
+
+	protected int mFrustumNodeTests = 0; //Node bounds tested during the last frustum cull (root only)
+	protected int mFrustumMemberTests = 0; //Member bounds tested during the last frustum cull (root only)
 
 	protected int mOverlap = 0; //Partition overlap
 	protected int mGrowThreshold = 5; //Threshold at which to grow the graph
@@ -288,7 +295,7 @@ public abstract class A_nAABBTree extends BoundingBox implements IGraphNode {
 	 * @param object IGraphNodeMember to be added.
 	 */
 	protected void addToMembers(IGraphNodeMember object) {
-		RajLog.d("[" + this.getClass().getName() + "] Adding object: " + object + " to members list in: " + this); 
+		if (RajLog.isDebugEnabled()) RajLog.d("[" + this.getClass().getName() + "] Adding object: " + object + " to members list in: " + this); 
 		object.getTransformedBoundingVolume().setBoundingColor(mBoundingColor.get());
 		object.setGraphNode(this, true);
 		mMembers.add(object);
@@ -301,7 +308,7 @@ public abstract class A_nAABBTree extends BoundingBox implements IGraphNode {
 	 * @param object IGraphNodeMember to be removed.
 	 */
 	protected void removeFromMembers(IGraphNodeMember object) {
-		RajLog.d("[" + this.getClass().getName() + "] Removing object: " + object + " from members list in: " + this);
+		if (RajLog.isDebugEnabled()) RajLog.d("[" + this.getClass().getName() + "] Removing object: " + object + " from members list in: " + this);
 		object.getTransformedBoundingVolume().setBoundingColor(IBoundingVolume.DEFAULT_COLOR);
 		object.setGraphNode(null, false);
 		mMembers.remove(object);
@@ -335,13 +342,55 @@ public abstract class A_nAABBTree extends BoundingBox implements IGraphNode {
 		if (shouldClear) clear();
 		if (mSplit) {
 			for (int i = 0; i < CHILD_COUNT; ++i) {
-				members.addAll(mChildren[i].mMembers);
-				if (shouldClear) mChildren[i].clear();
+				members.addAll(mChildren[i].getAllMembersRecursively(shouldClear));
 			}
 		}
 		return members;
 	}
 
+	/**
+	 * Appends the members of this node and all of its decendent nodes to the
+	 * provided list. The outside members of the root are not included.
+	 * 
+	 * @param members List the members are appended to.
+	 */
+	protected void collectMembers(List<IGraphNodeMember> members) {
+		members.addAll(mMembers);
+		if (mSplit) {
+			for (int i = 0; i < CHILD_COUNT; ++i) {
+				mChildren[i].collectMembers(members);
+			}
+		}
+	}
+
+	/**
+	 * Finds the deepest node at or below this one which can hold the provided
+	 * volume, following the same rules as {@link #internalAddObject(IGraphNodeMember)}.
+	 * 
+	 * @param volume IBoundingVolume to find a node for.
+	 * @return A_nAABBTree which should hold the volume.
+	 */
+	protected A_nAABBTree findContainer(IBoundingVolume volume) {
+		A_nAABBTree node = this;
+		while (node.mSplit) {
+			int fits_in_child = -1;
+			for (int i = 0; i < node.CHILD_COUNT; ++i) {
+				if (node.mChildren[i].contains(volume)) {
+					if (fits_in_child < 0) {
+						fits_in_child = i;
+					} else {
+						//It fits in multiple children, it belongs to this node
+						fits_in_child = -1;
+						break;
+					}
+				}
+			}
+			if (fits_in_child < 0) break;
+			node = node.mChildren[fits_in_child];
+		}
+		return node;
+	}
+
 	/**
 	 * Internal method for adding an object to the graph. This method will determine if
 	 * it gets added to this node or moved to a child node.
@@ -628,9 +677,71 @@ public abstract class A_nAABBTree extends BoundingBox implements IGraphNode {
 	 * (non-Javadoc)
 	 * @see rajawali.scenegraph.IGraphNode#addObjects(java.util.Collection)
 	 */
-	public void addObjects(Collection<IGraphNodeMember> objects) {
-		// TODO Auto-generated method stub
-		
+	public synchronized void addObjects(Collection<IGraphNodeMember> objects) {
+		if (mParent != null) {
+			//Only the root can resize the graph, so insert one at a time
+			for (IGraphNodeMember object : objects) {
+				internalAddObject(object);
+			}
+			return;
+		}
+		if (objects.isEmpty()) return;
+		//Find the bounds of everything which will be in the graph so it is sized once
+		//rather than growing repeatedly as members land outside of it.
+		ArrayList<IGraphNodeMember> members = getAllMembersRecursively(false);
+		members.addAll(objects);
+		Vector3 min = new Vector3(Double.MAX_VALUE, Double.MAX_VALUE, Double.MAX_VALUE);
+		Vector3 max = new Vector3(-Double.MAX_VALUE, -Double.MAX_VALUE, -Double.MAX_VALUE);
+		int members_count = members.size();
+		for (int i = 0; i < members_count; ++i) {
+			IBoundingVolume volume = members.get(i).getTransformedBoundingVolume();
+			if (volume instanceof BoundingBox) {
+				BoundingBox bb = (BoundingBox) volume;
+				Vector3 member_min = bb.getTransformedMin();
+				Vector3 member_max = bb.getTransformedMax();
+				if (member_min.x < min.x) min.x = member_min.x;
+				if (member_min.y < min.y) min.y = member_min.y;
+				if (member_min.z < min.z) min.z = member_min.z;
+				if (member_max.x > max.x) max.x = member_max.x;
+				if (member_max.y > max.y) max.y = member_max.y;
+				if (member_max.z > max.z) max.z = member_max.z;
+			} else {
+				Vector3 position = members.get(i).getScenePosition();
+				if (position.x < min.x) min.x = position.x;
+				if (position.y < min.y) min.y = position.y;
+				if (position.z < min.z) min.z = position.z;
+				if (position.x > max.x) max.x = position.x;
+				if (position.y > max.y) max.y = position.y;
+				if (position.z > max.z) max.z = position.z;
+			}
+		}
+		if (getObjectCount() > 0 && min.x >= mTransformedMin.x && min.y >= mTransformedMin.y && min.z >= mTransformedMin.z
+				&& max.x <= mTransformedMax.x && max.y <= mTransformedMax.y && max.z <= mTransformedMax.z) {
+			//Everything already fits, no need to rebuild
+			for (IGraphNodeMember object : objects) {
+				internalAddObject(object);
+			}
+			return;
+		}
+		//Rebuild the graph around the combined bounds
+		getAllMembersRecursively(true);
+		if (mSplit) {
+			for (int i = 0; i < CHILD_COUNT; ++i) {
+				mChildren[i].destroy();
+				mChildren[i] = null;
+			}
+			mSplit = false;
+		}
+		mBoundingColor.set(0xFFFF0000);
+		mMin.setAll(min);
+		mMax.setAll(max);
+		mTransformedMin.setAll(min);
+		mTransformedMax.setAll(max);
+		calculatePoints();
+		calculateChildSideLengths();
+		for (int i = 0; i < members_count; ++i) {
+			internalAddObject(members.get(i));
+		}
 	}
 
 	/*
@@ -642,10 +753,15 @@ public abstract class A_nAABBTree extends BoundingBox implements IGraphNode {
 		//TODO: Handle recursive add posibility
 		//Retrieve the container object
 		IGraphNode container = object.getGraphNode();
+		if (mParent == null) mMoved.remove(object);
 		if (container == null) {
-			mOutside.remove(object);
+			if (mParent == null) mOutside.remove(object);
 		} else {
-			if (container == this) {
+			if (container == this && mParent == null && !object.isInGraph()) {
+				//The object is in the outside container of the root
+				mOutside.remove(object);
+				object.setGraphNode(null, false);
+			} else if (container == this) {
 				//If this is the container, process the removal
 				//Remove the object from the members
 				removeFromMembers(object);
@@ -665,9 +781,10 @@ public abstract class A_nAABBTree extends BoundingBox implements IGraphNode {
 	 * (non-Javadoc)
 	 * @see rajawali.scenegraph.IGraphNode#removeObjects(java.util.Collection)
 	 */
-	public void removeObjects(Collection<IGraphNodeMember> objects) {
-		// TODO Auto-generated method stub
-		
+	public synchronized void removeObjects(Collection<IGraphNodeMember> objects) {
+		for (IGraphNodeMember object : objects) {
+			removeObject(object);
+		}
 	}
 
 	/*
@@ -682,8 +799,42 @@ public abstract class A_nAABBTree extends BoundingBox implements IGraphNode {
 			return;
 		}
 		IGraphNode container = object.getGraphNode(); //Get the container node
+		if (container == null) return;
 		handleRecursiveUpdate((A_nAABBTree) container, object);
-		RajLog.e("Node: " + this + " Object Container: " + container);
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * @see rajawali.scenegraph.IGraphNode#markObjectMoved(rajawali.scenegraph.IGraphNodeMember)
+	 */
+	public void markObjectMoved(IGraphNodeMember object) {
+		if (mParent != null) {
+			mParent.markObjectMoved(object);
+		} else {
+			mMoved.add(object);
+		}
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * @see rajawali.scenegraph.IGraphNode#updateMovedObjects()
+	 */
+	public synchronized void updateMovedObjects() {
+		if (mParent != null) {
+			mParent.updateMovedObjects();
+			return;
+		}
+		if (mMoved.isEmpty()) return;
+		synchronized (mMoved) {
+			mMovedScratch.addAll(mMoved);
+			mMoved.clear();
+		}
+		for (int i = 0, j = mMovedScratch.size(); i < j; ++i) {
+			IGraphNodeMember object = mMovedScratch.get(i);
+			IGraphNode container = object.getGraphNode();
+			if (container != null) container.updateObject(object);
+		}
+		mMovedScratch.clear();
 	}
 
 	/**
@@ -694,60 +845,30 @@ public abstract class A_nAABBTree extends BoundingBox implements IGraphNode {
 	 * @param object IGraphNodeMember which is being updated.
 	 */
 	protected void handleRecursiveUpdate(final A_nAABBTree container, IGraphNodeMember object) {
-		//RajLog.i("Rajawali", "Handling recursive update potential.");
+		IBoundingVolume volume = object.getTransformedBoundingVolume();
 		A_nAABBTree local_container = container;
-		boolean updated = false;
-		while (!updated) {
-			if (local_container.contains(object.getTransformedBoundingVolume())) {
-				int fits_in_child = -1;
-				if (mSplit) {
-					for (int j = 0; j < CHILD_COUNT; ++j) {
-						if (mChildren[j].contains(object.getTransformedBoundingVolume())) {
-							//If the member fits in this child, mark that child
-							if (fits_in_child < 0) {
-								fits_in_child = j;
-							} else {
-								//It fits in multiple children, leave it in parent
-								fits_in_child = -1;
-								break;
-							}
-						}
-					}
-					if (fits_in_child >= 0) { //If a single child was marked
-						RajLog.i("Fits in a single child.");
-						local_container.removeFromMembers(object);
-						mChildren[fits_in_child].internalAddObject(object);
-						updated = true;
-					} else { //TODO: WORKS
-						RajLog.i("Fits in multiple children, leaving in place.");
-						updated = true;
-					}
-				} else {
-					RajLog.i("No children so we are leaving in same node.");
-					if (!object.isInGraph()) {
-						RajLog.i("Removing from outside graph and moving to inside root.");
-						local_container.mOutside.remove(object);
-						local_container.internalAddObject(object);
-					}
-					updated = true;
-				}
-			} else {
-				//RajLog.v("Rajawali", "OUTSIDE");
-				if (local_container.mParent == null) { //TODO: WORKS
-					//RajLog.v("Rajawali", "OUTSIDE");
-					//RajLog.i("Rajawali", "Container is root node. Adding to outside.");
-					if (object.isInGraph()) {
-						local_container.removeFromMembers(object);
-						local_container.addToOutside(object);
-					}
-					//RajLog.e("Rajawali", "Node after addToOutside: " + object.getGraphNode());
-					updated = true;
-				} else {
-					RajLog.i("Container is not root (" + local_container + "). Moving search up a level.");
-					local_container = local_container.mParent;
-				}
+		//Move up the tree until we find a node which holds the object
+		while (local_container.mParent != null && !local_container.contains(volume)) {
+			local_container = local_container.mParent;
+		}
+		if (!local_container.contains(volume)) {
+			//The container is the root node and the object is not within it
+			if (object.isInGraph()) {
+				container.removeFromMembers(object);
+				local_container.addToOutside(object);
 			}
+			return;
+		}
+		//Move down the tree as deep as the object fits
+		A_nAABBTree target = local_container.findContainer(volume);
+		if (object.isInGraph()) {
+			if (target == container) return; //Nothing has changed
+			container.removeFromMembers(object);
+		} else {
+			//The container is the root node holding the object outside
+			container.mOutside.remove(object);
 		}
+		target.internalAddObject(object);
 	}
 
 	/*
@@ -783,6 +904,96 @@ public abstract class A_nAABBTree extends BoundingBox implements IGraphNode {
 
 	}
 
+	/*
+	 * (non-Javadoc)
+	 * @see rajawali.scenegraph.IGraphNode#cullFromFrustum(rajawali.cameras.Frustum, java.util.List)
+	 */
+	public synchronized void cullFromFrustum(Frustum frustum, List<IGraphNodeMember> visible) {
+		A_nAABBTree root = this;
+		while (root.mParent != null) root = root.mParent;
+		root.mFrustumNodeTests = 0;
+		root.mFrustumMemberTests = 0;
+		if (mParent == null) {
+			//Members outside the root have nothing to be rejected with, so test them one by one
+			for (int i = 0, j = mOutside.size(); i < j; ++i) {
+				IGraphNodeMember member = mOutside.get(i);
+				++mFrustumMemberTests;
+				if (isInFrustum(frustum, member)) visible.add(member);
+			}
+		}
+		internalCullFromFrustum(frustum, visible, root);
+	}
+
+	/**
+	 * Recursively collects the visible members of this node and its decendents. A node
+	 * which is outside the frustum is rejected along with all of its decendents, and a node
+	 * which is fully inside the frustum accepts all of its decendents without testing them.
+	 * 
+	 * @param frustum Frustum to test against.
+	 * @param visible List the visible members are appended to.
+	 * @param root A_nAABBTree root node which keeps the test counts.
+	 */
+	protected void internalCullFromFrustum(Frustum frustum, List<IGraphNodeMember> visible, A_nAABBTree root) {
+		++root.mFrustumNodeTests;
+		switch (frustum.classifyBounds(mTransformedMin, mTransformedMax)) {
+		case Frustum.OUTSIDE:
+			return;
+		case Frustum.INSIDE:
+			collectMembers(visible);
+			return;
+		default:
+			for (int i = 0, j = mMembers.size(); i < j; ++i) {
+				IGraphNodeMember member = mMembers.get(i);
+				++root.mFrustumMemberTests;
+				if (isInFrustum(frustum, member)) visible.add(member);
+			}
+			if (mSplit) {
+				for (int i = 0; i < CHILD_COUNT; ++i) {
+					mChildren[i].internalCullFromFrustum(frustum, visible, root);
+				}
+			}
+		}
+	}
+
+	/**
+	 * Tests an individual member against the frustum. Members without a bounding
+	 * volume are always considered visible.
+	 * 
+	 * @param frustum Frustum to test against.
+	 * @param member IGraphNodeMember to test.
+	 * @return boolean True if the member is at least partially inside the frustum.
+	 */
+	protected boolean isInFrustum(Frustum frustum, IGraphNodeMember member) {
+		IBoundingVolume volume = member.getTransformedBoundingVolume();
+		if (volume instanceof BoundingBox) {
+			return frustum.boundsInFrustum((BoundingBox) volume);
+		} else if (volume instanceof BoundingSphere) {
+			BoundingSphere sphere = (BoundingSphere) volume;
+			return frustum.sphereInFrustum(sphere.getPosition(), sphere.getScaledRadius());
+		}
+		return true;
+	}
+
+	/**
+	 * Retrieves the number of nodes whose bounds were tested during the last
+	 * call to {@link #cullFromFrustum(Frustum, List)}.
+	 * 
+	 * @return int The node test count.
+	 */
+	public int getLastFrustumNodeTests() {
+		return mFrustumNodeTests;
+	}
+
+	/**
+	 * Retrieves the number of members whose bounds were tested individually during
+	 * the last call to {@link #cullFromFrustum(Frustum, List)}.
+	 * 
+	 * @return int The member test count.
+	 */
+	public int getLastFrustumMemberTests() {
+		return mFrustumMemberTests;
+	}
+
 	/*
 	 * (non-Javadoc)
 	 * @see rajawali.scenegraph.IGraphNode#displayGraph(boolean)
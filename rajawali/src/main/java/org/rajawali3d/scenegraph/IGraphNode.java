@@ -13,8 +13,10 @@
 package org.rajawali3d.scenegraph;
 
 import java.util.Collection;
+import java.util.List;
 
 import org.rajawali3d.cameras.Camera;
+import org.rajawali3d.cameras.Frustum;
 import org.rajawali3d.bounds.IBoundingVolume;
 import org.rajawali3d.math.Matrix4;
 import org.rajawali3d.math.vector.Vector3;
@@ -120,6 +122,29 @@ public interface IGraphNode {
 	 */
 	public void cullFromBoundingVolume(IBoundingVolume volume);
 
+	/**
+	 * Collects the members which are at least partially inside the provided
+	 * frustum. Implementations should reject whole partitions where possible
+	 * so the cost is proportional to the visible part of the graph.
+	 *
+	 * @param frustum {@link Frustum} to test visibility against.
+	 * @param visible {@link List} the visible members are appended to.
+	 */
+	public void cullFromFrustum(Frustum frustum, List<IGraphNodeMember> visible);
+
+	/**
+	 * Called when a member has moved. Implementations may defer re-examining
+	 * its position until {@link #updateMovedObjects()} is called.
+	 *
+	 * @param object {@link IGraphNodeMember} which has moved.
+	 */
+	public void markObjectMoved(IGraphNodeMember object);
+
+	/**
+	 * Re-examines the position of all members which moved since the last call.
+	 */
+	public void updateMovedObjects();
+
 	/**
 	 * Call this in the renderer to cause the scene graph to be
 	 * displayed. It is up to the implementation to determine
@@ -13,6 +13,7 @@
 package org.rajawali3d.scenegraph;
 
 import java.util.Collections;
+import java.util.IdentityHashMap;
 import java.util.concurrent.CopyOnWriteArrayList;
 
 import org.rajawali3d.math.vector.Vector3;
@@ -108,8 +109,11 @@ public class Octree extends A_nAABBTree {
 		CHILD_COUNT = 8;
 		mChildren = new Octree[CHILD_COUNT];
 		mMembers = Collections.synchronizedList(new CopyOnWriteArrayList<IGraphNodeMember>());
-		if (mParent == null) //mOutside should not be used for children, thus we want to force the Null pointer.
+		if (mParent == null) { //mOutside should not be used for children, thus we want to force the Null pointer.
 			mOutside = Collections.synchronizedList(new CopyOnWriteArrayList<IGraphNodeMember>());
+			mMoved = Collections.synchronizedSet(
+					Collections.newSetFromMap(new IdentityHashMap<IGraphNodeMember, Boolean>()));
+		}
 		mChildLengths = new Vector3();
 	}
 
@@ -0,0 +1,54 @@
+/**
+ * Copyright 2013 Dennis Ippel
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package org.rajawali3d.util;
+
+import org.rajawali3d.Geometry3D;
+import org.rajawali3d.Object3D;
+
+/**
+ * Converts the geometries of existing objects to the interleaved vertex layout, see
+ * {@link Geometry3D#setInterleaved(boolean)}. Useful for objects whose buffers are created as soon as their data is
+ * set, such as primitives and the results of loaders.
+ *
+ * Geometries whose buffers already exist are converted right away, so this has to be called on the GL thread, for
+ * instance from {@link org.rajawali3d.renderer.Renderer#initScene()}. Clones share the buffers of their original
+ * geometry, they only change when the original is converted.
+ *
+ * <pre>
+ * GeometryInterleaver.interleave(loader.getParsedObject());
+ * </pre>
+ */
+public final class GeometryInterleaver {
+
+	private GeometryInterleaver() {
+	}
+
+	/**
+	 * Interleaves the geometry of an object and of all its descendants.
+	 *
+	 * @param object The root of the hierarchy.
+	 * @return The number of geometries which were converted.
+	 */
+	public static int interleave(Object3D object) {
+		int converted = 0;
+		final Geometry3D geometry = object.getGeometry();
+		if (!object.isContainer() && geometry != null && !geometry.isInterleaved() && geometry.getVertices() != null) {
+			geometry.setInterleaved(true);
+			++converted;
+		}
+		for (int i = 0, j = object.getNumChildren(); i < j; ++i) {
+			converted += interleave(object.getChildAt(i));
+		}
+		return converted;
+	}
+}
@@ -0,0 +1,44 @@
+/**
+ * Copyright 2013 Dennis Ippel
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package org.rajawali3d.util;
+
+/**
+ * A source of time for code which measures durations or ages, so that tests can drive it with a clock of their own.
+ */
+public interface IClock {
+
+    /**
+     * {@link System#nanoTime()}, for durations.
+     */
+    IClock NANO_TIME = new IClock() {
+        @Override
+        public long now() {
+            return System.nanoTime();
+        }
+    };
+
+    /**
+     * {@link System#currentTimeMillis()}, for times which are stored or compared across runs of the app.
+     */
+    IClock CURRENT_TIME_MILLIS = new IClock() {
+        @Override
+        public long now() {
+            return System.currentTimeMillis();
+        }
+    };
+
+    /**
+     * @return {@code long} The current time, in the unit of the clock.
+     */
+    long now();
+}
@@ -0,0 +1,511 @@
+/**
+ * Copyright 2013 Dennis Ippel
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package org.rajawali3d.util;
+
+import org.rajawali3d.Geometry3D;
+import org.rajawali3d.Object3D;
+import org.rajawali3d.animation.mesh.AAnimationObject3D;
+
+import java.nio.FloatBuffer;
+import java.nio.IntBuffer;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.IdentityHashMap;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Reorders the triangles and vertices of indexed meshes so that the GPU shades as few vertices as possible and
+ * fetches them from memory in order. The steps, which can also be run on their own:
+ * <ol>
+ * <li>{@link #optimizeVertexCache(int[], int)} orders the triangles for the post-transform vertex cache, using Tom
+ * Forsyth's linear-speed vertex cache optimisation.</li>
+ * <li>{@link #optimizeOverdraw(int[], float[], int, float)} optionally splits that order into clusters and draws the
+ * clusters which face outwards first, so that they occlude the rest, while keeping the cache efficiency within a
+ * threshold.</li>
+ * <li>{@link #optimizeVertexFetch(int[], int)} renumbers the vertices in the order they are first used and returns
+ * the remap which has to be applied to the vertex data with {@link #remapVertexData(float[], int, int[])}.</li>
+ * </ol>
+ * The efficiency is measured as the average cache miss ratio, the number of vertices shaded per triangle, for a FIFO
+ * cache of {@link #DEFAULT_CACHE_SIZE} entries. It is 3 without any reuse and about 0.5 to 0.7 for well ordered
+ * regular meshes.
+ *
+ * Everything here works on plain arrays and has no GL dependencies, so it can run on loader threads. The geometries
+ * have to be optimized before their buffers are created, for instance by {@link org.rajawali3d.loader.ALoader}.
+ */
+public final class MeshOptimizer {
+
+	/**
+	 * The cache size the efficiency is measured with, a common size of post-transform caches of mobile GPUs.
+	 */
+	public static final int DEFAULT_CACHE_SIZE = 16;
+
+	/**
+	 * How much worse than the cache optimized order the overdraw optimized one may be.
+	 */
+	public static final float DEFAULT_OVERDRAW_THRESHOLD = 1.05f;
+
+	// -- the scoring of Forsyth's algorithm, which models an LRU cache
+	private static final int FORSYTH_CACHE_SIZE = 32;
+	private static final float CACHE_DECAY_POWER = 1.5f;
+	private static final float LAST_TRIANGLE_SCORE = 0.75f;
+	private static final float VALENCE_BOOST_SCALE = 2.0f;
+	private static final float VALENCE_BOOST_POWER = 0.5f;
+
+	/**
+	 * The cache miss ratios of an optimization, summed over all geometries it was applied to.
+	 */
+	public static final class Statistics {
+		private int mGeometries;
+		private int mTriangles;
+		private int mMissesBefore;
+		private int mMissesAfter;
+
+		public int getGeometryCount() {
+			return mGeometries;
+		}
+
+		public int getTriangleCount() {
+			return mTriangles;
+		}
+
+		/**
+		 * @return The average cache miss ratio of the original order.
+		 */
+		public float getAcmrBefore() {
+			return mTriangles == 0 ? 0 : (float) mMissesBefore / mTriangles;
+		}
+
+		/**
+		 * @return The average cache miss ratio of the optimized order.
+		 */
+		public float getAcmrAfter() {
+			return mTriangles == 0 ? 0 : (float) mMissesAfter / mTriangles;
+		}
+
+		private void add(Statistics other) {
+			mGeometries += other.mGeometries;
+			mTriangles += other.mTriangles;
+			mMissesBefore += other.mMissesBefore;
+			mMissesAfter += other.mMissesAfter;
+		}
+
+		@Override
+		public String toString() {
+			return String.format(Locale.US, "%d geometries, %d triangles, ACMR %.3f -> %.3f", mGeometries,
+					mTriangles, getAcmrBefore(), getAcmrAfter());
+		}
+	}
+
+	private MeshOptimizer() {
+	}
+
+	/**
+	 * Optimizes the geometries of an object and of all its descendants. Geometries which are shared by several
+	 * objects are optimized once. The vertices of animated objects keep their order, since their animation data
+	 * refers to it.
+	 *
+	 * @param object    The root of the hierarchy.
+	 * @param overdraw  Whether to also order the triangles for less overdraw.
+	 * @return The {@link Statistics} of all geometries.
+	 */
+	public static Statistics optimize(Object3D object, boolean overdraw) {
+		final Statistics statistics = new Statistics();
+		optimize(object, overdraw, new IdentityHashMap<IntBuffer, Boolean>(), statistics);
+		return statistics;
+	}
+
+	private static void optimize(Object3D object, boolean overdraw, Map<IntBuffer, Boolean> done,
+								 Statistics statistics) {
+		final Geometry3D geometry = object.getGeometry();
+		if (!object.isContainer() && geometry != null && geometry.getIndices() != null
+				&& done.put(geometry.getIndices(), Boolean.TRUE) == null) {
+			statistics.add(optimize(geometry, overdraw, !(object instanceof AAnimationObject3D)));
+		}
+		for (int i = 0, j = object.getNumChildren(); i < j; ++i) {
+			optimize(object.getChildAt(i), overdraw, done, statistics);
+		}
+	}
+
+	/**
+	 * Optimizes the triangle and vertex order of a geometry. The index and vertex buffers are changed in place, so
+	 * this has to happen before the buffers are created.
+	 *
+	 * @param geometry        The {@link Geometry3D}.
+	 * @param overdraw        Whether to also order the triangles for less overdraw.
+	 * @param reorderVertices Whether the vertices may be renumbered. They are kept in order anyway if an attribute
+	 *                        doesn't have data for every vertex.
+	 * @return The {@link Statistics} of the geometry.
+	 */
+	public static Statistics optimize(Geometry3D geometry, boolean overdraw, boolean reorderVertices) {
+		final Statistics statistics = new Statistics();
+		final IntBuffer indexBuffer = geometry.getIndices();
+		final FloatBuffer vertexBuffer = geometry.getVertices();
+		final int vertexCount = geometry.getNumVertices();
+		if (indexBuffer == null || vertexBuffer == null || vertexCount == 0) return statistics;
+
+		final int[] indices = Geometry3D.getIntArrayFromBuffer(indexBuffer);
+		final int triangleCount = indices.length / 3;
+		final float[] positions = Geometry3D.getFloatArrayFromBuffer(vertexBuffer);
+		if (triangleCount * 3 != indices.length || positions.length < vertexCount * 3) return statistics;
+		for (int index : indices) {
+			if (index < 0 || index >= vertexCount) return statistics;
+		}
+
+		statistics.mGeometries = 1;
+		statistics.mTriangles = triangleCount;
+		statistics.mMissesBefore = countCacheMisses(indices, vertexCount, DEFAULT_CACHE_SIZE);
+
+		optimizeVertexCache(indices, vertexCount);
+		if (overdraw) {
+			optimizeOverdraw(indices, positions, vertexCount, DEFAULT_OVERDRAW_THRESHOLD);
+		}
+
+		final FloatBuffer[] attributes = new FloatBuffer[]{ vertexBuffer, geometry.getNormals(),
+				geometry.getTextureCoords(), geometry.getColors() };
+		final int[] components = new int[]{ 3, 3, 2, 4 };
+		boolean complete = reorderVertices;
+		for (int i = 0; i < attributes.length && complete; ++i) {
+			complete = attributes[i] == null || attributes[i].limit() == 0
+					|| attributes[i].limit() == vertexCount * components[i];
+		}
+		if (complete) {
+			final int[] remap = optimizeVertexFetch(indices, vertexCount);
+			for (int i = 0; i < attributes.length; ++i) {
+				if (attributes[i] == null || attributes[i].limit() == 0) continue;
+				final float[] data = i == 0 ? positions : Geometry3D.getFloatArrayFromBuffer(attributes[i]);
+				remapVertexData(data, components[i], remap);
+				attributes[i].position(0);
+				attributes[i].put(data).position(0);
+			}
+		}
+
+		indexBuffer.position(0);
+		indexBuffer.put(indices).position(0);
+		statistics.mMissesAfter = countCacheMisses(indices, vertexCount, DEFAULT_CACHE_SIZE);
+		return statistics;
+	}
+
+	/**
+	 * Simulates a FIFO post-transform cache.
+	 *
+	 * @param indices     The triangle indices.
+	 * @param vertexCount The number of vertices.
+	 * @param cacheSize   The number of cache entries.
+	 * @return The number of vertices which are shaded.
+	 */
+	public static int countCacheMisses(int[] indices, int vertexCount, int cacheSize) {
+		// A vertex stays in a FIFO cache until cacheSize other vertices were added after it
+		final int[] addedAt = new int[vertexCount];
+		Arrays.fill(addedAt, Integer.MIN_VALUE / 2);
+		int misses = 0;
+		for (int index : indices) {
+			if (misses - addedAt[index] >= cacheSize) {
+				addedAt[index] = misses++;
+			}
+		}
+		return misses;
+	}
+
+	/**
+	 * @param indices     The triangle indices.
+	 * @param vertexCount The number of vertices.
+	 * @param cacheSize   The number of entries of a FIFO cache.
+	 * @return The average cache miss ratio, the number of shaded vertices per triangle.
+	 */
+	public static float getAcmr(int[] indices, int vertexCount, int cacheSize) {
+		final int triangles = indices.length / 3;
+		return triangles == 0 ? 0 : (float) countCacheMisses(indices, vertexCount, cacheSize) / triangles;
+	}
+
+	/**
+	 * Orders the triangles for the post-transform vertex cache. Triangles keep their winding.
+	 *
+	 * @param indices     The triangle indices, which are reordered in place.
+	 * @param vertexCount The number of vertices.
+	 */
+	public static void optimizeVertexCache(int[] indices, int vertexCount) {
+		final int triangleCount = indices.length / 3;
+		if (triangleCount == 0) return;
+
+		// -- the triangles of every vertex, of which the first remaining[v] are not emitted yet
+		final int[] remaining = new int[vertexCount];
+		for (int index : indices) {
+			++remaining[index];
+		}
+		final int[] offsets = new int[vertexCount + 1];
+		for (int v = 0; v < vertexCount; ++v) {
+			offsets[v + 1] = offsets[v] + remaining[v];
+		}
+		final int[] adjacency = new int[indices.length];
+		final int[] fill = new int[vertexCount];
+		for (int i = 0; i < indices.length; ++i) {
+			final int v = indices[i];
+			adjacency[offsets[v] + fill[v]++] = i / 3;
+		}
+
+		final int[] cachePosition = new int[vertexCount];
+		Arrays.fill(cachePosition, -1);
+		final float[] vertexScore = new float[vertexCount];
+		for (int v = 0; v < vertexCount; ++v) {
+			vertexScore[v] = getVertexScore(-1, remaining[v]);
+		}
+		final float[] triangleScore = new float[triangleCount];
+		final boolean[] emitted = new boolean[triangleCount];
+		int best = 0;
+		for (int t = 0; t < triangleCount; ++t) {
+			triangleScore[t] = vertexScore[indices[t * 3]] + vertexScore[indices[t * 3 + 1]]
+					+ vertexScore[indices[t * 3 + 2]];
+			if (triangleScore[t] > triangleScore[best]) best = t;
+		}
+
+		final int[] output = new int[indices.length];
+		int[] cache = new int[FORSYTH_CACHE_SIZE + 3];
+		int[] newCache = new int[FORSYTH_CACHE_SIZE + 3];
+		int cacheCount = 0;
+		int cursor = 0;
+		for (int emittedCount = 0; emittedCount < triangleCount; ++emittedCount) {
+			if (best < 0) {
+				// Dead end, continue with the next triangle in input order
+				while (emitted[cursor]) ++cursor;
+				best = cursor;
+			}
+			emitted[best] = true;
+			System.arraycopy(indices, best * 3, output, emittedCount * 3, 3);
+
+			// -- the vertices of the triangle go to the front of the cache
+			int newCount = 0;
+			for (int c = 0; c < 3; ++c) {
+				final int v = indices[best * 3 + c];
+				removeTriangle(adjacency, offsets[v], remaining[v]--, best);
+				newCache[newCount++] = v;
+			}
+			for (int i = 0; i < cacheCount; ++i) {
+				final int v = cache[i];
+				if (v != newCache[0] && v != newCache[1] && v != newCache[2]) {
+					if (newCount < newCache.length) {
+						newCache[newCount++] = v;
+					} else {
+						cachePosition[v] = -1;
+						vertexScore[v] = getVertexScore(-1, remaining[v]);
+						updateTriangleScores(v, adjacency, offsets, remaining, indices, vertexScore, triangleScore);
+					}
+				}
+			}
+			final int[] swap = cache;
+			cache = newCache;
+			newCache = swap;
+			cacheCount = newCount;
+
+			// -- rescore the cached vertices and pick the best triangle which uses one of them
+			for (int i = 0; i < cacheCount; ++i) {
+				final int v = cache[i];
+				cachePosition[v] = i < FORSYTH_CACHE_SIZE ? i : -1;
+				vertexScore[v] = getVertexScore(cachePosition[v], remaining[v]);
+			}
+			best = -1;
+			float bestScore = -Float.MAX_VALUE;
+			for (int i = 0; i < cacheCount; ++i) {
+				final int v = cache[i];
+				updateTriangleScores(v, adjacency, offsets, remaining, indices, vertexScore, triangleScore);
+				if (i >= FORSYTH_CACHE_SIZE) continue;
+				for (int a = offsets[v], end = offsets[v] + remaining[v]; a < end; ++a) {
+					final int t = adjacency[a];
+					if (triangleScore[t] > bestScore) {
+						bestScore = triangleScore[t];
+						best = t;
+					}
+				}
+			}
+		}
+		System.arraycopy(output, 0, indices, 0, indices.length);
+	}
+
+	private static float getVertexScore(int cachePosition, int remainingTriangles) {
+		if (remainingTriangles == 0) return -1;
+		float score = 0;
+		if (cachePosition >= 0) {
+			if (cachePosition < 3) {
+				// The vertices of the last triangle get a fixed score, so that it isn't favored too much
+				score = LAST_TRIANGLE_SCORE;
+			} else {
+				final float scaler = 1.0f / (FORSYTH_CACHE_SIZE - 3);
+				score = (float) Math.pow(1.0f - (cachePosition - 3) * scaler, CACHE_DECAY_POWER);
+			}
+		}
+		// Vertices with few triangles left are favored, so that they don't linger
+		return score + VALENCE_BOOST_SCALE * (float) Math.pow(remainingTriangles, -VALENCE_BOOST_POWER);
+	}
+
+	private static void updateTriangleScores(int v, int[] adjacency, int[] offsets, int[] remaining, int[] indices,
+											 float[] vertexScore, float[] triangleScore) {
+		for (int a = offsets[v], end = offsets[v] + remaining[v]; a < end; ++a) {
+			final int t = adjacency[a];
+			triangleScore[t] = vertexScore[indices[t * 3]] + vertexScore[indices[t * 3 + 1]]
+					+ vertexScore[indices[t * 3 + 2]];
+		}
+	}
+
+	private static void removeTriangle(int[] adjacency, int offset, int count, int triangle) {
+		for (int a = offset, end = offset + count; a < end; ++a) {
+			if (adjacency[a] == triangle) {
+				adjacency[a] = adjacency[end - 1];
+				adjacency[end - 1] = triangle;
+				return;
+			}
+		}
+	}
+
+	/**
+	 * Reorders cache optimized triangles for less overdraw. The order is split into clusters which, started with an
+	 * empty cache, are at most threshold times less efficient than the whole order. The clusters are then sorted so
+	 * that those on the outside of the mesh which face away from its center come first.
+	 *
+	 * @param indices     The triangle indices in cache optimized order, which are reordered in place.
+	 * @param positions   The vertex positions, three values per vertex.
+	 * @param vertexCount The number of vertices.
+	 * @param threshold   How much worse the cache efficiency may get, for instance 1.05 for 5 percent.
+	 */
+	public static void optimizeOverdraw(int[] indices, float[] positions, int vertexCount, float threshold) {
+		final int triangleCount = indices.length / 3;
+		if (triangleCount == 0) return;
+
+		// -- clusters, each starting with an empty cache
+		final float target = getAcmr(indices, vertexCount, DEFAULT_CACHE_SIZE) * threshold;
+		final int[] clusterStarts = new int[triangleCount + 1];
+		int clusterCount = 0;
+		final int[] addedAt = new int[vertexCount];
+		Arrays.fill(addedAt, Integer.MIN_VALUE / 2);
+		int misses = 0;
+		int clusterMisses = 0;
+		int start = 0;
+		for (int t = 0; t < triangleCount; ++t) {
+			for (int c = 0; c < 3; ++c) {
+				final int v = indices[t * 3 + c];
+				if (misses - addedAt[v] >= DEFAULT_CACHE_SIZE) {
+					addedAt[v] = misses++;
+					++clusterMisses;
+				}
+			}
+			if (clusterMisses <= target * (t - start + 1)) {
+				clusterStarts[clusterCount++] = start;
+				start = t + 1;
+				clusterMisses = 0;
+				// Ages every cached vertex out
+				misses += DEFAULT_CACHE_SIZE;
+			}
+		}
+		if (start < triangleCount) {
+			clusterStarts[clusterCount++] = start;
+		}
+		clusterStarts[clusterCount] = triangleCount;
+		if (clusterCount < 2) return;
+
+		// -- the area weighted centroid and normal of every cluster, and of the whole mesh
+		final float[] clusterCentroids = new float[clusterCount * 3];
+		final float[] clusterNormals = new float[clusterCount * 3];
+		final float[] clusterAreas = new float[clusterCount];
+		final float[] centroid = new float[3];
+		float totalArea = 0;
+		for (int k = 0; k < clusterCount; ++k) {
+			for (int t = clusterStarts[k]; t < clusterStarts[k + 1]; ++t) {
+				final int a = indices[t * 3] * 3, b = indices[t * 3 + 1] * 3, c = indices[t * 3 + 2] * 3;
+				final float e1x = positions[b] - positions[a], e1y = positions[b + 1] - positions[a + 1],
+						e1z = positions[b + 2] - positions[a + 2];
+				final float e2x = positions[c] - positions[a], e2y = positions[c + 1] - positions[a + 1],
+						e2z = positions[c + 2] - positions[a + 2];
+				final float nx = e1y * e2z - e1z * e2y, ny = e1z * e2x - e1x * e2z, nz = e1x * e2y - e1y * e2x;
+				final float area = (float) Math.sqrt(nx * nx + ny * ny + nz * nz);
+				for (int axis = 0; axis < 3; ++axis) {
+					clusterCentroids[k * 3 + axis] += area * (positions[a + axis] + positions[b + axis]
+							+ positions[c + axis]) / 3;
+				}
+				clusterNormals[k * 3] += nx;
+				clusterNormals[k * 3 + 1] += ny;
+				clusterNormals[k * 3 + 2] += nz;
+				clusterAreas[k] += area;
+			}
+			for (int axis = 0; axis < 3; ++axis) {
+				centroid[axis] += clusterCentroids[k * 3 + axis];
+			}
+			totalArea += clusterAreas[k];
+		}
+		final Integer[] order = new Integer[clusterCount];
+		final float[] sortKeys = new float[clusterCount];
+		for (int k = 0; k < clusterCount; ++k) {
+			order[k] = k;
+			final float nx = clusterNormals[k * 3], ny = clusterNormals[k * 3 + 1], nz = clusterNormals[k * 3 + 2];
+			final float length = (float) Math.sqrt(nx * nx + ny * ny + nz * nz);
+			if (length == 0 || clusterAreas[k] == 0 || totalArea == 0) continue;
+			float key = 0;
+			for (int axis = 0; axis < 3; ++axis) {
+				final float offset = clusterCentroids[k * 3 + axis] / clusterAreas[k] - centroid[axis] / totalArea;
+				key += offset * clusterNormals[k * 3 + axis] / length;
+			}
+			sortKeys[k] = key;
+		}
+		Arrays.sort(order, new Comparator<Integer>() {
+			@Override
+			public int compare(Integer lhs, Integer rhs) {
+				return Float.compare(sortKeys[rhs], sortKeys[lhs]);
+			}
+		});
+
+		final int[] output = new int[indices.length];
+		int position = 0;
+		for (int k : order) {
+			final int from = clusterStarts[k] * 3;
+			final int length = clusterStarts[k + 1] * 3 - from;
+			System.arraycopy(indices, from, output, position, length);
+			position += length;
+		}
+		System.arraycopy(output, 0, indices, 0, indices.length);
+	}
+
+	/**
+	 * Renumbers the vertices in the order the triangles first use them, so that they are fetched in order. Vertices
+	 * which no triangle uses are moved to the end.
+	 *
+	 * @param indices     The triangle indices, which are rewritten in place.
+	 * @param vertexCount The number of vertices.
+	 * @return The remap, the new index of every old vertex.
+	 */
+	public static int[] optimizeVertexFetch(int[] indices, int vertexCount) {
+		final int[] remap = new int[vertexCount];
+		Arrays.fill(remap, -1);
+		int next = 0;
+		for (int i = 0; i < indices.length; ++i) {
+			final int v = indices[i];
+			if (remap[v] < 0) remap[v] = next++;
+			indices[i] = remap[v];
+		}
+		for (int v = 0; v < vertexCount; ++v) {
+			if (remap[v] < 0) remap[v] = next++;
+		}
+		return remap;
+	}
+
+	/**
+	 * Moves vertex data to the positions of a remap.
+	 *
+	 * @param data       The data, which is rewritten in place.
+	 * @param components The number of values per vertex.
+	 * @param remap      The new index of every old vertex, see {@link #optimizeVertexFetch(int[], int)}.
+	 */
+	public static void remapVertexData(float[] data, int components, int[] remap) {
+		final float[] copy = Arrays.copyOf(data, remap.length * components);
+		for (int v = 0; v < remap.length; ++v) {
+			System.arraycopy(copy, v * components, data, remap[v] * components, components);
+		}
+	}
+}
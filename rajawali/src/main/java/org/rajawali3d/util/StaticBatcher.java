@@ -0,0 +1,183 @@
+/**
+ * Copyright 2013 Dennis Ippel
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package org.rajawali3d.util;
+
+import android.opengl.GLES20;
+import org.rajawali3d.Geometry3D;
+import org.rajawali3d.InstancedObject3D;
+import org.rajawali3d.Object3D;
+import org.rajawali3d.materials.Material;
+import org.rajawali3d.math.Matrix4;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Merges static objects which share a {@link Material} and render state into a few large objects, so they can be
+ * drawn with one draw call per batch instead of one per object.
+ *
+ * The batcher walks a hierarchy and picks up every visible object which is flagged with
+ * {@link Object3D#setStatic(boolean)}, has geometry and a material, and is drawn as a triangle list. The world
+ * transformation of each object is baked into the vertex positions and normals, so the batches are placed at the
+ * origin. A batch is split whenever it would exceed {@link #setMaxVertices(int)} vertices, by default the number
+ * which can be addressed with unsigned short indices. The bounding box of every batch covers its merged
+ * geometry and the batches are frustum tested. Their vertex attributes are uploaded into a single interleaved buffer.
+ *
+ * The merged objects are turned into containers: they keep their transformation and children but no longer draw
+ * their own geometry. The returned batches have to be added to the scene by the caller.
+ *
+ * <pre>
+ * List&lt;Object3D&gt; batches = new StaticBatcher().batch(level);
+ * for (Object3D batch : batches) getCurrentScene().addChild(batch);
+ * </pre>
+ */
+public class StaticBatcher {
+
+	private int mMaxVertices = Geometry3D.MAX_SHORT_INDEX_VERTICES;
+	private int mLastSourceCount;
+
+	/**
+	 * Sets the maximum number of vertices per batch. Objects which have more vertices on their own become a batch
+	 * of their own.
+	 *
+	 * @param maxVertices
+	 */
+	public void setMaxVertices(int maxVertices) {
+		if (maxVertices < 1) throw new IllegalArgumentException("A batch needs room for at least one vertex");
+		mMaxVertices = maxVertices;
+	}
+
+	public int getMaxVertices() {
+		return mMaxVertices;
+	}
+
+	/**
+	 * @return The number of objects merged by the last call to {@link #batch(Object3D)}
+	 */
+	public int getLastSourceCount() {
+		return mLastSourceCount;
+	}
+
+	/**
+	 * Merges the static objects in a hierarchy. The root's transformation is treated as a world transformation.
+	 *
+	 * @param root The root of the hierarchy, which is included itself
+	 * @return The batched objects, in the order their first object was found
+	 */
+	public List<Object3D> batch(Object3D root) {
+		final List<Group> groups = new ArrayList<>();
+		mLastSourceCount = 0;
+		collect(root, null, groups);
+
+		final List<Object3D> batches = new ArrayList<>();
+		for (int i = 0, j = groups.size(); i < j; ++i) {
+			final Group group = groups.get(i);
+			int first = 0;
+			int vertexCount = 0;
+			for (int k = 0, l = group.mObjects.size(); k < l; ++k) {
+				final int count = group.mObjects.get(k).getGeometry().getNumVertices();
+				if (k > first && vertexCount + count > mMaxVertices) {
+					batches.add(createBatch(group, first, k, batches.size()));
+					first = k;
+					vertexCount = 0;
+				}
+				vertexCount += count;
+			}
+			batches.add(createBatch(group, first, group.mObjects.size(), batches.size()));
+		}
+
+		for (int i = 0, j = groups.size(); i < j; ++i) {
+			final List<Object3D> objects = groups.get(i).mObjects;
+			for (int k = 0, l = objects.size(); k < l; ++k) {
+				objects.get(k).isContainer(true);
+			}
+			mLastSourceCount += objects.size();
+		}
+		return batches;
+	}
+
+	private void collect(Object3D object, Matrix4 parentMatrix, List<Group> groups) {
+		final Matrix4 world = new Matrix4().setAll(object.getPosition(), object.getScale(), object.getOrientation());
+		if (parentMatrix != null) world.leftMultiply(parentMatrix);
+
+		if (isBatchable(object)) {
+			Group group = null;
+			for (int i = 0, j = groups.size(); i < j && group == null; ++i) {
+				final Group candidate = groups.get(i);
+				if (candidate.mMaterial == object.getMaterial() && candidate.mObjects.get(0).hasSameRenderState(object)) {
+					group = candidate;
+				}
+			}
+			if (group == null) {
+				group = new Group(object.getMaterial());
+				groups.add(group);
+			}
+			group.mObjects.add(object);
+			group.mTransforms.add(world);
+		}
+
+		for (int i = 0, j = object.getNumChildren(); i < j; ++i) {
+			collect(object.getChildAt(i), world, groups);
+		}
+	}
+
+	private static boolean isBatchable(Object3D object) {
+		return object.isStatic() && object.isVisible() && !object.isContainer() && !object.isPartOfBatch()
+				&& !(object instanceof InstancedObject3D) && object.getMaterial() != null
+				&& object.getDrawingMode() == GLES20.GL_TRIANGLES
+				&& object.getGeometry().getVertices() != null && object.getGeometry().getNumIndices() > 0;
+	}
+
+	private Object3D createBatch(Group group, int first, int last, int index) {
+		final List<Geometry3D> geometries = new ArrayList<>(last - first);
+		for (int i = first; i < last; ++i) {
+			geometries.add(group.mObjects.get(i).getGeometry());
+		}
+
+		final Object3D batch = createBatchObject("StaticBatch" + index);
+		final Geometry3D geometry = batch.getGeometry();
+		geometry.addFromGeometries(geometries, group.mTransforms.subList(first, last), false);
+		geometry.setUseShortIndices(true);
+		geometry.setInterleaved(true);
+		// -- computed from the baked vertices, so it is already in world space
+		geometry.getBoundingBox();
+
+		batch.copyRenderState(group.mObjects.get(first));
+		batch.isContainer(false);
+		batch.setStatic(true);
+		batch.setFrustumTest(true);
+		batch.setMaterial(group.mMaterial);
+		return batch;
+	}
+
+	/**
+	 * Creates the object which receives the merged geometry of a batch. Override to use a subclass of
+	 * {@link Object3D}.
+	 *
+	 * @param name
+	 * @return A new object without geometry
+	 */
+	protected Object3D createBatchObject(String name) {
+		return new Object3D(name);
+	}
+
+	private static final class Group {
+		final Material mMaterial;
+		final List<Object3D> mObjects = new ArrayList<>();
+		final List<Matrix4> mTransforms = new ArrayList<>();
+
+		Group(Material material) {
+			mMaterial = material;
+		}
+	}
+}
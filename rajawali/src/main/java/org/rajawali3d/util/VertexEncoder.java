@@ -0,0 +1,455 @@
+/**
+ * Copyright 2013 Dennis Ippel
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package org.rajawali3d.util;
+
+import org.rajawali3d.VertexFormat.ColorEncoding;
+import org.rajawali3d.VertexFormat.NormalEncoding;
+import org.rajawali3d.VertexFormat.PositionEncoding;
+import org.rajawali3d.VertexFormat.TextureCoordEncoding;
+
+import java.nio.ByteBuffer;
+import java.nio.FloatBuffer;
+
+/**
+ * Encodes vertex attributes for the encodings of {@link org.rajawali3d.VertexFormat}, and decodes them the way the
+ * GPU does. Each encoding has a bound for the error it introduces:
+ * <ul>
+ * <li>16 bit floats round to the nearest value, see {@link #getHalfFloatError(float)}.</li>
+ * <li>Quantized positions are off by at most half a step of the bounding box divided into 65535 steps, see
+ * {@link #getQuantizationError(float, float)}.</li>
+ * <li>Octahedral normals pick the closest of the four surrounding grid points, the angle to the original normal is
+ * at most {@link #OCTAHEDRAL_ERROR_BOUND}.</li>
+ * <li>Normalized shorts and bytes are off by at most half a step, {@link #UNSIGNED_SHORT_ERROR_BOUND} and
+ * {@link #UNSIGNED_BYTE_ERROR_BOUND}, for values within [0, 1].</li>
+ * </ul>
+ * Values which an encoding can't represent within its bound are detected by {@link #isInUnitRange(FloatBuffer, int,
+ * int)} and {@link #getMaxMagnitude(FloatBuffer, int, int)}, {@link org.rajawali3d.Geometry3D} stores such attributes
+ * as floats.
+ *
+ * The attributes are written into a buffer in native byte order, one vertex every stride bytes. Vertices missing from
+ * the source are filled with zeros.
+ */
+public final class VertexEncoder {
+
+	/**
+	 * The largest finite 16 bit float.
+	 */
+	public static final float HALF_FLOAT_MAX = 65504f;
+
+	/**
+	 * The largest angle in radians between a normal and its decoded octahedral encoding.
+	 */
+	public static final float OCTAHEDRAL_ERROR_BOUND = 1e-4f;
+
+	/**
+	 * The largest error of a value within [0, 1] stored as a normalized unsigned short, including the rounding of the
+	 * decode.
+	 */
+	public static final float UNSIGNED_SHORT_ERROR_BOUND = 0.5f / 65535f + 1e-7f;
+
+	/**
+	 * The largest error of a value within [0, 1] stored as a normalized unsigned byte, including the rounding of the
+	 * decode.
+	 */
+	public static final float UNSIGNED_BYTE_ERROR_BOUND = 0.5f / 255f + 1e-7f;
+
+	private static final int USHORT_MAX = 65535;
+	private static final int UBYTE_MAX = 255;
+
+	private VertexEncoder() {
+	}
+
+	// -- scalars
+
+	/**
+	 * Converts a float to a 16 bit float, rounding to the nearest even value. Values beyond
+	 * {@link #HALF_FLOAT_MAX} become infinite.
+	 *
+	 * @param value The value.
+	 * @return The bits of the 16 bit float.
+	 */
+	public static short toHalfFloat(float value) {
+		final int bits = Float.floatToRawIntBits(value);
+		final int sign = (bits >>> 16) & 0x8000;
+		final int exponent = ((bits >>> 23) & 0xff) - 127 + 15;
+		int mantissa = bits & 0x7fffff;
+
+		if (exponent == 0xff - 127 + 15) {
+			// Infinity or NaN, NaN keeps a mantissa bit
+			return (short) (sign | 0x7c00 | (mantissa != 0 ? 0x200 : 0));
+		}
+		if (exponent >= 0x1f) {
+			return (short) (sign | 0x7c00);
+		}
+		if (exponent <= 0) {
+			// Subnormal, the implicit bit becomes part of the mantissa
+			if (exponent < -10) return (short) sign;
+			mantissa |= 0x800000;
+			final int shift = 14 - exponent;
+			int half = mantissa >> shift;
+			final int remainder = mantissa & ((1 << shift) - 1);
+			final int halfway = 1 << (shift - 1);
+			if (remainder > halfway || (remainder == halfway && (half & 1) != 0)) ++half;
+			return (short) (sign | half);
+		}
+		int half = (exponent << 10) | (mantissa >> 13);
+		final int remainder = mantissa & 0x1fff;
+		// A carry out of the mantissa correctly increments the exponent
+		if (remainder > 0x1000 || (remainder == 0x1000 && (half & 1) != 0)) ++half;
+		return (short) (sign | half);
+	}
+
+	/**
+	 * Converts a 16 bit float to a float.
+	 *
+	 * @param half The bits of the 16 bit float.
+	 * @return The value.
+	 */
+	public static float fromHalfFloat(short half) {
+		final int bits = half & 0xffff;
+		final int sign = (bits & 0x8000) << 16;
+		final int exponent = (bits >>> 10) & 0x1f;
+		final int mantissa = bits & 0x3ff;
+		if (exponent == 0) {
+			final float value = Math.scalb((float) mantissa, -24);
+			return sign != 0 ? -value : value;
+		}
+		if (exponent == 0x1f) {
+			return Float.intBitsToFloat(sign | 0x7f800000 | (mantissa << 13));
+		}
+		return Float.intBitsToFloat(sign | ((exponent + 127 - 15) << 23) | (mantissa << 13));
+	}
+
+	/**
+	 * @param value A value no larger than {@link #HALF_FLOAT_MAX}.
+	 * @return The largest error of the value stored as a 16 bit float, half a unit in the last place.
+	 */
+	public static float getHalfFloatError(float value) {
+		return Math.max(Math.abs(value) * 0x1p-11f, 0x1p-25f);
+	}
+
+	/**
+	 * Converts a value within [0, 1] to a normalized unsigned integer, values outside are clamped.
+	 *
+	 * @param value The value.
+	 * @param max   The largest integer, 65535 for shorts and 255 for bytes.
+	 * @return The integer.
+	 */
+	public static int toUnsignedNormalized(float value, int max) {
+		if (!(value > 0)) return 0;
+		if (value >= 1) return max;
+		return (int) (value * max + 0.5f);
+	}
+
+	/**
+	 * @param value The integer.
+	 * @param max   The largest integer, 65535 for shorts and 255 for bytes.
+	 * @return The value the GPU reads for a normalized unsigned integer.
+	 */
+	public static float fromUnsignedNormalized(int value, int max) {
+		return (float) value / max;
+	}
+
+	/**
+	 * @param min The smallest value of an axis of the bounding box.
+	 * @param max The largest value of an axis of the bounding box.
+	 * @return The largest error of a quantized position along that axis, including the rounding of the decode.
+	 */
+	public static float getQuantizationError(float min, float max) {
+		return (max - min) * (0.5f / USHORT_MAX) + 2 * Math.ulp(Math.max(Math.abs(min), Math.abs(max)));
+	}
+
+	/**
+	 * Encodes a direction into the two unsigned shorts of an octahedral normal. The direction does not have to be
+	 * normalized, a zero direction is encoded as +Z.
+	 *
+	 * @param x   The x component.
+	 * @param y   The y component.
+	 * @param z   The z component.
+	 * @param out The two encoded values, each within [0, 65535].
+	 */
+	public static void encodeOctahedral(float x, float y, float z, int[] out) {
+		float length = Math.abs(x) + Math.abs(y) + Math.abs(z);
+		if (!(length > 0) || Float.isInfinite(length)) {
+			x = 0;
+			y = 0;
+			z = 1;
+			length = 1;
+		}
+		float u = x / length;
+		float v = y / length;
+		if (z < 0) {
+			// Fold the lower half of the octahedron over the upper one
+			final float foldedU = (1 - Math.abs(v)) * (u >= 0 ? 1 : -1);
+			v = (1 - Math.abs(u)) * (v >= 0 ? 1 : -1);
+			u = foldedU;
+		}
+
+		// Rounding each component on its own is not always closest on the sphere, so try all four neighbors
+		final double norm = Math.sqrt((double) x * x + (double) y * y + (double) z * z);
+		final double nx = x / norm, ny = y / norm, nz = z / norm;
+		final int u0 = clampUnsignedShort((int) Math.floor((u * 0.5f + 0.5f) * USHORT_MAX));
+		final int v0 = clampUnsignedShort((int) Math.floor((v * 0.5f + 0.5f) * USHORT_MAX));
+		double best = -2;
+		for (int i = 0; i < 4; ++i) {
+			final int cu = clampUnsignedShort(u0 + (i & 1));
+			final int cv = clampUnsignedShort(v0 + (i >> 1));
+			final double cosine = octahedralCosine(cu, cv, nx, ny, nz);
+			if (cosine > best) {
+				best = cosine;
+				out[0] = cu;
+				out[1] = cv;
+			}
+		}
+	}
+
+	/**
+	 * Decodes an octahedral normal the way the vertex shader does.
+	 *
+	 * @param u   The first encoded value.
+	 * @param v   The second encoded value.
+	 * @param out The normalized direction.
+	 */
+	public static void decodeOctahedral(int u, int v, float[] out) {
+		float x = fromUnsignedNormalized(u, USHORT_MAX) * 2 - 1;
+		float y = fromUnsignedNormalized(v, USHORT_MAX) * 2 - 1;
+		final float z = 1 - Math.abs(x) - Math.abs(y);
+		final float t = Math.max(-z, 0);
+		x += x >= 0 ? -t : t;
+		y += y >= 0 ? -t : t;
+		final float length = (float) Math.sqrt(x * x + y * y + z * z);
+		out[0] = x / length;
+		out[1] = y / length;
+		out[2] = z / length;
+	}
+
+	private static double octahedralCosine(int u, int v, double nx, double ny, double nz) {
+		// In double precision, the cosines of neighboring grid points differ by less than a float can resolve
+		double x = (double) u / USHORT_MAX * 2 - 1;
+		double y = (double) v / USHORT_MAX * 2 - 1;
+		final double z = 1 - Math.abs(x) - Math.abs(y);
+		final double t = Math.max(-z, 0);
+		x += x >= 0 ? -t : t;
+		y += y >= 0 ? -t : t;
+		return (x * nx + y * ny + z * nz) / Math.sqrt(x * x + y * y + z * z);
+	}
+
+	private static int clampUnsignedShort(int value) {
+		return value < 0 ? 0 : (value > USHORT_MAX ? USHORT_MAX : value);
+	}
+
+	// -- ranges
+
+	/**
+	 * @param data  The values.
+	 * @param start The first value to check.
+	 * @param count The number of values to check.
+	 * @return Whether all values are within [0, 1].
+	 */
+	public static boolean isInUnitRange(FloatBuffer data, int start, int count) {
+		final int end = Math.min(data.limit(), start + count);
+		for (int i = start; i < end; ++i) {
+			final float value = data.get(i);
+			if (!(value >= 0 && value <= 1)) return false;
+		}
+		return true;
+	}
+
+	/**
+	 * @param data  The values.
+	 * @param start The first value to check.
+	 * @param count The number of values to check.
+	 * @return The largest absolute value, or NaN if there is one.
+	 */
+	public static float getMaxMagnitude(FloatBuffer data, int start, int count) {
+		final int end = Math.min(data.limit(), start + count);
+		float max = 0;
+		for (int i = start; i < end; ++i) {
+			final float value = Math.abs(data.get(i));
+			if (!(value <= max)) max = value;
+		}
+		return max;
+	}
+
+	/**
+	 * Computes the bounding box which quantized positions are stored relative to. A position is decoded as
+	 * {@code offset + scale * value} with a value within [0, 1] for every axis.
+	 *
+	 * @param positions   The positions, three values per vertex. Can be null.
+	 * @param vertexCount The number of vertices.
+	 * @param offset      The smallest value of each axis.
+	 * @param scale       The extent of each axis.
+	 */
+	public static void getQuantization(FloatBuffer positions, int vertexCount, float[] offset, float[] scale) {
+		final int end = positions == null ? 0 : Math.min(positions.limit() / 3, vertexCount) * 3;
+		for (int axis = 0; axis < 3; ++axis) {
+			float min = Float.MAX_VALUE;
+			float max = -Float.MAX_VALUE;
+			for (int i = axis; i < end; i += 3) {
+				final float value = positions.get(i);
+				if (value < min) min = value;
+				if (value > max) max = value;
+			}
+			offset[axis] = end == 0 ? 0 : min;
+			scale[axis] = end == 0 ? 0 : max - min;
+		}
+	}
+
+	/**
+	 * @param positions The positions, three values per vertex.
+	 * @param start     The first value to check, a multiple of three.
+	 * @param count     The number of values to check.
+	 * @param offset    The offset of the quantization.
+	 * @param scale     The scale of the quantization.
+	 * @return Whether all positions are within the bounding box of the quantization.
+	 */
+	public static boolean isInQuantization(FloatBuffer positions, int start, int count, float[] offset,
+										   float[] scale) {
+		final int end = Math.min(positions.limit(), start + count);
+		for (int i = start; i < end; ++i) {
+			final int axis = i % 3;
+			final float value = positions.get(i);
+			if (!(value >= offset[axis] && value <= offset[axis] + scale[axis])) return false;
+		}
+		return true;
+	}
+
+	// -- attributes
+
+	/**
+	 * Writes positions in an encoding.
+	 *
+	 * @param encoding    The encoding.
+	 * @param source      The positions, three values per vertex. Can be null.
+	 * @param firstVertex The first vertex to write.
+	 * @param vertexCount The number of vertices to write.
+	 * @param offset      The offset of {@link PositionEncoding#QUANTIZED} positions, see
+	 *                    {@link #getQuantization(FloatBuffer, int, float[], float[])}.
+	 * @param scale       The scale of {@link PositionEncoding#QUANTIZED} positions.
+	 * @param target      The buffer to write into.
+	 * @param position    The byte position of the first vertex in the target.
+	 * @param stride      The distance between two vertices in bytes.
+	 */
+	public static void encodePositions(PositionEncoding encoding, FloatBuffer source, int firstVertex,
+									   int vertexCount, float[] offset, float[] scale, ByteBuffer target,
+									   int position, int stride) {
+		final int limit = source == null ? 0 : source.limit();
+		for (int i = 0; i < vertexCount; ++i) {
+			final int from = (firstVertex + i) * 3;
+			final int to = position + i * stride;
+			for (int c = 0; c < 3; ++c) {
+				final float value = from + c < limit ? source.get(from + c) : 0;
+				switch (encoding) {
+					case HALF_FLOAT:
+						target.putShort(to + c * 2, toHalfFloat(value));
+						break;
+					case QUANTIZED:
+						final float normalized = scale[c] > 0 ? (value - offset[c]) / scale[c] : 0;
+						target.putShort(to + c * 2, (short) toUnsignedNormalized(normalized, USHORT_MAX));
+						break;
+					default:
+						target.putFloat(to + c * 4, value);
+						break;
+				}
+			}
+		}
+	}
+
+	/**
+	 * Writes normals in an encoding.
+	 *
+	 * @param encoding    The encoding.
+	 * @param source      The normals, three values per vertex. Can be null.
+	 * @param firstVertex The first vertex to write.
+	 * @param vertexCount The number of vertices to write.
+	 * @param target      The buffer to write into.
+	 * @param position    The byte position of the first vertex in the target.
+	 * @param stride      The distance between two vertices in bytes.
+	 */
+	public static void encodeNormals(NormalEncoding encoding, FloatBuffer source, int firstVertex, int vertexCount,
+									 ByteBuffer target, int position, int stride) {
+		final int limit = source == null ? 0 : source.limit();
+		final int[] octahedral = new int[2];
+		for (int i = 0; i < vertexCount; ++i) {
+			final int from = (firstVertex + i) * 3;
+			final int to = position + i * stride;
+			final boolean present = from + 2 < limit;
+			final float x = present ? source.get(from) : 0;
+			final float y = present ? source.get(from + 1) : 0;
+			final float z = present ? source.get(from + 2) : 0;
+			if (encoding == NormalEncoding.OCTAHEDRAL) {
+				encodeOctahedral(x, y, z, octahedral);
+				target.putShort(to, (short) octahedral[0]);
+				target.putShort(to + 2, (short) octahedral[1]);
+			} else {
+				target.putFloat(to, x);
+				target.putFloat(to + 4, y);
+				target.putFloat(to + 8, z);
+			}
+		}
+	}
+
+	/**
+	 * Writes texture coordinates in an encoding.
+	 *
+	 * @param encoding    The encoding.
+	 * @param source      The texture coordinates, two values per vertex. Can be null.
+	 * @param firstVertex The first vertex to write.
+	 * @param vertexCount The number of vertices to write.
+	 * @param target      The buffer to write into.
+	 * @param position    The byte position of the first vertex in the target.
+	 * @param stride      The distance between two vertices in bytes.
+	 */
+	public static void encodeTextureCoords(TextureCoordEncoding encoding, FloatBuffer source, int firstVertex,
+										   int vertexCount, ByteBuffer target, int position, int stride) {
+		final boolean normalized = encoding == TextureCoordEncoding.UNSIGNED_SHORT;
+		encodeComponents(source, 2, normalized, USHORT_MAX, firstVertex, vertexCount, target, position, stride);
+	}
+
+	/**
+	 * Writes colors in an encoding.
+	 *
+	 * @param encoding    The encoding.
+	 * @param source      The colors, four values per vertex. Can be null.
+	 * @param firstVertex The first vertex to write.
+	 * @param vertexCount The number of vertices to write.
+	 * @param target      The buffer to write into.
+	 * @param position    The byte position of the first vertex in the target.
+	 * @param stride      The distance between two vertices in bytes.
+	 */
+	public static void encodeColors(ColorEncoding encoding, FloatBuffer source, int firstVertex, int vertexCount,
+									ByteBuffer target, int position, int stride) {
+		final boolean normalized = encoding == ColorEncoding.UNSIGNED_BYTE;
+		encodeComponents(source, 4, normalized, UBYTE_MAX, firstVertex, vertexCount, target, position, stride);
+	}
+
+	private static void encodeComponents(FloatBuffer source, int components, boolean normalized, int max,
+										 int firstVertex, int vertexCount, ByteBuffer target, int position,
+										 int stride) {
+		final int limit = source == null ? 0 : source.limit();
+		for (int i = 0; i < vertexCount; ++i) {
+			final int from = (firstVertex + i) * components;
+			final int to = position + i * stride;
+			for (int c = 0; c < components; ++c) {
+				final float value = from + c < limit ? source.get(from + c) : 0;
+				if (!normalized) {
+					target.putFloat(to + c * 4, value);
+				} else if (max == UBYTE_MAX) {
+					target.put(to + c, (byte) toUnsignedNormalized(value, max));
+				} else {
+					target.putShort(to + c * 2, (short) toUnsignedNormalized(value, max));
+				}
+			}
+		}
+	}
+}
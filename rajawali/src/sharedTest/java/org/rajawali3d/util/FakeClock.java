@@ -0,0 +1,36 @@
+package org.rajawali3d.util;
+
+/**
+ * {@link IClock} which only moves when a test advances it, or by a fixed step every time it is read.
+ */
+public class FakeClock implements IClock {
+
+    private final long mStep;
+    private long mTime;
+
+    /**
+     * @param time {@code long} The initial time.
+     */
+    public FakeClock(long time) {
+        this(time, 0);
+    }
+
+    /**
+     * @param time {@code long} The initial time.
+     * @param step {@code long} How far the clock moves before every read.
+     */
+    public FakeClock(long time, long step) {
+        mTime = time;
+        mStep = step;
+    }
+
+    public void advance(long time) {
+        mTime += time;
+    }
+
+    @Override
+    public long now() {
+        mTime += mStep;
+        return mTime;
+    }
+}
@@ -0,0 +1,143 @@
+package org.rajawali3d.materials.shaders;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.rajawali3d.util.FakeClock;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+
+/**
+ * Checks the stored form of {@link ProgramBinary} and the lookup and eviction of the {@link ProgramBinaryCache}, in a
+ * temporary directory and with a fake clock.
+ */
+public class ProgramBinaryCacheTest {
+
+    private static final String DRIVER = ProgramBinaryCache.getDriver("Test GPU", "OpenGL ES 3.0 V@1.0");
+
+    private File mDirectory;
+
+    @Before
+    public void setUp() throws IOException {
+        mDirectory = File.createTempFile("programs", "");
+        assertTrue(mDirectory.delete());
+    }
+
+    @After
+    public void tearDown() {
+        final File[] files = mDirectory.listFiles();
+        if (files != null) {
+            for (File file : files) {
+                file.delete();
+            }
+        }
+        mDirectory.delete();
+    }
+
+    private static byte[] data(int length, int seed) {
+        final byte[] data = new byte[length];
+        for (int i = 0; i < length; ++i) {
+            data[i] = (byte) (i * 31 + seed);
+        }
+        return data;
+    }
+
+    private static byte[] write(ProgramBinary binary) throws IOException {
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        binary.writeTo(out);
+        return out.toByteArray();
+    }
+
+    private static void assertCorrupt(byte[] stored) {
+        try {
+            ProgramBinary.readFrom(new ByteArrayInputStream(stored));
+            fail("corrupt binary was read");
+        } catch (IOException expected) {
+        }
+    }
+
+    @Test
+    public void testFormatRoundTripAndCorruption() throws IOException {
+        final ProgramBinary binary = new ProgramBinary(0x123456789abcdefL, DRIVER, 0x8740, data(300, 7));
+        final byte[] stored = write(binary);
+        final ProgramBinary read = ProgramBinary.readFrom(new ByteArrayInputStream(stored));
+        assertTrue(read.matches(0x123456789abcdefL, DRIVER));
+        assertFalse(read.matches(0x123456789abcdefL, ProgramBinaryCache.getDriver("Test GPU", "OpenGL ES 3.0 V@2.0")));
+        assertEquals(0x8740, read.getFormat());
+        assertArrayEquals(binary.getData(), read.getData());
+
+        // -- a flipped bit in the binary, a truncated file and a foreign file
+        final byte[] flipped = stored.clone();
+        flipped[stored.length - 20] ^= 4;
+        assertCorrupt(flipped);
+        assertCorrupt(Arrays.copyOf(stored, stored.length - 1));
+        final byte[] foreign = stored.clone();
+        foreign[0] = 'P';
+        assertCorrupt(foreign);
+    }
+
+    @Test
+    public void testStoreAndLoad() throws IOException {
+        final ProgramBinaryCache cache = new ProgramBinaryCache(mDirectory, DRIVER, 1024);
+        assertNull(cache.load(1));
+        assertTrue(cache.store(1, 42, data(100, 1)));
+        assertTrue(cache.store(2, 42, data(100, 2)));
+
+        final ProgramBinary binary = cache.load(1);
+        assertNotNull(binary);
+        assertEquals(42, binary.getFormat());
+        assertArrayEquals(data(100, 1), binary.getData());
+        assertEquals(2, cache.getCount());
+
+        // -- after a driver update the binary is discarded
+        final ProgramBinaryCache updated = new ProgramBinaryCache(mDirectory,
+                ProgramBinaryCache.getDriver("Test GPU", "OpenGL ES 3.0 V@2.0"), 1024);
+        assertNull(updated.load(1));
+        assertEquals(1, cache.getCount());
+
+        // -- an unreadable file is deleted
+        final FileOutputStream out = new FileOutputStream(cache.getFile(2));
+        out.write(data(10, 0));
+        out.close();
+        assertNull(cache.load(2));
+        assertEquals(0, cache.getCount());
+    }
+
+    @Test
+    public void testLeastRecentlyUsedEviction() {
+        // -- file times have a resolution of seconds on some file systems
+        final ProgramBinaryCache cache = new ProgramBinaryCache(mDirectory, DRIVER, 3 * (1000 + 64),
+                new FakeClock(1000000, 10000));
+        cache.store(1, 0, data(1000, 1));
+        cache.store(2, 0, data(1000, 2));
+        cache.store(3, 0, data(1000, 3));
+        assertEquals(3, cache.getCount());
+
+        // -- using the oldest binary makes the second one the least recently used
+        assertNotNull(cache.load(1));
+        cache.store(4, 0, data(1000, 4));
+        assertEquals(3, cache.getCount());
+        assertNull(cache.load(2));
+        assertNotNull(cache.load(1));
+        assertNotNull(cache.load(3));
+        assertNotNull(cache.load(4));
+        assertTrue(cache.getSize() <= cache.getMaxSize());
+
+        // -- binaries larger than the limit are not stored at all
+        assertFalse(cache.store(5, 0, data(4000, 5)));
+        assertEquals(3, cache.getCount());
+    }
+}
@@ -0,0 +1,212 @@
+package org.rajawali3d.materials.textures.utils;
+
+import android.opengl.GLES20;
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Decodes one block of every mode. The expected pixels were worked out by hand from the specification, pixels are
+ * numbered column by column and packed as RGBA.
+ */
+public class ETC2DecoderTest {
+
+    // -- pixel i uses index i % 4: LSBs 0xAAAA, MSBs 0xCCCC
+    private static final long INDICES = 0xCCCCAAAAL;
+
+    @Test
+    public void testIndividualMode() {
+        // -- colors F/0, 8/8, 0/F, tables 0 and 7, not flipped
+        final int[] pixels = decode(0xF0880F1C00000000L | INDICES, false);
+        for (int i = 0; i < 16; ++i) {
+            final int[] expected = i < 8
+                ? new int[]{0xFF8A02FF, 0xFF9008FF, 0xFD8600FF, 0xF78000FF}
+                : new int[]{0x2FB7FFFF, 0xB7FFFFFF, 0x0059D0FF, 0x000048FF};
+            assertEquals("pixel " + i, expected[i & 3], pixels[i]);
+        }
+    }
+
+    @Test
+    public void testDifferentialMode() {
+        // -- base 16/0/31, deltas +3/0/-4, tables 1 and 2, flipped, all indices 0
+        final int[] pixels = decode(0x8300FC2B00000000L, false);
+        for (int i = 0; i < 16; ++i) {
+            assertEquals("pixel " + i, (i & 3) < 2 ? 0x8905FFFF : 0xA509E7FF, pixels[i]);
+        }
+    }
+
+    @Test
+    public void testTMode() {
+        // -- red overflows: colors 0/8/F and 4/8/C, distance index 5
+        final int[] pixels = decode(0x048F48CB00000000L | INDICES, false);
+        final int[] expected = {0x0088FFFF, 0x64A8ECFF, 0x4488CCFF, 0x2468ACFF};
+        for (int i = 0; i < 16; ++i) {
+            assertEquals("pixel " + i, expected[i & 3], pixels[i]);
+        }
+    }
+
+    @Test
+    public void testHMode() {
+        // -- green overflows: colors A/6/2 and 3/9/E, distance index 4 plus 1 for the order of the colors
+        final int[] pixels = decode(0x53051CF600000000L | INDICES, false);
+        final int[] expected = {0xCA8642FF, 0x8A4602FF, 0x53B9FFFF, 0x1379CEFF};
+        for (int i = 0; i < 16; ++i) {
+            assertEquals("pixel " + i, expected[i & 3], pixels[i]);
+        }
+    }
+
+    @Test
+    public void testPlanarMode() {
+        // -- blue overflows: red from 130 to 255 across, green 129 and blue 65 everywhere
+        final int[] pixels = decode(0x4100147F80841010L, false);
+        final int[] red = {130, 161, 193, 224};
+        for (int i = 0; i < 16; ++i) {
+            assertEquals("pixel " + i, red[i >> 2] << 24 | 129 << 16 | 65 << 8 | 0xFF, pixels[i]);
+        }
+    }
+
+    @Test
+    public void testPunchthrough() {
+        // -- the T mode block without the opaque bit, index 2 is transparent
+        final int[] t = decode(0x048F48C900000000L | INDICES, true);
+        final int[] expected = {0x0088FFFF, 0x64A8ECFF, 0, 0x2468ACFF};
+        for (int i = 0; i < 16; ++i) {
+            assertEquals("pixel " + i, expected[i & 3], t[i]);
+        }
+        // -- the differential block without the opaque bit, index 0 has no modifier
+        final int[] differential = decode(0x8300FC2900000000L, true);
+        for (int i = 0; i < 16; ++i) {
+            assertEquals("pixel " + i, (i & 3) < 2 ? 0x8400FFFF : 0x9C00DEFF, differential[i]);
+        }
+        // -- with the opaque bit the individual mode is not available, the block is differential
+        assertEquals(0x8905FFFF, decode(0x8300FC2B00000000L, true)[0]);
+    }
+
+    @Test
+    public void testAlpha() {
+        // -- base 100, multiplier 3, table 13, pixel i uses index i % 8
+        long bits = 100L << 56 | 3L << 52 | 13L << 48;
+        for (int i = 0; i < 16; ++i) {
+            bits |= (long) (i & 7) << (45 - 3 * i);
+        }
+        final int[] pixels = new int[16];
+        ETC2Decoder.decodeAlpha(bits, pixels);
+        final int[] expected = {97, 94, 91, 70, 100, 103, 106, 127};
+        for (int i = 0; i < 16; ++i) {
+            assertEquals("pixel " + i, expected[i & 7], pixels[i]);
+        }
+        // -- base 250, multiplier 15, table 0, all indices 7 and 3: clamped to 255 and 25
+        ETC2Decoder.decodeAlpha(250L << 56 | 15L << 52 | 0xFFFFFFFFFFFFL, pixels);
+        assertEquals(255, pixels[0]);
+        ETC2Decoder.decodeAlpha(250L << 56 | 15L << 52 | 0x6DB6DB6DB6DBL, pixels);
+        assertEquals(25, pixels[0]);
+    }
+
+    @Test
+    public void testOutputs() {
+        // -- one RGBA8 EAC block: color 0xFF8A02 from the individual block, alpha 100
+        final ByteBuffer data = ByteBuffer.allocateDirect(16).order(ByteOrder.BIG_ENDIAN);
+        data.putLong(100L << 56).putLong(0xF0880F1C00000000L).flip();
+        final ETC2Util.ETC2Texture texture = new ETC2Util.ETC2Texture(ETC2Util.GL_COMPRESSED_RGBA8_ETC2_EAC, 1, 1,
+            data);
+        final ETC2Decoder decoder = new ETC2Decoder();
+
+        final ByteBuffer rgba = decoder.decode(texture, ETC2Decoder.Output.RGBA8888);
+        assertEquals(4, rgba.capacity());
+        assertEquals(0xFF8A0264, rgba.order(ByteOrder.BIG_ENDIAN).getInt(0));
+        final ByteBuffer rgb565 = decoder.decode(texture, ETC2Decoder.Output.RGB565);
+        assertEquals(31 << 11 | 34 << 5 | 0, rgb565.getShort(0) & 0xFFFF);
+        final ByteBuffer rgba4444 = decoder.decode(texture, ETC2Decoder.Output.RGBA4444);
+        assertEquals(15 << 12 | 8 << 8 | 0 << 4 | 6, rgba4444.getShort(0) & 0xFFFF);
+        assertEquals(GLES20.GL_UNSIGNED_SHORT_4_4_4_4, ETC2Decoder.Output.RGBA4444.getGLType());
+        assertEquals(0, data.position());
+    }
+
+    @Test
+    public void testFormats() {
+        assertTrue(ETC2Decoder.canDecode(ETC2Util.GL_COMPRESSED_ETC1_RGB8_OES));
+        assertTrue(ETC2Decoder.canDecode(ETC2Util.GL_COMPRESSED_SRGB8_PUNCHTHROUGH_ALPHA1_ETC2));
+        assertFalse(ETC2Decoder.canDecode(ETC2Util.GL_COMPRESSED_R11_EAC));
+        assertFalse(ETC2Decoder.hasAlpha(ETC2Util.GL_COMPRESSED_RGB8_ETC2));
+        assertTrue(ETC2Decoder.hasAlpha(ETC2Util.GL_COMPRESSED_RGBA8_ETC2_EAC));
+    }
+
+    @Test
+    public void testPartialBlocksAndThreads() {
+        // -- 9x6 pixels are 3x2 blocks, encoded from a gradient with alpha
+        final int width = 9, height = 6;
+        final ByteBuffer image = ByteBuffer.allocateDirect(width * height * 4);
+        for (int i = 0; i < width * height; ++i) {
+            image.put((byte) (i * 4)).put((byte) (255 - i * 4)).put((byte) (i * 2)).put((byte) (i * 3));
+        }
+        image.position(0);
+        final ETC2Util.ETC2Texture texture = new ETC2Encoder().encode(image, width, height,
+            ETC2Util.GL_COMPRESSED_RGBA8_ETC2_EAC);
+
+        final ByteBuffer single = new ETC2Decoder(null, 1).decode(texture, ETC2Decoder.Output.RGBA8888);
+        final ExecutorService executor = Executors.newFixedThreadPool(3);
+        try {
+            final ByteBuffer parallel = new ETC2Decoder(executor, 4).decode(texture, ETC2Decoder.Output.RGBA8888);
+            assertEquals(single, parallel);
+        } finally {
+            executor.shutdown();
+        }
+        assertEquals(width * height * 4, single.capacity());
+
+        // -- every pixel matches its block, decoded on its own
+        final int[] block = new int[16];
+        final ByteBuffer blocks = texture.getData().duplicate().order(ByteOrder.BIG_ENDIAN);
+        final byte[] expected = new byte[width * height * 4];
+        for (int b = 0; b < 6; ++b) {
+            ETC2Decoder.decodeColor(blocks.getLong(b * 16 + 8), false, block);
+            ETC2Decoder.decodeAlpha(blocks.getLong(b * 16), block);
+            for (int i = 0; i < 16; ++i) {
+                final int x = (b % 3) * 4 + (i >> 2);
+                final int y = (b / 3) * 4 + (i & 3);
+                if (x >= width || y >= height) continue;
+                for (int c = 0; c < 4; ++c) {
+                    expected[(y * width + x) * 4 + c] = (byte) (block[i] >>> (24 - 8 * c));
+                }
+            }
+        }
+        final byte[] actual = new byte[expected.length];
+        single.get(actual);
+        assertArrayEquals(expected, actual);
+    }
+
+    @Test
+    public void testDecodeOnOwnExecutor() throws Exception {
+        // -- like a transcode on the loader executor of the renderer, whose only thread is busy with the decode
+        final ByteBuffer data = ByteBuffer.allocateDirect(64 * 64 / 2);
+        final ETC2Util.ETC2Texture texture = new ETC2Util.ETC2Texture(ETC2Util.GL_COMPRESSED_RGB8_ETC2, 64, 64, data);
+        final ExecutorService executor = Executors.newSingleThreadExecutor();
+        try {
+            final ETC2Decoder decoder = new ETC2Decoder(executor, 4);
+            final ByteBuffer pixels = executor.submit(new Callable<ByteBuffer>() {
+                @Override
+                public ByteBuffer call() {
+                    return decoder.decode(texture, ETC2Decoder.Output.RGB565);
+                }
+            }).get(10, TimeUnit.SECONDS);
+            assertEquals(64 * 64 * 2, pixels.capacity());
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    private static int[] decode(long bits, boolean punchthrough) {
+        final int[] pixels = new int[16];
+        ETC2Decoder.decodeColor(bits, punchthrough, pixels);
+        return pixels;
+    }
+}
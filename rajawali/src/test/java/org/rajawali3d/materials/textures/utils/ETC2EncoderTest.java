@@ -0,0 +1,300 @@
+package org.rajawali3d.materials.textures.utils;
+
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * Encodes synthetic images and decodes them again with a decoder written from the specification, which only knows
+ * the modes the encoder may produce.
+ */
+public class ETC2EncoderTest {
+
+    private static final int ETC1 = ETC2Util.GL_COMPRESSED_ETC1_RGB8_OES;
+    private static final int RGB8 = ETC2Util.GL_COMPRESSED_RGB8_ETC2;
+    private static final int RGBA8 = ETC2Util.GL_COMPRESSED_RGBA8_ETC2_EAC;
+
+    @Test
+    public void testEncodedDataSize() {
+        assertEquals(8, ETC2Encoder.getBlockSize(ETC1));
+        assertEquals(16, ETC2Encoder.getBlockSize(RGBA8));
+        assertEquals(4 * 2 * 8, ETC2Encoder.getEncodedDataSize(RGB8, 13, 5));
+        assertEquals(16, ETC2Encoder.getEncodedDataSize(RGBA8, 1, 1));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testUnsupportedFormat() {
+        ETC2Encoder.getBlockSize(ETC2Util.GL_COMPRESSED_R11_EAC);
+    }
+
+    @Test
+    public void testSolidColorIsNearlyExact() {
+        final ByteBuffer pixels = ByteBuffer.allocateDirect(8 * 8 * 4);
+        for (int i = 0; i < 64; ++i) {
+            pixels.put((byte) 200).put((byte) 100).put((byte) 30).put((byte) 128);
+        }
+        pixels.position(0);
+        for (int format : new int[]{ETC1, RGB8, RGBA8}) {
+            final ETC2Util.ETC2Texture texture = new ETC2Encoder().encode(pixels, 8, 8, format);
+            assertEquals(format, texture.getCompressionFormat());
+            assertTrue(psnr(pixels, decode(texture), format == RGBA8) > 40);
+        }
+    }
+
+    @Test
+    public void testGradient() {
+        final ByteBuffer pixels = gradient(64, 64);
+        final ETC2Encoder encoder = new ETC2Encoder();
+        final double etc1 = psnr(pixels, decode(encoder.encode(pixels, 64, 64, ETC1)), false);
+        final double etc2 = psnr(pixels, decode(encoder.encode(pixels, 64, 64, RGB8)), false);
+        assertTrue("ETC1 " + etc1, etc1 > 32);
+        // -- the planar mode reproduces smooth gradients better than both ETC1 modes
+        assertTrue("ETC2 " + etc2, etc2 > etc1);
+    }
+
+    @Test
+    public void testNoiseWithAlpha() {
+        final ByteBuffer pixels = noise(37, 29, 7);
+        final ETC2Encoder encoder = new ETC2Encoder();
+        final double fast = psnr(pixels, decode(encoder.encode(pixels, 37, 29, RGBA8)), true);
+        encoder.setQuality(ETC2Encoder.Quality.MEDIUM);
+        final double medium = psnr(pixels, decode(encoder.encode(pixels, 37, 29, RGBA8)), true);
+        assertTrue("fast " + fast, fast > 20);
+        assertTrue("medium " + medium, medium >= fast);
+    }
+
+    @Test
+    public void testMediumIsNotWorse() {
+        final ByteBuffer pixels = noise(32, 32, 3);
+        final ETC2Encoder encoder = new ETC2Encoder();
+        for (int format : new int[]{ETC1, RGB8}) {
+            encoder.setQuality(ETC2Encoder.Quality.FAST);
+            final double fast = psnr(pixels, decode(encoder.encode(pixels, 32, 32, format)), false);
+            encoder.setQuality(ETC2Encoder.Quality.MEDIUM);
+            final double medium = psnr(pixels, decode(encoder.encode(pixels, 32, 32, format)), false);
+            assertTrue(fast + " " + medium, medium >= fast);
+        }
+    }
+
+    @Test
+    public void testThreadCountDoesNotChangeOutput() {
+        final ByteBuffer pixels = noise(96, 80, 11);
+        final ExecutorService executor = Executors.newFixedThreadPool(3);
+        try {
+            final ETC2Util.ETC2Texture single = new ETC2Encoder(null, 1).encode(pixels, 96, 80, RGBA8);
+            final ETC2Util.ETC2Texture parallel = new ETC2Encoder(executor, 4).encode(pixels, 96, 80, RGBA8);
+            assertEquals(single.getData(), parallel.getData());
+            assertEquals(0, pixels.position());
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    /**
+     * Guards against slowdowns of the block search. The floors are an order of magnitude below what a single
+     * thread of a low end device encodes, so only a real regression trips them.
+     */
+    @Test
+    public void testThroughput() {
+        assertTrue(getThroughput(ETC2Encoder.Quality.FAST) > 0.1);
+        assertTrue(getThroughput(ETC2Encoder.Quality.MEDIUM) > 0.01);
+    }
+
+    /**
+     * @return The megapixels per second a single thread encodes at the given quality.
+     */
+    private static double getThroughput(ETC2Encoder.Quality quality) {
+        final int size = 256;
+        final ByteBuffer pixels = noise(size, size, 5);
+        final ETC2Encoder encoder = new ETC2Encoder(null, 1);
+        encoder.setQuality(quality);
+        // -- warm up
+        encoder.encode(pixels, size, size, RGBA8);
+        final long start = System.nanoTime();
+        encoder.encode(pixels, size, size, RGBA8);
+        return size * size / ((System.nanoTime() - start) / 1e9) / 1e6;
+    }
+
+    // -- images
+
+    private static ByteBuffer gradient(int width, int height) {
+        final ByteBuffer pixels = ByteBuffer.allocateDirect(width * height * 4);
+        for (int y = 0; y < height; ++y) {
+            for (int x = 0; x < width; ++x) {
+                pixels.put((byte) (x * 255 / (width - 1))).put((byte) (y * 255 / (height - 1)))
+                    .put((byte) ((x + y) * 255 / (width + height - 2))).put((byte) 255);
+            }
+        }
+        pixels.position(0);
+        return pixels;
+    }
+
+    /**
+     * Smooth colors with noise on top, which is harder than photos but still leaves something to fit.
+     */
+    private static ByteBuffer noise(int width, int height, long seed) {
+        final Random random = new Random(seed);
+        final ByteBuffer pixels = ByteBuffer.allocateDirect(width * height * 4);
+        for (int y = 0; y < height; ++y) {
+            for (int x = 0; x < width; ++x) {
+                final int base = (x * 7 + y * 3) & 0xFF;
+                pixels.put((byte) clamp(base + random.nextInt(24) - 12))
+                    .put((byte) clamp(255 - base + random.nextInt(24) - 12))
+                    .put((byte) clamp((x * 16) % 256 + random.nextInt(8)))
+                    .put((byte) clamp(y * 255 / height + random.nextInt(16) - 8));
+            }
+        }
+        pixels.position(0);
+        return pixels;
+    }
+
+    private static double psnr(ByteBuffer expected, ByteBuffer actual, boolean alpha) {
+        final int channels = alpha ? 4 : 3;
+        final int count = expected.remaining() / 4;
+        double error = 0;
+        for (int i = 0; i < count; ++i) {
+            for (int c = 0; c < channels; ++c) {
+                final int d = (expected.get(i * 4 + c) & 0xFF) - (actual.get(i * 4 + c) & 0xFF);
+                error += d * d;
+            }
+        }
+        final double mse = error / (count * channels);
+        return mse == 0 ? 100 : 10 * Math.log10(255 * 255 / mse);
+    }
+
+    // -- reference decoder
+
+    private static final int[][] ETC1_TABLES = {
+        {2, 8}, {5, 17}, {9, 29}, {13, 42}, {18, 60}, {24, 80}, {33, 106}, {47, 183}
+    };
+
+    private static final int[][] EAC_TABLES = {
+        {-3, -6, -9, -15, 2, 5, 8, 14}, {-3, -7, -10, -13, 2, 6, 9, 12}, {-2, -5, -8, -13, 1, 4, 7, 12},
+        {-2, -4, -6, -13, 1, 3, 5, 12}, {-3, -6, -8, -12, 2, 5, 7, 11}, {-3, -7, -9, -11, 2, 6, 8, 10},
+        {-4, -7, -8, -11, 3, 6, 7, 10}, {-3, -5, -8, -11, 2, 4, 7, 10}, {-2, -6, -8, -10, 1, 5, 7, 9},
+        {-2, -5, -8, -10, 1, 4, 7, 9}, {-2, -4, -8, -10, 1, 3, 7, 9}, {-2, -5, -7, -10, 1, 4, 6, 9},
+        {-3, -4, -7, -10, 2, 3, 6, 9}, {-1, -2, -3, -10, 0, 1, 2, 9}, {-4, -6, -8, -9, 3, 5, 7, 8},
+        {-3, -5, -7, -9, 2, 4, 6, 8}
+    };
+
+    private static ByteBuffer decode(ETC2Util.ETC2Texture texture) {
+        final int width = texture.getWidth();
+        final int height = texture.getHeight();
+        final int format = texture.getCompressionFormat();
+        final boolean alpha = format == RGBA8;
+        final ByteBuffer data = texture.getData();
+        final ByteBuffer pixels = ByteBuffer.allocate(width * height * 4);
+        final int[] block = new int[64];
+        int offset = 0;
+        for (int by = 0; by < height; by += 4) {
+            for (int bx = 0; bx < width; bx += 4) {
+                if (alpha) {
+                    decodeAlpha(data.getLong(offset), block);
+                    offset += 8;
+                } else {
+                    for (int i = 0; i < 16; ++i) block[i * 4 + 3] = 255;
+                }
+                decodeColor(data.getLong(offset), format != ETC1, block);
+                offset += 8;
+                for (int i = 0; i < 16; ++i) {
+                    final int x = bx + i / 4;
+                    final int y = by + i % 4;
+                    if (x >= width || y >= height) continue;
+                    for (int c = 0; c < 4; ++c) {
+                        pixels.put((y * width + x) * 4 + c, (byte) block[i * 4 + c]);
+                    }
+                }
+            }
+        }
+        return pixels;
+    }
+
+    private static void decodeColor(long bits, boolean etc2, int[] out) {
+        final boolean differential = (bits >>> 33 & 1) == 1;
+        final boolean flip = (bits >>> 32 & 1) == 1;
+        final int[][] colors = new int[2][3];
+        for (int c = 0; c < 3; ++c) {
+            final int shift = 56 - c * 8;
+            if (differential) {
+                final int base = (int) (bits >>> (shift + 3) & 31);
+                final int delta = (int) (bits >>> shift & 7);
+                final int second = base + (delta >= 4 ? delta - 8 : delta);
+                if (second < 0 || second > 31) {
+                    if (!etc2 || c < 2) fail("Unexpected T or H mode block");
+                    decodePlanar(bits, out);
+                    return;
+                }
+                colors[0][c] = (base << 3) | (base >> 2);
+                colors[1][c] = (second << 3) | (second >> 2);
+            } else {
+                colors[0][c] = (int) (bits >>> (shift + 4) & 15) * 17;
+                colors[1][c] = (int) (bits >>> shift & 15) * 17;
+            }
+        }
+        final int[] tables = {(int) (bits >>> 37 & 7), (int) (bits >>> 34 & 7)};
+        for (int i = 0; i < 16; ++i) {
+            final int x = i / 4;
+            final int y = i % 4;
+            final int sub = flip ? (y < 2 ? 0 : 1) : (x < 2 ? 0 : 1);
+            final int msb = (int) (bits >>> (16 + i) & 1);
+            final int lsb = (int) (bits >>> i & 1);
+            final int magnitude = ETC1_TABLES[tables[sub]][lsb];
+            final int modifier = msb == 1 ? -magnitude : magnitude;
+            for (int c = 0; c < 3; ++c) {
+                out[i * 4 + c] = clamp(colors[sub][c] + modifier);
+            }
+        }
+    }
+
+    private static void decodePlanar(long bits, int[] out) {
+        final int ro = (int) (bits >>> 57 & 63);
+        final int go = (int) ((bits >>> 56 & 1) << 6 | (bits >>> 49 & 63));
+        final int bo = (int) ((bits >>> 48 & 1) << 5 | (bits >>> 43 & 3) << 3 | (bits >>> 39 & 7));
+        final int rh = (int) ((bits >>> 34 & 31) << 1 | (bits >>> 32 & 1));
+        final int gh = (int) (bits >>> 25 & 127);
+        final int bh = (int) (bits >>> 19 & 63);
+        final int rv = (int) (bits >>> 13 & 63);
+        final int gv = (int) (bits >>> 6 & 127);
+        final int bv = (int) (bits & 63);
+        final int[][] planes = {
+            {six(ro), six(rh), six(rv)}, {seven(go), seven(gh), seven(gv)}, {six(bo), six(bh), six(bv)}
+        };
+        for (int i = 0; i < 16; ++i) {
+            final int x = i / 4;
+            final int y = i % 4;
+            for (int c = 0; c < 3; ++c) {
+                final int o = planes[c][0];
+                out[i * 4 + c] = clamp((x * (planes[c][1] - o) + y * (planes[c][2] - o) + 4 * o + 2) >> 2);
+            }
+        }
+    }
+
+    private static void decodeAlpha(long bits, int[] out) {
+        final int base = (int) (bits >>> 56 & 255);
+        final int multiplier = (int) (bits >>> 52 & 15);
+        final int[] table = EAC_TABLES[(int) (bits >>> 48 & 15)];
+        for (int i = 0; i < 16; ++i) {
+            final int index = (int) (bits >>> (45 - 3 * i) & 7);
+            out[i * 4 + 3] = clamp(base + table[index] * multiplier);
+        }
+    }
+
+    private static int six(int c) {
+        return (c << 2) | (c >> 4);
+    }
+
+    private static int seven(int c) {
+        return (c << 1) | (c >> 6);
+    }
+
+    private static int clamp(int value) {
+        return Math.max(0, Math.min(255, value));
+    }
+}
@@ -0,0 +1,207 @@
+package org.rajawali3d.materials.textures.utils;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import org.junit.Test;
+import org.rajawali3d.materials.textures.ACompressedTexture.CompressionType;
+import org.rajawali3d.materials.textures.utils.KTXUtil.KTXContainer;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.Arrays;
+
+/**
+ * Parses sample containers which are written here byte by byte. Every image is filled with a marker byte made of its
+ * level, layer and face, so misplaced slices show up.
+ */
+public class KTXUtilTest {
+
+    private static final byte[] KTX1_IDENTIFIER = {
+        (byte) 0xAB, 0x4B, 0x54, 0x58, 0x20, 0x31, 0x31, (byte) 0xBB, 0x0D, 0x0A, 0x1A, 0x0A
+    };
+    private static final byte[] KTX2_IDENTIFIER = {
+        (byte) 0xAB, 0x4B, 0x54, 0x58, 0x20, 0x32, 0x30, (byte) 0xBB, 0x0D, 0x0A, 0x1A, 0x0A
+    };
+
+    private static byte marker(int level, int layer, int face) {
+        return (byte) (level * 100 + layer * 10 + face + 1);
+    }
+
+    /**
+     * Writes a KTX 1.1 file with 12 bytes of key/value data.
+     */
+    private static byte[] writeKTX1(ByteOrder order, int glType, int format, int width, int height, int layers,
+                                    int faces, int levels) {
+        final ByteBuffer buffer = ByteBuffer.allocate(4096).order(order);
+        buffer.put(KTX1_IDENTIFIER);
+        buffer.putInt(0x04030201).putInt(glType).putInt(glType == 0 ? 0 : 1).putInt(0).putInt(format).putInt(0)
+            .putInt(width).putInt(height).putInt(0).putInt(layers).putInt(faces).putInt(levels).putInt(12);
+        buffer.put(new byte[12]);
+        final int layerCount = Math.max(1, layers);
+        for (int level = 0; level < Math.max(1, levels); ++level) {
+            final int size = KTXUtil.getImageSize(format, Math.max(1, width >> level), Math.max(1, height >> level));
+            buffer.putInt(faces == 6 && layers == 0 ? size : size * layerCount * faces);
+            for (int layer = 0; layer < layerCount; ++layer) {
+                for (int face = 0; face < faces; ++face) {
+                    final byte[] image = new byte[size];
+                    Arrays.fill(image, marker(level, layer, face));
+                    buffer.put(image);
+                }
+            }
+        }
+        return Arrays.copyOf(buffer.array(), buffer.position());
+    }
+
+    /**
+     * Writes a KTX 2.0 file with the smallest level first, as the specification recommends.
+     */
+    private static byte[] writeKTX2(int vkFormat, int width, int height, int layers, int faces, int levels,
+                                    int supercompression) {
+        final int format = KTXUtil.getCompressionFormat(vkFormat);
+        final ByteBuffer buffer = ByteBuffer.allocate(8192).order(ByteOrder.LITTLE_ENDIAN);
+        buffer.put(KTX2_IDENTIFIER);
+        buffer.putInt(vkFormat).putInt(1).putInt(width).putInt(height).putInt(0).putInt(layers).putInt(faces)
+            .putInt(levels).putInt(supercompression);
+        buffer.putInt(0).putInt(0).putInt(0).putInt(0).putLong(0).putLong(0);
+        final int layerCount = Math.max(1, layers);
+        int offset = 80 + levels * 24;
+        for (int level = levels - 1; level >= 0; --level) {
+            final int size = KTXUtil.getImageSize(format, Math.max(1, width >> level), Math.max(1, height >> level));
+            final int length = size * layerCount * faces;
+            buffer.putLong(80 + level * 24, offset).putLong(88 + level * 24, length).putLong(96 + level * 24, length);
+            buffer.position(offset);
+            for (int layer = 0; layer < layerCount; ++layer) {
+                for (int face = 0; face < faces; ++face) {
+                    final byte[] image = new byte[size];
+                    Arrays.fill(image, marker(level, layer, face));
+                    buffer.put(image);
+                }
+            }
+            offset += length;
+        }
+        return Arrays.copyOf(buffer.array(), offset);
+    }
+
+    private static void assertImages(KTXContainer container, int... sizes) {
+        assertEquals(sizes.length, container.getLevelCount());
+        for (int level = 0; level < sizes.length; ++level) {
+            for (int layer = 0; layer < container.getLayerCount(); ++layer) {
+                for (int face = 0; face < container.getFaceCount(); ++face) {
+                    final ByteBuffer image = container.getImage(level, layer, face);
+                    assertEquals(0, image.position());
+                    assertEquals(sizes[level], image.capacity());
+                    assertEquals(sizes[level], image.remaining());
+                    for (int i = 0; i < sizes[level]; ++i) {
+                        assertEquals(marker(level, layer, face), image.get(i));
+                    }
+                }
+            }
+        }
+    }
+
+    @Test
+    public void testKTX1MipmapChain() throws IOException {
+        final byte[] file = writeKTX1(ByteOrder.LITTLE_ENDIAN, 0, KTXUtil.GL_COMPRESSED_RGB8_ETC2, 16, 8, 0, 1, 5);
+        final KTXContainer container = KTXUtil.createContainer(new ByteArrayInputStream(file));
+        assertEquals(KTXUtil.GL_COMPRESSED_RGB8_ETC2, container.getCompressionFormat());
+        assertEquals(CompressionType.ETC2, container.getCompressionType());
+        assertEquals(16, container.getWidth());
+        assertEquals(8, container.getHeight());
+        assertFalse(container.isCubeMap());
+        // -- 16x8, 8x4, 4x2, 2x1 and 1x1 all take whole 4x4 blocks
+        assertImages(container, 64, 16, 8, 8, 8);
+
+        final ByteBuffer[] levels = container.getLevels(0, 0);
+        assertEquals(5, levels.length);
+        assertEquals(16, levels[1].capacity());
+    }
+
+    @Test
+    public void testKTX1BigEndianCubeMap() throws IOException {
+        final byte[] file = writeKTX1(ByteOrder.BIG_ENDIAN, 0, KTXUtil.GL_COMPRESSED_RGBA8_ETC2_EAC, 8, 8, 0, 6, 2);
+        final KTXContainer container = KTXUtil.createContainer(ByteBuffer.wrap(file));
+        assertTrue(container.isCubeMap());
+        assertEquals(1, container.getLayerCount());
+        assertImages(container, 64, 16);
+    }
+
+    @Test
+    public void testBufferIsNotCopied() throws IOException {
+        final byte[] file = writeKTX1(ByteOrder.LITTLE_ENDIAN, 0, KTXUtil.GL_ETC1_RGB8_OES, 4, 4, 0, 1, 1);
+        // -- the container may start anywhere in the buffer, which is left as it is
+        final ByteBuffer buffer = ByteBuffer.allocate(file.length + 16);
+        buffer.position(16);
+        buffer.put(file).position(16);
+        final KTXContainer container = KTXUtil.createContainer(buffer);
+        assertEquals(16, buffer.position());
+        assertEquals(CompressionType.ETC1, container.getCompressionType());
+
+        buffer.put(buffer.capacity() - 1, (byte) 42);
+        assertEquals(42, container.getImage(0, 0, 0).get(7));
+    }
+
+    @Test
+    public void testKTX2ArrayLevelsInAnyOrder() throws IOException {
+        // -- VK_FORMAT_ASTC_6x6_UNORM_BLOCK
+        final byte[] file = writeKTX2(165, 20, 12, 2, 1, 3, 0);
+        final KTXContainer container = KTXUtil.createContainer(new ByteArrayInputStream(file));
+        assertEquals(KTXUtil.GL_COMPRESSED_RGBA_ASTC_4x4_KHR + 4, container.getCompressionFormat());
+        assertEquals(CompressionType.ASTC, container.getCompressionType());
+        assertEquals(2, container.getLayerCount());
+        // -- 4x2, 2x1 and 1x1 blocks
+        assertImages(container, 128, 32, 16);
+
+        final KTXContainer cube = KTXUtil.createContainer(ByteBuffer.wrap(writeKTX2(156, 4, 4, 0, 6, 1, 0)));
+        assertEquals(KTXUtil.GL_COMPRESSED_SIGNED_RG11_EAC, cube.getCompressionFormat());
+        assertImages(cube, 16);
+    }
+
+    @Test
+    public void testFormats() {
+        assertEquals(KTXUtil.GL_COMPRESSED_RGB8_ETC2, KTXUtil.getCompressionFormat(147));
+        assertEquals(KTXUtil.GL_COMPRESSED_SRGB8_ALPHA8_ETC2_EAC, KTXUtil.getCompressionFormat(152));
+        assertEquals(KTXUtil.GL_COMPRESSED_SRGB8_ALPHA8_ASTC_4x4_KHR + 13, KTXUtil.getCompressionFormat(184));
+        assertEquals(-1, KTXUtil.getCompressionFormat(37));
+        assertEquals(-1, KTXUtil.getCompressionFormat(185));
+
+        assertEquals(8, KTXUtil.getImageSize(KTXUtil.GL_COMPRESSED_R11_EAC, 1, 1));
+        assertEquals(32, KTXUtil.getImageSize(KTXUtil.GL_COMPRESSED_RG11_EAC, 5, 4));
+        assertEquals(16 * 4, KTXUtil.getImageSize(KTXUtil.GL_COMPRESSED_RGBA_ASTC_4x4_KHR + 13, 13, 13));
+        assertEquals(-1, KTXUtil.getImageSize(0x1908, 4, 4));
+    }
+
+    @Test
+    public void testInvalidFiles() {
+        final byte[] valid = writeKTX1(ByteOrder.LITTLE_ENDIAN, 0, KTXUtil.GL_COMPRESSED_RGB8_ETC2, 16, 16, 0, 1, 1);
+        assertInvalid(Arrays.copyOf(valid, valid.length - 1));
+        assertInvalid(Arrays.copyOf(valid, 40));
+        final byte[] magic = valid.clone();
+        magic[5] = 0x32;
+        assertInvalid(magic);
+        // -- uncompressed
+        assertInvalid(writeKTX1(ByteOrder.LITTLE_ENDIAN, 0x1401, KTXUtil.GL_COMPRESSED_RGB8_ETC2, 4, 4, 0, 1, 1));
+        // -- zstd supercompression
+        assertInvalid(writeKTX2(147, 4, 4, 0, 1, 1, 2));
+        final byte[] level = writeKTX2(147, 4, 4, 0, 1, 1, 0);
+        level[88] = 9;
+        assertInvalid(level);
+    }
+
+    private static void assertInvalid(byte[] file) {
+        try {
+            KTXUtil.createContainer(ByteBuffer.wrap(file));
+            fail("Parsed an invalid buffer");
+        } catch (IOException expected) {
+        }
+        try {
+            KTXUtil.createContainer(new ByteArrayInputStream(file));
+            fail("Parsed an invalid stream");
+        } catch (IOException expected) {
+        }
+    }
+}
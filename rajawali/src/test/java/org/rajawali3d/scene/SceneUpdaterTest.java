@@ -0,0 +1,218 @@
+package org.rajawali3d.scene;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.rajawali3d.Object3D;
+import org.rajawali3d.cameras.Camera;
+import org.rajawali3d.materials.Material;
+import org.rajawali3d.math.Matrix4;
+import org.rajawali3d.scenegraph.IGraphNodeMember;
+import org.rajawali3d.scenegraph.Octree;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Checks that the parallel update produces the same draw items, in the same order, as a serial traversal. The objects
+ * only have vertices and a material which is never compiled, so no GL context is needed.
+ */
+public class SceneUpdaterTest {
+
+    private static final float[] CUBE_VERTICES = {
+        -0.5f, -0.5f, -0.5f, 0.5f, -0.5f, -0.5f, 0.5f, 0.5f, -0.5f, -0.5f, 0.5f, -0.5f,
+        -0.5f, -0.5f, 0.5f, 0.5f, -0.5f, 0.5f, 0.5f, 0.5f, 0.5f, -0.5f, 0.5f, 0.5f
+    };
+
+    private static class TestObject extends Object3D {
+        TestObject() {
+            setData(CUBE_VERTICES, null, null, null, new int[]{0, 1, 2}, false);
+        }
+
+        @Override
+        public void setMaterial(Material material) {
+            // Skips the material manager, which needs a renderer
+            mMaterial = material;
+        }
+    }
+
+    /**
+     * Records how the members report their moves instead of keeping them in a tree.
+     */
+    private static final class RecordingGraph extends Octree {
+        final Set<IGraphNodeMember> mMovedMembers = Collections.synchronizedSet(
+                Collections.newSetFromMap(new IdentityHashMap<IGraphNodeMember, Boolean>()));
+        final List<Thread> mUpdateThreads = Collections.synchronizedList(new ArrayList<Thread>());
+
+        @Override
+        public void markObjectMoved(IGraphNodeMember object) {
+            mMovedMembers.add(object);
+        }
+
+        @Override
+        public synchronized void updateObject(IGraphNodeMember object) {
+            mUpdateThreads.add(Thread.currentThread());
+        }
+    }
+
+    private final Material mMaterial = new Material(true);
+    private final List<Object3D> mRoots = new ArrayList<>();
+    private Camera mCamera;
+    private Matrix4 mVPMatrix;
+    private ExecutorService mExecutor;
+    private SceneUpdater mUpdater;
+
+    @Before
+    public void setUp() {
+        mCamera = new Camera();
+        mCamera.setProjectionMatrix(800, 600);
+        mCamera.setPosition(0, 0, 40);
+        mCamera.setLookAt(0, 0, 0);
+        mVPMatrix = new Matrix4();
+        updateFrustum();
+
+        for (int i = 0; i < 3; ++i) {
+            final Object3D root = createObject(i * 6 - 6, 0, 0);
+            mRoots.add(root);
+            for (int j = 0; j < 10; ++j) {
+                final Object3D child = createObject(0, j - 5, 0);
+                root.addChild(child);
+                for (int k = 0; k < 5; ++k) {
+                    child.addChild(createObject(0, 0, k));
+                }
+            }
+        }
+        // -- far behind the camera
+        mRoots.add(createObject(0, 0, 500));
+        mExecutor = Executors.newFixedThreadPool(3);
+        mUpdater = new SceneUpdater(mExecutor, 4);
+    }
+
+    @After
+    public void tearDown() {
+        mExecutor.shutdown();
+    }
+
+    private Object3D createObject(double x, double y, double z) {
+        final TestObject object = new TestObject();
+        object.setMaterial(mMaterial);
+        object.setPosition(x, y, z);
+        object.setFrustumTest(true);
+        object.getBoundingBox();
+        return object;
+    }
+
+    private void updateFrustum() {
+        mCamera.onRecalculateModelMatrix(null);
+        mVPMatrix.setAll(mCamera.getProjectionMatrix()).multiply(mCamera.getViewMatrix());
+        mCamera.updateFrustum(mVPMatrix);
+    }
+
+    private RenderQueue queueSerially() {
+        final RenderQueue queue = new RenderQueue();
+        for (int i = 0; i < mRoots.size(); ++i) {
+            mRoots.get(i).queueForRender(queue, mCamera, mVPMatrix, mCamera.getProjectionMatrix(),
+                    mCamera.getViewMatrix(), null);
+        }
+        return queue;
+    }
+
+    private RenderQueue queueInParallel(SceneUpdater updater) {
+        final RenderQueue queue = new RenderQueue();
+        updater.update(mRoots, mCamera, mVPMatrix, mCamera.getProjectionMatrix(), mCamera.getViewMatrix());
+        updater.mergeInto(queue);
+        return queue;
+    }
+
+    private static void assertSameItems(RenderQueue expected, RenderQueue actual) {
+        assertEquals(expected.size(), actual.size());
+        for (int i = 0; i < expected.size(); ++i) {
+            assertSame(expected.get(i).object, actual.get(i).object);
+            assertEquals(expected.get(i).key, actual.get(i).key);
+        }
+    }
+
+    @Test
+    public void testMatchesSerialTraversal() {
+        final RenderQueue serial = queueSerially();
+        // 3 roots, 30 children, 150 grandchildren, the object behind the camera is culled
+        assertEquals(183, serial.size());
+
+        final RenderQueue parallel = queueInParallel(mUpdater);
+        assertSameItems(serial, parallel);
+        assertTrue(mUpdater.getPartitionCount() > mRoots.size());
+        assertFalse(mRoots.get(3).isInFrustum());
+    }
+
+    @Test
+    public void testWithoutExecutor() {
+        final SceneUpdater updater = new SceneUpdater(null, 8);
+        assertEquals(1, updater.getThreadCount());
+        final RenderQueue parallel = queueInParallel(updater);
+        assertEquals(mRoots.size(), updater.getPartitionCount());
+        assertSameItems(queueSerially(), parallel);
+    }
+
+    @Test
+    public void testMatricesFollowChanges() {
+        queueInParallel(mUpdater);
+        mRoots.get(1).setY(2);
+        mCamera.setPosition(3, 4, 40);
+        mCamera.setLookAt(0, 0, 0);
+        updateFrustum();
+        final RenderQueue queue = queueInParallel(mUpdater);
+
+        for (int i = 0; i < queue.size(); ++i) {
+            final Object3D object = queue.get(i).object;
+            final Matrix4 expected = mVPMatrix.clone().multiply(object.getModelMatrix());
+            assertArrayEquals(expected.getDoubleValues(), object.getModelViewProjectionMatrix().getDoubleValues(),
+                    1e-9);
+        }
+        final Object3D grandchild = mRoots.get(1).getChildAt(0).getChildAt(0);
+        assertEquals(2 - 5, grandchild.getModelMatrix().getTranslation().y, 1e-9);
+    }
+
+    @Test
+    public void testGraphMembersOnlyRecordMoves() {
+        final RecordingGraph graph = new RecordingGraph();
+        for (int i = 0; i < mRoots.size(); ++i) {
+            mRoots.get(i).setGraphNode(graph, true);
+        }
+        queueInParallel(mUpdater);
+        // -- the graph is left to the scene, which updates it on its own thread after the update
+        assertEquals(mRoots.size(), graph.mMovedMembers.size());
+        assertTrue(graph.mUpdateThreads.isEmpty());
+    }
+
+    @Test
+    public void testErrorsAreRethrown() {
+        mRoots.get(2).getChildAt(4).addChild(new TestObject() {
+            @Override
+            public boolean queueSelfForRender(RenderQueue queue, Camera camera, Matrix4 vpMatrix,
+                    Matrix4 projMatrix, Matrix4 vMatrix, Matrix4 parentMatrix) {
+                throw new IllegalStateException("broken");
+            }
+        });
+        try {
+            queueInParallel(mUpdater);
+            fail();
+        } catch (IllegalStateException e) {
+            assertEquals("broken", e.getMessage());
+        }
+        // -- the updater is still usable afterwards
+        mRoots.get(2).getChildAt(4).removeChild(mRoots.get(2).getChildAt(4).getChildAt(5));
+        assertSameItems(queueSerially(), queueInParallel(mUpdater));
+    }
+}
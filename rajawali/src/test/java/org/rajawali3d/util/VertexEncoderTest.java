@@ -0,0 +1,147 @@
+package org.rajawali3d.util;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+import org.rajawali3d.VertexFormat;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.FloatBuffer;
+import java.util.Random;
+
+/**
+ * Checks that every encoding of {@link VertexEncoder} stays within its error bound, decoding the values the way the
+ * GPU does.
+ */
+public class VertexEncoderTest {
+
+    private final Random mRandom = new Random(42);
+
+    private static FloatBuffer floats(float... values) {
+        final FloatBuffer buffer = ByteBuffer.allocateDirect(values.length * 4).order(ByteOrder.nativeOrder())
+                .asFloatBuffer();
+        buffer.put(values).position(0);
+        return buffer;
+    }
+
+    @Test
+    public void testHalfFloat() {
+        // -- exactly representable values, including the largest one and a subnormal
+        final float[] exact = new float[]{0, -0f, 1, -2, 0.5f, 1024, 65504, 0x1p-24f};
+        for (float value : exact) {
+            assertEquals(Float.floatToIntBits(value),
+                    Float.floatToIntBits(VertexEncoder.fromHalfFloat(VertexEncoder.toHalfFloat(value))));
+        }
+        assertEquals((short) 0x3c00, VertexEncoder.toHalfFloat(1));
+        assertEquals((short) 0x7c00, VertexEncoder.toHalfFloat(65520));
+        assertTrue(Float.isNaN(VertexEncoder.fromHalfFloat(VertexEncoder.toHalfFloat(Float.NaN))));
+        // -- halfway between 1 and the next value rounds to even
+        assertEquals((short) 0x3c00, VertexEncoder.toHalfFloat(1 + 0x1p-11f));
+
+        for (int i = 0; i < 100000; ++i) {
+            final float value = (mRandom.nextFloat() * 2 - 1) * (float) Math.pow(10, mRandom.nextInt(10) - 5);
+            final float decoded = VertexEncoder.fromHalfFloat(VertexEncoder.toHalfFloat(value));
+            assertEquals(value, decoded, VertexEncoder.getHalfFloatError(value));
+        }
+    }
+
+    @Test
+    public void testOctahedral() {
+        final int[] encoded = new int[2];
+        final float[] decoded = new float[3];
+        for (int i = 0; i < 100000; ++i) {
+            float x = (float) mRandom.nextGaussian();
+            float y = (float) mRandom.nextGaussian();
+            float z = (float) mRandom.nextGaussian();
+            // -- the axes and the edges of the octahedron
+            if (i < 6) {
+                x = i == 0 ? 1 : (i == 1 ? -1 : 0);
+                y = i == 2 ? 1 : (i == 3 ? -1 : 0);
+                z = i == 4 ? 1 : (i == 5 ? -1 : 0);
+            } else if (i < 10) {
+                z = 0;
+            }
+            VertexEncoder.encodeOctahedral(x, y, z, encoded);
+            assertTrue(encoded[0] >= 0 && encoded[0] <= 65535 && encoded[1] >= 0 && encoded[1] <= 65535);
+            VertexEncoder.decodeOctahedral(encoded[0], encoded[1], decoded);
+            // -- the angle from the cross and dot products, acos of a float cosine is too coarse near 0
+            final double crossX = y * decoded[2] - z * decoded[1];
+            final double crossY = z * decoded[0] - x * decoded[2];
+            final double crossZ = x * decoded[1] - y * decoded[0];
+            final double angle = Math.atan2(Math.sqrt(crossX * crossX + crossY * crossY + crossZ * crossZ),
+                    x * decoded[0] + y * decoded[1] + z * decoded[2]);
+            assertTrue("Normal " + x + ", " + y + ", " + z + " is off by " + angle,
+                    angle <= VertexEncoder.OCTAHEDRAL_ERROR_BOUND);
+        }
+
+        // -- a zero normal becomes +Z
+        VertexEncoder.encodeOctahedral(0, 0, 0, encoded);
+        VertexEncoder.decodeOctahedral(encoded[0], encoded[1], decoded);
+        assertEquals(1, decoded[2], 1e-4);
+    }
+
+    @Test
+    public void testQuantizedPositions() {
+        final int count = 1000;
+        final float[] values = new float[count * 3];
+        for (int i = 0; i < values.length; ++i) {
+            values[i] = (mRandom.nextFloat() - 0.25f) * (i % 3 == 0 ? 1000 : 0.01f) + (i % 3 == 2 ? 500 : 0);
+        }
+        final FloatBuffer positions = floats(values);
+        final float[] offset = new float[3];
+        final float[] scale = new float[3];
+        VertexEncoder.getQuantization(positions, count, offset, scale);
+        assertTrue(VertexEncoder.isInQuantization(positions, 0, values.length, offset, scale));
+        assertFalse(VertexEncoder.isInQuantization(floats(offset[0] - 1, offset[1], offset[2]), 0, 3, offset, scale));
+
+        // -- padded to 8 bytes a vertex
+        final ByteBuffer target = ByteBuffer.allocate(count * 8).order(ByteOrder.nativeOrder());
+        VertexEncoder.encodePositions(VertexFormat.PositionEncoding.QUANTIZED, positions, 0, count, offset, scale,
+                target, 0, 8);
+        for (int i = 0; i < count; ++i) {
+            for (int axis = 0; axis < 3; ++axis) {
+                final int value = target.getShort(i * 8 + axis * 2) & 0xffff;
+                final float decoded = offset[axis] + VertexEncoder.fromUnsignedNormalized(value, 65535) * scale[axis];
+                assertEquals(values[i * 3 + axis], decoded,
+                        VertexEncoder.getQuantizationError(offset[axis], offset[axis] + scale[axis]));
+            }
+        }
+    }
+
+    @Test
+    public void testNormalizedAttributes() {
+        final float[] values = new float[4000];
+        for (int i = 0; i < values.length; ++i) {
+            values[i] = mRandom.nextFloat();
+        }
+        values[0] = 0;
+        values[1] = 1;
+        final FloatBuffer source = floats(values);
+        assertTrue(VertexEncoder.isInUnitRange(source, 0, values.length));
+        assertFalse(VertexEncoder.isInUnitRange(floats(0.5f, 1.5f), 0, 2));
+        assertFalse(VertexEncoder.isInUnitRange(floats(Float.NaN), 0, 1));
+
+        final ByteBuffer coords = ByteBuffer.allocate(values.length * 2).order(ByteOrder.nativeOrder());
+        VertexEncoder.encodeTextureCoords(VertexFormat.TextureCoordEncoding.UNSIGNED_SHORT, source, 0,
+                values.length / 2, coords, 0, 4);
+        final ByteBuffer colors = ByteBuffer.allocate(values.length).order(ByteOrder.nativeOrder());
+        VertexEncoder.encodeColors(VertexFormat.ColorEncoding.UNSIGNED_BYTE, source, 0, values.length / 4, colors, 0,
+                4);
+        for (int i = 0; i < values.length; ++i) {
+            assertEquals(values[i], VertexEncoder.fromUnsignedNormalized(coords.getShort(i * 2) & 0xffff, 65535),
+                    VertexEncoder.UNSIGNED_SHORT_ERROR_BOUND);
+            assertEquals(values[i], VertexEncoder.fromUnsignedNormalized(colors.get(i) & 0xff, 255),
+                    VertexEncoder.UNSIGNED_BYTE_ERROR_BOUND);
+        }
+
+        // -- vertices missing from the source are zeros
+        final ByteBuffer missing = ByteBuffer.allocate(16).order(ByteOrder.nativeOrder());
+        missing.putFloat(8, 3);
+        VertexEncoder.encodeTextureCoords(VertexFormat.TextureCoordEncoding.FLOAT, floats(1, 1), 0, 2, missing, 0, 8);
+        assertEquals(1, missing.getFloat(0), 0);
+        assertEquals(0, missing.getFloat(8), 0);
+    }
+}